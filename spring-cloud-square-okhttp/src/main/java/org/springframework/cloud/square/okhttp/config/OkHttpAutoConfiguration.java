@@ -18,15 +18,25 @@ package org.springframework.cloud.square.okhttp.config;
 
 import java.util.List;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.square.okhttp.core.OkHttpBuilderBeanPostProcessor;
 import org.springframework.cloud.square.okhttp.core.OkHttpClientBuilderCustomizer;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientResources;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientResourcesMeterBinder;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientsConfigurer;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientsProperties;
+import org.springframework.cloud.square.okhttp.dns.OkHttpDnsConfiguration;
+import org.springframework.cloud.square.okhttp.limit.OkHttpConcurrencyLimitConfiguration;
 import org.springframework.cloud.square.okhttp.loadbalancer.OkHttpLoadBalancerConfiguration;
 import org.springframework.cloud.square.okhttp.tracing.OkHttpTracingConfiguration;
+import org.springframework.cloud.square.okhttp.virtual.OkHttpVirtualThreadsConfiguration;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -39,7 +49,9 @@ import org.springframework.context.annotation.Import;
  */
 @Configuration
 @ConditionalOnClass(OkHttpClient.class)
-@Import({ OkHttpLoadBalancerConfiguration.class, OkHttpTracingConfiguration.class })
+@Import({ OkHttpLoadBalancerConfiguration.class, OkHttpTracingConfiguration.class, OkHttpDnsConfiguration.class,
+		OkHttpConcurrencyLimitConfiguration.class, OkHttpVirtualThreadsConfiguration.class })
+@EnableConfigurationProperties(OkHttpClientsProperties.class)
 public class OkHttpAutoConfiguration {
 
 	@Bean
@@ -48,9 +60,34 @@ public class OkHttpAutoConfiguration {
 		return new OkHttpBuilderBeanPostProcessor(customizers, context);
 	}
 
+	@Bean
+	@ConditionalOnMissingBean
+	public OkHttpClientResources okHttpClientResources() {
+		return new OkHttpClientResources();
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public OkHttpClientsConfigurer okHttpClientsConfigurer(OkHttpClientsProperties properties,
+			OkHttpClientResources resources) {
+		return new OkHttpClientsConfigurer(properties, resources);
+	}
+
 	@Bean
 	public OkHttpClientBuilderCustomizer okHttpClientBuilderCustomizer(List<Interceptor> interceptors) {
 		return builder -> interceptors.forEach(builder::addInterceptor);
 	}
 
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class OkHttpClientResourcesMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public OkHttpClientResourcesMeterBinder okHttpClientResourcesMeterBinder(OkHttpClientResources resources) {
+			return new OkHttpClientResourcesMeterBinder(resources);
+		}
+
+	}
+
 }
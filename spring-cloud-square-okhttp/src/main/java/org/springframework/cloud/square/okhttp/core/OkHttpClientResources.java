@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Registry of the named {@link ConnectionPool} and {@link Dispatcher} instances shared by
+ * the OkHttp clients of Retrofit clients. Each pool comes with its own connection cleanup
+ * task and each {@code OkHttpClient.Builder} with its own dispatcher threads, so sharing
+ * them keeps the number of idle connections and threads independent of the number of
+ * clients. All the dispatchers created by the registry run their calls on a single
+ * executor, which is unbounded by default. A dedicated dispatcher therefore only gives a
+ * client request limits of its own: its calls still run on threads of the shared
+ * executor, which also runs the calls of all the other dispatchers. With a bounded
+ * executor, the calls of one dispatcher can hold up the calls of the others.
+ *
+ * @author Olga Maciaszek-Sharma
+ * @see OkHttpClientsConfigurer
+ */
+public class OkHttpClientResources implements DisposableBean {
+
+	private final Map<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+	private final Map<String, Dispatcher> dispatchers = new ConcurrentHashMap<>();
+
+	private final List<BiConsumer<String, ConnectionPool>> connectionPoolListeners = new CopyOnWriteArrayList<>();
+
+	private final List<BiConsumer<String, Dispatcher>> dispatcherListeners = new CopyOnWriteArrayList<>();
+
+	private final ExecutorService executorService;
+
+	public OkHttpClientResources() {
+		this(defaultExecutorService());
+	}
+
+	/**
+	 * @param executorService the executor running the calls of all the dispatchers; it
+	 * should not reject or queue tasks, as the dispatchers enforce the request limits
+	 */
+	public OkHttpClientResources(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	private static ExecutorService defaultExecutorService() {
+		AtomicInteger threads = new AtomicInteger();
+		// the same settings as the default executor of OkHttp dispatchers
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				runnable -> {
+					Thread thread = new Thread(runnable, "okhttp-dispatcher-" + threads.incrementAndGet());
+					thread.setDaemon(false);
+					return thread;
+				});
+	}
+
+	/**
+	 * Returns the connection pool with the given name, creating it if necessary.
+	 * @param name the name of the connection pool
+	 * @param factory the factory creating the connection pool
+	 * @return the connection pool
+	 */
+	public ConnectionPool getConnectionPool(String name, Supplier<ConnectionPool> factory) {
+		return get(connectionPools, connectionPoolListeners, name, executor -> factory.get());
+	}
+
+	/**
+	 * Returns the dispatcher with the given name, creating it if necessary.
+	 * @param name the name of the dispatcher
+	 * @param factory the factory creating the dispatcher from the shared executor
+	 * @return the dispatcher
+	 */
+	public Dispatcher getDispatcher(String name, Function<ExecutorService, Dispatcher> factory) {
+		return get(dispatchers, dispatcherListeners, name, factory);
+	}
+
+	private <T> T get(Map<String, T> resources, List<BiConsumer<String, T>> listeners, String name,
+			Function<ExecutorService, T> factory) {
+		T resource = resources.get(name);
+		if (resource == null) {
+			T created = factory.apply(executorService);
+			resource = resources.putIfAbsent(name, created);
+			if (resource == null) {
+				resource = created;
+				listeners.forEach(listener -> listener.accept(name, created));
+			}
+		}
+		return resource;
+	}
+
+	public Map<String, ConnectionPool> getConnectionPools() {
+		return Collections.unmodifiableMap(connectionPools);
+	}
+
+	public Map<String, Dispatcher> getDispatchers() {
+		return Collections.unmodifiableMap(dispatchers);
+	}
+
+	/**
+	 * @return the executor running the calls of all the dispatchers
+	 */
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	/**
+	 * Registers a listener notified of the existing and future connection pools.
+	 * @param listener the listener
+	 */
+	public void addConnectionPoolListener(BiConsumer<String, ConnectionPool> listener) {
+		connectionPoolListeners.add(listener);
+		connectionPools.forEach(listener);
+	}
+
+	/**
+	 * Registers a listener notified of the existing and future dispatchers.
+	 * @param listener the listener
+	 */
+	public void addDispatcherListener(BiConsumer<String, Dispatcher> listener) {
+		dispatcherListeners.add(listener);
+		dispatchers.forEach(listener);
+	}
+
+	@Override
+	public void destroy() {
+		connectionPools.values().forEach(ConnectionPool::evictAll);
+		executorService.shutdown();
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.core;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+
+/**
+ * A {@link MeterBinder} that exposes the connections of the shared connection pools, the
+ * calls of the shared dispatchers and the pooled threads running them as metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class OkHttpClientResourcesMeterBinder implements MeterBinder {
+
+	private final OkHttpClientResources resources;
+
+	public OkHttpClientResourcesMeterBinder(OkHttpClientResources resources) {
+		this.resources = resources;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		resources.addConnectionPoolListener((name, pool) -> {
+			Gauge.builder("okhttp.connection.pool.connections", pool, ConnectionPool::idleConnectionCount)
+					.tag("pool", name).tag("state", "idle").description("The number of connections in the pool")
+					.register(registry);
+			Gauge.builder("okhttp.connection.pool.connections", pool,
+					value -> value.connectionCount() - value.idleConnectionCount()).tag("pool", name)
+					.tag("state", "active").description("The number of connections in the pool").register(registry);
+		});
+		resources.addDispatcherListener((name, dispatcher) -> {
+			Gauge.builder("okhttp.dispatcher.calls", dispatcher, Dispatcher::runningCallsCount).tag("dispatcher", name)
+					.tag("state", "running").description("The number of asynchronous calls of the dispatcher")
+					.register(registry);
+			Gauge.builder("okhttp.dispatcher.calls", dispatcher, Dispatcher::queuedCallsCount).tag("dispatcher", name)
+					.tag("state", "queued").description("The number of asynchronous calls of the dispatcher")
+					.register(registry);
+		});
+		if (resources.getExecutorService() instanceof ThreadPoolExecutor) {
+			Gauge.builder("okhttp.dispatcher.threads", (ThreadPoolExecutor) resources.getExecutorService(),
+					ThreadPoolExecutor::getPoolSize)
+					.description("The number of threads running the calls of the shared dispatchers")
+					.register(registry);
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.core;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Applies the {@link OkHttpClientsProperties} of a client to the {@link OkHttpClient}
+ * built for it. The client is derived with {@link OkHttpClient#newBuilder()}, so that the
+ * shared {@link OkHttpClient.Builder} it is built from, as well as the other clients, are
+ * left untouched.
+ * <p>
+ * A client that sets connection pool or dispatcher properties of its own gets a pool or
+ * dispatcher named after it. A client that sets a connection-pool-name or dispatcher-name
+ * uses the pool or dispatcher of that name, and the clients that only inherit the
+ * properties of the {@code default} client share the {@code default} ones. The pools and
+ * dispatchers are kept in the {@link OkHttpClientResources}. If a dispatcher per client
+ * is enabled, a client without any dispatcher property also gets a dispatcher named after
+ * it, with the default limits, so that its calls run on the executor of the registry.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class OkHttpClientsConfigurer {
+
+	private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+
+	private static final Duration DEFAULT_KEEP_ALIVE = Duration.ofMinutes(5);
+
+	private final OkHttpClientsProperties properties;
+
+	private final OkHttpClientResources resources;
+
+	private final boolean dispatcherPerClient;
+
+	public OkHttpClientsConfigurer(OkHttpClientsProperties properties, OkHttpClientResources resources) {
+		this(properties, resources, false);
+	}
+
+	/**
+	 * @param properties the properties of the clients
+	 * @param resources the registry of the shared pools and dispatchers
+	 * @param dispatcherPerClient whether the clients without any dispatcher property get
+	 * a dispatcher of the registry named after them
+	 */
+	public OkHttpClientsConfigurer(OkHttpClientsProperties properties, OkHttpClientResources resources,
+			boolean dispatcherPerClient) {
+		this.properties = properties;
+		this.resources = resources;
+		this.dispatcherPerClient = dispatcherPerClient;
+	}
+
+	/**
+	 * @param name the name of the client
+	 * @param client the client built from the {@link OkHttpClient.Builder} of the client
+	 * @return the client with the properties of the given client applied, or the original
+	 * client if no property is set
+	 */
+	public OkHttpClient configure(String name, OkHttpClient client) {
+		if (!dispatcherPerClient && !properties.getClients().containsKey(name)
+				&& !properties.getClients().containsKey(OkHttpClientsProperties.DEFAULT_CLIENT)) {
+			return client;
+		}
+		OkHttpClient.Builder builder = client.newBuilder();
+		set(name, OkHttpClientsProperties.Client::getConnectTimeout, builder::connectTimeout);
+		set(name, OkHttpClientsProperties.Client::getReadTimeout, builder::readTimeout);
+		set(name, OkHttpClientsProperties.Client::getWriteTimeout, builder::writeTimeout);
+		set(name, OkHttpClientsProperties.Client::getCallTimeout, builder::callTimeout);
+		set(name, OkHttpClientsProperties.Client::getProtocols, builder::protocols);
+		set(name, OkHttpClientsProperties.Client::getRetryOnConnectionFailure, builder::retryOnConnectionFailure);
+		set(name, OkHttpClientsProperties.Client::getFollowRedirects, builder::followRedirects);
+		String connectionPoolName = resourceName(name, OkHttpClientsProperties.Client::getConnectionPoolName,
+				clientProperties -> clientProperties.getConnectionPool().isSet());
+		if (connectionPoolName != null) {
+			builder.connectionPool(
+					resources.getConnectionPool(connectionPoolName, () -> connectionPool(settings(connectionPoolName,
+							properties.getConnectionPools(), OkHttpClientsProperties.Client::getConnectionPool))));
+		}
+		String dispatcherName = resourceName(name, OkHttpClientsProperties.Client::getDispatcherName,
+				clientProperties -> clientProperties.getDispatcher().isSet());
+		if (dispatcherName == null && dispatcherPerClient) {
+			dispatcherName = name;
+		}
+		if (dispatcherName != null) {
+			builder.dispatcher(getDispatcher(dispatcherName));
+		}
+		return builder.build();
+	}
+
+	private Dispatcher getDispatcher(String dispatcherName) {
+		return resources.getDispatcher(dispatcherName, executorService -> dispatcher(executorService,
+				settings(dispatcherName, properties.getDispatchers(), OkHttpClientsProperties.Client::getDispatcher)));
+	}
+
+	private String resourceName(String name, Function<OkHttpClientsProperties.Client, String> sharedName,
+			Predicate<OkHttpClientsProperties.Client> ownSettings) {
+		OkHttpClientsProperties.Client clientProperties = properties.getClients().get(name);
+		if (clientProperties != null && ownSettings.test(clientProperties)) {
+			return name;
+		}
+		String resourceName = properties.resolve(name, sharedName);
+		if (resourceName != null) {
+			return resourceName;
+		}
+		OkHttpClientsProperties.Client defaults = properties.getClients().get(OkHttpClientsProperties.DEFAULT_CLIENT);
+		return defaults != null && ownSettings.test(defaults) ? OkHttpClientsProperties.DEFAULT_CLIENT : null;
+	}
+
+	private <T> T settings(String resourceName, Map<String, T> namedSettings,
+			Function<OkHttpClientsProperties.Client, T> clientSettings) {
+		T settings = namedSettings.get(resourceName);
+		if (settings != null) {
+			return settings;
+		}
+		OkHttpClientsProperties.Client clientProperties = properties.getClients().get(resourceName);
+		return clientProperties != null ? clientSettings.apply(clientProperties) : null;
+	}
+
+	private ConnectionPool connectionPool(OkHttpClientsProperties.ConnectionPool settings) {
+		Integer maxIdleConnections = settings != null ? settings.getMaxIdleConnections() : null;
+		Duration keepAlive = settings != null ? settings.getKeepAlive() : null;
+		return new ConnectionPool(maxIdleConnections != null ? maxIdleConnections : DEFAULT_MAX_IDLE_CONNECTIONS,
+				(keepAlive != null ? keepAlive : DEFAULT_KEEP_ALIVE).toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	private Dispatcher dispatcher(ExecutorService executorService, OkHttpClientsProperties.Dispatcher settings) {
+		Dispatcher dispatcher = new Dispatcher(executorService);
+		if (settings != null && settings.getMaxRequests() != null) {
+			dispatcher.setMaxRequests(settings.getMaxRequests());
+		}
+		if (settings != null && settings.getMaxRequestsPerHost() != null) {
+			dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+		}
+		return dispatcher;
+	}
+
+	private <T> void set(String name, Function<OkHttpClientsProperties.Client, T> property, Consumer<T> setter) {
+		T value = properties.resolve(name, property);
+		if (value != null) {
+			setter.accept(value);
+		}
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.core;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import okhttp3.Protocol;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Properties of the OkHttp clients of individual Retrofit clients, keyed by client name.
+ * The properties of the {@code default} client apply to all the clients that do not set
+ * them.
+ *
+ * @author Olga Maciaszek-Sharma
+ * @see OkHttpClientsConfigurer
+ */
+@ConfigurationProperties("spring.cloud.square.okhttp")
+public class OkHttpClientsProperties {
+
+	/**
+	 * The name of the client whose properties apply to all the clients.
+	 */
+	public static final String DEFAULT_CLIENT = "default";
+
+	/**
+	 * The properties of the OkHttp clients of individual Retrofit clients, keyed by
+	 * client name.
+	 */
+	private Map<String, Client> clients = new HashMap<>();
+
+	/**
+	 * Connection pools, keyed by name, that clients share by setting their
+	 * connection-pool-name.
+	 */
+	private Map<String, ConnectionPool> connectionPools = new HashMap<>();
+
+	/**
+	 * Dispatchers, keyed by name, that clients share by setting their dispatcher-name.
+	 */
+	private Map<String, Dispatcher> dispatchers = new HashMap<>();
+
+	public Map<String, Client> getClients() {
+		return clients;
+	}
+
+	public void setClients(Map<String, Client> clients) {
+		this.clients = clients;
+	}
+
+	public Map<String, ConnectionPool> getConnectionPools() {
+		return connectionPools;
+	}
+
+	public void setConnectionPools(Map<String, ConnectionPool> connectionPools) {
+		this.connectionPools = connectionPools;
+	}
+
+	public Map<String, Dispatcher> getDispatchers() {
+		return dispatchers;
+	}
+
+	public void setDispatchers(Map<String, Dispatcher> dispatchers) {
+		this.dispatchers = dispatchers;
+	}
+
+	/**
+	 * Resolves a property of the given client, falling back to the {@code default} client
+	 * if the client does not set it.
+	 * @param name the name of the client
+	 * @param property the function reading the property
+	 * @param <T> the type of the property
+	 * @return the value of the property or {@code null} if neither client sets it
+	 */
+	public <T> T resolve(String name, Function<Client, T> property) {
+		Client client = clients.get(name);
+		T value = client != null ? property.apply(client) : null;
+		if (value != null) {
+			return value;
+		}
+		Client defaults = clients.get(DEFAULT_CLIENT);
+		return defaults != null ? property.apply(defaults) : null;
+	}
+
+	public static class Client {
+
+		/**
+		 * The timeout for establishing new connections.
+		 */
+		private Duration connectTimeout;
+
+		/**
+		 * The timeout for reading from the connections.
+		 */
+		private Duration readTimeout;
+
+		/**
+		 * The timeout for writing to the connections.
+		 */
+		private Duration writeTimeout;
+
+		/**
+		 * The timeout of complete calls, from resolving DNS to reading the response body.
+		 */
+		private Duration callTimeout;
+
+		/**
+		 * The protocols the client can use, such as HTTP_1_1 and HTTP_2.
+		 */
+		private List<Protocol> protocols;
+
+		/**
+		 * Whether the client retries calls when a connection fails.
+		 */
+		private Boolean retryOnConnectionFailure;
+
+		/**
+		 * Whether the client follows redirects.
+		 */
+		private Boolean followRedirects;
+
+		/**
+		 * The name of the shared connection pool the client uses, either one of the
+		 * connection-pools or the connection pool of another client.
+		 */
+		private String connectionPoolName;
+
+		/**
+		 * The name of the shared dispatcher the client uses, either one of the
+		 * dispatchers or the dispatcher of another client.
+		 */
+		private String dispatcherName;
+
+		private final ConnectionPool connectionPool = new ConnectionPool();
+
+		private final Dispatcher dispatcher = new Dispatcher();
+
+		public Duration getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		public void setConnectTimeout(Duration connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public Duration getReadTimeout() {
+			return readTimeout;
+		}
+
+		public void setReadTimeout(Duration readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+
+		public Duration getWriteTimeout() {
+			return writeTimeout;
+		}
+
+		public void setWriteTimeout(Duration writeTimeout) {
+			this.writeTimeout = writeTimeout;
+		}
+
+		public Duration getCallTimeout() {
+			return callTimeout;
+		}
+
+		public void setCallTimeout(Duration callTimeout) {
+			this.callTimeout = callTimeout;
+		}
+
+		public List<Protocol> getProtocols() {
+			return protocols;
+		}
+
+		public void setProtocols(List<Protocol> protocols) {
+			this.protocols = protocols;
+		}
+
+		public Boolean getRetryOnConnectionFailure() {
+			return retryOnConnectionFailure;
+		}
+
+		public void setRetryOnConnectionFailure(Boolean retryOnConnectionFailure) {
+			this.retryOnConnectionFailure = retryOnConnectionFailure;
+		}
+
+		public Boolean getFollowRedirects() {
+			return followRedirects;
+		}
+
+		public void setFollowRedirects(Boolean followRedirects) {
+			this.followRedirects = followRedirects;
+		}
+
+		public String getConnectionPoolName() {
+			return connectionPoolName;
+		}
+
+		public void setConnectionPoolName(String connectionPoolName) {
+			this.connectionPoolName = connectionPoolName;
+		}
+
+		public String getDispatcherName() {
+			return dispatcherName;
+		}
+
+		public void setDispatcherName(String dispatcherName) {
+			this.dispatcherName = dispatcherName;
+		}
+
+		public ConnectionPool getConnectionPool() {
+			return connectionPool;
+		}
+
+		public Dispatcher getDispatcher() {
+			return dispatcher;
+		}
+
+	}
+
+	public static class ConnectionPool {
+
+		/**
+		 * The maximum number of idle connections kept in the connection pool. A client
+		 * that sets it gets a connection pool of its own. Defaults to 5.
+		 */
+		private Integer maxIdleConnections;
+
+		/**
+		 * The time idle connections are kept in the connection pool. A client that sets
+		 * it gets a connection pool of its own. Defaults to 5m.
+		 */
+		private Duration keepAlive;
+
+		public Integer getMaxIdleConnections() {
+			return maxIdleConnections;
+		}
+
+		public void setMaxIdleConnections(Integer maxIdleConnections) {
+			this.maxIdleConnections = maxIdleConnections;
+		}
+
+		public Duration getKeepAlive() {
+			return keepAlive;
+		}
+
+		public void setKeepAlive(Duration keepAlive) {
+			this.keepAlive = keepAlive;
+		}
+
+		boolean isSet() {
+			return maxIdleConnections != null || keepAlive != null;
+		}
+
+	}
+
+	public static class Dispatcher {
+
+		/**
+		 * The maximum number of asynchronous calls the dispatcher runs at the same time.
+		 * A client that sets it gets a dispatcher of its own. Defaults to 64.
+		 */
+		private Integer maxRequests;
+
+		/**
+		 * The maximum number of asynchronous calls to the same host the dispatcher runs
+		 * at the same time. A client that sets it gets a dispatcher of its own. Defaults
+		 * to 5.
+		 */
+		private Integer maxRequestsPerHost;
+
+		public Integer getMaxRequests() {
+			return maxRequests;
+		}
+
+		public void setMaxRequests(Integer maxRequests) {
+			this.maxRequests = maxRequests;
+		}
+
+		public Integer getMaxRequestsPerHost() {
+			return maxRequestsPerHost;
+		}
+
+		public void setMaxRequestsPerHost(Integer maxRequestsPerHost) {
+			this.maxRequestsPerHost = maxRequestsPerHost;
+		}
+
+		boolean isSet() {
+			return maxRequests != null || maxRequestsPerHost != null;
+		}
+
+	}
+
+}
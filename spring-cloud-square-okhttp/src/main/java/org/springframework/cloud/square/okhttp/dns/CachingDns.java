@@ -0,0 +1,274 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Dns;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * A {@link Dns} implementation that returns IP literals, such as the addresses of
+ * load-balanced service instances registered by IP, without a lookup and caches the
+ * addresses of hostnames. Once a cached entry is older than the refresh interval, the
+ * next lookup triggers a refresh in the background and still returns the cached
+ * addresses. Only lookups of hostnames that are not cached or whose entry has expired
+ * wait for the hostname to be resolved. If a background refresh fails, the previous
+ * addresses are kept until they expire; failed lookups are not cached.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class CachingDns implements Dns, DisposableBean {
+
+	private static final Log LOG = LogFactory.getLog(CachingDns.class);
+
+	private static final int MAX_ENTRIES = 4096;
+
+	private static final int REFRESH_THREADS = 4;
+
+	private final Dns delegate;
+
+	private final long refreshIntervalNanos;
+
+	private final long ttlNanos;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final ThreadPoolExecutor refreshExecutor;
+
+	private final LongAdder ipLiteralLookups = new LongAdder();
+
+	private final LongAdder cachedLookups = new LongAdder();
+
+	private final LongAdder resolvedLookups = new LongAdder();
+
+	private final LongAdder resolutions = new LongAdder();
+
+	private final LongAdder resolutionNanos = new LongAdder();
+
+	private final LongAdder failedResolutions = new LongAdder();
+
+	private final LongAdder failedResolutionNanos = new LongAdder();
+
+	public CachingDns(OkHttpDnsProperties properties) {
+		this(Dns.SYSTEM, properties);
+	}
+
+	public CachingDns(Dns delegate, OkHttpDnsProperties properties) {
+		this.delegate = delegate;
+		this.refreshIntervalNanos = properties.getRefreshInterval().toNanos();
+		this.ttlNanos = properties.getTtl().toNanos();
+		this.refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "okhttp-dns-refresh");
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.refreshExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+		InetAddress address = parseIpLiteral(hostname);
+		if (address != null) {
+			ipLiteralLookups.increment();
+			return Collections.singletonList(address);
+		}
+		Entry entry = entries.get(hostname);
+		if (entry != null) {
+			long age = System.nanoTime() - entry.resolvedAt;
+			if (age < ttlNanos) {
+				cachedLookups.increment();
+				if (age >= refreshIntervalNanos) {
+					refreshInBackground(hostname, entry);
+				}
+				return entry.addresses;
+			}
+		}
+		resolvedLookups.increment();
+		return resolve(hostname);
+	}
+
+	private void refreshInBackground(String hostname, Entry entry) {
+		if (!entry.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					resolve(hostname);
+				}
+				catch (UnknownHostException | RuntimeException e) {
+					LOG.warn("Could not refresh the addresses of " + hostname, e);
+					entry.refreshing.set(false);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			entry.refreshing.set(false);
+		}
+	}
+
+	private List<InetAddress> resolve(String hostname) throws UnknownHostException {
+		long start = System.nanoTime();
+		List<InetAddress> addresses;
+		try {
+			addresses = Collections.unmodifiableList(new ArrayList<>(delegate.lookup(hostname)));
+		}
+		catch (UnknownHostException | RuntimeException e) {
+			failedResolutions.increment();
+			failedResolutionNanos.add(System.nanoTime() - start);
+			throw e;
+		}
+		long end = System.nanoTime();
+		resolutions.increment();
+		resolutionNanos.add(end - start);
+		if (entries.size() >= MAX_ENTRIES) {
+			// hosts come and go, drop the entries of the ones that are gone
+			entries.clear();
+		}
+		entries.put(hostname, new Entry(addresses, end));
+		return addresses;
+	}
+
+	static InetAddress parseIpLiteral(String host) throws UnknownHostException {
+		if (host.indexOf(':') >= 0) {
+			// hostnames cannot contain colons, this is an IPv6 literal, which is parsed
+			// without a lookup
+			return InetAddress.getByName(host);
+		}
+		byte[] address = new byte[4];
+		int part = 0;
+		int value = -1;
+		for (int i = 0; i < host.length(); i++) {
+			char c = host.charAt(i);
+			if (c == '.') {
+				if (value < 0 || part == 3) {
+					return null;
+				}
+				address[part++] = (byte) value;
+				value = -1;
+			}
+			else if (c >= '0' && c <= '9') {
+				value = (value < 0 ? 0 : value * 10) + (c - '0');
+				if (value > 255) {
+					return null;
+				}
+			}
+			else {
+				return null;
+			}
+		}
+		if (value < 0 || part != 3) {
+			return null;
+		}
+		address[part] = (byte) value;
+		return InetAddress.getByAddress(address);
+	}
+
+	/**
+	 * @return the number of lookups of IP literals, answered without a lookup
+	 */
+	public long getIpLiteralLookups() {
+		return ipLiteralLookups.sum();
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getCachedLookups() {
+		return cachedLookups.sum();
+	}
+
+	/**
+	 * @return the number of lookups that waited for the hostname to be resolved
+	 */
+	public long getResolvedLookups() {
+		return resolvedLookups.sum();
+	}
+
+	/**
+	 * @return the number of successful resolutions, including background refreshes
+	 */
+	public long getResolutions() {
+		return resolutions.sum();
+	}
+
+	/**
+	 * @return the total time spent in successful resolutions, in nanoseconds
+	 */
+	public long getResolutionNanos() {
+		return resolutionNanos.sum();
+	}
+
+	/**
+	 * @return the number of failed resolutions, including background refreshes
+	 */
+	public long getFailedResolutions() {
+		return failedResolutions.sum();
+	}
+
+	/**
+	 * @return the total time spent in failed resolutions, in nanoseconds
+	 */
+	public long getFailedResolutionNanos() {
+		return failedResolutionNanos.sum();
+	}
+
+	/**
+	 * @return the number of cached hostnames
+	 */
+	public int getCachedHostnames() {
+		return entries.size();
+	}
+
+	@Override
+	public void destroy() {
+		refreshExecutor.shutdownNow();
+	}
+
+	private static final class Entry {
+
+		private final List<InetAddress> addresses;
+
+		private final long resolvedAt;
+
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		private Entry(List<InetAddress> addresses, long resolvedAt) {
+			this.addresses = addresses;
+			this.resolvedAt = resolvedAt;
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.dns;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the lookups answered by the {@link CachingDns}, the
+ * time spent resolving hostnames and the number of cached hostnames as metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class CachingDnsMeterBinder implements MeterBinder {
+
+	private final CachingDns dns;
+
+	public CachingDnsMeterBinder(CachingDns dns) {
+		this.dns = dns;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bindLookups(registry, "ip-literal", CachingDns::getIpLiteralLookups);
+		bindLookups(registry, "cached", CachingDns::getCachedLookups);
+		bindLookups(registry, "resolved", CachingDns::getResolvedLookups);
+		bindResolutions(registry, "success", CachingDns::getResolutions, CachingDns::getResolutionNanos);
+		bindResolutions(registry, "failure", CachingDns::getFailedResolutions, CachingDns::getFailedResolutionNanos);
+		Gauge.builder("okhttp.dns.cached.hostnames", dns, CachingDns::getCachedHostnames)
+				.description("The number of hostnames with cached addresses").register(registry);
+	}
+
+	private void bindLookups(MeterRegistry registry, String source, ToDoubleFunction<CachingDns> count) {
+		FunctionCounter.builder("okhttp.dns.lookups", dns, count).tag("source", source)
+				.description("The number of DNS lookups answered for IP literals, from the cache and by resolution")
+				.register(registry);
+	}
+
+	private void bindResolutions(MeterRegistry registry, String outcome, ToLongFunction<CachingDns> count,
+			ToLongFunction<CachingDns> totalNanos) {
+		FunctionTimer.builder("okhttp.dns.resolutions", dns, count, totalNanos::applyAsLong, TimeUnit.NANOSECONDS)
+				.tag("outcome", outcome)
+				.description("The time spent resolving hostnames, including background refreshes").register(registry);
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.dns;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration that registers the {@link CachingDns} with load-balanced OkHttp clients.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@Configuration
+@ConditionalOnProperty("spring.cloud.square.okhttp.dns.enabled")
+@EnableConfigurationProperties(OkHttpDnsProperties.class)
+public class OkHttpDnsConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public CachingDns okHttpCachingDns(OkHttpDnsProperties properties) {
+		return new CachingDns(properties);
+	}
+
+	@Bean
+	public OkHttpClientBuilderCustomizer okHttpDnsCustomizer(CachingDns dns) {
+		return builder -> builder.dns(dns);
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class CachingDnsMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public CachingDnsMeterBinder cachingDnsMeterBinder(CachingDns dns) {
+			return new CachingDnsMeterBinder(dns);
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.dns;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Properties of the {@link CachingDns} used by load-balanced OkHttp clients.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@ConfigurationProperties("spring.cloud.square.okhttp.dns")
+public class OkHttpDnsProperties {
+
+	/**
+	 * Enables the DNS implementation that skips the lookup of IP literals and caches the
+	 * addresses of hostnames for load-balanced OkHttp clients.
+	 */
+	private boolean enabled;
+
+	/**
+	 * The age after which the cached addresses of a hostname are refreshed in the
+	 * background, while the cached ones are still returned.
+	 */
+	private Duration refreshInterval = Duration.ofSeconds(20);
+
+	/**
+	 * The age after which the cached addresses of a hostname expire. Lookups of expired
+	 * hostnames wait for them to be resolved.
+	 */
+	private Duration ttl = Duration.ofSeconds(30);
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Duration getRefreshInterval() {
+		return refreshInterval;
+	}
+
+	public void setRefreshInterval(Duration refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	public Duration getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(Duration ttl) {
+		this.ttl = ttl;
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrency limit that adapts to the response times of a downstream service. The
+ * limit follows the gradient between the long-term average response time and the latest
+ * one: it grows while response times stay stable and shrinks as soon as they increase, so
+ * that requests are rejected instead of queuing up when the service degrades. Failed
+ * requests, timeouts and responses telling the client to back off reduce the limit
+ * multiplicatively. The limit is updated without locking, so that sampling the response
+ * times does not serialize the completing requests.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class AdaptiveConcurrencyLimit {
+
+	private static final double SMOOTHING = 0.2;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double rttTolerance;
+
+	private final double backoffRatio;
+
+	private final double longRttFactor;
+
+	private final AtomicLong limitBits;
+
+	private final AtomicLong longRttBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+	public AdaptiveConcurrencyLimit(ConcurrencyLimitProperties properties) {
+		this.minLimit = Math.max(1, properties.getMinLimit());
+		this.maxLimit = Math.max(minLimit, properties.getMaxLimit());
+		this.rttTolerance = Math.max(1, properties.getRttTolerance());
+		this.backoffRatio = Math.min(Math.max(properties.getBackoffRatio(), 0.1), 1);
+		this.longRttFactor = 2d / (Math.max(1, properties.getRttWindow()) + 1);
+		this.limitBits = new AtomicLong(
+				Double.doubleToRawLongBits(Math.min(Math.max(properties.getInitialLimit(), minLimit), maxLimit)));
+	}
+
+	/**
+	 * Acquires a permit to run a request, unless the limit has been reached.
+	 * @return the permit that has to be released when the request completes, or
+	 * {@code null} if the request should be rejected
+	 */
+	public Permit tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= getLimit()) {
+				rejected.increment();
+				return null;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return new Permit(current + 1);
+			}
+		}
+	}
+
+	void onSample(long rttNanos, int inFlightAtStart) {
+		if (rttNanos <= 0) {
+			return;
+		}
+		double longRtt = updateLongRtt(rttNanos);
+		if (inFlightAtStart < limit() / 2) {
+			// the limit is not what is holding the requests back
+			return;
+		}
+		double gradient = Math.max(0.5, Math.min(1, rttTolerance * longRtt / rttNanos));
+		long currentBits;
+		double updated;
+		do {
+			currentBits = limitBits.get();
+			double current = Double.longBitsToDouble(currentBits);
+			updated = clamp(current * (1 - SMOOTHING) + (current * gradient + Math.sqrt(current)) * SMOOTHING);
+		}
+		while (!limitBits.compareAndSet(currentBits, Double.doubleToRawLongBits(updated)));
+	}
+
+	private double updateLongRtt(long rttNanos) {
+		long currentBits;
+		double updated;
+		do {
+			currentBits = longRttBits.get();
+			double current = Double.longBitsToDouble(currentBits);
+			updated = current == 0 ? rttNanos : current * (1 - longRttFactor) + rttNanos * longRttFactor;
+			if (updated / rttNanos > 2) {
+				// let the baseline recover quickly once a slow period is over
+				updated *= 0.95;
+			}
+		}
+		while (!longRttBits.compareAndSet(currentBits, Double.doubleToRawLongBits(updated)));
+		return updated;
+	}
+
+	private void onDrop() {
+		long currentBits;
+		double updated;
+		do {
+			currentBits = limitBits.get();
+			updated = clamp(Double.longBitsToDouble(currentBits) * backoffRatio);
+		}
+		while (!limitBits.compareAndSet(currentBits, Double.doubleToRawLongBits(updated)));
+	}
+
+	private double clamp(double limit) {
+		return Math.min(Math.max(limit, minLimit), maxLimit);
+	}
+
+	private double limit() {
+		return Double.longBitsToDouble(limitBits.get());
+	}
+
+	/**
+	 * @return the number of requests that can currently run at the same time
+	 */
+	public int getLimit() {
+		return (int) limit();
+	}
+
+	/**
+	 * @return the number of requests that are currently running
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the number of requests rejected because the limit had been reached
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * A permit to run a single request. Only the first of its release methods called has
+	 * any effect.
+	 */
+	public final class Permit {
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private final long startTime = System.nanoTime();
+
+		private final int inFlightAtStart;
+
+		private Permit(int inFlightAtStart) {
+			this.inFlightAtStart = inFlightAtStart;
+		}
+
+		/**
+		 * Releases the permit of a request that has completed normally, using its
+		 * response time to adjust the limit.
+		 */
+		public void release() {
+			if (doRelease()) {
+				onSample(System.nanoTime() - startTime, inFlightAtStart);
+			}
+		}
+
+		/**
+		 * Releases the permit of a request that has failed or timed out, or that the
+		 * service has refused because it is overloaded, reducing the limit.
+		 */
+		public void releaseDropped() {
+			if (doRelease()) {
+				onDrop();
+			}
+		}
+
+		/**
+		 * Releases the permit of a request that says nothing about the service, such as a
+		 * cancelled one, leaving the limit unchanged.
+		 */
+		public void releaseIgnored() {
+			doRelease();
+		}
+
+		private boolean doRelease() {
+			if (released.compareAndSet(false, true)) {
+				inFlight.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
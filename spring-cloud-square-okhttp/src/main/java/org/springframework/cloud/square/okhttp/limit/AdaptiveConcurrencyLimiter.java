@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Registry of the {@link AdaptiveConcurrencyLimit} of each called service, shared by the
+ * OkHttp interceptor and the WebClient filter that enforce them. The limits are kept per
+ * serviceId rather than per client, as the interceptor is shared by all the clients built
+ * from a load-balanced {@code OkHttpClient.Builder}, so all the clients calling a service
+ * share its limit.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private final Map<String, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+	private final List<BiConsumer<String, AdaptiveConcurrencyLimit>> listeners = new CopyOnWriteArrayList<>();
+
+	private final ConcurrencyLimitProperties properties;
+
+	public AdaptiveConcurrencyLimiter(ConcurrencyLimitProperties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Returns the limit of the given service, creating it if necessary.
+	 * @param name the serviceId of the called service
+	 * @return the limit of the service
+	 */
+	public AdaptiveConcurrencyLimit get(String name) {
+		AdaptiveConcurrencyLimit limit = limits.get(name);
+		if (limit != null) {
+			return limit;
+		}
+		AdaptiveConcurrencyLimit created = new AdaptiveConcurrencyLimit(properties);
+		limit = limits.putIfAbsent(name, created);
+		if (limit != null) {
+			return limit;
+		}
+		listeners.forEach(listener -> listener.accept(name, created));
+		return created;
+	}
+
+	/**
+	 * Registers a listener notified about the limits of all the services, including the
+	 * ones created before the registration.
+	 * @param listener the listener accepting the serviceId and its limit
+	 */
+	public void addListener(BiConsumer<String, AdaptiveConcurrencyLimit> listener) {
+		listeners.add(listener);
+		limits.forEach(listener);
+	}
+
+}
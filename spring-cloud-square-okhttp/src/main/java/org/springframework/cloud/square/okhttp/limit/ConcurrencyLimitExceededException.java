@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is rejected because the {@link AdaptiveConcurrencyLimit} of its
+ * client has been reached.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+
+	private final String name;
+
+	private final int limit;
+
+	public ConcurrencyLimitExceededException(String name, int limit) {
+		super("Concurrency limit of " + limit + " requests reached for " + name);
+		this.name = name;
+		this.limit = limit;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+}
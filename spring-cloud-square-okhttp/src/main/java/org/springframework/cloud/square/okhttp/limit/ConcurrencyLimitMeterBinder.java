@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the current limit, the running requests and the
+ * rejected requests of each service of the {@link AdaptiveConcurrencyLimiter} as metrics,
+ * tagged with its serviceId.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class ConcurrencyLimitMeterBinder implements MeterBinder {
+
+	private final AdaptiveConcurrencyLimiter limiter;
+
+	public ConcurrencyLimitMeterBinder(AdaptiveConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		limiter.addListener((name, limit) -> {
+			Gauge.builder("concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit).tag("client", name)
+					.description("The number of requests a client can currently run at the same time")
+					.register(registry);
+			Gauge.builder("concurrency.limit.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+					.tag("client", name).description("The number of requests a client is running").register(registry);
+			FunctionCounter.builder("concurrency.limit.rejected", limit, AdaptiveConcurrencyLimit::getRejected)
+					.tag("client", name)
+					.description("The number of requests rejected because the concurrency limit had been reached")
+					.register(registry);
+		});
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties of the {@link AdaptiveConcurrencyLimiter}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@ConfigurationProperties("spring.cloud.square.okhttp.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+	/**
+	 * Enables the adaptive concurrency limit of load-balanced OkHttp and WebClient-backed
+	 * Retrofit clients.
+	 */
+	private boolean enabled;
+
+	/**
+	 * The number of requests each client can run at the same time before the limit has
+	 * adapted to the response times.
+	 */
+	private int initialLimit = 20;
+
+	/**
+	 * The lowest value the limit can be reduced to.
+	 */
+	private int minLimit = 1;
+
+	/**
+	 * The highest value the limit can grow to.
+	 */
+	private int maxLimit = 200;
+
+	/**
+	 * How much higher than the long-term average the response time can get before the
+	 * limit is reduced.
+	 */
+	private double rttTolerance = 1.5;
+
+	/**
+	 * The ratio the limit is multiplied by when a request fails with an I/O error, a
+	 * timeout, or a 429 or 503 response.
+	 */
+	private double backoffRatio = 0.9;
+
+	/**
+	 * The number of response time samples the long-term average response time is
+	 * calculated over.
+	 */
+	private int rttWindow = 600;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getInitialLimit() {
+		return initialLimit;
+	}
+
+	public void setInitialLimit(int initialLimit) {
+		this.initialLimit = initialLimit;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public void setMinLimit(int minLimit) {
+		this.minLimit = minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	public void setMaxLimit(int maxLimit) {
+		this.maxLimit = maxLimit;
+	}
+
+	public double getRttTolerance() {
+		return rttTolerance;
+	}
+
+	public void setRttTolerance(double rttTolerance) {
+		this.rttTolerance = rttTolerance;
+	}
+
+	public double getBackoffRatio() {
+		return backoffRatio;
+	}
+
+	public void setBackoffRatio(double backoffRatio) {
+		this.backoffRatio = backoffRatio;
+	}
+
+	public int getRttWindow() {
+		return rttWindow;
+	}
+
+	public void setRttWindow(int rttWindow) {
+		this.rttWindow = rttWindow;
+	}
+
+}
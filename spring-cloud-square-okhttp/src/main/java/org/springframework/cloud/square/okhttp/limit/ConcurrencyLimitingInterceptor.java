@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * An OkHttp {@link Interceptor} that enforces the {@link AdaptiveConcurrencyLimit} of the
+ * service called. Requests over the limit fail immediately with a
+ * {@link ConcurrencyLimitExceededException}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class ConcurrencyLimitingInterceptor implements Interceptor {
+
+	private final AdaptiveConcurrencyLimiter limiter;
+
+	public ConcurrencyLimitingInterceptor(AdaptiveConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		String name = name(request);
+		AdaptiveConcurrencyLimit limit = limiter.get(name);
+		AdaptiveConcurrencyLimit.Permit permit = limit.tryAcquire();
+		if (permit == null) {
+			throw new ConcurrencyLimitExceededException(name, limit.getLimit());
+		}
+		Response response;
+		try {
+			response = chain.proceed(request);
+		}
+		catch (IOException | RuntimeException exception) {
+			if (chain.call().isCanceled()) {
+				permit.releaseIgnored();
+			}
+			else {
+				permit.releaseDropped();
+			}
+			throw exception;
+		}
+		if (isOverloaded(response.code())) {
+			permit.releaseDropped();
+		}
+		else {
+			permit.release();
+		}
+		return response;
+	}
+
+	private static String name(Request request) {
+		// the request is tagged with the instance if it has already been load-balanced
+		ServiceInstance instance = request.tag(ServiceInstance.class);
+		return instance != null ? instance.getServiceId() : request.url().host();
+	}
+
+	static boolean isOverloaded(int statusCode) {
+		return statusCode == 429 || statusCode == 503;
+	}
+
+}
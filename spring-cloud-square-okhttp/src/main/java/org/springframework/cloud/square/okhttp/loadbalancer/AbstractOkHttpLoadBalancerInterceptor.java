@@ -0,0 +1,306 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycleValidator;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.RetryableRequestContext;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactiveLoadBalancer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.LinkedMultiValueMap;
+
+/**
+ * Base {@link Interceptor} that resolves the serviceId passed as the request host to a
+ * {@link ServiceInstance} and rewrites the request URL accordingly. The
+ * {@link LoadBalancerLifecycle} beans supporting {@link RequestDataContext} and
+ * {@link ResponseData} are notified of the selection of each instance, of the start of
+ * each request and of its completion, including the request and response data and the
+ * request start time, in the same way as for {@code RestTemplate} and {@code WebClient}.
+ * If a {@link LoadBalancerRetryPolicy} is provided, failed requests are retried on a
+ * different instance.
+ *
+ * @author Spencer Gibb
+ * @author Olga Maciaszek-Sharma
+ */
+public abstract class AbstractOkHttpLoadBalancerInterceptor implements Interceptor {
+
+	private static final int MAX_DIFFERENT_INSTANCE_ATTEMPTS = 3;
+
+	private final ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory;
+
+	private final LoadBalancerHashKeyResolver hashKeyResolver;
+
+	private final LoadBalancerRetryPolicy retryPolicy;
+
+	private final Map<String, Set<LoadBalancerLifecycle>> lifecycleProcessors = new ConcurrentHashMap<>();
+
+	private final InstanceUrlTemplates urlTemplates = new InstanceUrlTemplates();
+
+	protected AbstractOkHttpLoadBalancerInterceptor() {
+		this(null);
+	}
+
+	protected AbstractOkHttpLoadBalancerInterceptor(ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory) {
+		this(loadBalancerFactory, null);
+	}
+
+	protected AbstractOkHttpLoadBalancerInterceptor(ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			LoadBalancerHashKeyResolver hashKeyResolver) {
+		this(loadBalancerFactory, hashKeyResolver, null);
+	}
+
+	protected AbstractOkHttpLoadBalancerInterceptor(ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			LoadBalancerHashKeyResolver hashKeyResolver, LoadBalancerRetryPolicy retryPolicy) {
+		this.loadBalancerFactory = loadBalancerFactory;
+		this.hashKeyResolver = hashKeyResolver;
+		this.retryPolicy = retryPolicy;
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		ServiceInstance instance = request.tag(ServiceInstance.class);
+		String serviceId = instance != null ? instance.getServiceId() : request.url().host();
+		if (instance == null) {
+			request = loadBalance(request);
+			instance = request.tag(ServiceInstance.class);
+		}
+		if (retryPolicy == null) {
+			return proceed(chain, request, instance);
+		}
+		retryPolicy.getBudget().deposit();
+		int retries = 0;
+		while (true) {
+			try {
+				Response response = proceed(chain, request, instance);
+				if (!retryPolicy.isRetryable(request, response) || !canRetry(chain, retries)) {
+					return response;
+				}
+				response.close();
+			}
+			catch (IOException e) {
+				if (!retryPolicy.isRetryable(request, e) || !canRetry(chain, retries)) {
+					throw e;
+				}
+			}
+			retries++;
+			request = loadBalance(request, serviceId, instance);
+			instance = request.tag(ServiceInstance.class);
+		}
+	}
+
+	private boolean canRetry(Chain chain, int retries) {
+		return retries < retryPolicy.getMaxRetries() && !chain.call().isCanceled()
+				&& retryPolicy.getBudget().tryWithdraw();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Response proceed(Chain chain, Request request, ServiceInstance instance) throws IOException {
+		Set<LoadBalancerLifecycle> lifecycles = getSupportedLifecycleProcessors(instance.getServiceId());
+		if (lifecycles.isEmpty()) {
+			return chain.proceed(request);
+		}
+		DefaultRequest<RequestDataContext> lbRequest = request.tag(DefaultRequest.class);
+		if (lbRequest == null) {
+			lbRequest = loadBalancerRequest(request, instance.getServiceId(), null);
+		}
+		DefaultResponse lbResponse = new DefaultResponse(instance);
+		lbRequest.getContext().setRequestStartTime(System.nanoTime());
+		for (LoadBalancerLifecycle lifecycle : lifecycles) {
+			lifecycle.onStartRequest(lbRequest, lbResponse);
+		}
+		try {
+			Response response = chain.proceed(request);
+			onComplete(lifecycles, new CompletionContext<>(CompletionContext.Status.SUCCESS, lbRequest, lbResponse,
+					responseData(response, lbRequest.getContext().getClientRequest())));
+			return response;
+		}
+		catch (IOException e) {
+			CompletionContext.Status status = chain.call().isCanceled() ? CompletionContext.Status.DISCARD
+					: CompletionContext.Status.FAILED;
+			onComplete(lifecycles, new CompletionContext<>(status, e, lbRequest, lbResponse));
+			throw e;
+		}
+		catch (RuntimeException e) {
+			onComplete(lifecycles, new CompletionContext<>(CompletionContext.Status.FAILED, e, lbRequest, lbResponse));
+			throw e;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void onComplete(Set<LoadBalancerLifecycle> lifecycles, CompletionContext<?, ?, ?> context) {
+		for (LoadBalancerLifecycle lifecycle : lifecycles) {
+			lifecycle.onComplete(context);
+		}
+	}
+
+	/**
+	 * Selects a {@link ServiceInstance} for the serviceId passed as the request host and
+	 * rewrites the request URL accordingly. The selected instance is added to the
+	 * returned request as a tag, so that requests that have already been load-balanced
+	 * are passed through by the interceptor.
+	 * @param original the request to load-balance
+	 * @return the request with the URL pointing to the selected instance
+	 */
+	public Request loadBalance(Request original) {
+		return loadBalance(original, original.url().host(), null);
+	}
+
+	/**
+	 * Selects a {@link ServiceInstance} different from the provided one, if available,
+	 * and rewrites the request URL accordingly.
+	 * @param request the request to load-balance
+	 * @param previousInstance the instance that should be avoided
+	 * @return the request with the URL pointing to the selected instance
+	 */
+	public Request loadBalance(Request request, ServiceInstance previousInstance) {
+		return loadBalance(request, previousInstance.getServiceId(), previousInstance);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Request loadBalance(Request request, String serviceId, ServiceInstance previousInstance) {
+		Set<LoadBalancerLifecycle> lifecycles = getSupportedLifecycleProcessors(serviceId);
+		DefaultRequest<RequestDataContext> lbRequest = loadBalancerRequest(request, serviceId, previousInstance);
+		for (LoadBalancerLifecycle lifecycle : lifecycles) {
+			lifecycle.onStart(lbRequest);
+		}
+		ServiceInstance service = previousInstance != null ? chooseAnother(serviceId, lbRequest, previousInstance)
+				: choose(serviceId, lbRequest);
+
+		if (service == null) {
+			onComplete(lifecycles,
+					new CompletionContext<>(CompletionContext.Status.DISCARD, lbRequest, new EmptyResponse()));
+			throw new IllegalStateException("No instances available for " + serviceId);
+		}
+
+		return request.newBuilder().url(urlTemplates.rewrite(request.url(), service))
+				.tag(ServiceInstance.class, service).tag(DefaultRequest.class, lbRequest).build();
+	}
+
+	private ServiceInstance chooseAnother(String serviceId, DefaultRequest<RequestDataContext> lbRequest,
+			ServiceInstance previousInstance) {
+		ServiceInstance service = null;
+		for (int i = 0; i < MAX_DIFFERENT_INSTANCE_ATTEMPTS; i++) {
+			service = choose(serviceId, lbRequest);
+			if (service == null || !isSameInstance(service, previousInstance)) {
+				return service;
+			}
+		}
+		return service;
+	}
+
+	private static boolean isSameInstance(ServiceInstance first, ServiceInstance second) {
+		return first.getHost().equals(second.getHost()) && first.getPort() == second.getPort();
+	}
+
+	/**
+	 * Creates the LoadBalancer request passed to the load balancer and the
+	 * {@link LoadBalancerLifecycle} beans. If a {@link LoadBalancerHashKeyResolver} is
+	 * provided, the resolved hash key is added to the request data attributes.
+	 * @param request the original request
+	 * @param serviceId the id of the service the request is sent to
+	 * @param previousInstance the instance of the failed attempt the request is retried
+	 * after or {@code null}
+	 * @return the LoadBalancer request
+	 */
+	protected DefaultRequest<RequestDataContext> loadBalancerRequest(Request request, String serviceId,
+			ServiceInstance previousInstance) {
+		HttpHeaders headers = new HttpHeaders();
+		for (Map.Entry<String, List<String>> entry : request.headers().toMultimap().entrySet()) {
+			headers.put(entry.getKey(), entry.getValue());
+		}
+		Map<String, Object> attributes = new HashMap<>();
+		String hashKey = hashKeyResolver != null ? hashKeyResolver.resolve(request) : null;
+		if (hashKey != null) {
+			attributes.put(LoadBalancerHashKeyResolver.HASH_KEY_ATTRIBUTE, hashKey);
+		}
+		RequestData requestData = new RequestData(HttpMethod.resolve(request.method()), request.url().uri(), headers,
+				new LinkedMultiValueMap<>(), attributes);
+		String hint = getHint(serviceId);
+		if (previousInstance != null) {
+			return new DefaultRequest<>(new RetryableRequestContext(previousInstance, requestData, hint));
+		}
+		return new DefaultRequest<>(new RequestDataContext(requestData, hint));
+	}
+
+	private String getHint(String serviceId) {
+		if (loadBalancerFactory == null) {
+			return "default";
+		}
+		LoadBalancerProperties properties = loadBalancerFactory.getProperties(serviceId);
+		if (properties == null) {
+			return "default";
+		}
+		return properties.getHint().getOrDefault(serviceId, properties.getHint().getOrDefault("default", "default"));
+	}
+
+	private static ResponseData responseData(Response response, RequestData requestData) {
+		HttpHeaders headers = new HttpHeaders();
+		for (Map.Entry<String, List<String>> entry : response.headers().toMultimap().entrySet()) {
+			headers.put(entry.getKey(), entry.getValue());
+		}
+		return new ResponseData(HttpStatus.resolve(response.code()), headers, new LinkedMultiValueMap<>(), requestData);
+	}
+
+	/**
+	 * @param serviceId the id of the service the request is sent to
+	 * @return the {@link LoadBalancerLifecycle} beans of the service supporting the
+	 * OkHttp request and response data; they are resolved once per service
+	 */
+	protected Set<LoadBalancerLifecycle> getSupportedLifecycleProcessors(String serviceId) {
+		if (loadBalancerFactory == null) {
+			return Collections.emptySet();
+		}
+		return lifecycleProcessors.computeIfAbsent(serviceId,
+				id -> LoadBalancerLifecycleValidator.getSupportedLifecycleProcessors(
+						loadBalancerFactory.getInstances(id, LoadBalancerLifecycle.class), RequestDataContext.class,
+						ResponseData.class, ServiceInstance.class));
+	}
+
+	/**
+	 * Selects the {@link ServiceInstance} the request should be sent to.
+	 * @param serviceId the id of the service to select an instance for
+	 * @param lbRequest the LoadBalancer request; it holds a
+	 * {@link RetryableRequestContext} if the request is retried after a failed attempt
+	 * @return the selected instance or {@code null} if no instance is available
+	 */
+	protected abstract ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest);
+
+}
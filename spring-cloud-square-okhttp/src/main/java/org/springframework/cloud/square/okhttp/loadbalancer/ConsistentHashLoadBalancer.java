@@ -0,0 +1,263 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ReactorServiceInstanceLoadBalancer} that routes requests carrying a hash key
+ * (passed as the {@link LoadBalancerHashKeyResolver#HASH_KEY_ATTRIBUTE} request data
+ * attribute) to instances using a consistent-hash ring, so that requests with the same
+ * key keep reaching the same instance while the instance list is stable, and only the
+ * keys of the added or removed instances move when it changes. Each instance is placed on
+ * the ring at a number of virtual node positions. The ring is only updated when the
+ * instance list changes and the positions of the instances that remain on the ring are
+ * reused. Requests without a hash key are routed in a round-robin fashion.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class ConsistentHashLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private static final Log LOG = LogFactory.getLog(ConsistentHashLoadBalancer.class);
+
+	/**
+	 * The default number of ring positions per instance.
+	 */
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+	private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+	private final String serviceId;
+
+	private final int virtualNodes;
+
+	private final AtomicInteger position = new AtomicInteger();
+
+	private volatile Ring ring = Ring.EMPTY;
+
+	public ConsistentHashLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+			String serviceId) {
+		this(serviceInstanceListSupplierProvider, serviceId, DEFAULT_VIRTUAL_NODES);
+	}
+
+	public ConsistentHashLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+			String serviceId, int virtualNodes) {
+		this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+		this.serviceId = serviceId;
+		this.virtualNodes = virtualNodes;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+				.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		String hashKey = hashKey(request);
+		return supplier.get(request).next().map(instances -> processInstanceResponse(supplier, instances, hashKey));
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static String hashKey(Request request) {
+		if (request == null || !(request.getContext() instanceof RequestDataContext)) {
+			return null;
+		}
+		RequestDataContext context = (RequestDataContext) request.getContext();
+		if (context.getClientRequest() == null || context.getClientRequest().getAttributes() == null) {
+			return null;
+		}
+		Object hashKey = context.getClientRequest().getAttributes().get(LoadBalancerHashKeyResolver.HASH_KEY_ATTRIBUTE);
+		return hashKey != null ? hashKey.toString() : null;
+	}
+
+	private Response<ServiceInstance> processInstanceResponse(ServiceInstanceListSupplier supplier,
+			List<ServiceInstance> instances, String hashKey) {
+		Response<ServiceInstance> response = getInstanceResponse(instances, hashKey);
+		if (supplier instanceof SelectedInstanceCallback && response.hasServer()) {
+			((SelectedInstanceCallback) supplier).selectedServiceInstance(response.getServer());
+		}
+		return response;
+	}
+
+	private Response<ServiceInstance> getInstanceResponse(List<ServiceInstance> instances, String hashKey) {
+		if (instances.isEmpty()) {
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("No servers available for service: " + serviceId);
+			}
+			return new EmptyResponse();
+		}
+		if (hashKey == null) {
+			int pos = position.getAndIncrement() & Integer.MAX_VALUE;
+			return new DefaultResponse(instances.get(pos % instances.size()));
+		}
+		return new DefaultResponse(ring(instances).get(hash(hashKey)));
+	}
+
+	private Ring ring(List<ServiceInstance> instances) {
+		Ring current = ring;
+		if (current.matches(instances)) {
+			return current;
+		}
+		synchronized (this) {
+			current = ring;
+			if (!current.matches(instances)) {
+				current = current.update(instances, virtualNodes);
+				ring = current;
+			}
+			return current;
+		}
+	}
+
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static final class Ring {
+
+		static final Ring EMPTY = new Ring(Collections.emptyList(), Collections.emptyMap(), new long[0], new String[0]);
+
+		private final List<ServiceInstance> source;
+
+		private final Map<String, ServiceInstance> instances;
+
+		private final long[] points;
+
+		private final String[] owners;
+
+		private Ring(List<ServiceInstance> source, Map<String, ServiceInstance> instances, long[] points,
+				String[] owners) {
+			this.source = source;
+			this.instances = instances;
+			this.points = points;
+			this.owners = owners;
+		}
+
+		boolean matches(List<ServiceInstance> serviceInstances) {
+			return source == serviceInstances || source.equals(serviceInstances);
+		}
+
+		ServiceInstance get(long hash) {
+			int index = Arrays.binarySearch(points, hash);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			if (index == points.length) {
+				index = 0;
+			}
+			return instances.get(owners[index]);
+		}
+
+		Ring update(List<ServiceInstance> serviceInstances, int virtualNodes) {
+			Map<String, ServiceInstance> updatedInstances = new HashMap<>();
+			for (ServiceInstance instance : serviceInstances) {
+				updatedInstances.put(LoadBalancerStatistics.key(instance), instance);
+			}
+			int retained = 0;
+			for (String owner : owners) {
+				if (updatedInstances.containsKey(owner)) {
+					retained++;
+				}
+			}
+			int added = 0;
+			for (String key : updatedInstances.keySet()) {
+				if (!instances.containsKey(key)) {
+					added++;
+				}
+			}
+			long[] addedPoints = new long[added * virtualNodes];
+			String[] addedOwners = new String[added * virtualNodes];
+			int i = 0;
+			for (String key : updatedInstances.keySet()) {
+				if (!instances.containsKey(key)) {
+					for (int node = 0; node < virtualNodes; node++) {
+						addedPoints[i] = hash(key + "#" + node);
+						addedOwners[i] = key;
+						i++;
+					}
+				}
+			}
+			sort(addedPoints, addedOwners);
+			long[] updatedPoints = new long[retained + addedPoints.length];
+			String[] updatedOwners = new String[updatedPoints.length];
+			int current = 0;
+			int addedIndex = 0;
+			int updatedIndex = 0;
+			while (current < points.length || addedIndex < addedPoints.length) {
+				if (current < points.length && !updatedInstances.containsKey(owners[current])) {
+					current++;
+				}
+				else if (addedIndex == addedPoints.length
+						|| (current < points.length && points[current] <= addedPoints[addedIndex])) {
+					updatedPoints[updatedIndex] = points[current];
+					updatedOwners[updatedIndex++] = owners[current++];
+				}
+				else {
+					updatedPoints[updatedIndex] = addedPoints[addedIndex];
+					updatedOwners[updatedIndex++] = addedOwners[addedIndex++];
+				}
+			}
+			return new Ring(serviceInstances, updatedInstances, updatedPoints, updatedOwners);
+		}
+
+		private static void sort(long[] points, String[] owners) {
+			Integer[] order = new Integer[points.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (first, second) -> Long.compare(points[first], points[second]));
+			long[] sortedPoints = points.clone();
+			String[] sortedOwners = owners.clone();
+			for (int i = 0; i < order.length; i++) {
+				points[i] = sortedPoints[order[i]];
+				owners[i] = sortedOwners[order[i]];
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ServiceInstanceListSupplier} that reports the instances of the service to the
+ * {@link InstanceHealthProber} and filters out the ones whose latest probes have failed.
+ * If all the instances are unhealthy, all of them are returned, so that a failure of the
+ * health endpoint does not leave the service without instances.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class HealthProbingServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private final InstanceHealthProber prober;
+
+	public HealthProbingServiceInstanceListSupplier(ServiceInstanceListSupplier delegate, InstanceHealthProber prober) {
+		super(delegate);
+		this.prober = prober;
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return delegate.get().map(this::healthy);
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return delegate.get(request).map(this::healthy);
+	}
+
+	private List<ServiceInstance> healthy(List<ServiceInstance> serviceInstances) {
+		prober.update(getServiceId(), serviceInstances);
+		List<ServiceInstance> healthy = null;
+		for (int i = 0; i < serviceInstances.size(); i++) {
+			ServiceInstance instance = serviceInstances.get(i);
+			if (!prober.isHealthy(instance)) {
+				if (healthy == null) {
+					healthy = new ArrayList<>(serviceInstances.subList(0, i));
+				}
+			}
+			else if (healthy != null) {
+				healthy.add(instance);
+			}
+		}
+		if (healthy == null || healthy.isEmpty()) {
+			return serviceInstances;
+		}
+		return healthy;
+	}
+
+}
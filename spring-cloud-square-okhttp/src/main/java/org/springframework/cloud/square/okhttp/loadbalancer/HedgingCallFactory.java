@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * A {@link Call.Factory} that hedges the requests selected by the {@link HedgingPolicy}.
+ * The instance for each hedged request is selected up front; if the call has not been
+ * answered within the hedge delay, a second call is sent to a different instance and the
+ * call that is answered first wins, while the other one is cancelled. Calls with a hedge
+ * delay are run asynchronously by the {@link okhttp3.Dispatcher}, including the calls
+ * that are executed synchronously, while synchronously executed calls without one run on
+ * the calling thread. The timeout and deadline set on a hedged call apply to both of its
+ * attempts. When a hedge wins, the time the cancelled call had been running for is
+ * recorded as its latency, which it would have exceeded, so that the hedge delay is not
+ * computed from the fastest responses only.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class HedgingCallFactory implements Call.Factory {
+
+	private final Call.Factory delegate;
+
+	private final AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor;
+
+	private final HedgingPolicy policy;
+
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Creates a new {@link HedgingCallFactory}.
+	 * @param delegate the factory to create the calls with
+	 * @param loadBalancerInterceptor the interceptor used to select the instances
+	 * @param policy the policy deciding which requests are hedged and when
+	 * @param scheduler the scheduler used to send the hedges
+	 */
+	public HedgingCallFactory(Call.Factory delegate, AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor,
+			HedgingPolicy policy, ScheduledExecutorService scheduler) {
+		this.delegate = delegate;
+		this.loadBalancerInterceptor = loadBalancerInterceptor;
+		this.policy = policy;
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public Call newCall(Request request) {
+		if (request.tag(ServiceInstance.class) != null || !policy.shouldHedge(request)) {
+			return delegate.newCall(request);
+		}
+		return new HedgedCall(request);
+	}
+
+	private final class HedgedCall implements Call {
+
+		private final Request original;
+
+		private final Call primary;
+
+		private final ServiceInstance primaryInstance;
+
+		private final AtomicBoolean executed = new AtomicBoolean();
+
+		private Call hedge;
+
+		private ScheduledFuture<?> hedgeTask;
+
+		private long startTime;
+
+		private int running;
+
+		private boolean done;
+
+		private volatile boolean canceled;
+
+		private HedgedCall(Request original) {
+			this.original = original;
+			Request request = loadBalancerInterceptor.loadBalance(original);
+			this.primaryInstance = request.tag(ServiceInstance.class);
+			this.primary = delegate.newCall(request);
+		}
+
+		@Override
+		public Request request() {
+			return original;
+		}
+
+		@Override
+		public Response execute() throws IOException {
+			Duration delay = start();
+			if (delay == null) {
+				// nothing to hedge, so there is no need to hand the call over to the
+				// dispatcher
+				long startTime = System.nanoTime();
+				Response response = primary.execute();
+				policy.recordLatency(original.url().host(), System.nanoTime() - startTime);
+				return response;
+			}
+			CompletableFuture<Response> result = new CompletableFuture<>();
+			enqueue(delay, new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					result.completeExceptionally(e);
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) {
+					result.complete(response);
+				}
+			});
+			try {
+				return result.get();
+			}
+			catch (InterruptedException e) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for " + original.url());
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+		}
+
+		@Override
+		public void enqueue(Callback responseCallback) {
+			enqueue(start(), responseCallback);
+		}
+
+		private Duration start() {
+			if (!executed.compareAndSet(false, true)) {
+				throw new IllegalStateException("Already Executed");
+			}
+			policy.recordRequest();
+			return policy.getHedgeDelay(original.url().host());
+		}
+
+		private void enqueue(Duration delay, Callback responseCallback) {
+			synchronized (this) {
+				startTime = System.nanoTime();
+				running++;
+				if (delay != null) {
+					hedgeTask = scheduler.schedule(() -> sendHedge(responseCallback), delay.toNanos(),
+							TimeUnit.NANOSECONDS);
+				}
+			}
+			primary.enqueue(new AttemptCallback(primary, responseCallback));
+		}
+
+		private void sendHedge(Callback responseCallback) {
+			synchronized (this) {
+				if (done || canceled) {
+					return;
+				}
+			}
+			if (!policy.tryAcquireHedge()) {
+				return;
+			}
+			Call call;
+			try {
+				call = delegate.newCall(loadBalancerInterceptor.loadBalance(original, primaryInstance));
+			}
+			catch (RuntimeException e) {
+				return;
+			}
+			Timeout timeout = primary.timeout();
+			call.timeout().timeout(timeout.timeoutNanos(), TimeUnit.NANOSECONDS);
+			if (timeout.hasDeadline()) {
+				call.timeout().deadlineNanoTime(timeout.deadlineNanoTime());
+			}
+			synchronized (this) {
+				if (done || canceled) {
+					return;
+				}
+				hedge = call;
+				running++;
+			}
+			call.enqueue(new AttemptCallback(call, responseCallback));
+		}
+
+		@Override
+		public void cancel() {
+			canceled = true;
+			Call hedge;
+			synchronized (this) {
+				if (hedgeTask != null) {
+					hedgeTask.cancel(false);
+				}
+				hedge = this.hedge;
+			}
+			primary.cancel();
+			if (hedge != null) {
+				hedge.cancel();
+			}
+		}
+
+		@Override
+		public boolean isExecuted() {
+			return executed.get();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled;
+		}
+
+		@Override
+		public Timeout timeout() {
+			return primary.timeout();
+		}
+
+		@Override
+		public Call clone() {
+			return new HedgedCall(original);
+		}
+
+		private final class AttemptCallback implements Callback {
+
+			private final Call attempt;
+
+			private final Callback responseCallback;
+
+			private final long startTime = System.nanoTime();
+
+			private AttemptCallback(Call attempt, Callback responseCallback) {
+				this.attempt = attempt;
+				this.responseCallback = responseCallback;
+			}
+
+			@Override
+			public void onFailure(Call call, IOException e) {
+				synchronized (HedgedCall.this) {
+					running--;
+					if (done || running > 0) {
+						return;
+					}
+					done = true;
+					if (hedgeTask != null) {
+						hedgeTask.cancel(false);
+					}
+				}
+				responseCallback.onFailure(HedgedCall.this, e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) throws IOException {
+				long now = System.nanoTime();
+				Call other;
+				long primaryStartTime;
+				synchronized (HedgedCall.this) {
+					running--;
+					if (done) {
+						response.close();
+						return;
+					}
+					done = true;
+					if (hedgeTask != null) {
+						hedgeTask.cancel(false);
+					}
+					other = attempt == primary ? hedge : primary;
+					primaryStartTime = HedgedCall.this.startTime;
+				}
+				if (other != null) {
+					other.cancel();
+				}
+				policy.recordLatency(original.url().host(), now - startTime);
+				if (attempt != primary) {
+					// a lower bound of the latency of the slow primary, which never
+					// responds
+					policy.recordLatency(original.url().host(), now - primaryStartTime);
+					policy.recordHedgeWon();
+				}
+				responseCallback.onResponse(HedgedCall.this, response);
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import okhttp3.Call;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Creates {@link HedgingCallFactory} instances sharing a single scheduler for sending the
+ * hedges.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class HedgingCallFactoryProvider implements DisposableBean {
+
+	private final AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor;
+
+	private final HedgingPolicy policy;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	public HedgingCallFactoryProvider(AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor,
+			HedgingPolicy policy) {
+		this.loadBalancerInterceptor = loadBalancerInterceptor;
+		this.policy = policy;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "okhttp-hedging");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// most hedges are cancelled before they are due
+		this.scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * @param delegate the factory creating load-balanced calls
+	 * @return a {@link HedgingCallFactory} that creates calls with the provided factory
+	 */
+	public HedgingCallFactory getCallFactory(Call.Factory delegate) {
+		return new HedgingCallFactory(delegate, loadBalancerInterceptor, policy, scheduler);
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the number of hedges sent, won and rejected by the
+ * budget of the {@link HedgingPolicy} as metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class HedgingMeterBinder implements MeterBinder {
+
+	private final HedgingPolicy policy;
+
+	public HedgingMeterBinder(HedgingPolicy policy) {
+		this.policy = policy;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bind(registry, "sent", HedgingPolicy::getHedges);
+		bind(registry, "won", HedgingPolicy::getHedgeWins);
+		bind(registry, "rejected", HedgingPolicy::getHedgeRejections);
+	}
+
+	private void bind(MeterRegistry registry, String result, ToDoubleFunction<HedgingPolicy> count) {
+		FunctionCounter.builder("loadbalancer.hedges", policy, count).tag("result", result).description(
+				"The number of hedged requests sent, answered before the original requests and rejected by the budget")
+				.register(registry);
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Request;
+
+/**
+ * Decides which requests are hedged and when. A hedged request is sent again to a
+ * different service instance if no response has been received within the configured
+ * percentile of the recent latencies of the service. The response that arrives first is
+ * used and the other request is cancelled. Only idempotent requests to the configured
+ * services or matched by the {@link LoadBalancerHedgedRequestMatcher} are hedged and the
+ * hedges are limited by a {@link RetryBudget}, so that they only add a small fraction of
+ * extra load.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class HedgingPolicy {
+
+	private final OkHttpLoadBalancerProperties.Hedging properties;
+
+	private final LoadBalancerHedgedRequestMatcher matcher;
+
+	private final RetryBudget budget;
+
+	private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+	private final LongAdder hedges = new LongAdder();
+
+	private final LongAdder wins = new LongAdder();
+
+	private final LongAdder rejections = new LongAdder();
+
+	public HedgingPolicy(OkHttpLoadBalancerProperties.Hedging properties) {
+		this(properties, null);
+	}
+
+	public HedgingPolicy(OkHttpLoadBalancerProperties.Hedging properties, LoadBalancerHedgedRequestMatcher matcher) {
+		this.properties = properties;
+		this.matcher = matcher;
+		this.budget = new RetryBudget(properties.getBudgetRatio(), properties.getBudgetCapacity());
+	}
+
+	/**
+	 * @param request the request to be sent
+	 * @return whether the request should be hedged
+	 */
+	public boolean shouldHedge(Request request) {
+		if (!isIdempotent(request.method())) {
+			return false;
+		}
+		return properties.getServiceIds().contains(request.url().host())
+				|| (matcher != null && matcher.matches(request));
+	}
+
+	/**
+	 * @param serviceId the id of the service the request is sent to
+	 * @return the time after which the hedge should be sent or {@code null} if there are
+	 * not enough latency samples yet
+	 */
+	public Duration getHedgeDelay(String serviceId) {
+		long percentile = latencies(serviceId).percentile(properties.getPercentile(), properties.getMinSamples());
+		if (percentile < 0) {
+			return null;
+		}
+		Duration delay = Duration.ofNanos(percentile);
+		return delay.compareTo(properties.getMinDelay()) < 0 ? properties.getMinDelay() : delay;
+	}
+
+	/**
+	 * Records the latency of a hedged request or of its hedge.
+	 * @param serviceId the id of the service the request has been sent to
+	 * @param latencyNanos the time it took to receive the response
+	 */
+	public void recordLatency(String serviceId, long latencyNanos) {
+		latencies(serviceId).record(latencyNanos);
+	}
+
+	/**
+	 * Records a request eligible for hedging, adding to the hedging budget.
+	 */
+	public void recordRequest() {
+		budget.deposit();
+	}
+
+	/**
+	 * Withdraws a hedge from the hedging budget.
+	 * @return whether the hedge should be sent
+	 */
+	public boolean tryAcquireHedge() {
+		if (budget.tryWithdraw()) {
+			hedges.increment();
+			return true;
+		}
+		rejections.increment();
+		return false;
+	}
+
+	/**
+	 * Records that the response to a hedge has arrived before the response to the
+	 * original request.
+	 */
+	public void recordHedgeWon() {
+		wins.increment();
+	}
+
+	public long getHedges() {
+		return hedges.sum();
+	}
+
+	public long getHedgeWins() {
+		return wins.sum();
+	}
+
+	public long getHedgeRejections() {
+		return rejections.sum();
+	}
+
+	private LatencyHistogram latencies(String serviceId) {
+		return latencies.computeIfAbsent(serviceId, id -> new LatencyHistogram(properties.getWindow()));
+	}
+
+	private static boolean isIdempotent(String method) {
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * An {@link InstanceHealthProbe} that sends a {@code GET} request to a path of the
+ * instance and considers it healthy if it responds with a {@code 2xx} status. Since the
+ * request goes through the connection pool of the client, probing also keeps the
+ * connections to the instance warm.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class HttpInstanceHealthProbe implements InstanceHealthProbe {
+
+	private final String path;
+
+	public HttpInstanceHealthProbe(String path) {
+		this.path = path.startsWith("/") ? path : "/" + path;
+	}
+
+	@Override
+	public boolean probe(OkHttpClient client, ServiceInstance instance) throws IOException {
+		HttpUrl url = new HttpUrl.Builder().scheme(instance.isSecure() ? "https" : "http").host(instance.getHost())
+				.port(instance.getPort()).encodedPath(path).build();
+		Request request = new Request.Builder().url(url).tag(ServiceInstance.class, instance).build();
+		try (Response response = client.newCall(request).execute()) {
+			return response.isSuccessful();
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Checks the health of a single service instance for the {@link InstanceHealthProber}.
+ * Register a bean of this type to replace the default {@link HttpInstanceHealthProbe}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@FunctionalInterface
+public interface InstanceHealthProbe {
+
+	/**
+	 * @param client the {@link OkHttpClient} of the client calling the service, without
+	 * the load-balancing interceptor; it shares the connection pool of that client
+	 * @param instance the instance to check
+	 * @return {@code true} if the instance is healthy
+	 * @throws IOException if the instance could not be reached, which counts as a failed
+	 * probe
+	 */
+	boolean probe(OkHttpClient client, ServiceInstance instance) throws IOException;
+
+}
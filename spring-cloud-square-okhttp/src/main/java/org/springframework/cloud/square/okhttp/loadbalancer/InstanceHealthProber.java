@@ -0,0 +1,212 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.square.okhttp.limit.ConcurrencyLimitingInterceptor;
+
+/**
+ * Probes the instances of the registered services in the background with an
+ * {@link InstanceHealthProbe}, using the {@link OkHttpClient} of the client calling each
+ * service, so that the probes go through its connection pool and keep the connections
+ * warm. An instance is considered unhealthy after the configured number of consecutive
+ * failed probes, and healthy again after a successful one; instances that have not been
+ * probed yet are considered healthy. The instances of each service are reported by the
+ * {@link HealthProbingServiceInstanceListSupplier}, which also filters the unhealthy ones
+ * out of selection. The number of probes running at the same time and the rate at which
+ * they are started are bounded.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class InstanceHealthProber implements DisposableBean {
+
+	private static final Log LOG = LogFactory.getLog(InstanceHealthProber.class);
+
+	private final InstanceHealthProbe probe;
+
+	private final OkHttpLoadBalancerProperties.HealthProbe properties;
+
+	private final long probeSpacingNanos;
+
+	private final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+	private final Map<String, List<ServiceInstance>> instances = new ConcurrentHashMap<>();
+
+	private final Map<String, InstanceHealth> health = new ConcurrentHashMap<>();
+
+	private final Semaphore permits;
+
+	private final ExecutorService probeExecutor;
+
+	private final ScheduledExecutorService scheduler;
+
+	public InstanceHealthProber(InstanceHealthProbe probe, OkHttpLoadBalancerProperties.HealthProbe properties) {
+		this.probe = probe;
+		this.properties = properties;
+		this.probeSpacingNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(properties.getMaxProbesPerSecond(), 1);
+		int maxConcurrency = Math.max(properties.getMaxConcurrency(), 1);
+		this.permits = new Semaphore(maxConcurrency);
+		AtomicInteger threads = new AtomicInteger();
+		this.probeExecutor = Executors.newFixedThreadPool(maxConcurrency,
+				runnable -> daemon(runnable, "okhttp-health-probe-" + threads.incrementAndGet()));
+		this.scheduler = Executors
+				.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "okhttp-health-prober"));
+		long interval = properties.getInterval().toNanos();
+		this.scheduler.scheduleWithFixedDelay(this::probeSafely, interval, interval, TimeUnit.NANOSECONDS);
+	}
+
+	private static Thread daemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Starts probing the instances of the service with the provided client.
+	 * @param serviceId the id of the service to probe
+	 * @param client the client calling the service; its load-balancing and
+	 * concurrency-limiting interceptors are left out of the probes
+	 */
+	public void register(String serviceId, OkHttpClient client) {
+		OkHttpClient.Builder builder = client.newBuilder();
+		builder.interceptors().removeIf(AbstractOkHttpLoadBalancerInterceptor.class::isInstance);
+		builder.interceptors().removeIf(ConcurrencyLimitingInterceptor.class::isInstance);
+		clients.putIfAbsent(serviceId, builder.callTimeout(properties.getTimeout()).build());
+	}
+
+	/**
+	 * Updates the instances to probe for the service.
+	 * @param serviceId the id of the service
+	 * @param serviceInstances all the instances of the service, including the unhealthy
+	 * ones
+	 */
+	public void update(String serviceId, List<ServiceInstance> serviceInstances) {
+		if (clients.containsKey(serviceId)) {
+			instances.put(serviceId, serviceInstances);
+		}
+	}
+
+	/**
+	 * @param instance a service instance
+	 * @return {@code false} if the latest probes of the instance have failed
+	 */
+	public boolean isHealthy(ServiceInstance instance) {
+		InstanceHealth instanceHealth = health.get(LoadBalancerStatistics.key(instance));
+		return instanceHealth == null || instanceHealth.healthy;
+	}
+
+	private void probeSafely() {
+		try {
+			probeAll();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (RuntimeException e) {
+			LOG.warn("Probing service instances failed", e);
+		}
+	}
+
+	/**
+	 * Runs a single probing round, waiting for the rate and concurrency limits, but not
+	 * for the probes to complete.
+	 */
+	void probeAll() throws InterruptedException {
+		Set<String> probed = new HashSet<>();
+		long nextStart = System.nanoTime();
+		for (Map.Entry<String, List<ServiceInstance>> entry : instances.entrySet()) {
+			OkHttpClient client = clients.get(entry.getKey());
+			for (ServiceInstance instance : new ArrayList<>(entry.getValue())) {
+				String key = LoadBalancerStatistics.key(instance);
+				if (!probed.add(key)) {
+					continue;
+				}
+				long wait = nextStart - System.nanoTime();
+				if (wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+				permits.acquire();
+				nextStart = System.nanoTime() + probeSpacingNanos;
+				InstanceHealth instanceHealth = health.computeIfAbsent(key, k -> new InstanceHealth());
+				probeExecutor.execute(() -> probe(client, instance, instanceHealth));
+			}
+		}
+		health.keySet().retainAll(probed);
+	}
+
+	private void probe(OkHttpClient client, ServiceInstance instance, InstanceHealth instanceHealth) {
+		try {
+			boolean healthy;
+			try {
+				healthy = probe.probe(client, instance);
+			}
+			catch (Exception e) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Probe of " + instance.getUri() + " failed", e);
+				}
+				healthy = false;
+			}
+			instanceHealth.record(healthy, properties.getFailureThreshold());
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+		probeExecutor.shutdownNow();
+	}
+
+	private static final class InstanceHealth {
+
+		private int consecutiveFailures;
+
+		private volatile boolean healthy = true;
+
+		synchronized void record(boolean success, int failureThreshold) {
+			if (success) {
+				consecutiveFailures = 0;
+				healthy = true;
+			}
+			else if (++consecutiveFailures >= failureThreshold) {
+				healthy = false;
+			}
+		}
+
+	}
+
+}
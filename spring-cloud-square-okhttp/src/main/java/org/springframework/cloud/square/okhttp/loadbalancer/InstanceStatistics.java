@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime statistics of a single service instance, recorded by the load-balancing
+ * interceptor and used by the statistics-aware load balancers. The counters are striped,
+ * so recording a request does not contend with concurrent requests to the same instance.
+ * The response time is tracked as a peak-sensitive exponentially weighted moving average:
+ * a sample higher than the current average replaces it, while lower samples are blended
+ * in with a weight that depends on the time elapsed since the previous sample. The
+ * average also decays while no samples are recorded, so that an instance that is not
+ * selected because of a latency peak is eventually tried again. Consecutive failures are
+ * counted as well; once they reach the configured threshold, the instance is ejected from
+ * selection for a time that doubles with each subsequent ejection, up to the configured
+ * maximum. Only the response times of successful requests are sampled.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class InstanceStatistics {
+
+	private final LongAdder activeRequests = new LongAdder();
+
+	private final double decayTimeNanos;
+
+	private final AtomicLong latencyEwmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+	private final AtomicLong lastSampleTime = new AtomicLong(System.nanoTime());
+
+	private final AtomicLong lastRequestTime = new AtomicLong(System.nanoTime());
+
+	private final OkHttpLoadBalancerProperties.OutlierEjection outlierEjection;
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	private final AtomicLong ejectedUntil = new AtomicLong(System.nanoTime());
+
+	private final AtomicInteger consecutiveEjections = new AtomicInteger();
+
+	private final LongAdder ejections = new LongAdder();
+
+	public InstanceStatistics() {
+		this(LoadBalancerStatistics.DEFAULT_DECAY_TIME);
+	}
+
+	public InstanceStatistics(Duration decayTime) {
+		this(decayTime, new OkHttpLoadBalancerProperties.OutlierEjection());
+	}
+
+	public InstanceStatistics(Duration decayTime, OkHttpLoadBalancerProperties.OutlierEjection outlierEjection) {
+		this.decayTimeNanos = decayTime.toNanos();
+		this.outlierEjection = outlierEjection;
+	}
+
+	/**
+	 * Records the start of a request sent to the instance.
+	 */
+	public void requestStarted() {
+		activeRequests.increment();
+	}
+
+	/**
+	 * Records the end of a request sent to the instance, regardless of its outcome.
+	 */
+	public void requestFinished() {
+		activeRequests.decrement();
+		lastRequestTime.lazySet(System.nanoTime());
+	}
+
+	/**
+	 * Records a successful request, resetting the consecutive failures count.
+	 */
+	public void recordSuccess() {
+		if (consecutiveFailures.get() != 0) {
+			consecutiveFailures.set(0);
+		}
+	}
+
+	/**
+	 * Records a failed request (a connection failure, a timeout or a 5xx response). If
+	 * the number of consecutive failures reaches the threshold, the instance is ejected.
+	 */
+	public void recordFailure() {
+		int threshold = outlierEjection.getConsecutiveFailures();
+		if (consecutiveFailures.incrementAndGet() < threshold || threshold < 1) {
+			return;
+		}
+		long now = System.nanoTime();
+		long currentEjectedUntil = ejectedUntil.get();
+		if (now - currentEjectedUntil < 0) {
+			return;
+		}
+		long maxEjectionNanos = outlierEjection.getMaxEjectionTime().toNanos();
+		if (now - currentEjectedUntil > maxEjectionNanos) {
+			consecutiveEjections.set(0);
+		}
+		long ejectionNanos = outlierEjection.getBaseEjectionTime().toNanos();
+		for (int i = consecutiveEjections.get(); i > 0 && ejectionNanos < maxEjectionNanos; i--) {
+			ejectionNanos <<= 1;
+		}
+		ejectionNanos = Math.min(ejectionNanos, maxEjectionNanos);
+		if (ejectedUntil.compareAndSet(currentEjectedUntil, now + ejectionNanos)) {
+			consecutiveEjections.incrementAndGet();
+			consecutiveFailures.set(0);
+			ejections.increment();
+		}
+	}
+
+	/**
+	 * Records the response time of a successful request. The response times of failed
+	 * requests should not be recorded, as an instance that fails fast would otherwise be
+	 * considered the fastest one.
+	 * @param durationNanos the duration of the request in nanoseconds
+	 */
+	public void recordLatency(long durationNanos) {
+		long now = System.nanoTime();
+		double weight = decayWeight(now - lastSampleTime.getAndSet(now));
+		long currentBits;
+		long updatedBits;
+		do {
+			currentBits = latencyEwmaBits.get();
+			double current = Double.longBitsToDouble(currentBits);
+			double updated = durationNanos > current ? durationNanos : current * weight + durationNanos * (1 - weight);
+			updatedBits = Double.doubleToRawLongBits(updated);
+		}
+		while (!latencyEwmaBits.compareAndSet(currentBits, updatedBits));
+	}
+
+	private double decayWeight(long elapsedNanos) {
+		return Math.exp(-Math.max(elapsedNanos, 0) / decayTimeNanos);
+	}
+
+	/**
+	 * @return the number of requests to the instance that have been started but have not
+	 * finished yet
+	 */
+	public long getActiveRequests() {
+		return activeRequests.sum();
+	}
+
+	/**
+	 * @return the peak-sensitive moving average of the response time in nanoseconds,
+	 * decayed by the time elapsed since the last sample, or {@code 0} if no requests have
+	 * finished yet
+	 */
+	public double getLatencyEwma() {
+		double latencyEwma = Double.longBitsToDouble(latencyEwmaBits.get());
+		return latencyEwma * decayWeight(System.nanoTime() - lastSampleTime.get());
+	}
+
+	/**
+	 * @return the number of consecutive failed requests to the instance
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures.get();
+	}
+
+	/**
+	 * @return whether the instance is currently ejected from selection
+	 */
+	public boolean isEjected() {
+		return System.nanoTime() - ejectedUntil.get() < 0;
+	}
+
+	boolean isExpired(long now, long expireAfterNanos) {
+		return now - lastRequestTime.get() > expireAfterNanos && getActiveRequests() == 0 && !isEjected();
+	}
+
+	/**
+	 * @return the total number of times the instance has been ejected
+	 */
+	public long getEjections() {
+		return ejections.sum();
+	}
+
+}
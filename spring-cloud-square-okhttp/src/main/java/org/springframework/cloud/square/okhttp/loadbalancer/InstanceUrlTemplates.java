@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.HttpUrl;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Rewrites request URLs to point to the selected {@link ServiceInstance}. A template URL
+ * holding the scheme, host and port of each instance is created once, so that the host
+ * does not have to be validated and canonicalized again for each request; only the path,
+ * query and fragment of the original URL are copied to the template.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+final class InstanceUrlTemplates {
+
+	private static final int MAX_TEMPLATES = 4096;
+
+	private final Map<Address, HttpUrl> templates = new ConcurrentHashMap<>();
+
+	HttpUrl rewrite(HttpUrl url, ServiceInstance instance) {
+		HttpUrl.Builder builder = template(instance).newBuilder();
+		if (!url.encodedUsername().isEmpty()) {
+			builder.encodedUsername(url.encodedUsername()).encodedPassword(url.encodedPassword());
+		}
+		return builder.encodedPath(url.encodedPath()).encodedQuery(url.encodedQuery())
+				.encodedFragment(url.encodedFragment()).build();
+	}
+
+	private HttpUrl template(ServiceInstance instance) {
+		Address address = new Address(instance.getHost(), instance.getPort(), instance.isSecure());
+		HttpUrl template = templates.get(address);
+		if (template == null) {
+			if (templates.size() >= MAX_TEMPLATES) {
+				// instances come and go, drop the templates of the ones that are gone
+				templates.clear();
+			}
+			template = new HttpUrl.Builder().scheme(address.secure ? "https" : "http").host(address.host)
+					.port(address.port).build();
+			templates.put(address, template);
+		}
+		return template;
+	}
+
+	private static final class Address {
+
+		private final String host;
+
+		private final int port;
+
+		private final boolean secure;
+
+		private Address(String host, int port, boolean secure) {
+			this.host = host;
+			this.port = port;
+			this.secure = secure;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Address)) {
+				return false;
+			}
+			Address that = (Address) o;
+			return port == that.port && secure == that.secure && host.equals(that.host);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * host.hashCode() + port) + (secure ? 1 : 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of recent latencies used to compute latency percentiles. The
+ * values are counted in logarithmic buckets, each power of two split into four
+ * sub-buckets, so that the percentiles are accurate to within 25%. The samples of the
+ * current and the previous time window are taken into account.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+
+	private final long windowNanos;
+
+	private final AtomicLong windowStart;
+
+	private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+
+	private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+
+	LatencyHistogram(Duration window) {
+		this.windowNanos = window.toNanos();
+		this.windowStart = new AtomicLong(System.nanoTime());
+	}
+
+	void record(long latencyNanos) {
+		rotate();
+		current.incrementAndGet(index(Math.max(latencyNanos, 0)));
+	}
+
+	/**
+	 * @param percentile the percentile, between {@code 0} and {@code 100}
+	 * @param minSamples the minimum number of samples required
+	 * @return the latency in nanoseconds below which the given percentile of the samples
+	 * fall or {@code -1} if there are fewer samples than required
+	 */
+	long percentile(double percentile, long minSamples) {
+		rotate();
+		AtomicLongArray current = this.current;
+		AtomicLongArray previous = this.previous;
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += current.get(i) + previous.get(i);
+		}
+		if (total == 0 || total < minSamples) {
+			return -1;
+		}
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += current.get(i) + previous.get(i);
+			if (count >= target) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	private void rotate() {
+		long now = System.nanoTime();
+		long start = windowStart.get();
+		long elapsed = now - start;
+		if (elapsed < windowNanos || !windowStart.compareAndSet(start, now)) {
+			return;
+		}
+		previous = elapsed < 2 * windowNanos ? current : new AtomicLongArray(BUCKETS);
+		current = new AtomicLongArray(BUCKETS);
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ReactorServiceInstanceLoadBalancer} that selects the instance with the fewest
+ * outstanding requests, as recorded in {@link LoadBalancerStatistics} by the OkHttp
+ * load-balancing interceptor. Ties are broken by starting the scan at a random position,
+ * so that idle instances share the traffic evenly. The number of outstanding requests of
+ * an instance warming up in a {@link SlowStartServiceInstanceListSupplier} is weighted by
+ * its slow-start weight.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LeastOutstandingRequestsLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private static final Log LOG = LogFactory.getLog(LeastOutstandingRequestsLoadBalancer.class);
+
+	private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+	private final String serviceId;
+
+	private final LoadBalancerStatistics statistics;
+
+	public LeastOutstandingRequestsLoadBalancer(
+			ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider, String serviceId,
+			LoadBalancerStatistics statistics) {
+		this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+		this.serviceId = serviceId;
+		this.statistics = statistics;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+				.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		SlowStartServiceInstanceListSupplier slowStart = SlowStartServiceInstanceListSupplier.find(supplier);
+		if (slowStart != null) {
+			slowStart.weightByLoadBalancer();
+		}
+		return supplier.get(request).next().map(instances -> processInstanceResponse(supplier, slowStart, instances));
+	}
+
+	private Response<ServiceInstance> processInstanceResponse(ServiceInstanceListSupplier supplier,
+			SlowStartServiceInstanceListSupplier slowStart, List<ServiceInstance> instances) {
+		Response<ServiceInstance> response = getInstanceResponse(slowStart, instances);
+		if (supplier instanceof SelectedInstanceCallback && response.hasServer()) {
+			((SelectedInstanceCallback) supplier).selectedServiceInstance(response.getServer());
+		}
+		return response;
+	}
+
+	private Response<ServiceInstance> getInstanceResponse(SlowStartServiceInstanceListSupplier slowStart,
+			List<ServiceInstance> instances) {
+		if (instances.isEmpty()) {
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("No servers available for service: " + serviceId);
+			}
+			return new EmptyResponse();
+		}
+		int size = instances.size();
+		int start = ThreadLocalRandom.current().nextInt(size);
+		ServiceInstance selected = null;
+		double lowestCost = Double.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			ServiceInstance instance = instances.get((start + i) % size);
+			double cost = statistics.getActiveRequests(instance) + 1;
+			if (slowStart != null) {
+				cost /= slowStart.getWeight(instance);
+			}
+			if (cost < lowestCost) {
+				selected = instance;
+				lowestCost = cost;
+				if (cost == 1) {
+					// an idle instance that is not warming up
+					break;
+				}
+			}
+		}
+		return new DefaultResponse(selected);
+	}
+
+}
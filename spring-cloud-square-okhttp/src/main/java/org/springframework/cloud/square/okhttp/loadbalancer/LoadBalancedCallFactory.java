@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * A {@link Call.Factory} that selects the service instance before the call is created, so
+ * that the call is queued by the OkHttp {@link okhttp3.Dispatcher} against the host of
+ * the selected instance instead of the serviceId. As a result, the
+ * {@link okhttp3.Dispatcher#getMaxRequestsPerHost()} limit applies to each service
+ * instance. Optionally, the number of asynchronous calls running against a single service
+ * can be limited as well; calls above that limit wait in a per-service queue until one of
+ * the running calls completes.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadBalancedCallFactory implements Call.Factory {
+
+	private final OkHttpClient client;
+
+	private final AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor;
+
+	private final int maxRequestsPerService;
+
+	private final Map<String, ServiceCallQueue> queues = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new {@link LoadBalancedCallFactory}.
+	 * @param client the client to create the calls with
+	 * @param loadBalancerInterceptor the interceptor used to select the instances
+	 * @param maxRequestsPerService the maximum number of asynchronous calls running
+	 * against a single service; values lower than {@code 1} disable the limit
+	 */
+	public LoadBalancedCallFactory(OkHttpClient client, AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor,
+			int maxRequestsPerService) {
+		this.client = client;
+		this.loadBalancerInterceptor = loadBalancerInterceptor;
+		this.maxRequestsPerService = maxRequestsPerService;
+	}
+
+	public OkHttpClient getClient() {
+		return client;
+	}
+
+	@Override
+	public Call newCall(Request request) {
+		ServiceInstance instance = request.tag(ServiceInstance.class);
+		String serviceId = instance != null ? instance.getServiceId() : request.url().host();
+		Call call = client.newCall(instance != null ? request : loadBalancerInterceptor.loadBalance(request));
+		if (maxRequestsPerService < 1) {
+			return call;
+		}
+		return new ServiceLimitedCall(call, queues.computeIfAbsent(serviceId, id -> new ServiceCallQueue()));
+	}
+
+	private final class ServiceCallQueue {
+
+		private final Deque<Runnable> readyCalls = new ArrayDeque<>();
+
+		private int runningCalls;
+
+		void enqueue(Runnable call) {
+			synchronized (this) {
+				if (runningCalls >= maxRequestsPerService) {
+					readyCalls.add(call);
+					return;
+				}
+				runningCalls++;
+			}
+			call.run();
+		}
+
+		void finished() {
+			Runnable next;
+			synchronized (this) {
+				next = readyCalls.poll();
+				if (next == null) {
+					runningCalls--;
+				}
+			}
+			if (next != null) {
+				next.run();
+			}
+		}
+
+	}
+
+	private static final class ServiceLimitedCall implements Call {
+
+		private final Call delegate;
+
+		private final ServiceCallQueue queue;
+
+		private final AtomicBoolean executed = new AtomicBoolean();
+
+		private ServiceLimitedCall(Call delegate, ServiceCallQueue queue) {
+			this.delegate = delegate;
+			this.queue = queue;
+		}
+
+		@Override
+		public Request request() {
+			return delegate.request();
+		}
+
+		@Override
+		public Response execute() throws IOException {
+			markExecuted();
+			return delegate.execute();
+		}
+
+		@Override
+		public void enqueue(Callback responseCallback) {
+			markExecuted();
+			queue.enqueue(() -> delegate.enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					try {
+						responseCallback.onFailure(ServiceLimitedCall.this, e);
+					}
+					finally {
+						queue.finished();
+					}
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) throws IOException {
+					try {
+						responseCallback.onResponse(ServiceLimitedCall.this, response);
+					}
+					finally {
+						queue.finished();
+					}
+				}
+			}));
+		}
+
+		private void markExecuted() {
+			if (!executed.compareAndSet(false, true)) {
+				throw new IllegalStateException("Already Executed");
+			}
+		}
+
+		@Override
+		public void cancel() {
+			delegate.cancel();
+		}
+
+		@Override
+		public boolean isExecuted() {
+			return executed.get();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return delegate.isCanceled();
+		}
+
+		@Override
+		public Timeout timeout() {
+			return delegate.timeout();
+		}
+
+		@Override
+		public Call clone() {
+			return new ServiceLimitedCall(delegate.clone(), queue);
+		}
+
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Creates {@link LoadBalancedCallFactory} instances for load-balanced {@link OkHttpClient
+ * OkHttpClients}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadBalancedCallFactoryProvider {
+
+	private final AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor;
+
+	private final OkHttpLoadBalancerProperties.CallFactory properties;
+
+	public LoadBalancedCallFactoryProvider(AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor,
+			OkHttpLoadBalancerProperties.CallFactory properties) {
+		this.loadBalancerInterceptor = loadBalancerInterceptor;
+		this.properties = properties;
+	}
+
+	/**
+	 * Creates a {@link LoadBalancedCallFactory} for the provided client. If
+	 * {@code max-requests-per-instance} has been set, the calls are created with a client
+	 * derived from the provided one, with a {@link Dispatcher} of its own that applies it
+	 * as the per-host limit, so that the dispatcher of the provided client, which other
+	 * clients may share, is left untouched. The derived dispatcher runs the calls with
+	 * the executor of the original one.
+	 * @param client a load-balanced client
+	 * @return a {@link LoadBalancedCallFactory} that creates calls with the client
+	 * @see LoadBalancedCallFactory#getClient()
+	 */
+	public LoadBalancedCallFactory getCallFactory(OkHttpClient client) {
+		Integer maxRequestsPerInstance = properties.getMaxRequestsPerInstance();
+		if (maxRequestsPerInstance != null) {
+			Dispatcher shared = client.dispatcher();
+			Dispatcher dispatcher = new Dispatcher(shared.executorService());
+			dispatcher.setMaxRequests(shared.getMaxRequests());
+			dispatcher.setMaxRequestsPerHost(maxRequestsPerInstance);
+			client = client.newBuilder().dispatcher(dispatcher).build();
+		}
+		return new LoadBalancedCallFactory(client, loadBalancerInterceptor, properties.getMaxRequestsPerService());
+	}
+
+}
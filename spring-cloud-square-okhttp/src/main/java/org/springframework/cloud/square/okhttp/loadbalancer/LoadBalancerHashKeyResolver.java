@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import okhttp3.Request;
+
+/**
+ * Resolves the key used by the {@link ConsistentHashLoadBalancer} to route a request. The
+ * resolved key is passed to the load balancer as the {@link #HASH_KEY_ATTRIBUTE}
+ * attribute of the request data.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@FunctionalInterface
+public interface LoadBalancerHashKeyResolver {
+
+	/**
+	 * The name of the load-balancer request data attribute holding the hash key.
+	 */
+	String HASH_KEY_ATTRIBUTE = "org.springframework.cloud.square.okhttp.loadbalancer.hashKey";
+
+	/**
+	 * @param request the request to be load-balanced
+	 * @return the hash key of the request or {@code null} if the request should not be
+	 * routed by key
+	 */
+	String resolve(Request request);
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import okhttp3.Request;
+
+/**
+ * Decides whether a request should be hedged by the {@link HedgingPolicy}, in addition to
+ * the services listed in the hedging configuration. Only idempotent requests are ever
+ * hedged, regardless of the result of the matcher.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@FunctionalInterface
+public interface LoadBalancerHedgedRequestMatcher {
+
+	/**
+	 * @param request the request to be sent
+	 * @return whether the request should be hedged
+	 */
+	boolean matches(Request request);
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Set;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Decides whether a load-balanced OkHttp request should be retried on a different service
+ * instance. Connection failures (refused or timed out connections, as well as unreachable
+ * or unknown hosts) are retried for all requests, while the configured status codes are
+ * only retried for idempotent methods. All retries are limited by a shared
+ * {@link RetryBudget}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadBalancerRetryPolicy {
+
+	private final int maxRetries;
+
+	private final Set<Integer> retryableStatusCodes;
+
+	private final RetryBudget budget;
+
+	public LoadBalancerRetryPolicy(int maxRetries, Set<Integer> retryableStatusCodes, RetryBudget budget) {
+		this.maxRetries = maxRetries;
+		this.retryableStatusCodes = retryableStatusCodes;
+		this.budget = budget;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public RetryBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @param request the failed request
+	 * @param exception the failure
+	 * @return whether the request can be retried on another instance
+	 */
+	public boolean isRetryable(Request request, IOException exception) {
+		return canResend(request) && isConnectFailure(exception);
+	}
+
+	/**
+	 * @param request the request
+	 * @param response the response received
+	 * @return whether the request can be retried on another instance
+	 */
+	public boolean isRetryable(Request request, Response response) {
+		return retryableStatusCodes.contains(response.code()) && isIdempotent(request.method()) && canResend(request);
+	}
+
+	private static boolean isConnectFailure(IOException exception) {
+		Throwable cause = exception;
+		while (cause != null) {
+			if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+					|| cause instanceof UnknownHostException) {
+				return true;
+			}
+			if (cause instanceof SocketTimeoutException && isThrownByConnect(cause)) {
+				return true;
+			}
+			cause = cause.getCause() != cause ? cause.getCause() : null;
+		}
+		return false;
+	}
+
+	private static boolean isThrownByConnect(Throwable exception) {
+		// connect timeouts are not reported with a dedicated exception type
+		for (StackTraceElement element : exception.getStackTrace()) {
+			if ("connect".equals(element.getMethodName()) && "java.net.Socket".equals(element.getClassName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean canResend(Request request) {
+		return request.body() == null || !request.body().isOneShot();
+	}
+
+	private static boolean isIdempotent(String method) {
+		switch (method) {
+		case "GET":
+		case "HEAD":
+		case "OPTIONS":
+		case "TRACE":
+		case "PUT":
+		case "DELETE":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Registry of {@link InstanceStatistics}, shared by the load-balancing interceptor that
+ * records the requests and the load balancers that select instances based on them.
+ * Instances are identified by their serviceId, host and port, so that the statistics are
+ * kept across instance list refreshes. The statistics are also cached by the instance
+ * itself, so that looking them up for an instance that has been seen before does not
+ * require building its key. The statistics of an instance that has not been sent any
+ * requests for the configured expiry time, and is not ejected, are discarded, so that the
+ * instances removed from the service instance lists do not accumulate.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadBalancerStatistics {
+
+	static final Duration DEFAULT_DECAY_TIME = Duration.ofSeconds(10);
+
+	static final Duration DEFAULT_EXPIRE_AFTER = Duration.ofMinutes(1);
+
+	private final Map<String, InstanceStatistics> statistics = new ConcurrentHashMap<>();
+
+	private final Map<ServiceInstance, InstanceStatistics> statisticsByInstance = new ConcurrentHashMap<>();
+
+	private final List<BiConsumer<ServiceInstance, InstanceStatistics>> listeners = new CopyOnWriteArrayList<>();
+
+	private final List<BiConsumer<ServiceInstance, InstanceStatistics>> removalListeners = new CopyOnWriteArrayList<>();
+
+	private final Map<String, ServiceInstance> instances = new ConcurrentHashMap<>();
+
+	private final Duration decayTime;
+
+	private final OkHttpLoadBalancerProperties.OutlierEjection outlierEjection;
+
+	private final long expireAfterNanos;
+
+	private final AtomicLong nextExpiryCheck = new AtomicLong(System.nanoTime());
+
+	public LoadBalancerStatistics() {
+		this(DEFAULT_DECAY_TIME);
+	}
+
+	/**
+	 * Creates a new {@link LoadBalancerStatistics}.
+	 * @param decayTime the time window over which the response time samples of an
+	 * instance are averaged
+	 */
+	public LoadBalancerStatistics(Duration decayTime) {
+		this(decayTime, new OkHttpLoadBalancerProperties.OutlierEjection());
+	}
+
+	/**
+	 * Creates a new {@link LoadBalancerStatistics}.
+	 * @param decayTime the time window over which the response time samples of an
+	 * instance are averaged
+	 * @param outlierEjection the settings used to eject failing instances
+	 */
+	public LoadBalancerStatistics(Duration decayTime, OkHttpLoadBalancerProperties.OutlierEjection outlierEjection) {
+		this(decayTime, outlierEjection, DEFAULT_EXPIRE_AFTER);
+	}
+
+	/**
+	 * Creates a new {@link LoadBalancerStatistics}.
+	 * @param decayTime the time window over which the response time samples of an
+	 * instance are averaged
+	 * @param outlierEjection the settings used to eject failing instances
+	 * @param expireAfter the time after which the statistics of an instance that has not
+	 * been sent any requests, and is not ejected, are discarded
+	 */
+	public LoadBalancerStatistics(Duration decayTime, OkHttpLoadBalancerProperties.OutlierEjection outlierEjection,
+			Duration expireAfter) {
+		this.decayTime = decayTime;
+		this.outlierEjection = outlierEjection;
+		this.expireAfterNanos = expireAfter.toNanos();
+	}
+
+	/**
+	 * Returns the statistics of the given instance, creating them if necessary.
+	 * @param instance the service instance
+	 * @return the statistics of the instance
+	 */
+	public InstanceStatistics get(ServiceInstance instance) {
+		removeExpiredIfDue();
+		InstanceStatistics instanceStatistics = statisticsByInstance.get(instance);
+		if (instanceStatistics != null) {
+			return instanceStatistics;
+		}
+		String key = key(instance);
+		instanceStatistics = statistics.get(key);
+		if (instanceStatistics == null) {
+			InstanceStatistics created = new InstanceStatistics(decayTime, outlierEjection);
+			instanceStatistics = statistics.putIfAbsent(key, created);
+			if (instanceStatistics == null) {
+				cache(key, instance, created);
+				listeners.forEach(listener -> listener.accept(instance, created));
+				return created;
+			}
+		}
+		cache(key, instance, instanceStatistics);
+		return instanceStatistics;
+	}
+
+	private void cache(String key, ServiceInstance instance, InstanceStatistics instanceStatistics) {
+		// only the latest instance object is cached, so that refreshed instance lists
+		// do not accumulate in the cache
+		ServiceInstance previous = instances.put(key, instance);
+		if (previous != null && previous != instance) {
+			statisticsByInstance.remove(previous);
+		}
+		statisticsByInstance.put(instance, instanceStatistics);
+	}
+
+	private void removeExpiredIfDue() {
+		long now = System.nanoTime();
+		long nextCheck = nextExpiryCheck.get();
+		if (now - nextCheck >= 0 && nextExpiryCheck.compareAndSet(nextCheck, now + expireAfterNanos)) {
+			removeExpired(now);
+		}
+	}
+
+	void removeExpired(long now) {
+		statistics.forEach((key, instanceStatistics) -> {
+			if (!instanceStatistics.isExpired(now, expireAfterNanos) || !statistics.remove(key, instanceStatistics)) {
+				return;
+			}
+			ServiceInstance instance = instances.remove(key);
+			if (instance != null) {
+				statisticsByInstance.remove(instance);
+			}
+			if (instanceStatistics.getActiveRequests() != 0
+					&& statistics.putIfAbsent(key, instanceStatistics) == null) {
+				// a request has been started in the meantime
+				if (instance != null) {
+					cache(key, instance, instanceStatistics);
+				}
+				return;
+			}
+			if (instance != null) {
+				removalListeners.forEach(listener -> listener.accept(instance, instanceStatistics));
+			}
+		});
+	}
+
+	/**
+	 * Registers a listener notified about the statistics of all the instances, including
+	 * the ones created before the registration.
+	 * @param listener the listener accepting the service instance and its statistics
+	 */
+	public void addListener(BiConsumer<ServiceInstance, InstanceStatistics> listener) {
+		listeners.add(listener);
+		instances.forEach((key, instance) -> {
+			InstanceStatistics instanceStatistics = statistics.get(key);
+			if (instanceStatistics != null) {
+				listener.accept(instance, instanceStatistics);
+			}
+		});
+	}
+
+	/**
+	 * Registers a listener notified about the statistics of the instances that are
+	 * discarded because they have expired.
+	 * @param listener the listener accepting the service instance and its statistics
+	 */
+	public void addRemovalListener(BiConsumer<ServiceInstance, InstanceStatistics> listener) {
+		removalListeners.add(listener);
+	}
+
+	/**
+	 * Returns the statistics of the given instance, if any requests have been recorded
+	 * for it.
+	 * @param instance the service instance
+	 * @return the statistics of the instance or {@code null}
+	 */
+	public InstanceStatistics find(ServiceInstance instance) {
+		InstanceStatistics instanceStatistics = statisticsByInstance.get(instance);
+		if (instanceStatistics != null) {
+			return instanceStatistics;
+		}
+		String key = key(instance);
+		instanceStatistics = statistics.get(key);
+		if (instanceStatistics != null) {
+			cache(key, instance, instanceStatistics);
+		}
+		return instanceStatistics;
+	}
+
+	/**
+	 * @param instance the service instance
+	 * @return the number of requests to the instance that have not finished yet
+	 */
+	public long getActiveRequests(ServiceInstance instance) {
+		InstanceStatistics instanceStatistics = find(instance);
+		return instanceStatistics != null ? instanceStatistics.getActiveRequests() : 0;
+	}
+
+	static String key(ServiceInstance instance) {
+		return instance.getServiceId() + "@" + instance.getHost() + ":" + instance.getPort();
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+
+/**
+ * A {@link LoadBalancerLifecycle} that records the requests running against each service
+ * instance, the response times of the successful ones and the failures in
+ * {@link LoadBalancerStatistics}. It is notified by the load-balanced OkHttp clients, as
+ * well as by the other load-balanced clients, such as the {@code WebClient} used by
+ * WebClient-backed Retrofit clients, so that the statistics-aware load balancers take all
+ * their requests into account.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadBalancerStatisticsLifecycle implements LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+
+	private final LoadBalancerStatistics statistics;
+
+	public LoadBalancerStatisticsLifecycle(LoadBalancerStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	@Override
+	public boolean supports(Class requestContextClass, Class responseClass, Class serverTypeClass) {
+		return TimedRequestContext.class.isAssignableFrom(requestContextClass)
+				&& ServiceInstance.class.isAssignableFrom(serverTypeClass);
+	}
+
+	@Override
+	public void onStart(Request<Object> request) {
+		// do nothing
+	}
+
+	@Override
+	public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+		if (!lbResponse.hasServer() || !(request.getContext() instanceof TimedRequestContext)) {
+			return;
+		}
+		TimedRequestContext context = (TimedRequestContext) request.getContext();
+		if (context.getRequestStartTime() == 0) {
+			context.setRequestStartTime(System.nanoTime());
+		}
+		statistics.get(lbResponse.getServer()).requestStarted();
+	}
+
+	@Override
+	public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+		Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+		Object context = completionContext.getLoadBalancerRequest().getContext();
+		if (lbResponse == null || !lbResponse.hasServer() || !(context instanceof TimedRequestContext)) {
+			return;
+		}
+		long startTime = ((TimedRequestContext) context).getRequestStartTime();
+		if (startTime == 0) {
+			return;
+		}
+		InstanceStatistics instanceStatistics = statistics.get(lbResponse.getServer());
+		instanceStatistics.requestFinished();
+		if (CompletionContext.Status.DISCARD.equals(completionContext.status())) {
+			// cancelled requests say nothing about the health of the instance
+			return;
+		}
+		if (isFailure(completionContext)) {
+			// fast failures would otherwise lower the response time average
+			instanceStatistics.recordFailure();
+		}
+		else {
+			instanceStatistics.recordLatency(System.nanoTime() - startTime);
+			instanceStatistics.recordSuccess();
+		}
+	}
+
+	private boolean isFailure(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+		if (CompletionContext.Status.FAILED.equals(completionContext.status())) {
+			return true;
+		}
+		Object clientResponse = completionContext.getClientResponse();
+		return clientResponse instanceof ResponseData && ((ResponseData) clientResponse).getHttpStatus() != null
+				&& ((ResponseData) clientResponse).getHttpStatus().is5xxServerError();
+	}
+
+}
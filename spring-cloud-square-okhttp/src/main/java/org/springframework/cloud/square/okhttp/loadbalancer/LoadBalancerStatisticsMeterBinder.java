@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * A {@link MeterBinder} that exposes the {@link LoadBalancerStatistics} of each service
+ * instance, including its outlier ejection state, as metrics. The meters of an instance
+ * are removed once its statistics expire.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadBalancerStatisticsMeterBinder implements MeterBinder {
+
+	private final LoadBalancerStatistics statistics;
+
+	public LoadBalancerStatisticsMeterBinder(LoadBalancerStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Map<InstanceStatistics, List<Meter>> meters = new ConcurrentHashMap<>();
+		statistics.addListener((instance, instanceStatistics) -> meters.put(instanceStatistics,
+				bind(registry, instance, instanceStatistics)));
+		statistics.addRemovalListener((instance, instanceStatistics) -> {
+			List<Meter> removed = meters.remove(instanceStatistics);
+			if (removed != null) {
+				removed.forEach(registry::remove);
+			}
+		});
+	}
+
+	private List<Meter> bind(MeterRegistry registry, ServiceInstance instance, InstanceStatistics instanceStatistics) {
+		Tags tags = Tags.of("serviceId", instance.getServiceId(), "instance",
+				instance.getHost() + ":" + instance.getPort());
+		Meter activeRequests = Gauge
+				.builder("loadbalancer.instance.active.requests", instanceStatistics,
+						InstanceStatistics::getActiveRequests)
+				.tags(tags).description("The number of requests running against the service instance")
+				.register(registry);
+		Meter ejected = Gauge
+				.builder("loadbalancer.instance.ejected", instanceStatistics, stats -> stats.isEjected() ? 1 : 0)
+				.tags(tags).description("Whether the service instance is ejected from selection").register(registry);
+		Meter ejections = FunctionCounter
+				.builder("loadbalancer.instance.ejections", instanceStatistics, InstanceStatistics::getEjections)
+				.tags(tags).description("The number of times the service instance has been ejected from selection")
+				.register(registry);
+		Meter consecutiveFailures = Gauge
+				.builder("loadbalancer.instance.consecutive.failures", instanceStatistics,
+						InstanceStatistics::getConsecutiveFailures)
+				.tags(tags).description("The number of consecutive failed requests to the service instance")
+				.register(registry);
+		return Arrays.asList(activeRequests, ejected, ejections, consecutiveFailures);
+	}
+
+}
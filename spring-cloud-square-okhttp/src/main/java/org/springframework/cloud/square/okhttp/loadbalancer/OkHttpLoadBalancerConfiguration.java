@@ -16,12 +16,19 @@
 
 package org.springframework.cloud.square.okhttp.loadbalancer;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import okhttp3.OkHttpClient;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactiveLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -36,11 +43,109 @@ import org.springframework.context.annotation.Configuration;
 @ConditionalOnBean(LoadBalancerClient.class)
 @ConditionalOnProperty(value = "spring.cloud.square.okhttp.loadbalancer.enabled", havingValue = "true",
 		matchIfMissing = true)
+@EnableConfigurationProperties(OkHttpLoadBalancerProperties.class)
 public class OkHttpLoadBalancerConfiguration {
 
 	@Bean
-	public OkHttpLoadBalancerInterceptor okHttpLoadBalancerInterceptor(LoadBalancerClient client) {
-		return new OkHttpLoadBalancerInterceptor(client);
+	@ConditionalOnMissingBean
+	public LoadBalancerStatistics okHttpLoadBalancerStatistics(OkHttpLoadBalancerProperties properties) {
+		OkHttpLoadBalancerProperties.Statistics statistics = properties.getStatistics();
+		return new LoadBalancerStatistics(statistics.getDecayTime(), properties.getOutlierEjection(),
+				statistics.getExpireAfter());
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.statistics.enabled")
+	public LoadBalancerStatisticsLifecycle loadBalancerStatisticsLifecycle(LoadBalancerStatistics statistics) {
+		return new LoadBalancerStatisticsLifecycle(statistics);
+	}
+
+	@Bean
+	@ConditionalOnProperty(value = "spring.cloud.square.okhttp.loadbalancer.reactive.enabled", havingValue = "false",
+			matchIfMissing = true)
+	public OkHttpLoadBalancerInterceptor okHttpLoadBalancerInterceptor(LoadBalancerClient client,
+			ObjectProvider<ReactiveLoadBalancer.Factory<ServiceInstance>> loadBalancerFactory,
+			ObjectProvider<LoadBalancerHashKeyResolver> hashKeyResolver, OkHttpLoadBalancerProperties properties) {
+		return new OkHttpLoadBalancerInterceptor(client, loadBalancerFactory.getIfAvailable(),
+				hashKeyResolver.getIfAvailable(), retryPolicy(properties.getRetry()));
+	}
+
+	@Bean
+	@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.call-factory.enabled")
+	public LoadBalancedCallFactoryProvider loadBalancedCallFactoryProvider(
+			AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor, OkHttpLoadBalancerProperties properties) {
+		return new LoadBalancedCallFactoryProvider(loadBalancerInterceptor, properties.getCallFactory());
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.hedging.enabled")
+	public HedgingPolicy okHttpHedgingPolicy(OkHttpLoadBalancerProperties properties,
+			ObjectProvider<LoadBalancerHedgedRequestMatcher> matcher) {
+		return new HedgingPolicy(properties.getHedging(), matcher.getIfAvailable());
+	}
+
+	@Bean
+	@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.hedging.enabled")
+	public HedgingCallFactoryProvider hedgingCallFactoryProvider(
+			AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor, HedgingPolicy policy) {
+		return new HedgingCallFactoryProvider(loadBalancerInterceptor, policy);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.health-probe.enabled")
+	public InstanceHealthProber instanceHealthProber(OkHttpLoadBalancerProperties properties,
+			ObjectProvider<InstanceHealthProbe> probe) {
+		OkHttpLoadBalancerProperties.HealthProbe healthProbe = properties.getHealthProbe();
+		return new InstanceHealthProber(probe.getIfAvailable(() -> new HttpInstanceHealthProbe(healthProbe.getPath())),
+				healthProbe);
+	}
+
+	static LoadBalancerRetryPolicy retryPolicy(OkHttpLoadBalancerProperties.Retry retry) {
+		if (!retry.isEnabled()) {
+			return null;
+		}
+		return new LoadBalancerRetryPolicy(retry.getMaxRetries(), retry.getRetryableStatusCodes(),
+				new RetryBudget(retry.getBudgetRatio(), retry.getBudgetCapacity()));
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class LoadBalancerStatisticsMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.statistics.enabled")
+		public LoadBalancerStatisticsMeterBinder loadBalancerStatisticsMeterBinder(LoadBalancerStatistics statistics) {
+			return new LoadBalancerStatisticsMeterBinder(statistics);
+		}
+
+		@Bean
+		@ConditionalOnMissingBean
+		@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.hedging.enabled")
+		public HedgingMeterBinder hedgingMeterBinder(HedgingPolicy policy) {
+			return new HedgingMeterBinder(policy);
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(ServiceInstanceListSupplier.class)
+	@ConditionalOnBean(ReactiveLoadBalancer.Factory.class)
+	@ConditionalOnProperty("spring.cloud.square.okhttp.loadbalancer.reactive.enabled")
+	protected static class ReactorOkHttpLoadBalancerConfiguration {
+
+		@Bean
+		public ReactorOkHttpLoadBalancerInterceptor reactorOkHttpLoadBalancerInterceptor(
+				ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+				OkHttpLoadBalancerProperties properties, ObjectProvider<LoadBalancerHashKeyResolver> hashKeyResolver) {
+			return new ReactorOkHttpLoadBalancerInterceptor(loadBalancerFactory,
+					properties.getReactive().getInitialSelectionTimeout(), hashKeyResolver.getIfAvailable(),
+					retryPolicy(properties.getRetry()), properties.getSnapshot().getRefreshInterval());
+		}
+
 	}
 
 }
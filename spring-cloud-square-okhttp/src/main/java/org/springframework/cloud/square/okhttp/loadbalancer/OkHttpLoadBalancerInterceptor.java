@@ -16,45 +16,45 @@
 
 package org.springframework.cloud.square.okhttp.loadbalancer;
 
-import java.io.IOException;
-
-import okhttp3.HttpUrl;
-import okhttp3.Interceptor;
-import okhttp3.Request;
-import okhttp3.Response;
-
 import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
 import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactiveLoadBalancer;
 
 /**
  * @author Spencer Gibb
  * @author Olga Maciaszek-Sharma
  */
-public class OkHttpLoadBalancerInterceptor implements Interceptor {
+public class OkHttpLoadBalancerInterceptor extends AbstractOkHttpLoadBalancerInterceptor {
 
 	private final LoadBalancerClient client;
 
 	public OkHttpLoadBalancerInterceptor(LoadBalancerClient client) {
-		this.client = client;
+		this(client, null);
 	}
 
-	@Override
-	public Response intercept(Chain chain) throws IOException {
-		Request original = chain.request();
-		HttpUrl originalUrl = original.url();
-		String serviceId = originalUrl.host();
-		ServiceInstance service = client.choose(serviceId);
-
-		if (service == null) {
-			throw new IllegalStateException("No instances available for " + serviceId);
-		}
+	public OkHttpLoadBalancerInterceptor(LoadBalancerClient client,
+			ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory) {
+		this(client, loadBalancerFactory, null);
+	}
 
-		HttpUrl url = originalUrl.newBuilder().scheme(service.isSecure() ? "https" : "http").host(service.getHost())
-				.port(service.getPort()).build();
+	public OkHttpLoadBalancerInterceptor(LoadBalancerClient client,
+			ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			LoadBalancerHashKeyResolver hashKeyResolver) {
+		this(client, loadBalancerFactory, hashKeyResolver, null);
+	}
 
-		Request request = original.newBuilder().url(url).build();
+	public OkHttpLoadBalancerInterceptor(LoadBalancerClient client,
+			ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			LoadBalancerHashKeyResolver hashKeyResolver, LoadBalancerRetryPolicy retryPolicy) {
+		super(loadBalancerFactory, hashKeyResolver, retryPolicy);
+		this.client = client;
+	}
 
-		return chain.proceed(request);
+	@Override
+	protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+		return client.choose(serviceId, lbRequest);
 	}
 
 }
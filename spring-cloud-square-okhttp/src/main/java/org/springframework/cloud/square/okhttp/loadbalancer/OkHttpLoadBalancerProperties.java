@@ -0,0 +1,824 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for OkHttp Spring Cloud LoadBalancer integration.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@ConfigurationProperties("spring.cloud.square.okhttp.loadbalancer")
+public class OkHttpLoadBalancerProperties {
+
+	/**
+	 * Allows disabling OkHttp Spring Cloud LoadBalancer support.
+	 */
+	private boolean enabled = true;
+
+	private Reactive reactive = new Reactive();
+
+	private CallFactory callFactory = new CallFactory();
+
+	private Statistics statistics = new Statistics();
+
+	private ZoneAffinity zoneAffinity = new ZoneAffinity();
+
+	private OutlierEjection outlierEjection = new OutlierEjection();
+
+	private SlowStart slowStart = new SlowStart();
+
+	private Subset subset = new Subset();
+
+	private Retry retry = new Retry();
+
+	private Hedging hedging = new Hedging();
+
+	private Snapshot snapshot = new Snapshot();
+
+	private HealthProbe healthProbe = new HealthProbe();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Reactive getReactive() {
+		return reactive;
+	}
+
+	public void setReactive(Reactive reactive) {
+		this.reactive = reactive;
+	}
+
+	public CallFactory getCallFactory() {
+		return callFactory;
+	}
+
+	public void setCallFactory(CallFactory callFactory) {
+		this.callFactory = callFactory;
+	}
+
+	public Statistics getStatistics() {
+		return statistics;
+	}
+
+	public void setStatistics(Statistics statistics) {
+		this.statistics = statistics;
+	}
+
+	public ZoneAffinity getZoneAffinity() {
+		return zoneAffinity;
+	}
+
+	public void setZoneAffinity(ZoneAffinity zoneAffinity) {
+		this.zoneAffinity = zoneAffinity;
+	}
+
+	public OutlierEjection getOutlierEjection() {
+		return outlierEjection;
+	}
+
+	public void setOutlierEjection(OutlierEjection outlierEjection) {
+		this.outlierEjection = outlierEjection;
+	}
+
+	public SlowStart getSlowStart() {
+		return slowStart;
+	}
+
+	public void setSlowStart(SlowStart slowStart) {
+		this.slowStart = slowStart;
+	}
+
+	public Subset getSubset() {
+		return subset;
+	}
+
+	public void setSubset(Subset subset) {
+		this.subset = subset;
+	}
+
+	public Retry getRetry() {
+		return retry;
+	}
+
+	public void setRetry(Retry retry) {
+		this.retry = retry;
+	}
+
+	public Hedging getHedging() {
+		return hedging;
+	}
+
+	public void setHedging(Hedging hedging) {
+		this.hedging = hedging;
+	}
+
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(Snapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	public HealthProbe getHealthProbe() {
+		return healthProbe;
+	}
+
+	public void setHealthProbe(HealthProbe healthProbe) {
+		this.healthProbe = healthProbe;
+	}
+
+	public static class Reactive {
+
+		/**
+		 * Enables selecting instances with ReactiveLoadBalancer without blocking the
+		 * OkHttp calling thread.
+		 */
+		private boolean enabled;
+
+		/**
+		 * How long to wait for the instance selection when there is no instance snapshot
+		 * for the service yet.
+		 */
+		private Duration initialSelectionTimeout = Duration.ofSeconds(5);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getInitialSelectionTimeout() {
+			return initialSelectionTimeout;
+		}
+
+		public void setInitialSelectionTimeout(Duration initialSelectionTimeout) {
+			this.initialSelectionTimeout = initialSelectionTimeout;
+		}
+
+	}
+
+	public static class CallFactory {
+
+		/**
+		 * Enables selecting the service instance before the call is queued by the OkHttp
+		 * Dispatcher for load-balanced Retrofit clients, so that the per-host Dispatcher
+		 * limits apply to each instance.
+		 */
+		private boolean enabled;
+
+		/**
+		 * The maximum number of asynchronous calls running against a single service.
+		 * Calls above the limit wait in a per-service queue. Values lower than 1 disable
+		 * the limit.
+		 */
+		private int maxRequestsPerService;
+
+		/**
+		 * The maximum number of asynchronous calls running against a single service
+		 * instance. If set, it is applied as the maxRequestsPerHost of a Dispatcher
+		 * dedicated to the load-balanced calls of each client.
+		 */
+		private Integer maxRequestsPerInstance;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxRequestsPerService() {
+			return maxRequestsPerService;
+		}
+
+		public void setMaxRequestsPerService(int maxRequestsPerService) {
+			this.maxRequestsPerService = maxRequestsPerService;
+		}
+
+		public Integer getMaxRequestsPerInstance() {
+			return maxRequestsPerInstance;
+		}
+
+		public void setMaxRequestsPerInstance(Integer maxRequestsPerInstance) {
+			this.maxRequestsPerInstance = maxRequestsPerInstance;
+		}
+
+	}
+
+	public static class Statistics {
+
+		/**
+		 * Whether to record the statistics of the service instances used by the
+		 * statistics-aware load balancers, outlier ejection and zone affinity, and to
+		 * expose them as metrics.
+		 */
+		private boolean enabled;
+
+		/**
+		 * The time window over which the response times of a service instance are
+		 * averaged by the latency-aware load balancers.
+		 */
+		private Duration decayTime = Duration.ofSeconds(10);
+
+		/**
+		 * The time after which the statistics of a service instance that has not been
+		 * sent any requests, and is not ejected, are discarded.
+		 */
+		private Duration expireAfter = Duration.ofMinutes(1);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getDecayTime() {
+			return decayTime;
+		}
+
+		public void setDecayTime(Duration decayTime) {
+			this.decayTime = decayTime;
+		}
+
+		public Duration getExpireAfter() {
+			return expireAfter;
+		}
+
+		public void setExpireAfter(Duration expireAfter) {
+			this.expireAfter = expireAfter;
+		}
+
+	}
+
+	public static class ZoneAffinity {
+
+		/**
+		 * The minimum number of available instances in the local zone. If fewer local
+		 * instances are available, requests spill over to the other zones.
+		 */
+		private int minInstances = 1;
+
+		/**
+		 * The average number of active requests per local instance at which the local
+		 * zone is considered saturated and requests spill over to the other zones. Values
+		 * lower than 1 disable the saturation check.
+		 */
+		private int maxActiveRequestsPerInstance;
+
+		/**
+		 * How long the routing decision for a service is cached before the local zone
+		 * saturation is evaluated again.
+		 */
+		private Duration decisionTtl = Duration.ofSeconds(1);
+
+		public int getMinInstances() {
+			return minInstances;
+		}
+
+		public void setMinInstances(int minInstances) {
+			this.minInstances = minInstances;
+		}
+
+		public int getMaxActiveRequestsPerInstance() {
+			return maxActiveRequestsPerInstance;
+		}
+
+		public void setMaxActiveRequestsPerInstance(int maxActiveRequestsPerInstance) {
+			this.maxActiveRequestsPerInstance = maxActiveRequestsPerInstance;
+		}
+
+		public Duration getDecisionTtl() {
+			return decisionTtl;
+		}
+
+		public void setDecisionTtl(Duration decisionTtl) {
+			this.decisionTtl = decisionTtl;
+		}
+
+	}
+
+	public static class OutlierEjection {
+
+		/**
+		 * The number of consecutive failures (connection failures, timeouts and 5xx
+		 * responses) after which a service instance is ejected from selection. Values
+		 * lower than 1 disable ejection.
+		 */
+		private int consecutiveFailures = 5;
+
+		/**
+		 * How long an instance is ejected for the first time. The time doubles with each
+		 * subsequent ejection of the same instance.
+		 */
+		private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+		/**
+		 * The maximum time an instance can be ejected for.
+		 */
+		private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+		/**
+		 * The maximum percentage of the instances of a service that can be ejected at the
+		 * same time.
+		 */
+		private int maxEjectionPercent = 50;
+
+		public int getConsecutiveFailures() {
+			return consecutiveFailures;
+		}
+
+		public void setConsecutiveFailures(int consecutiveFailures) {
+			this.consecutiveFailures = consecutiveFailures;
+		}
+
+		public Duration getBaseEjectionTime() {
+			return baseEjectionTime;
+		}
+
+		public void setBaseEjectionTime(Duration baseEjectionTime) {
+			this.baseEjectionTime = baseEjectionTime;
+		}
+
+		public Duration getMaxEjectionTime() {
+			return maxEjectionTime;
+		}
+
+		public void setMaxEjectionTime(Duration maxEjectionTime) {
+			this.maxEjectionTime = maxEjectionTime;
+		}
+
+		public int getMaxEjectionPercent() {
+			return maxEjectionPercent;
+		}
+
+		public void setMaxEjectionPercent(int maxEjectionPercent) {
+			this.maxEjectionPercent = maxEjectionPercent;
+		}
+
+	}
+
+	public static class SlowStart {
+
+		/**
+		 * The time over which the selection weight of a newly discovered instance is
+		 * ramped up to its full value.
+		 */
+		private Duration window = Duration.ofSeconds(30);
+
+		/**
+		 * The shape of the selection weight ramp.
+		 */
+		private Ramp ramp = Ramp.LINEAR;
+
+		/**
+		 * The selection weight of a newly discovered instance at the start of the window,
+		 * between 0 and 1.
+		 */
+		private double minWeight = 0.1;
+
+		public Duration getWindow() {
+			return window;
+		}
+
+		public void setWindow(Duration window) {
+			this.window = window;
+		}
+
+		public Ramp getRamp() {
+			return ramp;
+		}
+
+		public void setRamp(Ramp ramp) {
+			this.ramp = ramp;
+		}
+
+		public double getMinWeight() {
+			return minWeight;
+		}
+
+		public void setMinWeight(double minWeight) {
+			this.minWeight = minWeight;
+		}
+
+		public enum Ramp {
+
+			/**
+			 * The weight grows linearly over the window.
+			 */
+			LINEAR,
+
+			/**
+			 * The weight doubles at regular intervals over the window, so that the
+			 * instance receives little traffic at first and most of the ramp happens
+			 * towards the end of the window.
+			 */
+			EXPONENTIAL
+
+		}
+
+	}
+
+	public static class Subset {
+
+		/**
+		 * The id of this client used to select its subset of instances. Defaults to the
+		 * local host name.
+		 */
+		private String clientId;
+
+		/**
+		 * The minimum number of instances in the subset.
+		 */
+		private int minSize = 10;
+
+		/**
+		 * The average number of active requests per subset instance the subset size is
+		 * adjusted to. The subset grows when the average is higher and shrinks when it is
+		 * lower, by one instance at a time.
+		 */
+		private int targetActiveRequestsPerInstance = 4;
+
+		/**
+		 * How often the subset size is adjusted.
+		 */
+		private Duration adjustmentInterval = Duration.ofSeconds(1);
+
+		public String getClientId() {
+			return clientId;
+		}
+
+		public void setClientId(String clientId) {
+			this.clientId = clientId;
+		}
+
+		public int getMinSize() {
+			return minSize;
+		}
+
+		public void setMinSize(int minSize) {
+			this.minSize = minSize;
+		}
+
+		public int getTargetActiveRequestsPerInstance() {
+			return targetActiveRequestsPerInstance;
+		}
+
+		public void setTargetActiveRequestsPerInstance(int targetActiveRequestsPerInstance) {
+			this.targetActiveRequestsPerInstance = targetActiveRequestsPerInstance;
+		}
+
+		public Duration getAdjustmentInterval() {
+			return adjustmentInterval;
+		}
+
+		public void setAdjustmentInterval(Duration adjustmentInterval) {
+			this.adjustmentInterval = adjustmentInterval;
+		}
+
+	}
+
+	public static class Retry {
+
+		/**
+		 * Enables retrying failed requests on a different service instance.
+		 */
+		private boolean enabled;
+
+		/**
+		 * The maximum number of retries of a single request.
+		 */
+		private int maxRetries = 1;
+
+		/**
+		 * The response status codes that are retried for idempotent requests. Connection
+		 * failures are retried regardless of the request method.
+		 */
+		private Set<Integer> retryableStatusCodes = new HashSet<>(Collections.singletonList(503));
+
+		/**
+		 * The ratio of retries to requests allowed by the retry budget shared by all the
+		 * requests.
+		 */
+		private double budgetRatio = 0.1;
+
+		/**
+		 * The maximum number of retries the retry budget can accumulate.
+		 */
+		private int budgetCapacity = 10;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxRetries() {
+			return maxRetries;
+		}
+
+		public void setMaxRetries(int maxRetries) {
+			this.maxRetries = maxRetries;
+		}
+
+		public Set<Integer> getRetryableStatusCodes() {
+			return retryableStatusCodes;
+		}
+
+		public void setRetryableStatusCodes(Set<Integer> retryableStatusCodes) {
+			this.retryableStatusCodes = retryableStatusCodes;
+		}
+
+		public double getBudgetRatio() {
+			return budgetRatio;
+		}
+
+		public void setBudgetRatio(double budgetRatio) {
+			this.budgetRatio = budgetRatio;
+		}
+
+		public int getBudgetCapacity() {
+			return budgetCapacity;
+		}
+
+		public void setBudgetCapacity(int budgetCapacity) {
+			this.budgetCapacity = budgetCapacity;
+		}
+
+	}
+
+	public static class Hedging {
+
+		/**
+		 * Enables hedging idempotent requests.
+		 */
+		private boolean enabled;
+
+		/**
+		 * The ids of the services all idempotent requests to which are hedged. Retrofit
+		 * client methods can also be selected with the {@code @Hedged} annotation.
+		 */
+		private Set<String> serviceIds = new HashSet<>();
+
+		/**
+		 * The percentile of the recent latencies of the service after which the hedge is
+		 * sent.
+		 */
+		private double percentile = 95;
+
+		/**
+		 * The minimum time after which the hedge is sent.
+		 */
+		private Duration minDelay = Duration.ofMillis(5);
+
+		/**
+		 * The minimum number of latency samples of the service required before requests
+		 * are hedged.
+		 */
+		private int minSamples = 100;
+
+		/**
+		 * The time window of the latency samples the percentile is computed from. The
+		 * samples of the current and the previous window are taken into account.
+		 */
+		private Duration window = Duration.ofSeconds(30);
+
+		/**
+		 * The ratio of hedges to hedged requests allowed by the hedging budget.
+		 */
+		private double budgetRatio = 0.05;
+
+		/**
+		 * The maximum number of hedges the hedging budget can accumulate.
+		 */
+		private int budgetCapacity = 10;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Set<String> getServiceIds() {
+			return serviceIds;
+		}
+
+		public void setServiceIds(Set<String> serviceIds) {
+			this.serviceIds = serviceIds;
+		}
+
+		public double getPercentile() {
+			return percentile;
+		}
+
+		public void setPercentile(double percentile) {
+			this.percentile = percentile;
+		}
+
+		public Duration getMinDelay() {
+			return minDelay;
+		}
+
+		public void setMinDelay(Duration minDelay) {
+			this.minDelay = minDelay;
+		}
+
+		public int getMinSamples() {
+			return minSamples;
+		}
+
+		public void setMinSamples(int minSamples) {
+			this.minSamples = minSamples;
+		}
+
+		public Duration getWindow() {
+			return window;
+		}
+
+		public void setWindow(Duration window) {
+			this.window = window;
+		}
+
+		public double getBudgetRatio() {
+			return budgetRatio;
+		}
+
+		public void setBudgetRatio(double budgetRatio) {
+			this.budgetRatio = budgetRatio;
+		}
+
+		public int getBudgetCapacity() {
+			return budgetCapacity;
+		}
+
+		public void setBudgetCapacity(int budgetCapacity) {
+			this.budgetCapacity = budgetCapacity;
+		}
+
+	}
+
+	public static class Snapshot {
+
+		/**
+		 * The age after which an instance snapshot is refreshed in the background, while
+		 * the current snapshot is still used for selection.
+		 */
+		private Duration refreshInterval = Duration.ofSeconds(25);
+
+		/**
+		 * The age after which an instance snapshot expires. Requests selecting an
+		 * instance from an expired snapshot wait for it to be refreshed.
+		 */
+		private Duration ttl = Duration.ofSeconds(35);
+
+		public Duration getRefreshInterval() {
+			return refreshInterval;
+		}
+
+		public void setRefreshInterval(Duration refreshInterval) {
+			this.refreshInterval = refreshInterval;
+		}
+
+		public Duration getTtl() {
+			return ttl;
+		}
+
+		public void setTtl(Duration ttl) {
+			this.ttl = ttl;
+		}
+
+	}
+
+	public static class HealthProbe {
+
+		/**
+		 * Enables probing the instances of the services called by load-balanced Retrofit
+		 * clients in the background.
+		 */
+		private boolean enabled;
+
+		/**
+		 * The path requested on each instance to check its health.
+		 */
+		private String path = "/actuator/health";
+
+		/**
+		 * The time between the end of a probing round and the start of the next one.
+		 */
+		private Duration interval = Duration.ofSeconds(10);
+
+		/**
+		 * The timeout of a single probe.
+		 */
+		private Duration timeout = Duration.ofSeconds(2);
+
+		/**
+		 * The number of consecutive failed probes after which an instance is filtered out
+		 * of selection. A single successful probe brings it back.
+		 */
+		private int failureThreshold = 2;
+
+		/**
+		 * The maximum number of probes running at the same time.
+		 */
+		private int maxConcurrency = 4;
+
+		/**
+		 * The maximum number of probes started per second.
+		 */
+		private int maxProbesPerSecond = 20;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public Duration getInterval() {
+			return interval;
+		}
+
+		public void setInterval(Duration interval) {
+			this.interval = interval;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+		public int getFailureThreshold() {
+			return failureThreshold;
+		}
+
+		public void setFailureThreshold(int failureThreshold) {
+			this.failureThreshold = failureThreshold;
+		}
+
+		public int getMaxConcurrency() {
+			return maxConcurrency;
+		}
+
+		public void setMaxConcurrency(int maxConcurrency) {
+			this.maxConcurrency = maxConcurrency;
+		}
+
+		public int getMaxProbesPerSecond() {
+			return maxProbesPerSecond;
+		}
+
+		public void setMaxProbesPerSecond(int maxProbesPerSecond) {
+			this.maxProbesPerSecond = maxProbesPerSecond;
+		}
+
+	}
+
+}
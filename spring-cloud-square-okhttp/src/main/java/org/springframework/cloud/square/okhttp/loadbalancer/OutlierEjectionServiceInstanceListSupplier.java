@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ServiceInstanceListSupplier} that filters out the instances that have been
+ * ejected because of consecutive failures, as recorded in {@link LoadBalancerStatistics}.
+ * At most the configured percentage of the instances is filtered out, so that a failure
+ * affecting the whole service does not leave it without instances.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class OutlierEjectionServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private final LoadBalancerStatistics statistics;
+
+	private final int maxEjectionPercent;
+
+	public OutlierEjectionServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			LoadBalancerStatistics statistics, OkHttpLoadBalancerProperties.OutlierEjection properties) {
+		super(delegate);
+		this.statistics = statistics;
+		this.maxEjectionPercent = properties.getMaxEjectionPercent();
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return delegate.get().map(this::withoutEjected);
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return delegate.get(request).map(this::withoutEjected);
+	}
+
+	private List<ServiceInstance> withoutEjected(List<ServiceInstance> serviceInstances) {
+		int maxEjected = serviceInstances.size() * maxEjectionPercent / 100;
+		if (maxEjected < 1) {
+			return serviceInstances;
+		}
+		List<ServiceInstance> available = null;
+		int ejected = 0;
+		for (int i = 0; i < serviceInstances.size(); i++) {
+			ServiceInstance instance = serviceInstances.get(i);
+			if (ejected < maxEjected && isEjected(instance)) {
+				if (available == null) {
+					available = new ArrayList<>(serviceInstances.subList(0, i));
+				}
+				ejected++;
+			}
+			else if (available != null) {
+				available.add(instance);
+			}
+		}
+		if (available == null) {
+			return serviceInstances;
+		}
+		return available;
+	}
+
+	private boolean isEjected(ServiceInstance instance) {
+		InstanceStatistics instanceStatistics = statistics.find(instance);
+		return instanceStatistics != null && instanceStatistics.isEjected();
+	}
+
+}
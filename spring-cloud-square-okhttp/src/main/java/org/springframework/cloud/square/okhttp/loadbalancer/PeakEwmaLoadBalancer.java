@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ReactorServiceInstanceLoadBalancer} that picks two instances at random and
+ * selects the one with the lower cost, where the cost is the peak-sensitive moving
+ * average of the instance response time, as recorded in {@link LoadBalancerStatistics},
+ * multiplied by the number of its outstanding requests plus one. Instances that have
+ * outstanding requests but no response time samples yet are penalised, so that a burst of
+ * requests is not sent to a newly added instance before it has responded. Instances
+ * without any samples or outstanding requests are assigned the average response time of
+ * the other instances, so that they are neither favoured nor avoided until they have
+ * responded. The cost of an instance warming up in a
+ * {@link SlowStartServiceInstanceListSupplier} is divided by its slow-start weight.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class PeakEwmaLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private static final Log LOG = LogFactory.getLog(PeakEwmaLoadBalancer.class);
+
+	private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+	private static final double UNKNOWN = -1;
+
+	private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+	private final String serviceId;
+
+	private final LoadBalancerStatistics statistics;
+
+	public PeakEwmaLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+			String serviceId, LoadBalancerStatistics statistics) {
+		this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+		this.serviceId = serviceId;
+		this.statistics = statistics;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+				.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		SlowStartServiceInstanceListSupplier slowStart = SlowStartServiceInstanceListSupplier.find(supplier);
+		if (slowStart != null) {
+			slowStart.weightByLoadBalancer();
+		}
+		return supplier.get(request).next().map(instances -> processInstanceResponse(supplier, slowStart, instances));
+	}
+
+	private Response<ServiceInstance> processInstanceResponse(ServiceInstanceListSupplier supplier,
+			SlowStartServiceInstanceListSupplier slowStart, List<ServiceInstance> instances) {
+		Response<ServiceInstance> response = getInstanceResponse(slowStart, instances);
+		if (supplier instanceof SelectedInstanceCallback && response.hasServer()) {
+			((SelectedInstanceCallback) supplier).selectedServiceInstance(response.getServer());
+		}
+		return response;
+	}
+
+	private Response<ServiceInstance> getInstanceResponse(SlowStartServiceInstanceListSupplier slowStart,
+			List<ServiceInstance> instances) {
+		if (instances.isEmpty()) {
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("No servers available for service: " + serviceId);
+			}
+			return new EmptyResponse();
+		}
+		int size = instances.size();
+		if (size == 1) {
+			return new DefaultResponse(instances.get(0));
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(size);
+		int second = random.nextInt(size - 1);
+		if (second >= first) {
+			second++;
+		}
+		ServiceInstance firstInstance = instances.get(first);
+		ServiceInstance secondInstance = instances.get(second);
+		double firstCost = cost(firstInstance);
+		double secondCost = cost(secondInstance);
+		if (firstCost == UNKNOWN || secondCost == UNKNOWN) {
+			double averageLatency = averageLatency(instances);
+			firstCost = firstCost == UNKNOWN ? averageLatency : firstCost;
+			secondCost = secondCost == UNKNOWN ? averageLatency : secondCost;
+		}
+		if (slowStart != null) {
+			firstCost /= slowStart.getWeight(firstInstance);
+			secondCost /= slowStart.getWeight(secondInstance);
+		}
+		return new DefaultResponse(firstCost <= secondCost ? firstInstance : secondInstance);
+	}
+
+	private double cost(ServiceInstance instance) {
+		InstanceStatistics instanceStatistics = statistics.find(instance);
+		if (instanceStatistics == null) {
+			return UNKNOWN;
+		}
+		long activeRequests = instanceStatistics.getActiveRequests();
+		double latencyEwma = instanceStatistics.getLatencyEwma();
+		if (latencyEwma == 0) {
+			return activeRequests != 0 ? PENALTY + activeRequests : UNKNOWN;
+		}
+		return latencyEwma * (activeRequests + 1);
+	}
+
+	private double averageLatency(List<ServiceInstance> instances) {
+		double sum = 0;
+		int count = 0;
+		for (ServiceInstance instance : instances) {
+			InstanceStatistics instanceStatistics = statistics.find(instance);
+			double latencyEwma = instanceStatistics != null ? instanceStatistics.getLatencyEwma() : 0;
+			if (latencyEwma != 0) {
+				sum += latencyEwma;
+				count++;
+			}
+		}
+		return count != 0 ? sum / count : 0;
+	}
+
+}
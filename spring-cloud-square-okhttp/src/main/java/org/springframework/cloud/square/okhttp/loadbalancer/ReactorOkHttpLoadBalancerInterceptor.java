@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactiveLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * An {@link AbstractOkHttpLoadBalancerInterceptor} implementation that selects instances
+ * using {@link ReactiveLoadBalancer} without blocking the calling thread. If the
+ * selection cannot be completed immediately (for example, when the instance cache has
+ * expired and discovery has to be queried), an instance is picked in a round-robin
+ * fashion from the last known instance snapshot for the service, bypassing the load
+ * balancer. The snapshot is refreshed in the background once it is older than the
+ * snapshot refresh interval. The calling thread only waits for the selection when no
+ * snapshot is available yet, which only happens for the first requests to a service.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class ReactorOkHttpLoadBalancerInterceptor extends AbstractOkHttpLoadBalancerInterceptor {
+
+	private static final Log LOG = LogFactory.getLog(ReactorOkHttpLoadBalancerInterceptor.class);
+
+	private final ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory;
+
+	private static final Duration DEFAULT_SNAPSHOT_REFRESH_INTERVAL = Duration.ofSeconds(25);
+
+	private final Duration initialSelectionTimeout;
+
+	private final Duration snapshotRefreshInterval;
+
+	private final Map<String, InstanceSnapshot> snapshots = new ConcurrentHashMap<>();
+
+	public ReactorOkHttpLoadBalancerInterceptor(ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			Duration initialSelectionTimeout) {
+		this(loadBalancerFactory, initialSelectionTimeout, null);
+	}
+
+	public ReactorOkHttpLoadBalancerInterceptor(ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			Duration initialSelectionTimeout, LoadBalancerHashKeyResolver hashKeyResolver) {
+		this(loadBalancerFactory, initialSelectionTimeout, hashKeyResolver, null);
+	}
+
+	public ReactorOkHttpLoadBalancerInterceptor(ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			Duration initialSelectionTimeout, LoadBalancerHashKeyResolver hashKeyResolver,
+			LoadBalancerRetryPolicy retryPolicy) {
+		this(loadBalancerFactory, initialSelectionTimeout, hashKeyResolver, retryPolicy,
+				DEFAULT_SNAPSHOT_REFRESH_INTERVAL);
+	}
+
+	public ReactorOkHttpLoadBalancerInterceptor(ReactiveLoadBalancer.Factory<ServiceInstance> loadBalancerFactory,
+			Duration initialSelectionTimeout, LoadBalancerHashKeyResolver hashKeyResolver,
+			LoadBalancerRetryPolicy retryPolicy, Duration snapshotRefreshInterval) {
+		super(loadBalancerFactory, hashKeyResolver, retryPolicy);
+		this.loadBalancerFactory = loadBalancerFactory;
+		this.initialSelectionTimeout = initialSelectionTimeout;
+		this.snapshotRefreshInterval = snapshotRefreshInterval;
+	}
+
+	@Override
+	protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+		ReactiveLoadBalancer<ServiceInstance> loadBalancer = loadBalancerFactory.getInstance(serviceId);
+		if (loadBalancer == null) {
+			throw new IllegalStateException("No loadbalancer available for " + serviceId);
+		}
+		InstanceSnapshot snapshot = snapshots.computeIfAbsent(serviceId, this::createSnapshot);
+		CompletableFuture<ServiceInstance> selection = Mono.from(loadBalancer.choose(lbRequest))
+				.filter(Response::hasServer).map(Response::getServer).toFuture();
+		snapshot.refreshIfStale();
+		if (selection.isDone()) {
+			return selection.join();
+		}
+		ServiceInstance preResolved = snapshot.next();
+		if (preResolved != null) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Selection pending for " + serviceId + ", bypassing the load balancer with snapshot instance "
+						+ preResolved);
+			}
+			return preResolved;
+		}
+		return awaitSelection(serviceId, selection);
+	}
+
+	private ServiceInstance awaitSelection(String serviceId, CompletableFuture<ServiceInstance> selection) {
+		try {
+			return selection.get(initialSelectionTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while selecting instance for " + serviceId, e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to select instance for " + serviceId, e.getCause());
+		}
+		catch (TimeoutException e) {
+			throw new IllegalStateException(
+					"Timed out after " + initialSelectionTimeout + " while selecting instance for " + serviceId, e);
+		}
+	}
+
+	private InstanceSnapshot createSnapshot(String serviceId) {
+		return new InstanceSnapshot(serviceId, loadBalancerFactory
+				.getInstances(serviceId, ServiceInstanceListSupplier.class).values().stream().findFirst().orElse(null),
+				snapshotRefreshInterval.toNanos());
+	}
+
+	private static final class InstanceSnapshot {
+
+		private final String serviceId;
+
+		private final ServiceInstanceListSupplier supplier;
+
+		private final long refreshIntervalNanos;
+
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		private final AtomicInteger position = new AtomicInteger();
+
+		private volatile List<ServiceInstance> instances = Collections.emptyList();
+
+		private volatile long refreshedAt;
+
+		private InstanceSnapshot(String serviceId, ServiceInstanceListSupplier supplier, long refreshIntervalNanos) {
+			this.serviceId = serviceId;
+			this.supplier = supplier;
+			this.refreshIntervalNanos = refreshIntervalNanos;
+			// stale from the start, so that the first selection triggers a refresh
+			this.refreshedAt = System.nanoTime() - refreshIntervalNanos;
+		}
+
+		ServiceInstance next() {
+			List<ServiceInstance> current = instances;
+			if (current.isEmpty()) {
+				return null;
+			}
+			int pos = position.getAndIncrement() & Integer.MAX_VALUE;
+			return current.get(pos % current.size());
+		}
+
+		void refreshIfStale() {
+			if (supplier == null || System.nanoTime() - refreshedAt < refreshIntervalNanos
+					|| !refreshing.compareAndSet(false, true)) {
+				return;
+			}
+			supplier.get().next().doFinally(signal -> {
+				refreshedAt = System.nanoTime();
+				refreshing.set(false);
+			}).subscribe(this::update,
+					error -> LOG.warn("Could not refresh instance snapshot for " + serviceId, error));
+		}
+
+		private void update(List<ServiceInstance> instances) {
+			if (!instances.isEmpty()) {
+				this.instances = instances;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ServiceInstanceListSupplier} that keeps a snapshot of the instances of the
+ * service and refreshes it in the background before it expires, so that instance
+ * selection does not have to wait for service discovery. Once the snapshot is older than
+ * the refresh interval, the next selection triggers a background refresh and keeps using
+ * the current snapshot until the refresh completes. Only selections made after the
+ * snapshot has expired, or before the first one has been retrieved, wait for the
+ * instances to be retrieved. If a refresh fails, the previous snapshot is kept.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RefreshAheadServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private static final Log LOG = LogFactory.getLog(RefreshAheadServiceInstanceListSupplier.class);
+
+	private final long refreshIntervalNanos;
+
+	private final long ttlNanos;
+
+	private final AtomicReference<Mono<List<ServiceInstance>>> refresh = new AtomicReference<>();
+
+	private volatile Snapshot snapshot;
+
+	public RefreshAheadServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			OkHttpLoadBalancerProperties.Snapshot properties) {
+		super(delegate);
+		this.refreshIntervalNanos = properties.getRefreshInterval().toNanos();
+		this.ttlNanos = properties.getTtl().toNanos();
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			long age = System.nanoTime() - current.retrievedAt;
+			if (age < refreshIntervalNanos) {
+				return current.flux;
+			}
+			if (age < ttlNanos) {
+				refreshInBackground();
+				return current.flux;
+			}
+		}
+		return refresh().flux().onErrorResume(error -> {
+			Snapshot stale = snapshot;
+			return stale != null ? stale.flux : Flux.error(error);
+		});
+	}
+
+	/**
+	 * Returns the same snapshot for all requests, as it is shared by all of them.
+	 */
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return get();
+	}
+
+	private void refreshInBackground() {
+		if (refresh.get() == null) {
+			refresh().subscribeOn(Schedulers.boundedElastic()).subscribe(instances -> {
+			}, error -> LOG.warn("Could not refresh instance snapshot for " + getServiceId(), error));
+		}
+	}
+
+	private Mono<List<ServiceInstance>> refresh() {
+		Mono<List<ServiceInstance>> current = refresh.get();
+		if (current != null) {
+			return current;
+		}
+		Mono<List<ServiceInstance>> retrieval = Mono.defer(() -> delegate.get().next()).doOnNext(this::update)
+				.doFinally(signal -> refresh.set(null)).cache();
+		return refresh.compareAndSet(null, retrieval) ? retrieval : refresh();
+	}
+
+	private void update(List<ServiceInstance> instances) {
+		snapshot = new Snapshot(instances, System.nanoTime());
+	}
+
+	private static final class Snapshot {
+
+		private final Flux<List<ServiceInstance>> flux;
+
+		private final long retrievedAt;
+
+		private Snapshot(List<ServiceInstance> instances, long retrievedAt) {
+			this.flux = Flux.just(instances);
+			this.retrievedAt = retrievedAt;
+		}
+
+	}
+
+}
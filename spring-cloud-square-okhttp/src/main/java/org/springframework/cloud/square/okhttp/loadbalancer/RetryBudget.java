@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token-bucket budget limiting the number of retries relative to the number of
+ * requests. Each request deposits a fraction of a token into the bucket and each retry
+ * withdraws a whole token, so that, over time, retries cannot add more than the given
+ * ratio of extra load. The bucket holds at most the given number of tokens, which bounds
+ * the retry bursts and starts full.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RetryBudget {
+
+	private static final long TOKEN = 1000;
+
+	private final long deposit;
+
+	private final long capacity;
+
+	private final AtomicLong balance;
+
+	/**
+	 * Creates a new {@link RetryBudget}.
+	 * @param ratio the ratio of retries to requests allowed, for example {@code 0.1} for
+	 * at most 10% extra load
+	 * @param capacity the maximum number of retries that can be accumulated
+	 */
+	public RetryBudget(double ratio, int capacity) {
+		this.deposit = Math.round(ratio * TOKEN);
+		this.capacity = capacity * TOKEN;
+		this.balance = new AtomicLong(this.capacity);
+	}
+
+	/**
+	 * Records a request, depositing the ratio of a token into the bucket.
+	 */
+	public void deposit() {
+		if (balance.get() >= capacity) {
+			return;
+		}
+		balance.getAndUpdate(current -> Math.min(current + deposit, capacity));
+	}
+
+	/**
+	 * Withdraws a token for a retry, if one is available.
+	 * @return whether the retry is allowed
+	 */
+	public boolean tryWithdraw() {
+		long current;
+		do {
+			current = balance.get();
+			if (current < TOKEN) {
+				return false;
+			}
+		}
+		while (!balance.compareAndSet(current, current - TOKEN));
+		return true;
+	}
+
+	/**
+	 * @return the number of retries currently allowed
+	 */
+	public long getAvailableRetries() {
+		return balance.get() / TOKEN;
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ServiceInstanceListSupplier} that ramps up the traffic sent to newly
+ * discovered instances over the slow-start window. While an instance is warming up, it is
+ * included in the returned list with a probability equal to its selection weight, which
+ * grows linearly or exponentially from the configured minimum to {@code 1}. Instances
+ * present in the first retrieved instance list are not warmed up. When the supplier is
+ * used with a {@link LeastOutstandingRequestsLoadBalancer} or a
+ * {@link PeakEwmaLoadBalancer}, all the instances are returned instead, and the load
+ * balancer divides the cost of each instance by its weight, as otherwise the load
+ * balancer would send nearly all the requests to a warming-up instance whenever it is
+ * included, since it has no outstanding requests.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class SlowStartServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private static final int EXPONENTIAL_RAMP_DOUBLINGS = 10;
+
+	private final OkHttpLoadBalancerProperties.SlowStart properties;
+
+	private final long windowNanos;
+
+	private final Map<String, Long> discoveryTimes = new ConcurrentHashMap<>();
+
+	private volatile List<ServiceInstance> lastInstances;
+
+	private volatile long warmUpEnd = System.nanoTime();
+
+	private volatile boolean weightedByLoadBalancer;
+
+	public SlowStartServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			OkHttpLoadBalancerProperties.SlowStart properties) {
+		super(delegate);
+		this.properties = properties;
+		this.windowNanos = properties.getWindow().toNanos();
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return delegate.get().map(this::rampedUp);
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return delegate.get(request).map(this::rampedUp);
+	}
+
+	private List<ServiceInstance> rampedUp(List<ServiceInstance> serviceInstances) {
+		long now = System.nanoTime();
+		List<ServiceInstance> last = lastInstances;
+		if (last != serviceInstances && !serviceInstances.equals(last)) {
+			updateDiscoveryTimes(serviceInstances, now);
+		}
+		if (now - warmUpEnd >= 0 || weightedByLoadBalancer) {
+			return serviceInstances;
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		List<ServiceInstance> selected = null;
+		for (int i = 0; i < serviceInstances.size(); i++) {
+			ServiceInstance instance = serviceInstances.get(i);
+			Long discoveryTime = discoveryTimes.get(LoadBalancerStatistics.key(instance));
+			boolean skipped = discoveryTime != null && random.nextDouble() >= weight(now - discoveryTime);
+			if (skipped && selected == null) {
+				selected = new ArrayList<>(serviceInstances.subList(0, i));
+			}
+			else if (!skipped && selected != null) {
+				selected.add(instance);
+			}
+		}
+		return selected == null || selected.isEmpty() ? serviceInstances : selected;
+	}
+
+	private synchronized void updateDiscoveryTimes(List<ServiceInstance> serviceInstances, long now) {
+		boolean initial = lastInstances == null;
+		Set<String> keys = new HashSet<>();
+		for (ServiceInstance instance : serviceInstances) {
+			String key = LoadBalancerStatistics.key(instance);
+			keys.add(key);
+			if (!discoveryTimes.containsKey(key)) {
+				discoveryTimes.put(key, initial ? now - windowNanos : now);
+				if (!initial) {
+					warmUpEnd = now + windowNanos;
+				}
+			}
+		}
+		discoveryTimes.keySet().retainAll(keys);
+		lastInstances = serviceInstances;
+	}
+
+	/**
+	 * Returns the current selection weight of the given instance.
+	 * @param instance the service instance
+	 * @return the weight, between the configured minimum and {@code 1}
+	 */
+	public double getWeight(ServiceInstance instance) {
+		long now = System.nanoTime();
+		if (now - warmUpEnd >= 0) {
+			return 1;
+		}
+		Long discoveryTime = discoveryTimes.get(LoadBalancerStatistics.key(instance));
+		return discoveryTime != null ? weight(now - discoveryTime) : 1;
+	}
+
+	void weightByLoadBalancer() {
+		if (!weightedByLoadBalancer) {
+			weightedByLoadBalancer = true;
+		}
+	}
+
+	static SlowStartServiceInstanceListSupplier find(ServiceInstanceListSupplier supplier) {
+		while (supplier instanceof DelegatingServiceInstanceListSupplier) {
+			if (supplier instanceof SlowStartServiceInstanceListSupplier) {
+				return (SlowStartServiceInstanceListSupplier) supplier;
+			}
+			supplier = ((DelegatingServiceInstanceListSupplier) supplier).getDelegate();
+		}
+		return null;
+	}
+
+	double weight(long elapsedNanos) {
+		if (elapsedNanos >= windowNanos) {
+			return 1;
+		}
+		double progress = Math.max(elapsedNanos, 0) / (double) windowNanos;
+		double minWeight = properties.getMinWeight();
+		if (properties.getRamp() == OkHttpLoadBalancerProperties.SlowStart.Ramp.EXPONENTIAL) {
+			return Math.max(minWeight, Math.pow(2, EXPONENTIAL_RAMP_DOUBLINGS * (progress - 1)));
+		}
+		return minWeight + (1 - minWeight) * progress;
+	}
+
+}
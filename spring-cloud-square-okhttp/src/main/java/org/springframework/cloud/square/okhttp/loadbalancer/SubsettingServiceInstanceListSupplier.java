@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ServiceInstanceListSupplier} that narrows the instances down to a subset
+ * determined by the client id, so that each client only opens connections to a limited
+ * number of instances of a large service. The instances are ranked by a hash of the
+ * client id and the instance (rendezvous hashing) and the subset consists of the
+ * top-ranked ones. As a result, the subsets of different clients are spread evenly over
+ * the instances, a client keeps the same subset across restarts, and adding or removing
+ * instances or clients only changes the subsets they belong to. The subset size starts at
+ * the configured minimum and is adjusted by one instance at a time, based on the active
+ * requests recorded in {@link LoadBalancerStatistics}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class SubsettingServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private static final Log LOG = LogFactory.getLog(SubsettingServiceInstanceListSupplier.class);
+
+	private final String clientId;
+
+	private final LoadBalancerStatistics statistics;
+
+	private final OkHttpLoadBalancerProperties.Subset properties;
+
+	private final long adjustmentIntervalNanos;
+
+	private volatile Ranking ranking = new Ranking(Collections.emptyList(), Collections.emptyList());
+
+	private volatile int size;
+
+	private volatile long lastAdjustment = System.nanoTime();
+
+	public SubsettingServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			LoadBalancerStatistics statistics, OkHttpLoadBalancerProperties.Subset properties) {
+		super(delegate);
+		this.clientId = properties.getClientId() != null ? properties.getClientId() : localHostName();
+		this.statistics = statistics;
+		this.properties = properties;
+		this.adjustmentIntervalNanos = properties.getAdjustmentInterval().toNanos();
+		this.size = Math.max(properties.getMinSize(), 1);
+	}
+
+	private static String localHostName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		}
+		catch (UnknownHostException e) {
+			LOG.warn("Could not resolve local host name, using a random subset client id", e);
+			return UUID.randomUUID().toString();
+		}
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return delegate.get().map(this::subset);
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return delegate.get(request).map(this::subset);
+	}
+
+	private List<ServiceInstance> subset(List<ServiceInstance> serviceInstances) {
+		Ranking current = ranking;
+		if (!current.matches(serviceInstances)) {
+			current = new Ranking(serviceInstances, rank(serviceInstances));
+			ranking = current;
+		}
+		List<ServiceInstance> ranked = current.ranked;
+		if (ranked.size() <= properties.getMinSize()) {
+			return serviceInstances;
+		}
+		int subsetSize = adjustedSize(ranked);
+		return ranked.subList(0, Math.min(subsetSize, ranked.size()));
+	}
+
+	private int adjustedSize(List<ServiceInstance> ranked) {
+		int currentSize = Math.min(size, ranked.size());
+		long now = System.nanoTime();
+		if (now - lastAdjustment < adjustmentIntervalNanos) {
+			return currentSize;
+		}
+		lastAdjustment = now;
+		long activeRequests = 0;
+		for (int i = 0; i < currentSize; i++) {
+			activeRequests += statistics.getActiveRequests(ranked.get(i));
+		}
+		long target = (long) properties.getTargetActiveRequestsPerInstance() * currentSize;
+		int adjustedSize = currentSize;
+		if (activeRequests > target && currentSize < ranked.size()) {
+			adjustedSize++;
+		}
+		else if (activeRequests < target - properties.getTargetActiveRequestsPerInstance()
+				&& currentSize > properties.getMinSize()) {
+			adjustedSize--;
+		}
+		if (adjustedSize != currentSize && LOG.isDebugEnabled()) {
+			LOG.debug("Adjusting subset size for service " + getServiceId() + " to " + adjustedSize);
+		}
+		size = adjustedSize;
+		return adjustedSize;
+	}
+
+	private List<ServiceInstance> rank(List<ServiceInstance> serviceInstances) {
+		List<RankedInstance> rankedInstances = new ArrayList<>(serviceInstances.size());
+		for (ServiceInstance instance : serviceInstances) {
+			rankedInstances.add(new RankedInstance(instance,
+					ConsistentHashLoadBalancer.hash(clientId + "|" + LoadBalancerStatistics.key(instance))));
+		}
+		rankedInstances.sort(Comparator.comparingLong(rankedInstance -> rankedInstance.rank));
+		List<ServiceInstance> ranked = new ArrayList<>(rankedInstances.size());
+		for (RankedInstance rankedInstance : rankedInstances) {
+			ranked.add(rankedInstance.instance);
+		}
+		return ranked;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	private static final class RankedInstance {
+
+		private final ServiceInstance instance;
+
+		private final long rank;
+
+		private RankedInstance(ServiceInstance instance, long rank) {
+			this.instance = instance;
+			this.rank = rank;
+		}
+
+	}
+
+	private static final class Ranking {
+
+		private final List<ServiceInstance> source;
+
+		private final List<ServiceInstance> ranked;
+
+		private Ranking(List<ServiceInstance> source, List<ServiceInstance> ranked) {
+			this.source = source;
+			this.ranked = ranked;
+		}
+
+		boolean matches(List<ServiceInstance> serviceInstances) {
+			return source == serviceInstances || source.equals(serviceInstances);
+		}
+
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ReactorServiceInstanceLoadBalancer} that selects instances at random with a
+ * probability proportional to the weight they publish in their metadata (under the
+ * {@code weight} key by default), so that instances running on larger hardware receive a
+ * larger share of the requests. Instances without a valid weight get a weight of
+ * {@code 1}, and instances with a weight of {@code 0} are only selected if all the
+ * instances have it. The selection uses an alias table, which takes constant time per
+ * request and is only rebuilt when the instance list changes.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class WeightedLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private static final Log LOG = LogFactory.getLog(WeightedLoadBalancer.class);
+
+	/**
+	 * The default metadata key of the instance weight.
+	 */
+	public static final String DEFAULT_WEIGHT_METADATA_KEY = "weight";
+
+	private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+	private final String serviceId;
+
+	private final String weightMetadataKey;
+
+	private volatile AliasTable table = AliasTable.EMPTY;
+
+	public WeightedLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+			String serviceId) {
+		this(serviceInstanceListSupplierProvider, serviceId, DEFAULT_WEIGHT_METADATA_KEY);
+	}
+
+	public WeightedLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+			String serviceId, String weightMetadataKey) {
+		this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+		this.serviceId = serviceId;
+		this.weightMetadataKey = weightMetadataKey;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+				.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		return supplier.get(request).next().map(instances -> processInstanceResponse(supplier, instances));
+	}
+
+	private Response<ServiceInstance> processInstanceResponse(ServiceInstanceListSupplier supplier,
+			List<ServiceInstance> instances) {
+		Response<ServiceInstance> response = getInstanceResponse(instances);
+		if (supplier instanceof SelectedInstanceCallback && response.hasServer()) {
+			((SelectedInstanceCallback) supplier).selectedServiceInstance(response.getServer());
+		}
+		return response;
+	}
+
+	private Response<ServiceInstance> getInstanceResponse(List<ServiceInstance> instances) {
+		if (instances.isEmpty()) {
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("No servers available for service: " + serviceId);
+			}
+			return new EmptyResponse();
+		}
+		return new DefaultResponse(table(instances).next());
+	}
+
+	private AliasTable table(List<ServiceInstance> instances) {
+		AliasTable current = table;
+		if (current.matches(instances)) {
+			return current;
+		}
+		current = AliasTable.build(instances, weights(instances));
+		table = current;
+		return current;
+	}
+
+	private double[] weights(List<ServiceInstance> instances) {
+		double[] weights = new double[instances.size()];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = weight(instances.get(i));
+		}
+		return weights;
+	}
+
+	double weight(ServiceInstance instance) {
+		String weight = instance.getMetadata() != null ? instance.getMetadata().get(weightMetadataKey) : null;
+		if (weight == null) {
+			return 1;
+		}
+		try {
+			double value = Double.parseDouble(weight.trim());
+			if (value >= 0 && !Double.isInfinite(value)) {
+				return value;
+			}
+		}
+		catch (NumberFormatException ignored) {
+		}
+		if (LOG.isWarnEnabled()) {
+			LOG.warn("Invalid weight '" + weight + "' of instance " + instance.getInstanceId() + " of service "
+					+ serviceId + ", using 1");
+		}
+		return 1;
+	}
+
+	/**
+	 * Walker's alias table, built with Vose's method.
+	 */
+	static final class AliasTable {
+
+		static final AliasTable EMPTY = new AliasTable(Collections.emptyList(), new double[0], new int[0]);
+
+		private final List<ServiceInstance> source;
+
+		private final double[] probabilities;
+
+		private final int[] aliases;
+
+		private AliasTable(List<ServiceInstance> source, double[] probabilities, int[] aliases) {
+			this.source = source;
+			this.probabilities = probabilities;
+			this.aliases = aliases;
+		}
+
+		boolean matches(List<ServiceInstance> serviceInstances) {
+			return source == serviceInstances || source.equals(serviceInstances);
+		}
+
+		ServiceInstance next() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int column = random.nextInt(probabilities.length);
+			return source.get(random.nextDouble() < probabilities[column] ? column : aliases[column]);
+		}
+
+		static AliasTable build(List<ServiceInstance> instances, double[] weights) {
+			int size = weights.length;
+			double total = 0;
+			for (double weight : weights) {
+				total += weight;
+			}
+			if (total == 0) {
+				weights = new double[size];
+				Arrays.fill(weights, 1);
+				total = size;
+			}
+			double[] scaled = new double[size];
+			Deque<Integer> small = new ArrayDeque<>();
+			Deque<Integer> large = new ArrayDeque<>();
+			for (int i = 0; i < size; i++) {
+				scaled[i] = weights[i] * size / total;
+				(scaled[i] < 1 ? small : large).push(i);
+			}
+			double[] probabilities = new double[size];
+			int[] aliases = new int[size];
+			while (!small.isEmpty() && !large.isEmpty()) {
+				int less = small.pop();
+				int more = large.pop();
+				probabilities[less] = scaled[less];
+				aliases[less] = more;
+				scaled[more] = scaled[more] + scaled[less] - 1;
+				(scaled[more] < 1 ? small : large).push(more);
+			}
+			// what remains is 1 up to floating-point rounding
+			while (!large.isEmpty()) {
+				probabilities[large.pop()] = 1;
+			}
+			while (!small.isEmpty()) {
+				probabilities[small.pop()] = 1;
+			}
+			return new AliasTable(instances, probabilities, aliases);
+		}
+
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.loadbalancer.config.LoadBalancerZoneConfig;
+import org.springframework.cloud.loadbalancer.core.DelegatingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * A {@link ServiceInstanceListSupplier} that narrows the instances down to the ones whose
+ * {@code zone} metadata matches the local zone, set with the
+ * {@code spring.cloud.loadbalancer.zone} property. When the local zone does not have
+ * enough available instances or its instances are saturated (as recorded in
+ * {@link LoadBalancerStatistics}), the instances from all the zones are returned, so that
+ * the requests spill over to the other zones. The routing decision is cached until the
+ * instance list changes or the decision TTL expires.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class ZoneAffinityServiceInstanceListSupplier extends DelegatingServiceInstanceListSupplier {
+
+	private static final Log LOG = LogFactory.getLog(ZoneAffinityServiceInstanceListSupplier.class);
+
+	private static final String ZONE = "zone";
+
+	private final LoadBalancerZoneConfig zoneConfig;
+
+	private final LoadBalancerStatistics statistics;
+
+	private final OkHttpLoadBalancerProperties.ZoneAffinity properties;
+
+	private final long decisionTtlNanos;
+
+	private volatile Decision decision;
+
+	public ZoneAffinityServiceInstanceListSupplier(ServiceInstanceListSupplier delegate,
+			LoadBalancerZoneConfig zoneConfig, LoadBalancerStatistics statistics,
+			OkHttpLoadBalancerProperties.ZoneAffinity properties) {
+		super(delegate);
+		this.zoneConfig = zoneConfig;
+		this.statistics = statistics;
+		this.properties = properties;
+		this.decisionTtlNanos = properties.getDecisionTtl().toNanos();
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get() {
+		return delegate.get().map(this::filteredByZone);
+	}
+
+	@Override
+	public Flux<List<ServiceInstance>> get(Request request) {
+		return delegate.get(request).map(this::filteredByZone);
+	}
+
+	private List<ServiceInstance> filteredByZone(List<ServiceInstance> serviceInstances) {
+		String zone = zoneConfig.getZone();
+		if (zone == null) {
+			return serviceInstances;
+		}
+		long now = System.nanoTime();
+		Decision current = decision;
+		boolean sameInstances = current != null && zone.equalsIgnoreCase(current.zone)
+				&& (current.instances == serviceInstances || current.instances.equals(serviceInstances));
+		if (sameInstances && now - current.timestamp < decisionTtlNanos) {
+			return current.selected;
+		}
+		List<ServiceInstance> localInstances = sameInstances ? current.localInstances
+				: localInstances(zone, serviceInstances);
+		boolean spillover = shouldSpillOver(localInstances);
+		if (LOG.isDebugEnabled() && (current == null || current.spillover != spillover)) {
+			LOG.debug((spillover ? "Spilling over from zone " : "Routing to zone ") + zone + " for service "
+					+ getServiceId());
+		}
+		Decision updated = new Decision(zone, serviceInstances, localInstances,
+				spillover ? serviceInstances : localInstances, spillover, now);
+		decision = updated;
+		return updated.selected;
+	}
+
+	private List<ServiceInstance> localInstances(String zone, List<ServiceInstance> serviceInstances) {
+		List<ServiceInstance> localInstances = new ArrayList<>();
+		for (ServiceInstance instance : serviceInstances) {
+			String instanceZone = instance.getMetadata() != null ? instance.getMetadata().get(ZONE) : null;
+			if (zone.equalsIgnoreCase(instanceZone)) {
+				localInstances.add(instance);
+			}
+		}
+		return localInstances;
+	}
+
+	private boolean shouldSpillOver(List<ServiceInstance> localInstances) {
+		if (localInstances.isEmpty() || localInstances.size() < properties.getMinInstances()) {
+			return true;
+		}
+		int maxActiveRequests = properties.getMaxActiveRequestsPerInstance();
+		if (maxActiveRequests < 1) {
+			return false;
+		}
+		long activeRequests = 0;
+		for (ServiceInstance instance : localInstances) {
+			activeRequests += statistics.getActiveRequests(instance);
+		}
+		return activeRequests >= (long) maxActiveRequests * localInstances.size();
+	}
+
+	private static final class Decision {
+
+		private final String zone;
+
+		private final List<ServiceInstance> instances;
+
+		private final List<ServiceInstance> localInstances;
+
+		private final List<ServiceInstance> selected;
+
+		private final boolean spillover;
+
+		private final long timestamp;
+
+		private Decision(String zone, List<ServiceInstance> instances, List<ServiceInstance> localInstances,
+				List<ServiceInstance> selected, boolean spillover, long timestamp) {
+			this.zone = zone;
+			this.instances = instances;
+			this.localInstances = localInstances;
+			this.selected = selected;
+			this.spillover = spillover;
+			this.timestamp = timestamp;
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.virtual;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientResources;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientsConfigurer;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientsProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * Configuration that runs the asynchronous calls of the OkHttp clients in virtual
+ * threads. The dispatchers of the {@link OkHttpClientResources} start a virtual thread
+ * for each call, and each Retrofit client without a configured dispatcher gets a
+ * dispatcher of the registry named after it, so every client keeps its own dispatcher and
+ * limits and only changes the threads its calls run in.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("spring.cloud.square.okhttp.virtual-threads.enabled")
+@Conditional(OkHttpVirtualThreadsConfiguration.OnVirtualThreadsCondition.class)
+@EnableConfigurationProperties(OkHttpVirtualThreadsProperties.class)
+public class OkHttpVirtualThreadsConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public OkHttpClientResources okHttpVirtualThreadsClientResources() {
+		return new OkHttpClientResources(VirtualThreads.newThreadPerTaskExecutor("okhttp-virtual-"));
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public OkHttpClientsConfigurer okHttpVirtualThreadsClientsConfigurer(OkHttpClientsProperties properties,
+			OkHttpClientResources resources) {
+		return new OkHttpClientsConfigurer(properties, resources, true);
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnProperty(value = "spring.cloud.square.okhttp.virtual-threads.pinning.enabled", matchIfMissing = true)
+	@ConditionalOnClass(name = "jdk.jfr.consumer.RecordingStream")
+	protected static class VirtualThreadPinningConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public VirtualThreadPinningMonitor virtualThreadPinningMonitor(OkHttpVirtualThreadsProperties properties) {
+			return new VirtualThreadPinningMonitor(properties.getPinning().getThreshold());
+		}
+
+		@Configuration(proxyBeanMethods = false)
+		@ConditionalOnClass(MeterRegistry.class)
+		protected static class VirtualThreadPinningMetricsConfiguration {
+
+			@Bean
+			@ConditionalOnMissingBean
+			public VirtualThreadPinningMeterBinder virtualThreadPinningMeterBinder(
+					VirtualThreadPinningMonitor monitor) {
+				return new VirtualThreadPinningMeterBinder(monitor);
+			}
+
+		}
+
+	}
+
+	static class OnVirtualThreadsCondition extends SpringBootCondition {
+
+		@Override
+		public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+			ConditionMessage.Builder message = ConditionMessage.forCondition("Virtual threads");
+			if (VirtualThreads.isSupported()) {
+				return ConditionOutcome.match(message.available("on this JVM"));
+			}
+			return ConditionOutcome.noMatch(message.notAvailable("before JDK 21"));
+		}
+
+	}
+
+}
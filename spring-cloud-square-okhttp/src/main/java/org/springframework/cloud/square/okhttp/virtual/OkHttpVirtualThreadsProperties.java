@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.virtual;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Properties of the virtual threads running the calls of OkHttp clients.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@ConfigurationProperties("spring.cloud.square.okhttp.virtual-threads")
+public class OkHttpVirtualThreadsProperties {
+
+	/**
+	 * Enables running the asynchronous calls of OkHttp clients in virtual threads, on JDK
+	 * 21 and later.
+	 */
+	private boolean enabled;
+
+	private final Pinning pinning = new Pinning();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Pinning getPinning() {
+		return pinning;
+	}
+
+	public static class Pinning {
+
+		/**
+		 * Enables logging the virtual threads that stay pinned to their carrier thread,
+		 * recorded with JDK Flight Recorder.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * The time after which a virtual thread pinned to its carrier thread is reported.
+		 */
+		private Duration threshold = Duration.ofMillis(20);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getThreshold() {
+			return threshold;
+		}
+
+		public void setThreshold(Duration threshold) {
+			this.threshold = threshold;
+		}
+
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.virtual;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the virtual threads reported by the
+ * {@link VirtualThreadPinningMonitor} as metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class VirtualThreadPinningMeterBinder implements MeterBinder {
+
+	private final VirtualThreadPinningMonitor monitor;
+
+	public VirtualThreadPinningMeterBinder(VirtualThreadPinningMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionTimer
+				.builder("okhttp.virtual.threads.pinned", monitor, VirtualThreadPinningMonitor::getPinnedThreads,
+						VirtualThreadPinningMonitor::getPinnedNanos, TimeUnit.NANOSECONDS)
+				.description("The time virtual threads have stayed pinned to their carrier thread for longer than "
+						+ "the threshold")
+				.register(registry);
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.virtual;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Reports the virtual threads that stay pinned to their carrier thread for longer than a
+ * threshold, for instance while blocking in a {@code synchronized} block. A pinned
+ * virtual thread blocks its carrier thread, so a few of them are enough to stall all the
+ * other virtual threads. The {@value #PINNED_EVENT} events are recorded with a JDK Flight
+ * Recorder stream, including the stack trace of the pinned thread, and logged.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class VirtualThreadPinningMonitor implements InitializingBean, DisposableBean {
+
+	/**
+	 * The JDK Flight Recorder event recorded when a virtual thread parks while pinned.
+	 */
+	public static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+	private static final Log LOG = LogFactory.getLog(VirtualThreadPinningMonitor.class);
+
+	private final Duration threshold;
+
+	private final LongAdder pinnedThreads = new LongAdder();
+
+	private final LongAdder pinnedNanos = new LongAdder();
+
+	private volatile AutoCloseable stream;
+
+	public VirtualThreadPinningMonitor(Duration threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		try {
+			// the JFR streaming API is only available on JDK 14 and later
+			ClassLoader classLoader = VirtualThreadPinningMonitor.class.getClassLoader();
+			Class<?> streamType = ClassUtils.forName("jdk.jfr.consumer.RecordingStream", classLoader);
+			Class<?> settingsType = ClassUtils.forName("jdk.jfr.EventSettings", classLoader);
+			Method getDuration = ClassUtils.forName("jdk.jfr.consumer.RecordedEvent", classLoader)
+					.getMethod("getDuration");
+			Object recordingStream = streamType.getConstructor().newInstance();
+			Object settings = streamType.getMethod("enable", String.class).invoke(recordingStream, PINNED_EVENT);
+			settingsType.getMethod("withThreshold", Duration.class).invoke(settings, threshold);
+			settingsType.getMethod("withStackTrace").invoke(settings);
+			Consumer<Object> handler = event -> record((Duration) ReflectionUtils.invokeMethod(getDuration, event),
+					event.toString());
+			streamType.getMethod("onEvent", String.class, Consumer.class).invoke(recordingStream, PINNED_EVENT,
+					handler);
+			streamType.getMethod("startAsync").invoke(recordingStream);
+			stream = (AutoCloseable) recordingStream;
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			LOG.warn("Could not record the pinned virtual threads with JDK Flight Recorder", e);
+		}
+	}
+
+	void record(Duration duration, String event) {
+		pinnedThreads.increment();
+		pinnedNanos.add(duration.toNanos());
+		if (LOG.isWarnEnabled()) {
+			LOG.warn("Virtual thread pinned to its carrier thread for " + duration.toMillis() + "ms: " + event);
+		}
+	}
+
+	/**
+	 * @return whether the pinned virtual threads are recorded
+	 */
+	public boolean isRunning() {
+		return stream != null;
+	}
+
+	public Duration getThreshold() {
+		return threshold;
+	}
+
+	public long getPinnedThreads() {
+		return pinnedThreads.sum();
+	}
+
+	public long getPinnedNanos() {
+		return pinnedNanos.sum();
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		AutoCloseable recordingStream = stream;
+		if (recordingStream != null) {
+			stream = null;
+			recordingStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.virtual;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Creates executors running each task in a virtual thread. Virtual threads are only
+ * available on JDK 21 and later, so they are created reflectively.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL = ClassUtils.getMethodIfAvailable(Thread.class, "ofVirtual");
+
+	private VirtualThreads() {
+		throw new IllegalStateException("Can't instantiate a utility class");
+	}
+
+	/**
+	 * @return whether the JVM supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task.
+	 * @param prefix the prefix of the names of the threads, followed by a counter
+	 * @return the executor
+	 * @throws IllegalStateException if the JVM does not support virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+		if (!isSupported()) {
+			throw new IllegalStateException("Virtual threads require JDK 21 or later");
+		}
+		try {
+			ClassLoader classLoader = VirtualThreads.class.getClassLoader();
+			Class<?> builderType = ClassUtils.forName("java.lang.Thread$Builder", classLoader);
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			Method newThreadPerTaskExecutor = ReflectionUtils.findMethod(Executors.class, "newThreadPerTaskExecutor",
+					ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			throw new IllegalStateException("Could not create a virtual thread executor", e);
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.core;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.square.okhttp.config.OkHttpAutoConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link OkHttpClientsConfigurer} and {@link OkHttpClientResources}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class OkHttpClientsConfigurerTests {
+
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(OkHttpAutoConfiguration.class));
+
+	private final OkHttpClient client = new OkHttpClient();
+
+	private final OkHttpClientsProperties properties = new OkHttpClientsProperties();
+
+	private final OkHttpClientResources resources = new OkHttpClientResources();
+
+	private final OkHttpClientsConfigurer configurer = new OkHttpClientsConfigurer(properties, resources);
+
+	@AfterEach
+	void tearDown() {
+		resources.destroy();
+	}
+
+	@Test
+	void shouldReturnClientWhenNoPropertiesSet() {
+		contextRunner
+				.run(context -> assertThat(context.getBean(OkHttpClientsConfigurer.class).configure("test", client))
+						.isSameAs(client));
+	}
+
+	@Test
+	void shouldApplyClientProperties() {
+		contextRunner.withPropertyValues("spring.cloud.square.okhttp.clients.test.connect-timeout=1s",
+				"spring.cloud.square.okhttp.clients.test.read-timeout=2s",
+				"spring.cloud.square.okhttp.clients.test.write-timeout=3s",
+				"spring.cloud.square.okhttp.clients.test.call-timeout=4s",
+				"spring.cloud.square.okhttp.clients.test.protocols=http_1_1",
+				"spring.cloud.square.okhttp.clients.test.retry-on-connection-failure=false",
+				"spring.cloud.square.okhttp.clients.test.follow-redirects=false").run(context -> {
+					OkHttpClient configured = context.getBean(OkHttpClientsConfigurer.class).configure("test", client);
+
+					assertThat(configured.connectTimeoutMillis()).isEqualTo(1000);
+					assertThat(configured.readTimeoutMillis()).isEqualTo(2000);
+					assertThat(configured.writeTimeoutMillis()).isEqualTo(3000);
+					assertThat(configured.callTimeoutMillis()).isEqualTo(4000);
+					assertThat(configured.protocols()).containsExactly(Protocol.HTTP_1_1);
+					assertThat(configured.retryOnConnectionFailure()).isFalse();
+					assertThat(configured.followRedirects()).isFalse();
+					assertThat(configured.connectionPool()).isSameAs(client.connectionPool());
+					assertThat(configured.dispatcher()).isSameAs(client.dispatcher());
+				});
+	}
+
+	@Test
+	void shouldFallBackToDefaultClientProperties() {
+		OkHttpClientsProperties.Client defaultClient = new OkHttpClientsProperties.Client();
+		defaultClient.setReadTimeout(Duration.ofSeconds(2));
+		defaultClient.setWriteTimeout(Duration.ofSeconds(3));
+		OkHttpClientsProperties.Client testClient = new OkHttpClientsProperties.Client();
+		testClient.setReadTimeout(Duration.ofSeconds(5));
+		properties.getClients().put(OkHttpClientsProperties.DEFAULT_CLIENT, defaultClient);
+		properties.getClients().put("test", testClient);
+
+		OkHttpClient test = configurer.configure("test", client);
+		OkHttpClient other = configurer.configure("other", client);
+
+		assertThat(test.readTimeoutMillis()).isEqualTo(5000);
+		assertThat(test.writeTimeoutMillis()).isEqualTo(3000);
+		assertThat(other.readTimeoutMillis()).isEqualTo(2000);
+		assertThat(other.writeTimeoutMillis()).isEqualTo(3000);
+		assertThat(client.readTimeoutMillis()).isEqualTo(10000);
+	}
+
+	@Test
+	void shouldUseDedicatedConnectionPoolAndDispatcher() {
+		OkHttpClientsProperties.Client testClient = new OkHttpClientsProperties.Client();
+		testClient.getConnectionPool().setMaxIdleConnections(2);
+		testClient.getDispatcher().setMaxRequestsPerHost(20);
+		properties.setClients(Collections.singletonMap("test", testClient));
+
+		OkHttpClient configured = configurer.configure("test", client);
+
+		assertThat(configured.connectionPool()).isNotSameAs(client.connectionPool());
+		assertThat(configured.dispatcher()).isNotSameAs(client.dispatcher());
+		assertThat(configured.dispatcher().getMaxRequestsPerHost()).isEqualTo(20);
+		assertThat(configured.dispatcher().getMaxRequests()).isEqualTo(64);
+		assertThat(client.dispatcher().getMaxRequestsPerHost()).isEqualTo(5);
+		assertThat(resources.getConnectionPools()).containsOnlyKeys("test");
+		assertThat(resources.getDispatchers()).containsOnlyKeys("test");
+		// the same pool and dispatcher when the client is configured again
+		OkHttpClient reconfigured = configurer.configure("test", new OkHttpClient());
+		assertThat(reconfigured.connectionPool()).isSameAs(configured.connectionPool());
+		assertThat(reconfigured.dispatcher()).isSameAs(configured.dispatcher());
+	}
+
+	@Test
+	void shouldUseDispatcherPerClientWhenEnabled() {
+		OkHttpClientsProperties.Client otherClient = new OkHttpClientsProperties.Client();
+		otherClient.setDispatcherName("shared");
+		properties.getClients().put("other", otherClient);
+		OkHttpClientsConfigurer dispatcherPerClient = new OkHttpClientsConfigurer(properties, resources, true);
+
+		OkHttpClient test = dispatcherPerClient.configure("test", client);
+		OkHttpClient other = dispatcherPerClient.configure("other", client);
+
+		assertThat(test.dispatcher()).isSameAs(resources.getDispatchers().get("test"));
+		assertThat(test.dispatcher().executorService()).isSameAs(resources.getExecutorService());
+		assertThat(test.dispatcher().getMaxRequests()).isEqualTo(64);
+		assertThat(test.dispatcher().getMaxRequestsPerHost()).isEqualTo(5);
+		assertThat(test.connectionPool()).isSameAs(client.connectionPool());
+		assertThat(other.dispatcher()).isSameAs(resources.getDispatchers().get("shared"));
+		assertThat(resources.getDispatchers()).containsOnlyKeys("test", "shared");
+	}
+
+	@Test
+	void shouldShareDefaultConnectionPoolAndDispatcher() {
+		OkHttpClientsProperties.Client defaultClient = new OkHttpClientsProperties.Client();
+		defaultClient.getConnectionPool().setMaxIdleConnections(10);
+		defaultClient.getDispatcher().setMaxRequests(32);
+		properties.getClients().put(OkHttpClientsProperties.DEFAULT_CLIENT, defaultClient);
+
+		OkHttpClient first = configurer.configure("first", new OkHttpClient());
+		OkHttpClient second = configurer.configure("second", new OkHttpClient());
+
+		assertThat(first.connectionPool()).isSameAs(second.connectionPool());
+		assertThat(first.dispatcher()).isSameAs(second.dispatcher());
+		assertThat(first.dispatcher().getMaxRequests()).isEqualTo(32);
+		assertThat(resources.getConnectionPools()).containsOnlyKeys(OkHttpClientsProperties.DEFAULT_CLIENT);
+	}
+
+	@Test
+	void shouldShareNamedConnectionPoolsAndDispatchers() {
+		OkHttpClientsProperties.Dispatcher sharedDispatcher = new OkHttpClientsProperties.Dispatcher();
+		sharedDispatcher.setMaxRequestsPerHost(10);
+		properties.getDispatchers().put("shared", sharedDispatcher);
+		OkHttpClientsProperties.Client defaultClient = new OkHttpClientsProperties.Client();
+		defaultClient.setConnectionPoolName("shared");
+		defaultClient.setDispatcherName("shared");
+		OkHttpClientsProperties.Client isolatedClient = new OkHttpClientsProperties.Client();
+		isolatedClient.getConnectionPool().setKeepAlive(Duration.ofSeconds(30));
+		isolatedClient.getDispatcher().setMaxRequestsPerHost(2);
+		OkHttpClientsProperties.Client neighbourClient = new OkHttpClientsProperties.Client();
+		neighbourClient.setDispatcherName("isolated");
+		properties.getClients().put(OkHttpClientsProperties.DEFAULT_CLIENT, defaultClient);
+		properties.getClients().put("isolated", isolatedClient);
+		properties.getClients().put("neighbour", neighbourClient);
+
+		OkHttpClient first = configurer.configure("first", new OkHttpClient());
+		OkHttpClient second = configurer.configure("second", new OkHttpClient());
+		OkHttpClient isolated = configurer.configure("isolated", new OkHttpClient());
+		OkHttpClient neighbour = configurer.configure("neighbour", new OkHttpClient());
+
+		assertThat(first.connectionPool()).isSameAs(second.connectionPool());
+		assertThat(first.dispatcher()).isSameAs(second.dispatcher());
+		assertThat(first.dispatcher().getMaxRequestsPerHost()).isEqualTo(10);
+		assertThat(isolated.connectionPool()).isNotSameAs(first.connectionPool());
+		assertThat(isolated.dispatcher()).isNotSameAs(first.dispatcher());
+		assertThat(isolated.dispatcher().getMaxRequestsPerHost()).isEqualTo(2);
+		assertThat(neighbour.connectionPool()).isSameAs(first.connectionPool());
+		assertThat(neighbour.dispatcher()).isSameAs(isolated.dispatcher());
+		// the dispatchers only have limits of their own, the threads are shared
+		assertThat(isolated.dispatcher().executorService()).isSameAs(first.dispatcher().executorService());
+		assertThat(resources.getConnectionPools()).containsOnlyKeys("shared", "isolated");
+		assertThat(resources.getDispatchers()).containsOnlyKeys("shared", "isolated");
+	}
+
+	@Test
+	void shouldRegisterMeters() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new OkHttpClientResourcesMeterBinder(resources).bindTo(registry);
+		OkHttpClientsProperties.Client defaultClient = new OkHttpClientsProperties.Client();
+		defaultClient.setConnectionPoolName("shared");
+		defaultClient.setDispatcherName("shared");
+		properties.getClients().put(OkHttpClientsProperties.DEFAULT_CLIENT, defaultClient);
+
+		configurer.configure("test", client);
+
+		assertThat(registry.get("okhttp.connection.pool.connections").tag("pool", "shared").tag("state", "idle").gauge()
+				.value()).isZero();
+		assertThat(registry.get("okhttp.dispatcher.calls").tag("dispatcher", "shared").tag("state", "queued").gauge()
+				.value()).isZero();
+		assertThat(registry.get("okhttp.dispatcher.threads").gauge().value()).isZero();
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.square.okhttp.config.OkHttpAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link CachingDns}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class CachingDnsTests {
+
+	private final TestDns delegate = new TestDns();
+
+	private final OkHttpDnsProperties properties = new OkHttpDnsProperties();
+
+	private CachingDns dns;
+
+	@AfterEach
+	void tearDown() {
+		if (dns != null) {
+			dns.destroy();
+		}
+	}
+
+	@Test
+	void shouldReturnIpLiteralsWithoutLookup() throws UnknownHostException {
+		dns = new CachingDns(delegate, properties);
+
+		assertThat(dns.lookup("10.0.0.12")).containsExactly(InetAddress.getByAddress(new byte[] { 10, 0, 0, 12 }));
+		assertThat(dns.lookup("::1")).containsExactly(InetAddress.getByName("::1"));
+		assertThat(delegate.lookups.get()).isZero();
+		assertThat(dns.getIpLiteralLookups()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldResolveHostnamesThatLookLikeIpAddresses() throws UnknownHostException {
+		dns = new CachingDns(delegate, properties);
+
+		dns.lookup("10.0.0");
+		dns.lookup("10.0.0.256");
+		dns.lookup("10.0.0.12.example");
+
+		assertThat(delegate.lookups.get()).isEqualTo(3);
+	}
+
+	@Test
+	void shouldCacheHostnames() throws UnknownHostException {
+		dns = new CachingDns(delegate, properties);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(dns.lookup("first.example")).containsExactly(delegate.address);
+		}
+
+		assertThat(delegate.lookups.get()).isEqualTo(1);
+		assertThat(dns.getResolvedLookups()).isEqualTo(1);
+		assertThat(dns.getCachedLookups()).isEqualTo(4);
+	}
+
+	@Test
+	void shouldRefreshHostnamesInBackgroundBeforeTheyExpire() throws Exception {
+		properties.setRefreshInterval(Duration.ofMillis(50));
+		properties.setTtl(Duration.ofHours(1));
+		dns = new CachingDns(delegate, properties);
+		InetAddress first = delegate.address;
+		dns.lookup("first.example");
+		delegate.address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 13 });
+		Thread.sleep(100);
+
+		assertThat(dns.lookup("first.example")).containsExactly(first);
+		await(() -> lookup("first.example").contains(delegate.address));
+		assertThat(delegate.lookups.get()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldResolveExpiredHostnames() throws Exception {
+		properties.setRefreshInterval(Duration.ofMillis(50));
+		properties.setTtl(Duration.ofMillis(50));
+		dns = new CachingDns(delegate, properties);
+		dns.lookup("first.example");
+		delegate.address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 13 });
+		Thread.sleep(100);
+
+		assertThat(dns.lookup("first.example")).containsExactly(delegate.address);
+	}
+
+	@Test
+	void shouldKeepAddressesWhenRefreshFails() throws Exception {
+		properties.setRefreshInterval(Duration.ofMillis(50));
+		properties.setTtl(Duration.ofHours(1));
+		dns = new CachingDns(delegate, properties);
+		InetAddress first = delegate.address;
+		dns.lookup("first.example");
+		delegate.failing = true;
+		Thread.sleep(100);
+
+		assertThat(dns.lookup("first.example")).containsExactly(first);
+		await(() -> dns.getFailedResolutions() == 1);
+		assertThat(dns.lookup("first.example")).containsExactly(first);
+	}
+
+	@Test
+	void shouldNotCacheFailedLookups() {
+		delegate.failing = true;
+		dns = new CachingDns(delegate, properties);
+
+		assertThatExceptionOfType(UnknownHostException.class).isThrownBy(() -> dns.lookup("first.example"));
+		assertThatExceptionOfType(UnknownHostException.class).isThrownBy(() -> dns.lookup("first.example"));
+		assertThat(delegate.lookups.get()).isEqualTo(2);
+		assertThat(dns.getCachedHostnames()).isZero();
+	}
+
+	@Test
+	void shouldExposeMetrics() throws UnknownHostException {
+		dns = new CachingDns(delegate, properties);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new CachingDnsMeterBinder(dns).bindTo(registry);
+
+		dns.lookup("10.0.0.12");
+		dns.lookup("first.example");
+		dns.lookup("first.example");
+
+		assertThat(registry.get("okhttp.dns.lookups").tag("source", "ip-literal").functionCounter().count())
+				.isEqualTo(1);
+		assertThat(registry.get("okhttp.dns.lookups").tag("source", "cached").functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get("okhttp.dns.lookups").tag("source", "resolved").functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get("okhttp.dns.resolutions").tag("outcome", "success").functionTimer().count())
+				.isEqualTo(1);
+		assertThat(registry.get("okhttp.dns.cached.hostnames").gauge().value()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRegisterDnsWithLoadBalancedBuilders() {
+		new ApplicationContextRunner().withConfiguration(AutoConfigurations.of(OkHttpAutoConfiguration.class))
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("spring.cloud.square.okhttp.dns.enabled=true")
+				.run(context -> assertThat(context.getBean(OkHttpClient.Builder.class).build().dns())
+						.isSameAs(context.getBean(CachingDns.class)));
+	}
+
+	private List<InetAddress> lookup(String hostname) {
+		try {
+			return dns.lookup(hostname);
+		}
+		catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static class TestDns implements Dns {
+
+		private final AtomicInteger lookups = new AtomicInteger();
+
+		private volatile InetAddress address;
+
+		private volatile boolean failing;
+
+		TestDns() {
+			try {
+				address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 12 });
+			}
+			catch (UnknownHostException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+			lookups.incrementAndGet();
+			if (failing) {
+				throw new UnknownHostException(hostname);
+			}
+			return Collections.singletonList(address);
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	protected static class TestConfig {
+
+		@Bean
+		@LoadBalanced
+		public OkHttpClient.Builder okHttpClientBuilder() {
+			return new OkHttpClient.Builder();
+		}
+
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link AdaptiveConcurrencyLimit}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class AdaptiveConcurrencyLimitTests {
+
+	private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+
+	@Test
+	void shouldRejectRequestsOverLimit() {
+		properties.setInitialLimit(2);
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+
+		AdaptiveConcurrencyLimit.Permit first = limit.tryAcquire();
+		AdaptiveConcurrencyLimit.Permit second = limit.tryAcquire();
+
+		assertThat(first).isNotNull();
+		assertThat(second).isNotNull();
+		assertThat(limit.tryAcquire()).isNull();
+		assertThat(limit.getRejected()).isEqualTo(1);
+		assertThat(limit.getInFlight()).isEqualTo(2);
+
+		first.releaseIgnored();
+		first.releaseIgnored();
+
+		assertThat(limit.getInFlight()).isEqualTo(1);
+		assertThat(limit.tryAcquire()).isNotNull();
+	}
+
+	@Test
+	void shouldGrowWhileResponseTimesAreStable() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(RTT, limit.getLimit());
+		}
+
+		assertThat(limit.getLimit()).isGreaterThan(properties.getInitialLimit());
+	}
+
+	@Test
+	void shouldNotGrowWhenLimitIsNotReached() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(RTT, 1);
+		}
+
+		assertThat(limit.getLimit()).isEqualTo(properties.getInitialLimit());
+	}
+
+	@Test
+	void shouldShrinkWhenResponseTimesIncrease() {
+		properties.setInitialLimit(100);
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+		limit.onSample(RTT, 1);
+
+		for (int i = 0; i < 20; i++) {
+			limit.onSample(RTT * 5, limit.getLimit());
+		}
+
+		assertThat(limit.getLimit()).isLessThan(60);
+	}
+
+	@Test
+	void shouldBackOffOnDrops() {
+		properties.setInitialLimit(100);
+		properties.setMinLimit(5);
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+
+		limit.tryAcquire().releaseDropped();
+
+		assertThat(limit.getLimit()).isEqualTo(90);
+
+		for (int i = 0; i < 100; i++) {
+			limit.tryAcquire().releaseDropped();
+		}
+
+		assertThat(limit.getLimit()).isEqualTo(5);
+		assertThat(limit.getInFlight()).isZero();
+	}
+
+	@Test
+	void shouldStayWithinMaxLimit() {
+		properties.setMaxLimit(30);
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+
+		for (int i = 0; i < 500; i++) {
+			limit.onSample(RTT, limit.getLimit());
+		}
+
+		assertThat(limit.getLimit()).isEqualTo(30);
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.limit;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.square.okhttp.config.OkHttpAutoConfiguration;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link ConcurrencyLimitingInterceptor}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class ConcurrencyLimitingInterceptorTests {
+
+	private final ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+
+	@Test
+	void shouldRejectRequestsOverLimit() throws Exception {
+		properties.setInitialLimit(1);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new ConcurrencyLimitingInterceptor(limiter))
+				.addInterceptor(chain -> {
+					started.countDown();
+					try {
+						finish.await(5, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return response(chain.request(), 200);
+				}).build();
+		CountDownLatch completed = new CountDownLatch(1);
+		client.newCall(request("testapp")).enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				completed.countDown();
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				response.close();
+				completed.countDown();
+			}
+		});
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThatExceptionOfType(ConcurrencyLimitExceededException.class)
+				.isThrownBy(() -> client.newCall(request("testapp")).execute())
+				.satisfies(e -> assertThat(e.getName()).isEqualTo("testapp"));
+		// the limits are kept per service
+		client.newCall(request("otherapp")).execute().close();
+
+		finish.countDown();
+		assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(limiter.get("testapp").getInFlight()).isZero();
+		assertThat(limiter.get("testapp").getRejected()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldBackOffOnOverloadedResponses() throws IOException {
+		properties.setInitialLimit(100);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new ConcurrencyLimitingInterceptor(limiter))
+				.addInterceptor(chain -> response(chain.request(), 503)).build();
+
+		client.newCall(request("testapp")).execute().close();
+
+		assertThat(limiter.get("testapp").getLimit()).isEqualTo(90);
+	}
+
+	@Test
+	void shouldBackOffOnFailures() {
+		properties.setInitialLimit(100);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new ConcurrencyLimitingInterceptor(limiter))
+				.addInterceptor(chain -> {
+					throw new IOException("test");
+				}).build();
+
+		assertThatExceptionOfType(IOException.class).isThrownBy(() -> client.newCall(request("testapp")).execute());
+
+		assertThat(limiter.get("testapp").getLimit()).isEqualTo(90);
+		assertThat(limiter.get("testapp").getInFlight()).isZero();
+	}
+
+	@Test
+	void shouldUseServiceIdOfLoadBalancedRequests() throws IOException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new ConcurrencyLimitingInterceptor(limiter))
+				.addInterceptor(chain -> response(chain.request(), 200)).build();
+		ServiceInstance instance = new DefaultServiceInstance("testapp-1", "testapp", "10.0.0.12", 8080, false);
+
+		client.newCall(new Request.Builder().url("http://10.0.0.12:8080/").tag(ServiceInstance.class, instance).build())
+				.execute().close();
+
+		assertThat(limiter.get("testapp").getInFlight()).isZero();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new ConcurrencyLimitMeterBinder(limiter).bindTo(registry);
+		assertThat(registry.find("concurrency.limit").tag("client", "testapp").gauge()).isNotNull();
+		assertThat(registry.find("concurrency.limit").tag("client", "10.0.0.12").gauge()).isNull();
+	}
+
+	@Test
+	void shouldAddInterceptorToLoadBalancedClients() {
+		new ApplicationContextRunner().withConfiguration(AutoConfigurations.of(OkHttpAutoConfiguration.class))
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("spring.cloud.square.okhttp.concurrency-limit.enabled=true").run(context -> {
+					OkHttpClient.Builder builder = context.getBean(OkHttpClient.Builder.class);
+					// as done again for each Retrofit client context
+					context.getBeansOfType(OkHttpClientBuilderCustomizer.class).values()
+							.forEach(customizer -> customizer.accept(builder));
+
+					assertThat(builder.build().interceptors())
+							.filteredOn(ConcurrencyLimitingInterceptor.class::isInstance).hasSize(1);
+				});
+	}
+
+	private static Request request(String host) {
+		return new Request.Builder().url("http://" + host + "/").build();
+	}
+
+	private static Response response(Request request, int code) {
+		return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code).message("test")
+				.body(ResponseBody.create("", MediaType.get("text/plain"))).build();
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	protected static class TestConfig {
+
+		@Bean
+		@LoadBalanced
+		public OkHttpClient.Builder okHttpClientBuilder() {
+			return new OkHttpClient.Builder();
+		}
+
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.LinkedMultiValueMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ConsistentHashLoadBalancer}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class ConsistentHashLoadBalancerTests {
+
+	private final List<ServiceInstance> instances = new ArrayList<>();
+
+	private final ConsistentHashLoadBalancer loadBalancer;
+
+	@SuppressWarnings("unchecked")
+	ConsistentHashLoadBalancerTests() {
+		for (int i = 0; i < 5; i++) {
+			instances.add(instance(i));
+		}
+		ServiceInstanceListSupplier supplier = new ServiceInstanceListSupplier() {
+			@Override
+			public String getServiceId() {
+				return "testapp";
+			}
+
+			@Override
+			public Flux<List<ServiceInstance>> get() {
+				return Flux.just(new ArrayList<>(instances));
+			}
+		};
+		ObjectProvider<ServiceInstanceListSupplier> provider = mock(ObjectProvider.class);
+		when(provider.getIfAvailable(any())).thenReturn(supplier);
+		loadBalancer = new ConsistentHashLoadBalancer(provider, "testapp");
+	}
+
+	@Test
+	void shouldRouteSameKeyToSameInstance() {
+		ServiceInstance selected = choose("user-1");
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(choose("user-1")).isEqualTo(selected);
+		}
+	}
+
+	@Test
+	void shouldOnlyMoveKeysOfRemovedInstance() {
+		Map<String, ServiceInstance> before = new HashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			before.put("user-" + i, choose("user-" + i));
+		}
+		ServiceInstance removed = instances.remove(2);
+
+		int moved = 0;
+		for (Map.Entry<String, ServiceInstance> entry : before.entrySet()) {
+			ServiceInstance after = choose(entry.getKey());
+			if (!after.equals(entry.getValue())) {
+				assertThat(entry.getValue()).isEqualTo(removed);
+				moved++;
+			}
+		}
+		assertThat(moved).isBetween(100, 300);
+	}
+
+	@Test
+	void shouldDistributeKeysAcrossInstances() {
+		Map<ServiceInstance, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			counts.merge(choose("user-" + i), 1, Integer::sum);
+		}
+
+		assertThat(counts).hasSize(5);
+		assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(600, 1400));
+	}
+
+	@Test
+	void shouldRoundRobinRequestsWithoutKey() {
+		ServiceInstance first = loadBalancer.choose().block().getServer();
+		ServiceInstance second = loadBalancer.choose().block().getServer();
+
+		assertThat(first).isNotEqualTo(second);
+	}
+
+	private ServiceInstance choose(String key) {
+		RequestData requestData = new RequestData(HttpMethod.GET, URI.create("http://testapp/"), new HttpHeaders(),
+				new LinkedMultiValueMap<>(),
+				Collections.singletonMap(LoadBalancerHashKeyResolver.HASH_KEY_ATTRIBUTE, key));
+		return loadBalancer.choose(new DefaultRequest<>(new RequestDataContext(requestData))).block().getServer();
+	}
+
+	private static ServiceInstance instance(int index) {
+		return new DefaultServiceInstance("test-" + index, "testapp", "host" + index + ".example", 8080, false);
+	}
+
+}
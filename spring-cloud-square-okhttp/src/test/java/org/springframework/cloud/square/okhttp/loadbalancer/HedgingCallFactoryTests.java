@@ -0,0 +1,275 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Timeout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.RetryableRequestContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link HedgingCallFactory} and {@link HedgingPolicy}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class HedgingCallFactoryTests {
+
+	private final ServiceInstance first = new DefaultServiceInstance("test-1", "testapp", "first.example", 8080, false);
+
+	private final ServiceInstance second = new DefaultServiceInstance("test-2", "testapp", "second.example", 8080,
+			false);
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private final Map<String, Call> calls = new ConcurrentHashMap<>();
+
+	private final Map<String, Callback> callbacks = new ConcurrentHashMap<>();
+
+	@AfterEach
+	void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	void shouldSendHedgeToDifferentInstanceAndCancelLoser() throws Exception {
+		HedgingPolicy policy = policy(Duration.ofMillis(1), 10);
+		CompletableFuture<Response> result = new CompletableFuture<>();
+
+		factory(policy).newCall(get()).enqueue(callback(result));
+		await(() -> callbacks.containsKey("second.example"));
+		callbacks.get("second.example").onResponse(calls.get("second.example"),
+				response(calls.get("second.example").request()));
+
+		assertThat(result.get(1, TimeUnit.SECONDS).request().url().host()).isEqualTo("second.example");
+		verify(calls.get("first.example")).cancel();
+		assertThat(policy.getHedges()).isEqualTo(1);
+		assertThat(policy.getHedgeWins()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRecordLatencyOfCancelledPrimary() throws Exception {
+		HedgingPolicy policy = spy(policy(Duration.ofMillis(5), 10));
+		CompletableFuture<Response> result = new CompletableFuture<>();
+
+		factory(policy).newCall(get()).enqueue(callback(result));
+		await(() -> callbacks.containsKey("second.example"));
+		callbacks.get("second.example").onResponse(calls.get("second.example"),
+				response(calls.get("second.example").request()));
+		result.get(1, TimeUnit.SECONDS);
+
+		ArgumentCaptor<Long> latencies = ArgumentCaptor.forClass(Long.class);
+		verify(policy, times(2)).recordLatency(eq("testapp"), latencies.capture());
+		// the hedge first, then the primary it was sent for, which has run for longer
+		assertThat(latencies.getAllValues().get(1)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(5))
+				.isGreaterThan(latencies.getAllValues().get(0));
+	}
+
+	@Test
+	void shouldNotSendHedgeWhenAnsweredWithinDelay() throws Exception {
+		HedgingPolicy policy = policy(Duration.ofSeconds(30), 10);
+		CompletableFuture<Response> result = new CompletableFuture<>();
+
+		factory(policy).newCall(get()).enqueue(callback(result));
+		callbacks.get("first.example").onResponse(calls.get("first.example"),
+				response(calls.get("first.example").request()));
+
+		assertThat(result.get(1, TimeUnit.SECONDS).request().url().host()).isEqualTo("first.example");
+		assertThat(calls).containsOnlyKeys("first.example");
+		assertThat(policy.getHedges()).isZero();
+	}
+
+	@Test
+	void shouldNotSendHedgeWhenBudgetExhausted() {
+		HedgingPolicy policy = policy(Duration.ofMillis(1), 0);
+
+		factory(policy).newCall(get()).enqueue(callback(new CompletableFuture<>()));
+		await(() -> policy.getHedgeRejections() == 1);
+
+		assertThat(calls).containsOnlyKeys("first.example");
+		assertThat(policy.getHedges()).isZero();
+	}
+
+	@Test
+	void shouldFailWhenPrimaryFailsBeforeHedge() {
+		HedgingPolicy policy = policy(Duration.ofSeconds(30), 10);
+		CompletableFuture<Response> result = new CompletableFuture<>();
+
+		factory(policy).newCall(get()).enqueue(callback(result));
+		callbacks.get("first.example").onFailure(calls.get("first.example"), new IOException("test"));
+
+		assertThat(result).isCompletedExceptionally();
+		verify(calls.get("first.example"), never()).cancel();
+	}
+
+	@Test
+	void shouldExecuteCallWithoutHedgeDelayOnCallingThread() throws IOException {
+		OkHttpLoadBalancerProperties.Hedging properties = new OkHttpLoadBalancerProperties.Hedging();
+		properties.setServiceIds(Collections.singleton("testapp"));
+		// no latency samples yet, so no hedge delay
+		Call call = factory(new HedgingPolicy(properties)).newCall(get());
+		Call primary = calls.get("first.example");
+		Response primaryResponse = response(primary.request());
+		when(primary.execute()).thenReturn(primaryResponse);
+
+		Response response = call.execute();
+
+		assertThat(response.request().url().host()).isEqualTo("first.example");
+		verify(primary, never()).enqueue(any());
+	}
+
+	@Test
+	void shouldApplyTimeoutToHedge() {
+		HedgingPolicy policy = policy(Duration.ofMillis(1), 10);
+		Call call = factory(policy).newCall(get());
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		call.timeout().deadlineNanoTime(deadline);
+		call.timeout().timeout(3, TimeUnit.SECONDS);
+
+		call.enqueue(callback(new CompletableFuture<>()));
+		await(() -> callbacks.containsKey("second.example"));
+
+		Timeout hedgeTimeout = calls.get("second.example").timeout();
+		assertThat(hedgeTimeout.deadlineNanoTime()).isEqualTo(deadline);
+		assertThat(hedgeTimeout.timeoutNanos()).isEqualTo(TimeUnit.SECONDS.toNanos(3));
+	}
+
+	@Test
+	void shouldNotHedgeNonIdempotentRequests() {
+		HedgingPolicy policy = policy(Duration.ofMillis(1), 10);
+		Request post = new Request.Builder().url("http://testapp/hello")
+				.post(RequestBody.create("{}", MediaType.get("application/json"))).build();
+
+		Call call = factory(policy).newCall(post);
+
+		assertThat(call).isSameAs(calls.get("testapp"));
+	}
+
+	@Test
+	void shouldComputeLatencyPercentile() {
+		LatencyHistogram histogram = new LatencyHistogram(Duration.ofSeconds(30));
+		assertThat(histogram.percentile(95, 1)).isEqualTo(-1);
+
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+
+		assertThat(histogram.percentile(50, 1)).isBetween(TimeUnit.MILLISECONDS.toNanos(50),
+				TimeUnit.MILLISECONDS.toNanos(63));
+		assertThat(histogram.percentile(95, 1)).isBetween(TimeUnit.MILLISECONDS.toNanos(95),
+				TimeUnit.MILLISECONDS.toNanos(119));
+		assertThat(histogram.percentile(95, 101)).isEqualTo(-1);
+	}
+
+	private HedgingPolicy policy(Duration minDelay, int budgetCapacity) {
+		OkHttpLoadBalancerProperties.Hedging properties = new OkHttpLoadBalancerProperties.Hedging();
+		properties.setServiceIds(Collections.singleton("testapp"));
+		properties.setMinSamples(1);
+		properties.setMinDelay(minDelay);
+		properties.setBudgetCapacity(budgetCapacity);
+		HedgingPolicy policy = new HedgingPolicy(properties);
+		policy.recordLatency("testapp", TimeUnit.MICROSECONDS.toNanos(100));
+		return policy;
+	}
+
+	private HedgingCallFactory factory(HedgingPolicy policy) {
+		AbstractOkHttpLoadBalancerInterceptor interceptor = new AbstractOkHttpLoadBalancerInterceptor() {
+
+			@Override
+			protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+				return lbRequest.getContext() instanceof RetryableRequestContext ? second : first;
+			}
+		};
+		Call.Factory delegate = request -> {
+			Call call = mock(Call.class);
+			when(call.request()).thenReturn(request);
+			when(call.timeout()).thenReturn(new Timeout());
+			doAnswer(invocation -> callbacks.put(request.url().host(), invocation.getArgument(0))).when(call)
+					.enqueue(any());
+			calls.put(request.url().host(), call);
+			return call;
+		};
+		return new HedgingCallFactory(delegate, interceptor, policy, scheduler);
+	}
+
+	private static Request get() {
+		return new Request.Builder().url("http://testapp/hello").build();
+	}
+
+	private static Response response(Request request) {
+		return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+				.body(ResponseBody.create("", null)).build();
+	}
+
+	private static Callback callback(CompletableFuture<Response> result) {
+		return new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				result.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				result.complete(response);
+			}
+		};
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.yield();
+		}
+	}
+
+}
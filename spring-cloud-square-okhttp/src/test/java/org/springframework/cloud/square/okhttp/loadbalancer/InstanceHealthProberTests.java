@@ -0,0 +1,283 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link InstanceHealthProber} and
+ * {@link HealthProbingServiceInstanceListSupplier}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class InstanceHealthProberTests {
+
+	private final OkHttpLoadBalancerProperties.HealthProbe properties = new OkHttpLoadBalancerProperties.HealthProbe();
+
+	private final List<HttpServer> servers = new ArrayList<>();
+
+	private final List<ServiceInstance> instances = new ArrayList<>();
+
+	private InstanceHealthProber prober;
+
+	InstanceHealthProberTests() {
+		// rounds are run by the tests
+		properties.setInterval(Duration.ofHours(1));
+		properties.setFailureThreshold(1);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (prober != null) {
+			prober.destroy();
+		}
+		servers.forEach(server -> server.stop(0));
+	}
+
+	@Test
+	void shouldFilterOutFailingInstances() throws Exception {
+		AtomicInteger failingStatus = new AtomicInteger(503);
+		ServiceInstance healthy = instance(server(new AtomicInteger(200)));
+		ServiceInstance failing = instance(server(failingStatus));
+		prober = new InstanceHealthProber(new HttpInstanceHealthProbe(properties.getPath()), properties);
+		prober.register("testapp", new OkHttpClient());
+		ServiceInstanceListSupplier supplier = supplier();
+		assertThat(supplier.get().blockFirst()).containsExactly(healthy, failing);
+
+		prober.probeAll();
+
+		await(() -> supplier.get().blockFirst().size() == 1);
+		assertThat(supplier.get().blockFirst()).containsExactly(healthy);
+
+		failingStatus.set(200);
+		prober.probeAll();
+
+		await(() -> supplier.get().blockFirst().size() == 2);
+	}
+
+	@Test
+	void shouldWaitForFailureThreshold() throws Exception {
+		properties.setFailureThreshold(2);
+		ServiceInstance healthy = instance(server(new AtomicInteger(200)));
+		instance(server(new AtomicInteger(503)));
+		CountingProbe probe = new CountingProbe(new HttpInstanceHealthProbe(properties.getPath()));
+		prober = new InstanceHealthProber(probe, properties);
+		prober.register("testapp", new OkHttpClient());
+		ServiceInstanceListSupplier supplier = supplier();
+		supplier.get().blockFirst();
+
+		prober.probeAll();
+		await(() -> probe.completed.get() == 2);
+		assertThat(supplier.get().blockFirst()).hasSize(2);
+
+		prober.probeAll();
+		await(() -> supplier.get().blockFirst().size() == 1);
+		assertThat(supplier.get().blockFirst()).containsExactly(healthy);
+	}
+
+	@Test
+	void shouldReturnAllInstancesWhenAllAreUnhealthy() throws Exception {
+		ServiceInstance first = instance(server(new AtomicInteger(503)));
+		ServiceInstance second = instance(server(new AtomicInteger(500)));
+		prober = new InstanceHealthProber(new HttpInstanceHealthProbe(properties.getPath()), properties);
+		prober.register("testapp", new OkHttpClient());
+		ServiceInstanceListSupplier supplier = supplier();
+		supplier.get().blockFirst();
+
+		prober.probeAll();
+		await(() -> !prober.isHealthy(first) && !prober.isHealthy(second));
+
+		assertThat(supplier.get().blockFirst()).hasSize(2);
+	}
+
+	@Test
+	void shouldProbeThroughClientConnectionPoolWithoutLoadBalancing() throws Exception {
+		instance(server(new AtomicInteger(200)));
+		CountingProbe probe = new CountingProbe(new HttpInstanceHealthProbe(properties.getPath()));
+		prober = new InstanceHealthProber(probe, properties);
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new AbstractOkHttpLoadBalancerInterceptor() {
+			@Override
+			protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+				throw new AssertionError("Probes should not be load-balanced");
+			}
+		}).build();
+		prober.register("testapp", client);
+		supplier().get().blockFirst();
+
+		prober.probeAll();
+		await(() -> probe.completed.get() == 1);
+
+		assertThat(probe.failures.get()).isZero();
+		assertThat(client.connectionPool().idleConnectionCount()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotProbeUnregisteredServices() throws Exception {
+		instance(server(new AtomicInteger(503)));
+		CountingProbe probe = new CountingProbe(new HttpInstanceHealthProbe(properties.getPath()));
+		prober = new InstanceHealthProber(probe, properties);
+		supplier().get().blockFirst();
+
+		prober.probeAll();
+
+		assertThat(probe.started.get()).isZero();
+	}
+
+	@Test
+	void shouldBoundProbeConcurrency() throws Exception {
+		properties.setMaxConcurrency(2);
+		properties.setMaxProbesPerSecond(1000);
+		for (int i = 0; i < 6; i++) {
+			instances.add(new DefaultServiceInstance("test-" + i, "testapp", "host-" + i + ".example", 8080, false));
+		}
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountingProbe probe = new CountingProbe((client, instance) -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+			return true;
+		});
+		prober = new InstanceHealthProber(probe, properties);
+		prober.register("testapp", new OkHttpClient());
+		supplier().get().blockFirst();
+
+		prober.probeAll();
+		await(() -> probe.completed.get() == 6);
+
+		assertThat(maxRunning.get()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldBoundProbeRate() throws Exception {
+		properties.setMaxProbesPerSecond(20);
+		for (int i = 0; i < 5; i++) {
+			instances.add(new DefaultServiceInstance("test-" + i, "testapp", "host-" + i + ".example", 8080, false));
+		}
+		prober = new InstanceHealthProber((client, instance) -> true, properties);
+		prober.register("testapp", new OkHttpClient());
+		supplier().get().blockFirst();
+
+		long start = System.nanoTime();
+		prober.probeAll();
+
+		assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(Duration.ofMillis(200).toNanos());
+	}
+
+	private ServiceInstanceListSupplier supplier() {
+		return new HealthProbingServiceInstanceListSupplier(new ServiceInstanceListSupplier() {
+			@Override
+			public String getServiceId() {
+				return "testapp";
+			}
+
+			@Override
+			public Flux<List<ServiceInstance>> get() {
+				return Flux.just(new ArrayList<>(instances));
+			}
+		}, prober);
+	}
+
+	private HttpServer server(AtomicInteger status) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext(properties.getPath(), exchange -> {
+			byte[] body = "{}".getBytes();
+			exchange.sendResponseHeaders(status.get(), body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+		servers.add(server);
+		return server;
+	}
+
+	private ServiceInstance instance(HttpServer server) {
+		ServiceInstance instance = new DefaultServiceInstance("test-" + instances.size(), "testapp", "localhost",
+				server.getAddress().getPort(), false);
+		instances.add(instance);
+		return instance;
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static class CountingProbe implements InstanceHealthProbe {
+
+		private final InstanceHealthProbe delegate;
+
+		private final AtomicInteger started = new AtomicInteger();
+
+		private final AtomicInteger completed = new AtomicInteger();
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		CountingProbe(InstanceHealthProbe delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean probe(OkHttpClient client, ServiceInstance instance) throws IOException {
+			started.incrementAndGet();
+			try {
+				boolean healthy = delegate.probe(client, instance);
+				if (!healthy) {
+					failures.incrementAndGet();
+				}
+				return healthy;
+			}
+			catch (IOException | RuntimeException e) {
+				failures.incrementAndGet();
+				throw e;
+			}
+			finally {
+				completed.incrementAndGet();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.core.CachingServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+/**
+ * Measures the per-request cost of selecting an instance and rewriting the request URL in
+ * the OkHttp load-balancing interceptor. It is not run with the regular build; run it
+ * with
+ * {@code ./mvnw test -pl spring-cloud-square-okhttp -Dtest=InstanceSelectionBenchmark}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class InstanceSelectionBenchmark {
+
+	private static final int WARM_UP_ITERATIONS = 200_000;
+
+	private static final int ITERATIONS = 500_000;
+
+	private static final int ROUNDS = 5;
+
+	private final List<ServiceInstance> instances = Arrays.asList(
+			new DefaultServiceInstance("test-1", "testapp", "10.0.0.11", 8080, false),
+			new DefaultServiceInstance("test-2", "testapp", "10.0.0.12", 8080, false),
+			new DefaultServiceInstance("test-3", "testapp", "10.0.0.13", 8080, false));
+
+	private final Request request = new Request.Builder().url("http://testapp/api/users/123?expand=true").build();
+
+	@Test
+	void urlRewrite() {
+		HttpUrl url = request.url();
+		ServiceInstance instance = instances.get(1);
+		InstanceUrlTemplates templates = new InstanceUrlTemplates();
+
+		measure("URL rewrite, HttpUrl.Builder", () -> url.newBuilder().scheme(instance.isSecure() ? "https" : "http")
+				.host(instance.getHost()).port(instance.getPort()).build());
+		measure("URL rewrite, instance template", () -> templates.rewrite(url, instance));
+	}
+
+	@Test
+	void loadBalance() {
+		ServiceInstanceListSupplier discovery = new DiscoverySupplier(instances);
+		ServiceInstanceListSupplier caching = new CachingServiceInstanceListSupplier(discovery,
+				new ConcurrentMapCacheManager(CachingServiceInstanceListSupplier.SERVICE_INSTANCE_CACHE_NAME));
+		ServiceInstanceListSupplier refreshAhead = new RefreshAheadServiceInstanceListSupplier(discovery,
+				new OkHttpLoadBalancerProperties.Snapshot());
+
+		AbstractOkHttpLoadBalancerInterceptor withCaching = interceptor(caching);
+		AbstractOkHttpLoadBalancerInterceptor withRefreshAhead = interceptor(refreshAhead);
+
+		measure("loadBalance(), caching supplier", () -> withCaching.loadBalance(request));
+		measure("loadBalance(), refresh-ahead supplier", () -> withRefreshAhead.loadBalance(request));
+	}
+
+	private static AbstractOkHttpLoadBalancerInterceptor interceptor(ServiceInstanceListSupplier supplier) {
+		ReactorLoadBalancer<ServiceInstance> loadBalancer = new RoundRobinLoadBalancer(new SupplierProvider(supplier),
+				"testapp");
+		return new AbstractOkHttpLoadBalancerInterceptor() {
+			@Override
+			protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+				// the same as BlockingLoadBalancerClient.choose(...)
+				return Mono.from(loadBalancer.choose(lbRequest)).block().getServer();
+			}
+		};
+	}
+
+	private static void measure(String name, Runnable operation) {
+		for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+			operation.run();
+		}
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				operation.run();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-45s %8d ns/op%n", name, best / ITERATIONS);
+	}
+
+	// takes a millisecond to respond, like a remote discovery server would; it is only
+	// queried when the instances are retrieved for the first time, since the cached ones
+	// do not expire while the benchmark runs
+	private static class DiscoverySupplier implements ServiceInstanceListSupplier {
+
+		private final List<ServiceInstance> instances;
+
+		DiscoverySupplier(List<ServiceInstance> instances) {
+			this.instances = instances;
+		}
+
+		@Override
+		public String getServiceId() {
+			return "testapp";
+		}
+
+		@Override
+		public Flux<List<ServiceInstance>> get() {
+			return Flux.just(instances).delaySubscription(Mono.fromRunnable(() -> sleep()).then());
+		}
+
+		private static void sleep() {
+			try {
+				TimeUnit.MILLISECONDS.sleep(1);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+	private static class SupplierProvider implements ObjectProvider<ServiceInstanceListSupplier> {
+
+		private final ServiceInstanceListSupplier supplier;
+
+		SupplierProvider(ServiceInstanceListSupplier supplier) {
+			this.supplier = supplier;
+		}
+
+		@Override
+		public ServiceInstanceListSupplier getObject(Object... args) {
+			return supplier;
+		}
+
+		@Override
+		public ServiceInstanceListSupplier getIfAvailable() {
+			return supplier;
+		}
+
+		@Override
+		public ServiceInstanceListSupplier getIfUnique() {
+			return supplier;
+		}
+
+		@Override
+		public ServiceInstanceListSupplier getObject() {
+			return supplier;
+		}
+
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link LeastOutstandingRequestsLoadBalancer}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class LeastOutstandingRequestsLoadBalancerTests {
+
+	private final ServiceInstance first = new DefaultServiceInstance("test-1", "testapp", "first.example", 8080, false);
+
+	private final ServiceInstance second = new DefaultServiceInstance("test-2", "testapp", "second.example", 8080,
+			false);
+
+	private final LoadBalancerStatistics statistics = new LoadBalancerStatistics();
+
+	@Test
+	void shouldSelectInstanceWithFewestActiveRequests() {
+		statistics.get(first).requestStarted();
+		statistics.get(first).requestStarted();
+		statistics.get(second).requestStarted();
+		LeastOutstandingRequestsLoadBalancer loadBalancer = loadBalancer(first, second);
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(loadBalancer.choose().block().getServer()).isEqualTo(second);
+		}
+	}
+
+	@Test
+	void shouldSelectAnyInstanceWhenNoRequestsAreRunning() {
+		LeastOutstandingRequestsLoadBalancer loadBalancer = loadBalancer(first, second);
+
+		assertThat(loadBalancer.choose().block().getServer()).isIn(first, second);
+	}
+
+	@Test
+	void shouldReturnEmptyResponseWhenNoInstancesAvailable() {
+		LeastOutstandingRequestsLoadBalancer loadBalancer = loadBalancer();
+
+		assertThat(loadBalancer.choose().block().hasServer()).isFalse();
+	}
+
+	@Test
+	void shouldRecordActiveRequestsInInterceptor() throws IOException {
+		AbstractOkHttpLoadBalancerInterceptor interceptor = new AbstractOkHttpLoadBalancerInterceptor() {
+			@Override
+			protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+				return first;
+			}
+
+			@Override
+			protected Set<LoadBalancerLifecycle> getSupportedLifecycleProcessors(String serviceId) {
+				return Collections.singleton(new LoadBalancerStatisticsLifecycle(statistics));
+			}
+		};
+		AtomicLong activeWhileProceeding = new AtomicLong();
+		Interceptor.Chain chain = mock(Interceptor.Chain.class);
+		when(chain.request()).thenReturn(new Request.Builder().url("http://testapp/hello").build());
+		when(chain.proceed(any())).thenAnswer(invocation -> {
+			activeWhileProceeding.set(statistics.getActiveRequests(first));
+			return new Response.Builder().request(invocation.getArgument(0)).protocol(Protocol.HTTP_1_1).code(200)
+					.message("OK").body(ResponseBody.create("", null)).build();
+		});
+
+		interceptor.intercept(chain);
+
+		assertThat(activeWhileProceeding.get()).isEqualTo(1);
+		assertThat(statistics.getActiveRequests(first)).isZero();
+	}
+
+	@SuppressWarnings("unchecked")
+	private LeastOutstandingRequestsLoadBalancer loadBalancer(ServiceInstance... instances) {
+		ServiceInstanceListSupplier supplier = ServiceInstanceListSuppliers.from("testapp", instances);
+		ObjectProvider<ServiceInstanceListSupplier> provider = mock(ObjectProvider.class);
+		when(provider.getIfAvailable(any())).thenReturn(supplier);
+		return new LeastOutstandingRequestsLoadBalancer(provider, "testapp", statistics);
+	}
+
+}
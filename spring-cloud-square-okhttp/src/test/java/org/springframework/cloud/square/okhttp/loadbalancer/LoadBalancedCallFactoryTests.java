@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link LoadBalancedCallFactory} and {@link LoadBalancedCallFactoryProvider}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class LoadBalancedCallFactoryTests {
+
+	private final AbstractOkHttpLoadBalancerInterceptor loadBalancerInterceptor = new AbstractOkHttpLoadBalancerInterceptor() {
+		@Override
+		protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+			return new DefaultServiceInstance("test-1", serviceId, "test.example", 8080, false);
+		}
+	};
+
+	@Test
+	void shouldSelectInstanceBeforeCallIsQueued() {
+		LoadBalancedCallFactory callFactory = new LoadBalancedCallFactory(new OkHttpClient(), loadBalancerInterceptor,
+				0);
+
+		Call call = callFactory.newCall(new Request.Builder().url("http://testapp/hello").build());
+
+		assertThat(call.request().url().host()).isEqualTo("test.example");
+		assertThat(call.request().url().port()).isEqualTo(8080);
+		assertThat(call.request().tag(ServiceInstance.class)).isNotNull();
+	}
+
+	@Test
+	void shouldLimitRequestsPerInstanceWithoutChangingSharedDispatcher() {
+		OkHttpLoadBalancerProperties.CallFactory properties = new OkHttpLoadBalancerProperties.CallFactory();
+		properties.setMaxRequestsPerInstance(2);
+		OkHttpClient client = new OkHttpClient();
+
+		LoadBalancedCallFactory callFactory = new LoadBalancedCallFactoryProvider(loadBalancerInterceptor, properties)
+				.getCallFactory(client);
+
+		assertThat(client.dispatcher().getMaxRequestsPerHost()).isEqualTo(5);
+		assertThat(callFactory.getClient().dispatcher()).isNotSameAs(client.dispatcher());
+		assertThat(callFactory.getClient().dispatcher().getMaxRequestsPerHost()).isEqualTo(2);
+		assertThat(callFactory.getClient().dispatcher().executorService())
+				.isSameAs(client.dispatcher().executorService());
+	}
+
+	@Test
+	void shouldLimitRunningCallsPerService() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger started = new AtomicInteger();
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor(chain -> {
+			started.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+					.body(ResponseBody.create("", null)).build();
+		}).build();
+		LoadBalancedCallFactory callFactory = new LoadBalancedCallFactory(client, loadBalancerInterceptor, 1);
+		CountDownLatch completed = new CountDownLatch(2);
+		Callback callback = new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				completed.countDown();
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				response.close();
+				completed.countDown();
+			}
+		};
+
+		callFactory.newCall(new Request.Builder().url("http://testapp/1").build()).enqueue(callback);
+		callFactory.newCall(new Request.Builder().url("http://testapp/2").build()).enqueue(callback);
+		Thread.sleep(200);
+
+		assertThat(started.get()).isEqualTo(1);
+		release.countDown();
+		assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(started.get()).isEqualTo(2);
+	}
+
+}
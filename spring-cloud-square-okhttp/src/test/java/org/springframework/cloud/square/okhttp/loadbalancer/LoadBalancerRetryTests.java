@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.RetryableRequestContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for retrying load-balanced requests with {@link LoadBalancerRetryPolicy}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class LoadBalancerRetryTests {
+
+	private final ServiceInstance first = new DefaultServiceInstance("test-1", "testapp", "first.example", 8080, false);
+
+	private final ServiceInstance second = new DefaultServiceInstance("test-2", "testapp", "second.example", 8080,
+			false);
+
+	private final List<String> attemptedHosts = new ArrayList<>();
+
+	private final List<ServiceInstance> previousInstances = new ArrayList<>();
+
+	@Test
+	void shouldRetryConnectFailureOnDifferentInstance() throws IOException {
+		Interceptor.Chain chain = chain(get(), host -> {
+			if (host.equals("first.example")) {
+				throw new ConnectException("Connection refused");
+			}
+			return 200;
+		});
+
+		Response response = interceptor(new RetryBudget(0.1, 10)).intercept(chain);
+
+		assertThat(response.code()).isEqualTo(200);
+		assertThat(attemptedHosts).containsExactly("first.example", "second.example");
+		assertThat(previousInstances).containsExactly(first);
+	}
+
+	@Test
+	void shouldRetryConnectTimeoutOnDifferentInstance() throws IOException {
+		Interceptor.Chain chain = chain(get(), host -> {
+			if (host.equals("first.example")) {
+				SocketTimeoutException exception = new SocketTimeoutException("timeout");
+				exception.setStackTrace(new StackTraceElement[] {
+						new StackTraceElement("java.net.Socket", "connect", "Socket.java", 1) });
+				throw exception;
+			}
+			return 200;
+		});
+
+		Response response = interceptor(new RetryBudget(0.1, 10)).intercept(chain);
+
+		assertThat(response.code()).isEqualTo(200);
+		assertThat(attemptedHosts).containsExactly("first.example", "second.example");
+	}
+
+	@Test
+	void shouldRetryUnknownHostOnDifferentInstance() throws IOException {
+		Interceptor.Chain chain = chain(get(), host -> {
+			if (host.equals("first.example")) {
+				throw new UnknownHostException(host);
+			}
+			return 200;
+		});
+
+		Response response = interceptor(new RetryBudget(0.1, 10)).intercept(chain);
+
+		assertThat(response.code()).isEqualTo(200);
+		assertThat(attemptedHosts).containsExactly("first.example", "second.example");
+	}
+
+	@Test
+	void shouldNotRetryReadTimeouts() {
+		Interceptor.Chain chain = chain(get(), host -> {
+			throw new SocketTimeoutException("timeout while waiting to connect");
+		});
+
+		assertThatExceptionOfType(SocketTimeoutException.class)
+				.isThrownBy(() -> interceptor(new RetryBudget(0.1, 10)).intercept(chain));
+		assertThat(attemptedHosts).containsExactly("first.example");
+	}
+
+	@Test
+	void shouldRetryRetryableStatusForIdempotentRequests() throws IOException {
+		Interceptor.Chain chain = chain(get(), host -> host.equals("first.example") ? 503 : 200);
+
+		Response response = interceptor(new RetryBudget(0.1, 10)).intercept(chain);
+
+		assertThat(response.code()).isEqualTo(200);
+		assertThat(attemptedHosts).containsExactly("first.example", "second.example");
+	}
+
+	@Test
+	void shouldNotRetryRetryableStatusForNonIdempotentRequests() throws IOException {
+		Request post = new Request.Builder().url("http://testapp/hello")
+				.post(RequestBody.create("{}", MediaType.get("application/json"))).build();
+		Interceptor.Chain chain = chain(post, host -> 503);
+
+		Response response = interceptor(new RetryBudget(0.1, 10)).intercept(chain);
+
+		assertThat(response.code()).isEqualTo(503);
+		assertThat(attemptedHosts).containsExactly("first.example");
+	}
+
+	@Test
+	void shouldNotRetryReadFailures() {
+		Interceptor.Chain chain = chain(get(), host -> {
+			throw new IOException("unexpected end of stream");
+		});
+
+		assertThatExceptionOfType(IOException.class)
+				.isThrownBy(() -> interceptor(new RetryBudget(0.1, 10)).intercept(chain));
+		assertThat(attemptedHosts).containsExactly("first.example");
+	}
+
+	@Test
+	void shouldNotRetryWhenBudgetExhausted() throws IOException {
+		Interceptor.Chain chain = chain(get(), host -> 503);
+
+		Response response = interceptor(new RetryBudget(0.1, 0)).intercept(chain);
+
+		assertThat(response.code()).isEqualTo(503);
+		assertThat(attemptedHosts).containsExactly("first.example");
+	}
+
+	@Test
+	void shouldLimitRetriesToMaxRetries() throws IOException {
+		Interceptor.Chain chain = chain(get(), host -> 503);
+
+		Response response = interceptor(new RetryBudget(0.1, 10)).intercept(chain);
+
+		assertThat(response.code()).isEqualTo(503);
+		assertThat(attemptedHosts).hasSize(2);
+	}
+
+	@Test
+	void shouldReplenishBudgetWithRequests() {
+		RetryBudget budget = new RetryBudget(0.5, 1);
+
+		assertThat(budget.tryWithdraw()).isTrue();
+		assertThat(budget.tryWithdraw()).isFalse();
+
+		budget.deposit();
+		assertThat(budget.tryWithdraw()).isFalse();
+		budget.deposit();
+		assertThat(budget.tryWithdraw()).isTrue();
+
+		for (int i = 0; i < 10; i++) {
+			budget.deposit();
+		}
+		assertThat(budget.getAvailableRetries()).isEqualTo(1);
+	}
+
+	private Request get() {
+		return new Request.Builder().url("http://testapp/hello").build();
+	}
+
+	private AbstractOkHttpLoadBalancerInterceptor interceptor(RetryBudget budget) {
+		LoadBalancerRetryPolicy retryPolicy = new LoadBalancerRetryPolicy(1, Collections.singleton(503), budget);
+		return new AbstractOkHttpLoadBalancerInterceptor(null, null, retryPolicy) {
+
+			@Override
+			protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+				if (!(lbRequest.getContext() instanceof RetryableRequestContext)) {
+					return first;
+				}
+				ServiceInstance previousInstance = ((RetryableRequestContext) lbRequest.getContext())
+						.getPreviousServiceInstance();
+				previousInstances.add(previousInstance);
+				return previousInstance.equals(first) ? second : first;
+			}
+		};
+	}
+
+	private Interceptor.Chain chain(Request request, Server server) {
+		Interceptor.Chain chain = mock(Interceptor.Chain.class);
+		Call call = mock(Call.class);
+		when(chain.request()).thenReturn(request);
+		when(chain.call()).thenReturn(call);
+		try {
+			when(chain.proceed(any())).thenAnswer(invocation -> {
+				Request sent = invocation.getArgument(0);
+				attemptedHosts.add(sent.url().host());
+				return new Response.Builder().request(sent).protocol(Protocol.HTTP_1_1)
+						.code(server.respond(sent.url().host())).message("").body(ResponseBody.create("", null))
+						.build();
+			});
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return chain;
+	}
+
+	private interface Server {
+
+		int respond(String host) throws IOException;
+
+	}
+
+}
@@ -17,6 +17,8 @@
 package org.springframework.cloud.square.okhttp.loadbalancer;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.OkHttpClient;
@@ -34,11 +36,17 @@ import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
 import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
 import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
 import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -59,6 +67,9 @@ class OkHttpLoadBalancerInterceptorTests {
 	@Autowired
 	private TestAppClient testAppClient;
 
+	@Autowired
+	private RecordingLifecycle lifecycle;
+
 	@Test
 	void httpClientWorks() throws IOException {
 		Request request = new Request.Builder()
@@ -80,6 +91,25 @@ class OkHttpLoadBalancerInterceptorTests {
 		assertThat(response.raw().request().header("X-B3-TraceId")).withFailMessage("No traceId header.").isNotNull();
 	}
 
+	@Test
+	void lifecycleCallbacksInvoked() throws IOException {
+		lifecycle.completed.clear();
+		Request request = new Request.Builder().url("http://" + SERVICE_ID + "/hello").build();
+
+		builder.build().newCall(request).execute().close();
+
+		assertThat(lifecycle.started).isGreaterThan(0);
+		assertThat(lifecycle.startedRequests).isGreaterThan(0);
+		assertThat(lifecycle.completed).hasSize(1);
+		CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completionContext = lifecycle.completed
+				.get(0);
+		assertThat(completionContext.status()).isEqualTo(CompletionContext.Status.SUCCESS);
+		assertThat(completionContext.getLoadBalancerResponse().getServer().getInstanceId()).isEqualTo("local-1");
+		assertThat(completionContext.getClientResponse().getHttpStatus()).isEqualTo(HttpStatus.OK);
+		assertThat(completionContext.getLoadBalancerRequest().getContext().getClientRequest().getUrl().getPath())
+				.isEqualTo("/hello");
+	}
+
 	// interface that retrofit will create an implementation for
 	interface TestAppClient {
 
@@ -127,6 +157,11 @@ class OkHttpLoadBalancerInterceptorTests {
 			return new OkHttpClient.Builder();
 		}
 
+		@Bean
+		public RecordingLifecycle recordingLifecycle() {
+			return new RecordingLifecycle();
+		}
+
 		@Bean
 		public TestAppClient testAppClient(@LoadBalanced OkHttpClient.Builder builder) {
 			Retrofit retrofit = new Retrofit.Builder()
@@ -155,4 +190,31 @@ class OkHttpLoadBalancerInterceptorTests {
 
 	}
 
+	protected static class RecordingLifecycle
+			implements LoadBalancerLifecycle<RequestDataContext, ResponseData, ServiceInstance> {
+
+		private final List<CompletionContext<ResponseData, ServiceInstance, RequestDataContext>> completed = new CopyOnWriteArrayList<>();
+
+		private volatile int started;
+
+		private volatile int startedRequests;
+
+		@Override
+		public void onStart(org.springframework.cloud.client.loadbalancer.Request<RequestDataContext> request) {
+			started++;
+		}
+
+		@Override
+		public void onStartRequest(org.springframework.cloud.client.loadbalancer.Request<RequestDataContext> request,
+				org.springframework.cloud.client.loadbalancer.Response<ServiceInstance> lbResponse) {
+			startedRequests++;
+		}
+
+		@Override
+		public void onComplete(CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completionContext) {
+			completed.add(completionContext);
+		}
+
+	}
+
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link OutlierEjectionServiceInstanceListSupplier}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class OutlierEjectionServiceInstanceListSupplierTests {
+
+	private final ServiceInstance first = new DefaultServiceInstance("test-1", "testapp", "first.example", 8080, false);
+
+	private final ServiceInstance second = new DefaultServiceInstance("test-2", "testapp", "second.example", 8080,
+			false);
+
+	private final ServiceInstance third = new DefaultServiceInstance("test-3", "testapp", "third.example", 8080, false);
+
+	private final OkHttpLoadBalancerProperties.OutlierEjection properties = new OkHttpLoadBalancerProperties.OutlierEjection();
+
+	private final LoadBalancerStatistics statistics = new LoadBalancerStatistics(Duration.ofSeconds(10), properties);
+
+	@Test
+	void shouldEjectInstanceAfterConsecutiveFailures() {
+		properties.setConsecutiveFailures(3);
+		InstanceStatistics instanceStatistics = statistics.get(first);
+
+		instanceStatistics.recordFailure();
+		instanceStatistics.recordFailure();
+		instanceStatistics.recordSuccess();
+		instanceStatistics.recordFailure();
+		instanceStatistics.recordFailure();
+		assertThat(instanceStatistics.isEjected()).isFalse();
+
+		instanceStatistics.recordFailure();
+		assertThat(instanceStatistics.isEjected()).isTrue();
+		assertThat(instanceStatistics.getEjections()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldFilterOutEjectedInstances() {
+		eject(second);
+
+		assertThat(supplier().get().blockFirst()).containsExactly(first, third);
+	}
+
+	@Test
+	void shouldNotEjectMoreThanMaxEjectionPercent() {
+		eject(first);
+		eject(second);
+
+		assertThat(supplier().get().blockFirst()).containsExactly(second, third);
+	}
+
+	@Test
+	void shouldRecordFailedResponsesInInterceptor() throws IOException {
+		properties.setConsecutiveFailures(2);
+		AbstractOkHttpLoadBalancerInterceptor interceptor = new AbstractOkHttpLoadBalancerInterceptor() {
+			@Override
+			protected ServiceInstance choose(String serviceId, DefaultRequest<RequestDataContext> lbRequest) {
+				return first;
+			}
+
+			@Override
+			protected Set<LoadBalancerLifecycle> getSupportedLifecycleProcessors(String serviceId) {
+				return Collections.singleton(new LoadBalancerStatisticsLifecycle(statistics));
+			}
+		};
+		Interceptor.Chain chain = mock(Interceptor.Chain.class);
+		when(chain.request()).thenReturn(new Request.Builder().url("http://testapp/hello").build());
+		when(chain.proceed(any())).thenAnswer(
+				invocation -> new Response.Builder().request(invocation.getArgument(0)).protocol(Protocol.HTTP_1_1)
+						.code(503).message("Unavailable").body(ResponseBody.create("", null)).build());
+
+		interceptor.intercept(chain);
+		interceptor.intercept(chain);
+
+		assertThat(statistics.find(first).isEjected()).isTrue();
+	}
+
+	@Test
+	void shouldExposeEjectionMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new LoadBalancerStatisticsMeterBinder(statistics).bindTo(registry);
+
+		eject(first);
+
+		assertThat(registry.get("loadbalancer.instance.ejected").tag("instance", "first.example:8080").gauge().value())
+				.isEqualTo(1);
+		assertThat(
+				registry.get("loadbalancer.instance.ejections").tag("serviceId", "testapp").functionCounter().count())
+						.isEqualTo(1);
+	}
+
+	@Test
+	void shouldRemoveExpiredStatisticsAndMetrics() {
+		LoadBalancerStatistics statistics = new LoadBalancerStatistics(Duration.ofSeconds(10), properties,
+				Duration.ofMinutes(1));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new LoadBalancerStatisticsMeterBinder(statistics).bindTo(registry);
+		InstanceStatistics active = statistics.get(first);
+		active.requestStarted();
+		statistics.get(second);
+		InstanceStatistics ejected = statistics.get(third);
+		for (int i = 0; i < properties.getConsecutiveFailures(); i++) {
+			ejected.recordFailure();
+		}
+
+		statistics.removeExpired(System.nanoTime() + Duration.ofMinutes(2).toNanos());
+
+		assertThat(statistics.find(first)).isSameAs(active);
+		assertThat(statistics.find(second)).isNull();
+		assertThat(statistics.find(third)).isSameAs(ejected);
+		assertThat(
+				registry.find("loadbalancer.instance.active.requests").tag("instance", "second.example:8080").gauge())
+						.isNull();
+		assertThat(registry.find("loadbalancer.instance.active.requests").tag("instance", "first.example:8080").gauge())
+				.isNotNull();
+	}
+
+	private void eject(ServiceInstance instance) {
+		InstanceStatistics instanceStatistics = statistics.get(instance);
+		for (int i = 0; i < properties.getConsecutiveFailures(); i++) {
+			instanceStatistics.recordFailure();
+		}
+	}
+
+	private OutlierEjectionServiceInstanceListSupplier supplier() {
+		return new OutlierEjectionServiceInstanceListSupplier(
+				ServiceInstanceListSuppliers.from("testapp", first, second, third), statistics, properties);
+	}
+
+}
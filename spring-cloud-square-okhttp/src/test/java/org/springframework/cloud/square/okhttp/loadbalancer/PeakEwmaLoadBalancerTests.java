@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PeakEwmaLoadBalancer}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class PeakEwmaLoadBalancerTests {
+
+	private final ServiceInstance fast = new DefaultServiceInstance("test-1", "testapp", "fast.example", 8080, false);
+
+	private final ServiceInstance slow = new DefaultServiceInstance("test-2", "testapp", "slow.example", 8080, false);
+
+	private final ServiceInstance added = new DefaultServiceInstance("test-3", "testapp", "added.example", 8080, false);
+
+	private final LoadBalancerStatistics statistics = new LoadBalancerStatistics(Duration.ofMinutes(1));
+
+	@Test
+	void shouldSelectInstanceWithLowerLatency() {
+		record(fast, 10);
+		record(slow, 500);
+		PeakEwmaLoadBalancer loadBalancer = loadBalancer(fast, slow);
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(loadBalancer.choose().block().getServer()).isEqualTo(fast);
+		}
+	}
+
+	@Test
+	void shouldTakeActiveRequestsIntoAccount() {
+		record(fast, 10);
+		record(slow, 30);
+		for (int i = 0; i < 5; i++) {
+			statistics.get(fast).requestStarted();
+		}
+		PeakEwmaLoadBalancer loadBalancer = loadBalancer(fast, slow);
+
+		assertThat(loadBalancer.choose().block().getServer()).isEqualTo(slow);
+	}
+
+	@Test
+	void shouldReactToLatencyPeaksImmediately() {
+		record(slow, 10);
+		record(slow, 10);
+		record(slow, 800);
+
+		assertThat(statistics.find(slow).getLatencyEwma()).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(700));
+	}
+
+	@Test
+	void shouldRecordRequestsCompletedThroughLifecycle() {
+		LoadBalancerStatisticsLifecycle lifecycle = new LoadBalancerStatisticsLifecycle(statistics);
+		DefaultRequest<Object> request = new DefaultRequest<>(new RequestDataContext());
+		DefaultResponse response = new DefaultResponse(slow);
+
+		lifecycle.onStartRequest(request, response);
+		assertThat(statistics.getActiveRequests(slow)).isEqualTo(1);
+
+		lifecycle.onComplete(new CompletionContext<>(CompletionContext.Status.SUCCESS, request, response));
+		assertThat(statistics.getActiveRequests(slow)).isZero();
+		assertThat(statistics.find(slow).getLatencyEwma()).isPositive();
+	}
+
+	@Test
+	void shouldNotRecordLatencyOfFailedRequests() {
+		LoadBalancerStatisticsLifecycle lifecycle = new LoadBalancerStatisticsLifecycle(statistics);
+		DefaultRequest<Object> request = new DefaultRequest<>(new RequestDataContext());
+		DefaultResponse response = new DefaultResponse(slow);
+
+		lifecycle.onStartRequest(request, response);
+		lifecycle.onComplete(
+				new CompletionContext<>(CompletionContext.Status.FAILED, new RuntimeException(), request, response));
+
+		assertThat(statistics.getActiveRequests(slow)).isZero();
+		assertThat(statistics.find(slow).getLatencyEwma()).isZero();
+		assertThat(statistics.find(slow).getConsecutiveFailures()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldAssignAverageLatencyToInstancesWithoutSamples() {
+		record(fast, 10);
+		record(slow, 500);
+		PeakEwmaLoadBalancer loadBalancer = loadBalancer(fast, slow, added);
+
+		int selectedAdded = 0;
+		int selectedFast = 0;
+		for (int i = 0; i < 300; i++) {
+			ServiceInstance selected = loadBalancer.choose().block().getServer();
+			if (selected.equals(added)) {
+				selectedAdded++;
+			}
+			else if (selected.equals(fast)) {
+				selectedFast++;
+			}
+		}
+
+		// the added instance only wins against the slow one
+		assertThat(selectedAdded).isPositive().isLessThan(selectedFast);
+	}
+
+	@Test
+	void shouldFindStatisticsOfEqualInstances() {
+		record(fast, 10);
+
+		ServiceInstance refreshed = new DefaultServiceInstance("test-1", "testapp", "fast.example", 8080, false);
+		ServiceInstance moved = new DefaultServiceInstance("test-4", "testapp", "fast.example", 8080, false);
+
+		assertThat(statistics.find(refreshed)).isSameAs(statistics.find(fast));
+		assertThat(statistics.find(moved)).isSameAs(statistics.find(fast));
+	}
+
+	private void record(ServiceInstance instance, long latencyMillis) {
+		InstanceStatistics instanceStatistics = statistics.get(instance);
+		instanceStatistics.requestStarted();
+		instanceStatistics.requestFinished();
+		instanceStatistics.recordLatency(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+	}
+
+	@SuppressWarnings("unchecked")
+	private PeakEwmaLoadBalancer loadBalancer(ServiceInstance... instances) {
+		ServiceInstanceListSupplier supplier = ServiceInstanceListSuppliers.from("testapp", instances);
+		ObjectProvider<ServiceInstanceListSupplier> provider = mock(ObjectProvider.class);
+		when(provider.getIfAvailable(any())).thenReturn(supplier);
+		return new PeakEwmaLoadBalancer(provider, "testapp", statistics);
+	}
+
+}
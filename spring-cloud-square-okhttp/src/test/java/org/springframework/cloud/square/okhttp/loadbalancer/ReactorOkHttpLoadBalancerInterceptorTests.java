@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactiveLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ReactorOkHttpLoadBalancerInterceptor}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class ReactorOkHttpLoadBalancerInterceptorTests {
+
+	private static final String SERVICE_ID = "testapp";
+
+	private final ServiceInstance instance = new DefaultServiceInstance("test-1", SERVICE_ID, "test.example", 8080,
+			false);
+
+	private final Interceptor.Chain chain = mock(Interceptor.Chain.class);
+
+	@BeforeEach
+	void setUp() throws IOException {
+		when(chain.request()).thenReturn(new Request.Builder().url("http://" + SERVICE_ID + "/hello").build());
+		when(chain.proceed(any())).thenAnswer(invocation -> new Response.Builder().request(invocation.getArgument(0))
+				.protocol(Protocol.HTTP_1_1).code(200).message("OK").build());
+	}
+
+	@Test
+	void shouldUseImmediatelyAvailableSelection() throws IOException {
+		ReactorOkHttpLoadBalancerInterceptor interceptor = new ReactorOkHttpLoadBalancerInterceptor(
+				new TestFactory(Mono.just(new DefaultResponse(instance)),
+						ServiceInstanceListSuppliers.from(SERVICE_ID)),
+				Duration.ofSeconds(1));
+
+		Response response = interceptor.intercept(chain);
+
+		assertThat(response.request().url().toString()).isEqualTo("http://test.example:8080/hello");
+	}
+
+	@Test
+	void shouldUseSnapshotWhenSelectionPending() throws IOException {
+		ServiceInstance snapshotInstance = new DefaultServiceInstance("test-2", SERVICE_ID, "snapshot.example", 9090,
+				true);
+		ReactorOkHttpLoadBalancerInterceptor interceptor = new ReactorOkHttpLoadBalancerInterceptor(
+				new TestFactory(Mono.never(), ServiceInstanceListSuppliers.from(SERVICE_ID, snapshotInstance)),
+				Duration.ofSeconds(5));
+
+		long start = System.nanoTime();
+		Response response = interceptor.intercept(chain);
+
+		assertThat(response.request().url().toString()).isEqualTo("https://snapshot.example:9090/hello");
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+	}
+
+	@Test
+	void shouldWaitForSelectionWhenNoSnapshot() throws IOException {
+		ReactorOkHttpLoadBalancerInterceptor interceptor = new ReactorOkHttpLoadBalancerInterceptor(
+				new TestFactory(Mono.just(new DefaultResponse(instance)).delayElement(Duration.ofMillis(50)),
+						ServiceInstanceListSuppliers.from(SERVICE_ID)),
+				Duration.ofSeconds(1));
+
+		Response response = interceptor.intercept(chain);
+
+		assertThat(response.request().url().toString()).isEqualTo("http://test.example:8080/hello");
+	}
+
+	@Test
+	void shouldRefreshSnapshotOnlyOnceOlderThanRefreshInterval() throws IOException {
+		AtomicInteger retrievals = new AtomicInteger();
+		ReactorOkHttpLoadBalancerInterceptor interceptor = new ReactorOkHttpLoadBalancerInterceptor(
+				new TestFactory(Mono.just(new DefaultResponse(instance)), new TestSupplier(Flux.defer(() -> {
+					retrievals.incrementAndGet();
+					return Flux.just(Collections.singletonList(instance));
+				}))), Duration.ofMillis(50), null, null, Duration.ofHours(1));
+
+		interceptor.intercept(chain);
+		interceptor.intercept(chain);
+		interceptor.intercept(chain);
+
+		assertThat(retrievals).hasValue(1);
+	}
+
+	@Test
+	void shouldRefreshStaleSnapshot() throws IOException {
+		ServiceInstance replacement = new DefaultServiceInstance("test-2", SERVICE_ID, "replacement.example", 9090,
+				false);
+		AtomicReference<List<ServiceInstance>> instances = new AtomicReference<>(Collections.singletonList(instance));
+		AtomicReference<Mono<DefaultResponse>> selection = new AtomicReference<>(
+				Mono.just(new DefaultResponse(instance)));
+		ReactorOkHttpLoadBalancerInterceptor interceptor = new ReactorOkHttpLoadBalancerInterceptor(
+				new TestFactory(Mono.defer(selection::get),
+						new TestSupplier(Flux.defer(() -> Flux.just(instances.get())))),
+				Duration.ofMillis(50), null, null, Duration.ZERO);
+		interceptor.intercept(chain);
+
+		instances.set(Collections.singletonList(replacement));
+		selection.set(Mono.never());
+		Response response = interceptor.intercept(chain);
+
+		assertThat(response.request().url().toString()).isEqualTo("http://replacement.example:9090/hello");
+	}
+
+	@Test
+	void shouldTimeOutWhenNoSnapshotAndSelectionPending() {
+		ReactorOkHttpLoadBalancerInterceptor interceptor = new ReactorOkHttpLoadBalancerInterceptor(
+				new TestFactory(Mono.never(), ServiceInstanceListSuppliers.from(SERVICE_ID)), Duration.ofMillis(50));
+
+		assertThatIllegalStateException().isThrownBy(() -> interceptor.intercept(chain))
+				.withMessageContaining("Timed out");
+	}
+
+	private static class TestSupplier implements ServiceInstanceListSupplier {
+
+		private final Flux<List<ServiceInstance>> instances;
+
+		TestSupplier(Flux<List<ServiceInstance>> instances) {
+			this.instances = instances;
+		}
+
+		@Override
+		public String getServiceId() {
+			return SERVICE_ID;
+		}
+
+		@Override
+		public Flux<List<ServiceInstance>> get() {
+			return instances;
+		}
+
+	}
+
+	private static class TestFactory implements ReactiveLoadBalancer.Factory<ServiceInstance> {
+
+		private final ReactiveLoadBalancer<ServiceInstance> loadBalancer;
+
+		private final ServiceInstanceListSupplier supplier;
+
+		TestFactory(Mono<DefaultResponse> selection, ServiceInstanceListSupplier supplier) {
+			this.loadBalancer = request -> Mono.from(selection);
+			this.supplier = supplier;
+		}
+
+		@Override
+		public ReactiveLoadBalancer<ServiceInstance> getInstance(String serviceId) {
+			return loadBalancer;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <X> Map<String, X> getInstances(String name, Class<X> type) {
+			if (!type.isInstance(supplier)) {
+				return Collections.emptyMap();
+			}
+			return Collections.singletonMap("supplier", (X) supplier);
+		}
+
+		@Override
+		public <X> X getInstance(String name, Class<?> clazz, Class<?>... generics) {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Tests for {@link RefreshAheadServiceInstanceListSupplier}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class RefreshAheadServiceInstanceListSupplierTests {
+
+	private final ServiceInstance first = new DefaultServiceInstance("test-1", "testapp", "first.example", 8080, false);
+
+	private final ServiceInstance second = new DefaultServiceInstance("test-2", "testapp", "second.example", 8080,
+			false);
+
+	private final TestSupplier delegate = new TestSupplier();
+
+	private final OkHttpLoadBalancerProperties.Snapshot properties = new OkHttpLoadBalancerProperties.Snapshot();
+
+	@Test
+	void shouldServeSnapshotWithoutQueryingDelegate() {
+		RefreshAheadServiceInstanceListSupplier supplier = supplier();
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(supplier.get().blockFirst()).containsExactly(first);
+		}
+
+		assertThat(delegate.retrievals.get()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRefreshSnapshotInBackgroundBeforeItExpires() throws InterruptedException {
+		properties.setRefreshInterval(Duration.ofMillis(50));
+		properties.setTtl(Duration.ofHours(1));
+		RefreshAheadServiceInstanceListSupplier supplier = supplier();
+		supplier.get().blockFirst();
+		delegate.instances = Collections.singletonList(second);
+		Thread.sleep(100);
+
+		assertThat(supplier.get().blockFirst()).containsExactly(first);
+		await(() -> supplier.get().blockFirst().contains(second));
+		assertThat(delegate.retrievals.get()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldWaitForRefreshWhenSnapshotExpired() throws InterruptedException {
+		properties.setRefreshInterval(Duration.ofMillis(50));
+		properties.setTtl(Duration.ofMillis(50));
+		RefreshAheadServiceInstanceListSupplier supplier = supplier();
+		supplier.get().blockFirst();
+		delegate.instances = Collections.singletonList(second);
+		Thread.sleep(100);
+
+		assertThat(supplier.get().blockFirst()).containsExactly(second);
+	}
+
+	@Test
+	void shouldKeepSnapshotWhenRefreshFails() throws InterruptedException {
+		properties.setRefreshInterval(Duration.ofMillis(50));
+		properties.setTtl(Duration.ofMillis(50));
+		RefreshAheadServiceInstanceListSupplier supplier = supplier();
+		supplier.get().blockFirst();
+		delegate.failing = true;
+		Thread.sleep(100);
+
+		assertThat(supplier.get().blockFirst()).containsExactly(first);
+	}
+
+	@Test
+	void shouldFailWhenNoSnapshotRetrieved() {
+		delegate.failing = true;
+		RefreshAheadServiceInstanceListSupplier supplier = supplier();
+
+		assertThatIllegalStateException().isThrownBy(() -> supplier.get().blockFirst());
+	}
+
+	private RefreshAheadServiceInstanceListSupplier supplier() {
+		return new RefreshAheadServiceInstanceListSupplier(delegate, properties);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private class TestSupplier implements ServiceInstanceListSupplier {
+
+		private final AtomicInteger retrievals = new AtomicInteger();
+
+		private volatile List<ServiceInstance> instances = Collections.singletonList(first);
+
+		private volatile boolean failing;
+
+		@Override
+		public String getServiceId() {
+			return "testapp";
+		}
+
+		@Override
+		public Flux<List<ServiceInstance>> get() {
+			return Flux.defer(() -> {
+				retrievals.incrementAndGet();
+				return failing ? Flux.error(new IllegalStateException("Discovery unavailable")) : Flux.just(instances);
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link SlowStartServiceInstanceListSupplier}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class SlowStartServiceInstanceListSupplierTests {
+
+	private final ServiceInstance first = new DefaultServiceInstance("test-1", "testapp", "first.example", 8080, false);
+
+	private final ServiceInstance second = new DefaultServiceInstance("test-2", "testapp", "second.example", 8080,
+			false);
+
+	private final List<ServiceInstance> instances = new ArrayList<>(Arrays.asList(first));
+
+	private final OkHttpLoadBalancerProperties.SlowStart properties = new OkHttpLoadBalancerProperties.SlowStart();
+
+	@Test
+	void shouldNotWarmUpInitialInstances() {
+		instances.add(second);
+		SlowStartServiceInstanceListSupplier supplier = supplier();
+
+		for (int i = 0; i < 20; i++) {
+			assertThat(supplier.get().blockFirst()).containsExactly(first, second);
+		}
+	}
+
+	@Test
+	void shouldRampUpTrafficToNewInstances() {
+		properties.setWindow(Duration.ofMinutes(10));
+		properties.setMinWeight(0.2);
+		SlowStartServiceInstanceListSupplier supplier = supplier();
+		supplier.get().blockFirst();
+		instances.add(second);
+
+		int included = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (supplier.get().blockFirst().contains(second)) {
+				included++;
+			}
+		}
+
+		assertThat(included).isBetween(100, 350);
+	}
+
+	@Test
+	void shouldCalculateWeights() {
+		properties.setWindow(Duration.ofSeconds(10));
+		properties.setMinWeight(0.1);
+		SlowStartServiceInstanceListSupplier supplier = supplier();
+
+		assertThat(supplier.weight(0)).isCloseTo(0.1, within(0.001));
+		assertThat(supplier.weight(Duration.ofSeconds(5).toNanos())).isCloseTo(0.55, within(0.001));
+		assertThat(supplier.weight(Duration.ofSeconds(10).toNanos())).isEqualTo(1);
+
+		properties.setRamp(OkHttpLoadBalancerProperties.SlowStart.Ramp.EXPONENTIAL);
+		assertThat(supplier.weight(Duration.ofSeconds(5).toNanos())).isEqualTo(0.1);
+		assertThat(supplier.weight(Duration.ofSeconds(9).toNanos())).isCloseTo(0.5, within(0.001));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void shouldLetStatisticsAwareLoadBalancerWeighInstances() {
+		properties.setWindow(Duration.ofMinutes(10));
+		properties.setMinWeight(0.2);
+		SlowStartServiceInstanceListSupplier supplier = supplier();
+		supplier.get().blockFirst();
+		instances.add(second);
+		ObjectProvider<ServiceInstanceListSupplier> provider = mock(ObjectProvider.class);
+		when(provider.getIfAvailable(any())).thenReturn(supplier);
+		LoadBalancerStatistics statistics = new LoadBalancerStatistics();
+		LeastOutstandingRequestsLoadBalancer loadBalancer = new LeastOutstandingRequestsLoadBalancer(provider,
+				"testapp", statistics);
+
+		// the warming-up instance only wins once the other one is busy enough
+		assertThat(loadBalancer.choose().block().getServer()).isEqualTo(first);
+		assertThat(supplier.get().blockFirst()).containsExactly(first, second);
+		for (int i = 0; i < 5; i++) {
+			statistics.get(first).requestStarted();
+		}
+		assertThat(loadBalancer.choose().block().getServer()).isEqualTo(second);
+	}
+
+	private SlowStartServiceInstanceListSupplier supplier() {
+		ServiceInstanceListSupplier delegate = new ServiceInstanceListSupplier() {
+			@Override
+			public String getServiceId() {
+				return "testapp";
+			}
+
+			@Override
+			public Flux<List<ServiceInstance>> get() {
+				return Flux.just(new ArrayList<>(instances));
+			}
+		};
+		return new SlowStartServiceInstanceListSupplier(delegate, properties);
+	}
+
+}
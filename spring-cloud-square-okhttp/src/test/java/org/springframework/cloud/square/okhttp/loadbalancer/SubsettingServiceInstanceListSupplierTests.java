@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link SubsettingServiceInstanceListSupplier}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class SubsettingServiceInstanceListSupplierTests {
+
+	private final List<ServiceInstance> instances = new ArrayList<>();
+
+	private final LoadBalancerStatistics statistics = new LoadBalancerStatistics();
+
+	SubsettingServiceInstanceListSupplierTests() {
+		for (int i = 0; i < 100; i++) {
+			instances.add(new DefaultServiceInstance("test-" + i, "testapp", "host" + i + ".example", 8080, false));
+		}
+	}
+
+	@Test
+	void shouldSelectSameSubsetForSameClient() {
+		List<ServiceInstance> subset = supplier("client-1", 10).get().blockFirst();
+
+		assertThat(subset).hasSize(10);
+		assertThat(supplier("client-1", 10).get().blockFirst()).isEqualTo(subset);
+		assertThat(supplier("client-2", 10).get().blockFirst()).isNotEqualTo(subset);
+	}
+
+	@Test
+	void shouldSpreadSubsetsEvenly() {
+		Map<ServiceInstance, Integer> counts = new HashMap<>();
+		for (int client = 0; client < 200; client++) {
+			for (ServiceInstance instance : supplier("client-" + client, 10).get().blockFirst()) {
+				counts.merge(instance, 1, Integer::sum);
+			}
+		}
+
+		assertThat(counts).hasSize(100);
+		assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(5, 40));
+	}
+
+	@Test
+	void shouldKeepSubsetWhenOtherInstanceRemoved() {
+		SubsettingServiceInstanceListSupplier supplier = supplier("client-1", 10);
+		List<ServiceInstance> subset = supplier.get().blockFirst();
+		ServiceInstance removed = subset.get(3);
+		instances.remove(removed);
+
+		List<ServiceInstance> updated = supplier.get().blockFirst();
+
+		assertThat(updated).hasSize(10).doesNotContain(removed);
+		List<ServiceInstance> retained = new ArrayList<>(subset);
+		retained.remove(removed);
+		assertThat(updated).containsAll(retained);
+	}
+
+	@Test
+	void shouldGrowSubsetUnderLoad() {
+		SubsettingServiceInstanceListSupplier supplier = supplier("client-1", 2);
+		for (ServiceInstance instance : supplier.get().blockFirst()) {
+			for (int i = 0; i < 10; i++) {
+				statistics.get(instance).requestStarted();
+			}
+		}
+
+		assertThat(supplier.get().blockFirst()).hasSize(3);
+	}
+
+	private SubsettingServiceInstanceListSupplier supplier(String clientId, int minSize) {
+		OkHttpLoadBalancerProperties.Subset properties = new OkHttpLoadBalancerProperties.Subset();
+		properties.setClientId(clientId);
+		properties.setMinSize(minSize);
+		properties.setAdjustmentInterval(Duration.ZERO);
+		ServiceInstanceListSupplier delegate = new ServiceInstanceListSupplier() {
+			@Override
+			public String getServiceId() {
+				return "testapp";
+			}
+
+			@Override
+			public Flux<List<ServiceInstance>> get() {
+				return Flux.just(new ArrayList<>(instances));
+			}
+		};
+		return new SubsettingServiceInstanceListSupplier(delegate, statistics, properties);
+	}
+
+}
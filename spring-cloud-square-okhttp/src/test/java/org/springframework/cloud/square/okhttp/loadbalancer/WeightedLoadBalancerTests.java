@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link WeightedLoadBalancer}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class WeightedLoadBalancerTests {
+
+	private static final int REQUESTS = 20_000;
+
+	private final List<ServiceInstance> instances = new ArrayList<>();
+
+	private final WeightedLoadBalancer loadBalancer;
+
+	@SuppressWarnings("unchecked")
+	WeightedLoadBalancerTests() {
+		ServiceInstanceListSupplier supplier = new ServiceInstanceListSupplier() {
+			@Override
+			public String getServiceId() {
+				return "testapp";
+			}
+
+			@Override
+			public Flux<List<ServiceInstance>> get() {
+				return Flux.just(new ArrayList<>(instances));
+			}
+		};
+		ObjectProvider<ServiceInstanceListSupplier> provider = mock(ObjectProvider.class);
+		when(provider.getIfAvailable(any())).thenReturn(supplier);
+		loadBalancer = new WeightedLoadBalancer(provider, "testapp");
+	}
+
+	@Test
+	void shouldSelectInstancesProportionallyToWeights() {
+		instances.add(instance("small", "1"));
+		instances.add(instance("medium", "2"));
+		instances.add(instance("large", "5"));
+
+		Map<String, Integer> selections = choose();
+
+		assertThat(selections.get("small") / (double) REQUESTS).isCloseTo(0.125, within(0.02));
+		assertThat(selections.get("medium") / (double) REQUESTS).isCloseTo(0.25, within(0.02));
+		assertThat(selections.get("large") / (double) REQUESTS).isCloseTo(0.625, within(0.02));
+	}
+
+	@Test
+	void shouldUseDefaultWeightForMissingOrInvalidWeights() {
+		instances.add(instance("missing", null));
+		instances.add(instance("invalid", "heavy"));
+		instances.add(instance("negative", "-3"));
+		instances.add(instance("explicit", "1.0"));
+
+		Map<String, Integer> selections = choose();
+
+		assertThat(selections).hasSize(4);
+		selections.values().forEach(count -> assertThat(count / (double) REQUESTS).isCloseTo(0.25, within(0.02)));
+	}
+
+	@Test
+	void shouldNotSelectInstancesWithZeroWeight() {
+		instances.add(instance("drained", "0"));
+		instances.add(instance("active", "1"));
+
+		assertThat(choose()).containsOnlyKeys("active");
+	}
+
+	@Test
+	void shouldSelectAllInstancesWhenAllHaveZeroWeight() {
+		instances.add(instance("first", "0"));
+		instances.add(instance("second", "0"));
+
+		assertThat(choose()).containsOnlyKeys("first", "second");
+	}
+
+	@Test
+	void shouldRebuildTableWhenInstancesChange() {
+		instances.add(instance("first", "1"));
+		assertThat(choose()).containsOnlyKeys("first");
+
+		instances.add(instance("second", "3"));
+		Map<String, Integer> selections = choose();
+
+		assertThat(selections.get("second") / (double) REQUESTS).isCloseTo(0.75, within(0.02));
+	}
+
+	private Map<String, Integer> choose() {
+		Map<String, Integer> selections = new HashMap<>();
+		for (int i = 0; i < REQUESTS; i++) {
+			ServiceInstance instance = loadBalancer.choose(new DefaultRequest<>()).block().getServer();
+			selections.merge(instance.getInstanceId(), 1, Integer::sum);
+		}
+		return selections;
+	}
+
+	private static ServiceInstance instance(String id, String weight) {
+		Map<String, String> metadata = weight != null ? Collections.singletonMap("weight", weight)
+				: Collections.emptyMap();
+		return new DefaultServiceInstance(id, "testapp", id + ".example", 8080, false, metadata);
+	}
+
+}
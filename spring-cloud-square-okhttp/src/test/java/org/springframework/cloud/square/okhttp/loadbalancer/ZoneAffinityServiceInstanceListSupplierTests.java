@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.loadbalancer;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.config.LoadBalancerZoneConfig;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ZoneAffinityServiceInstanceListSupplier}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class ZoneAffinityServiceInstanceListSupplierTests {
+
+	private final ServiceInstance local1 = instance("test-1", "zone1");
+
+	private final ServiceInstance local2 = instance("test-2", "zone1");
+
+	private final ServiceInstance remote = instance("test-3", "zone2");
+
+	private final LoadBalancerStatistics statistics = new LoadBalancerStatistics();
+
+	private final OkHttpLoadBalancerProperties.ZoneAffinity properties = new OkHttpLoadBalancerProperties.ZoneAffinity();
+
+	@Test
+	void shouldReturnLocalZoneInstances() {
+		assertThat(supplier("zone1", local1, local2, remote).get().blockFirst()).containsExactly(local1, local2);
+	}
+
+	@Test
+	void shouldReturnAllInstancesWhenZoneNotSet() {
+		assertThat(supplier(null, local1, remote).get().blockFirst()).containsExactly(local1, remote);
+	}
+
+	@Test
+	void shouldSpillOverWhenNotEnoughLocalInstances() {
+		properties.setMinInstances(3);
+
+		assertThat(supplier("zone1", local1, local2, remote).get().blockFirst()).containsExactly(local1, local2,
+				remote);
+	}
+
+	@Test
+	void shouldSpillOverWhenLocalInstancesSaturated() {
+		properties.setMaxActiveRequestsPerInstance(2);
+		properties.setDecisionTtl(Duration.ZERO);
+		ZoneAffinityServiceInstanceListSupplier supplier = supplier("zone1", local1, local2, remote);
+		assertThat(supplier.get().blockFirst()).containsExactly(local1, local2);
+
+		for (int i = 0; i < 4; i++) {
+			statistics.get(i % 2 == 0 ? local1 : local2).requestStarted();
+		}
+
+		assertThat(supplier.get().blockFirst()).containsExactly(local1, local2, remote);
+	}
+
+	@Test
+	void shouldCacheRoutingDecision() {
+		properties.setMaxActiveRequestsPerInstance(1);
+		properties.setDecisionTtl(Duration.ofMinutes(1));
+		ZoneAffinityServiceInstanceListSupplier supplier = supplier("zone1", local1, remote);
+		List<ServiceInstance> first = supplier.get().blockFirst();
+
+		statistics.get(local1).requestStarted();
+
+		assertThat(supplier.get().blockFirst()).isSameAs(first);
+	}
+
+	private ZoneAffinityServiceInstanceListSupplier supplier(String zone, ServiceInstance... instances) {
+		return new ZoneAffinityServiceInstanceListSupplier(ServiceInstanceListSuppliers.from("test", instances),
+				new LoadBalancerZoneConfig(zone), statistics, properties);
+	}
+
+	private static ServiceInstance instance(String instanceId, String zone) {
+		return new DefaultServiceInstance(instanceId, "test", instanceId + ".example", 8080, false,
+				Collections.singletonMap("zone", zone));
+	}
+
+}
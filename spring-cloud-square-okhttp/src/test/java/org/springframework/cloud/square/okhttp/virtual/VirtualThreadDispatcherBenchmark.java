@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.virtual;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the default OkHttp {@link Dispatcher}, backed by a cached pool of platform
+ * threads, with one backed by virtual threads, for many concurrent calls that each wait
+ * for a slow response. The calls do not use the network, so the cost of the threads is
+ * measured and not the one of the connections. Prints the best time of each scenario and
+ * the peak number of platform threads of the JVM. It is not run with the regular build;
+ * run it on JDK 21 or later with
+ * {@code ./mvnw test -pl spring-cloud-square-okhttp -Dtest=VirtualThreadDispatcherBenchmark}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class VirtualThreadDispatcherBenchmark {
+
+	private static final int CALLS = 5_000;
+
+	private static final long LATENCY_MILLIS = 50;
+
+	private static final int ROUNDS = 3;
+
+	private static final Interceptor RESPOND_AFTER_LATENCY = chain -> {
+		sleep();
+		return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+				.body(ResponseBody.create("", null)).build();
+	};
+
+	private final Request request = new Request.Builder().url("http://testapp/api/users/123").build();
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	@Test
+	void asynchronousCalls() {
+		measure("enqueue(), cached thread pool", () -> Executors.newCachedThreadPool(), this::enqueueAll);
+		measure("enqueue(), virtual threads", () -> VirtualThreads.newThreadPerTaskExecutor("okhttp-virtual-"),
+				this::enqueueAll);
+	}
+
+	@Test
+	void synchronousCalls() {
+		measure("execute(), platform caller threads", () -> Executors.newCachedThreadPool(), this::executeAll);
+		measure("execute(), virtual caller threads", () -> VirtualThreads.newThreadPerTaskExecutor("caller-"),
+				this::executeAll);
+	}
+
+	private void measure(String name, Supplier<ExecutorService> executors, Scenario scenario) {
+		if (name.contains("virtual") && !VirtualThreads.isSupported()) {
+			System.out.printf("%-40s skipped, requires JDK 21 or later%n", name);
+			return;
+		}
+		long best = Long.MAX_VALUE;
+		int peakThreads = 0;
+		// the first round warms up
+		for (int round = 0; round <= ROUNDS; round++) {
+			ExecutorService executor = executors.get();
+			threads.resetPeakThreadCount();
+			long start = System.nanoTime();
+			try {
+				scenario.run(executor);
+			}
+			catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			finally {
+				executor.shutdown();
+			}
+			if (round > 0) {
+				best = Math.min(best, System.nanoTime() - start);
+				peakThreads = Math.max(peakThreads, threads.getPeakThreadCount());
+			}
+		}
+		System.out.printf("%-40s %6d ms %6d peak platform threads%n", name, TimeUnit.NANOSECONDS.toMillis(best),
+				peakThreads);
+	}
+
+	// the dispatcher runs the calls in the given executor
+	private void enqueueAll(ExecutorService executor) throws InterruptedException {
+		Dispatcher dispatcher = new Dispatcher(executor);
+		dispatcher.setMaxRequests(CALLS);
+		dispatcher.setMaxRequestsPerHost(CALLS);
+		OkHttpClient client = new OkHttpClient.Builder().dispatcher(dispatcher).addInterceptor(RESPOND_AFTER_LATENCY)
+				.build();
+		CountDownLatch responses = new CountDownLatch(CALLS);
+		for (int i = 0; i < CALLS; i++) {
+			client.newCall(request).enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					responses.countDown();
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) {
+					response.close();
+					responses.countDown();
+				}
+			});
+		}
+		responses.await();
+	}
+
+	// synchronous calls run in the thread of the caller, which the executor provides
+	private void executeAll(ExecutorService executor) throws Exception {
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor(RESPOND_AFTER_LATENCY).build();
+		List<Future<?>> calls = new ArrayList<>(CALLS);
+		for (int i = 0; i < CALLS; i++) {
+			calls.add(executor.submit(() -> {
+				client.newCall(request).execute().close();
+				return null;
+			}));
+		}
+		for (Future<?> call : calls) {
+			call.get();
+		}
+	}
+
+	private static void sleep() {
+		try {
+			TimeUnit.MILLISECONDS.sleep(LATENCY_MILLIS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private interface Scenario {
+
+		void run(ExecutorService executor) throws Exception;
+
+	}
+
+}
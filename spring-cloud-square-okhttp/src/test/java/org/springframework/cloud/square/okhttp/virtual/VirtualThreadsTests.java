@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.okhttp.virtual;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.square.okhttp.config.OkHttpAutoConfiguration;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientResources;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientsConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests for {@link VirtualThreads}, {@link VirtualThreadPinningMonitor} and
+ * {@link OkHttpVirtualThreadsConfiguration}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class VirtualThreadsTests {
+
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(OkHttpAutoConfiguration.class))
+			.withUserConfiguration(TestConfig.class)
+			.withPropertyValues("spring.cloud.square.okhttp.virtual-threads.enabled=true");
+
+	@Test
+	void shouldRunTasksInVirtualThreads() throws Exception {
+		assumeTrue(VirtualThreads.isSupported());
+		ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+		try {
+			String name = executor.submit(() -> Thread.currentThread().getName()).get(1, TimeUnit.SECONDS);
+
+			assertThat(name).startsWith("test-");
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void shouldRejectVirtualThreadsBeforeJdk21() {
+		assumeFalse(VirtualThreads.isSupported());
+
+		assertThatIllegalStateException().isThrownBy(() -> VirtualThreads.newThreadPerTaskExecutor("test-"));
+	}
+
+	@Test
+	void shouldRunDispatchersOfClientsInVirtualThreads() {
+		assumeTrue(VirtualThreads.isSupported());
+		contextRunner
+				.withPropertyValues("spring.cloud.square.okhttp.clients.testapp.dispatcher.max-requests-per-host=2",
+						"spring.cloud.square.okhttp.clients.other.dispatcher-name=shared")
+				.run(context -> {
+					OkHttpClientResources resources = context.getBean(OkHttpClientResources.class);
+					OkHttpClientsConfigurer configurer = context.getBean(OkHttpClientsConfigurer.class);
+					OkHttpClient client = context.getBean(OkHttpClient.Builder.class).build();
+
+					OkHttpClient testClient = configurer.configure("testapp", client);
+					OkHttpClient otherClient = configurer.configure("other", client);
+
+					assertThat(resources.getExecutorService()).isNotInstanceOf(ThreadPoolExecutor.class);
+					assertThat(testClient.dispatcher()).isSameAs(resources.getDispatchers().get("testapp"));
+					assertThat(testClient.dispatcher().getMaxRequestsPerHost()).isEqualTo(2);
+					assertThat(testClient.dispatcher().executorService()).isSameAs(resources.getExecutorService());
+					assertThat(otherClient.dispatcher()).isSameAs(resources.getDispatchers().get("shared"));
+					assertThat(otherClient.dispatcher().executorService()).isSameAs(resources.getExecutorService());
+					assertThat(client.dispatcher()).isNotIn(resources.getDispatchers().values());
+					assertThat(context).hasSingleBean(VirtualThreadPinningMonitor.class);
+				});
+	}
+
+	@Test
+	void shouldRunClientsWithoutDispatcherPropertiesInVirtualThreads() {
+		assumeTrue(VirtualThreads.isSupported());
+		contextRunner.run(context -> {
+			OkHttpClientResources resources = context.getBean(OkHttpClientResources.class);
+			OkHttpClient client = context.getBean(OkHttpClient.Builder.class).build();
+
+			OkHttpClient configured = context.getBean(OkHttpClientsConfigurer.class).configure("testapp", client);
+
+			assertThat(configured.dispatcher()).isSameAs(resources.getDispatchers().get("testapp"));
+			assertThat(configured.dispatcher().executorService()).isSameAs(resources.getExecutorService());
+			assertThat(configured.dispatcher().getMaxRequestsPerHost()).isEqualTo(5);
+			assertThat(resources.getExecutorService()).isNotInstanceOf(ThreadPoolExecutor.class);
+		});
+	}
+
+	@Test
+	void shouldKeepPlatformThreadsBeforeJdk21() {
+		assumeFalse(VirtualThreads.isSupported());
+		contextRunner.run(context -> {
+			assertThat(context).doesNotHaveBean(OkHttpVirtualThreadsProperties.class);
+			assertThat(context).doesNotHaveBean(VirtualThreadPinningMonitor.class);
+			assertThat(context.getBean(OkHttpClientResources.class).getExecutorService())
+					.isInstanceOf(ThreadPoolExecutor.class);
+			assertThat(context.getBean(OkHttpClient.Builder.class).build().dispatcher().executorService())
+					.isNotSameAs(context.getBean(OkHttpClientResources.class).getExecutorService());
+		});
+	}
+
+	@Test
+	void shouldRecordPinnedThreads() throws Exception {
+		VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor(Duration.ofMillis(20));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new VirtualThreadPinningMeterBinder(monitor).bindTo(registry);
+		monitor.afterPropertiesSet();
+		try {
+			assertThat(monitor.isRunning()).isTrue();
+
+			monitor.record(Duration.ofMillis(30), "jdk.VirtualThreadPinned {}");
+			monitor.record(Duration.ofMillis(50), "jdk.VirtualThreadPinned {}");
+
+			assertThat(monitor.getPinnedThreads()).isEqualTo(2);
+			assertThat(registry.get("okhttp.virtual.threads.pinned").functionTimer().totalTime(TimeUnit.MILLISECONDS))
+					.isEqualTo(80);
+		}
+		finally {
+			monitor.destroy();
+		}
+		assertThat(monitor.isRunning()).isFalse();
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	protected static class TestConfig {
+
+		@Bean
+		@LoadBalanced
+		public OkHttpClient.Builder okHttpClientBuilder() {
+			return new OkHttpClient.Builder();
+		}
+
+	}
+
+}
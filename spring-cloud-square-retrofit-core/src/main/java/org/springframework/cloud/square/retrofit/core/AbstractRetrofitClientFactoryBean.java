@@ -124,6 +124,7 @@ public abstract class AbstractRetrofitClientFactoryBean
 	@Override
 	public Object getObject() throws Exception {
 		RetrofitContext context = applicationContext.getBean(RetrofitContext.class);
+		ConsistentHashKeyResolver.validate(this.type);
 
 		boolean hasUrl = StringUtils.hasText(this.url);
 		Retrofit.Builder builder = retrofit(context, hasUrl);
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Timeout;
+
+/**
+ * A {@link Call.Factory} that runs the calls of a Retrofit client in its
+ * {@link RetrofitClientBulkhead}. A call holds its permit until its response body is
+ * closed or until it fails, so that the connections used to read the response bodies are
+ * counted as well. Asynchronous calls wait for the permit without blocking a thread.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class BulkheadCallFactory implements Call.Factory {
+
+	private final Call.Factory delegate;
+
+	private final RetrofitClientBulkhead bulkhead;
+
+	public BulkheadCallFactory(Call.Factory delegate, RetrofitClientBulkhead bulkhead) {
+		this.delegate = delegate;
+		this.bulkhead = bulkhead;
+	}
+
+	public Call.Factory getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Call newCall(Request request) {
+		return new BulkheadCall(delegate.newCall(request), bulkhead);
+	}
+
+	private static final class BulkheadCall implements Call {
+
+		private final Call delegate;
+
+		private final RetrofitClientBulkhead bulkhead;
+
+		private final AtomicBoolean executed = new AtomicBoolean();
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private volatile RetrofitClientBulkhead.Pending pending = RetrofitClientBulkhead.Pending.NONE;
+
+		private volatile Callback responseCallback;
+
+		private BulkheadCall(Call delegate, RetrofitClientBulkhead bulkhead) {
+			this.delegate = delegate;
+			this.bulkhead = bulkhead;
+		}
+
+		@Override
+		public Request request() {
+			return delegate.request();
+		}
+
+		@Override
+		public Response execute() throws IOException {
+			markExecuted();
+			CompletableFuture<Void> acquired = new CompletableFuture<>();
+			RetrofitClientBulkhead.Pending waiting = bulkhead.acquire(() -> acquired.complete(null),
+					acquired::completeExceptionally);
+			try {
+				acquired.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (!waiting.cancel() && !acquired.isCompletedExceptionally()) {
+					release();
+				}
+				throw new InterruptedIOException("Interrupted while waiting in the bulkhead queue");
+			}
+			catch (ExecutionException e) {
+				throw (IOException) e.getCause();
+			}
+			try {
+				return releasingOnClose(delegate.execute());
+			}
+			catch (IOException | RuntimeException e) {
+				release();
+				throw e;
+			}
+		}
+
+		@Override
+		public void enqueue(Callback responseCallback) {
+			markExecuted();
+			this.responseCallback = responseCallback;
+			pending = bulkhead.acquire(this::enqueueAcquired,
+					rejection -> responseCallback.onFailure(BulkheadCall.this, rejection));
+		}
+
+		private void enqueueAcquired() {
+			Callback callback = responseCallback;
+			delegate.enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					release();
+					callback.onFailure(BulkheadCall.this, e);
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) throws IOException {
+					callback.onResponse(BulkheadCall.this, releasingOnClose(response));
+				}
+			});
+		}
+
+		private Response releasingOnClose(Response response) {
+			ResponseBody body = response.body();
+			if (body == null) {
+				release();
+				return response;
+			}
+			ForwardingSource source = new ForwardingSource(body.source()) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					}
+					finally {
+						release();
+					}
+				}
+			};
+			return response.newBuilder()
+					.body(ResponseBody.create(Okio.buffer(source), body.contentType(), body.contentLength())).build();
+		}
+
+		private void release() {
+			if (released.compareAndSet(false, true)) {
+				bulkhead.release();
+			}
+		}
+
+		private void markExecuted() {
+			if (!executed.compareAndSet(false, true)) {
+				throw new IllegalStateException("Already Executed");
+			}
+		}
+
+		@Override
+		public void cancel() {
+			delegate.cancel();
+			if (pending.cancel()) {
+				responseCallback.onFailure(this, new IOException("Canceled"));
+			}
+		}
+
+		@Override
+		public boolean isExecuted() {
+			return executed.get();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return delegate.isCanceled();
+		}
+
+		@Override
+		public Timeout timeout() {
+			return delegate.timeout();
+		}
+
+		@Override
+		public Call clone() {
+			return new BulkheadCall(delegate.clone(), bulkhead);
+		}
+
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call is rejected by the {@link RetrofitClientBulkhead} of its client,
+ * because the wait queue is full or the call has waited longer than the queue timeout.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class BulkheadFullException extends IOException {
+
+	private final String name;
+
+	public BulkheadFullException(String name, String message) {
+		super(message);
+		this.name = name;
+	}
+
+	/**
+	 * @return the name of the client
+	 */
+	public String getName() {
+		return name;
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+/**
+ * The priority lanes of the calls of Retrofit clients waiting for the OkHttp
+ * {@link okhttp3.Dispatcher} to run them. Calls in a higher priority lane are always run
+ * before the calls in the lower priority lanes.
+ *
+ * @author Olga Maciaszek-Sharma
+ * @see Prioritized
+ */
+public enum CallPriority {
+
+	/**
+	 * User-facing calls that should never wait for any other call.
+	 */
+	CRITICAL,
+
+	/**
+	 * The default priority.
+	 */
+	NORMAL,
+
+	/**
+	 * Batch calls, such as synchronisation jobs, that only run when no other call waits.
+	 */
+	BACKGROUND
+
+}
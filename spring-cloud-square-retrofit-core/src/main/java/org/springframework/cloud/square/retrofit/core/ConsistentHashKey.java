@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the request value used as the hash key when routing the requests of a
+ * load-balanced {@link RetrofitClient} with a consistent-hash load balancer. Can be
+ * placed on a client method or on the client interface, in which case it applies to all
+ * of its methods that are not annotated themselves. Exactly one of the attributes should
+ * be set.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConsistentHashKey {
+
+	/**
+	 * The name of the request header holding the hash key.
+	 */
+	String header() default "";
+
+	/**
+	 * The name of the query parameter holding the hash key.
+	 */
+	String query() default "";
+
+	/**
+	 * The name of the <code>@Path</code> parameter holding the hash key.
+	 */
+	String path() default "";
+
+}
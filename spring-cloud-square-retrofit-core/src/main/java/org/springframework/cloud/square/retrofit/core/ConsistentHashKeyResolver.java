@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import okhttp3.Request;
+import retrofit2.Invocation;
+import retrofit2.http.Path;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Resolves the hash key of a Retrofit request based on the {@link ConsistentHashKey}
+ * annotation of the invoked client method or interface. The way the key is extracted is
+ * resolved once per method. A {@code path} key declared on the interface only applies to
+ * the methods that have a matching {@link Path} parameter, while a {@code path} key
+ * declared on a method without one is rejected by {@link #validate(Class)} when the
+ * client is created.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class ConsistentHashKeyResolver {
+
+	private static final BiFunction<Request, Invocation, String> NO_KEY = (request, invocation) -> null;
+
+	private final Map<Method, BiFunction<Request, Invocation, String>> extractors = new ConcurrentHashMap<>();
+
+	/**
+	 * @param request the request created by Retrofit
+	 * @return the hash key or {@code null} if the invoked method does not declare one
+	 */
+	public String resolve(Request request) {
+		Invocation invocation = request.tag(Invocation.class);
+		if (invocation == null) {
+			return null;
+		}
+		return extractors.computeIfAbsent(invocation.method(), ConsistentHashKeyResolver::extractor).apply(request,
+				invocation);
+	}
+
+	/**
+	 * Resolves the way the hash key is extracted for all the methods of the given client
+	 * interface, so that misconfigured keys are reported when the client is created.
+	 * @param type the client interface
+	 * @throws IllegalStateException if a method declares a key that cannot be extracted
+	 */
+	public static void validate(Class<?> type) {
+		for (Method method : type.getMethods()) {
+			if (!method.isDefault() && !Modifier.isStatic(method.getModifiers())) {
+				extractor(method);
+			}
+		}
+	}
+
+	private static BiFunction<Request, Invocation, String> extractor(Method method) {
+		ConsistentHashKey hashKey = AnnotatedElementUtils.findMergedAnnotation(method, ConsistentHashKey.class);
+		boolean inherited = false;
+		if (hashKey == null) {
+			hashKey = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), ConsistentHashKey.class);
+			inherited = true;
+		}
+		if (hashKey == null) {
+			return NO_KEY;
+		}
+		if (StringUtils.hasText(hashKey.header())) {
+			String header = hashKey.header();
+			return (request, invocation) -> request.header(header);
+		}
+		if (StringUtils.hasText(hashKey.query())) {
+			String query = hashKey.query();
+			return (request, invocation) -> request.url().queryParameter(query);
+		}
+		if (StringUtils.hasText(hashKey.path())) {
+			int index = pathParameterIndex(method, hashKey.path());
+			if (index < 0) {
+				if (inherited) {
+					// the interface-level key does not apply to this method
+					return NO_KEY;
+				}
+				throw new IllegalStateException(
+						"No @Path(\"" + hashKey.path() + "\") parameter found for @ConsistentHashKey in " + method);
+			}
+			return (request, invocation) -> {
+				Object value = invocation.arguments().get(index);
+				return value != null ? value.toString() : null;
+			};
+		}
+		throw new IllegalStateException("No hash key source set in @ConsistentHashKey for " + method);
+	}
+
+	private static int pathParameterIndex(Method method, String name) {
+		Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+		for (int i = 0; i < parameterAnnotations.length; i++) {
+			for (Annotation annotation : parameterAnnotations[i]) {
+				if (annotation instanceof Path && name.equals(((Path) annotation).value())) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which the caller of a request expects its response, after which
+ * any work done for the request is wasted. It is measured with {@link System#nanoTime()},
+ * so that it is not affected by changes of the wall clock once it has been received.
+ *
+ * @author Olga Maciaszek-Sharma
+ * @see DeadlineContext
+ */
+public final class Deadline implements Comparable<Deadline> {
+
+	// far enough in the future, without overflowing when compared
+	private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 4;
+
+	private final long nanoTime;
+
+	private Deadline(long nanoTime) {
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * @param timeout the time left until the deadline
+	 * @return the deadline that passes after the given timeout
+	 */
+	public static Deadline after(Duration timeout) {
+		long timeoutNanos;
+		try {
+			timeoutNanos = Math.min(timeout.toNanos(), MAX_TIMEOUT_NANOS);
+		}
+		catch (ArithmeticException e) {
+			timeoutNanos = timeout.isNegative() ? -MAX_TIMEOUT_NANOS : MAX_TIMEOUT_NANOS;
+		}
+		return new Deadline(System.nanoTime() + Math.max(timeoutNanos, -MAX_TIMEOUT_NANOS));
+	}
+
+	/**
+	 * @param epochMilli the deadline in milliseconds since the epoch
+	 * @return the deadline that passes at the given time of the wall clock
+	 */
+	public static Deadline ofEpochMilli(long epochMilli) {
+		return after(Duration.ofMillis(epochMilli - System.currentTimeMillis()));
+	}
+
+	/**
+	 * @return the deadline as a {@link System#nanoTime()} value
+	 */
+	public long nanoTime() {
+		return nanoTime;
+	}
+
+	/**
+	 * @return the time left until the deadline, negative if it has passed
+	 */
+	public Duration remaining() {
+		return Duration.ofNanos(nanoTime - System.nanoTime());
+	}
+
+	/**
+	 * @return whether the deadline has passed
+	 */
+	public boolean isExpired() {
+		return nanoTime - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @return the deadline in milliseconds since the epoch
+	 */
+	public long toEpochMilli() {
+		return System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(nanoTime - System.nanoTime());
+	}
+
+	/**
+	 * @param other another deadline, possibly {@code null}
+	 * @return the earliest of both deadlines
+	 */
+	public Deadline min(Deadline other) {
+		return other == null || compareTo(other) <= 0 ? this : other;
+	}
+
+	@Override
+	public int compareTo(Deadline other) {
+		return Long.signum(nanoTime - other.nanoTime);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Deadline)) {
+			return false;
+		}
+		return nanoTime == ((Deadline) o).nanoTime;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(nanoTime);
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline{remaining=" + remaining() + '}';
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import okhttp3.Call;
+import okhttp3.Request;
+
+/**
+ * A {@link Call.Factory} that makes the calls of a Retrofit client inherit the
+ * {@link Deadline} of the {@link DeadlineContext} of the calling thread. The deadline is
+ * set on the {@link Call#timeout() timeout} of the calls and in a request tag, read by
+ * the {@link DeadlineInterceptor} once the calls are sent, which rejects the calls whose
+ * deadline has already passed.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class DeadlineCallFactory implements Call.Factory {
+
+	private final Call.Factory delegate;
+
+	public DeadlineCallFactory(Call.Factory delegate) {
+		this.delegate = delegate;
+	}
+
+	public Call.Factory getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Call newCall(Request request) {
+		Deadline deadline = DeadlineContext.get();
+		if (deadline == null) {
+			return delegate.newCall(request);
+		}
+		Call call = delegate.newCall(request.newBuilder().tag(Deadline.class, deadline).build());
+		if (!deadline.isExpired()) {
+			// otherwise the call times out before the interceptor can reject it
+			call.timeout().deadlineNanoTime(deadline.nanoTime());
+		}
+		return call;
+	}
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import okhttp3.Call;
+
+/**
+ * Creates the {@link DeadlineCallFactory} instances of OkHttp-backed Retrofit clients
+ * when deadline propagation is enabled.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class DeadlineCallFactoryProvider {
+
+	/**
+	 * @param delegate the factory creating the calls of the client
+	 * @return a {@link DeadlineCallFactory} that creates calls with the provided factory
+	 */
+	public DeadlineCallFactory getCallFactory(Call.Factory delegate) {
+		return new DeadlineCallFactory(delegate);
+	}
+
+}
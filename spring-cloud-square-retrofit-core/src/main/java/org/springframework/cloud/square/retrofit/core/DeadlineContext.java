@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+/**
+ * Holds the {@link Deadline} of the inbound request handled by the current thread, so
+ * that the Retrofit client calls made while handling it inherit it. In reactive
+ * applications, the deadline is held by the Reactor context of the request, under the
+ * {@link #REACTOR_CONTEXT_KEY} key, instead.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public final class DeadlineContext {
+
+	/**
+	 * The key of the {@link Deadline} in the Reactor context.
+	 */
+	public static final Class<Deadline> REACTOR_CONTEXT_KEY = Deadline.class;
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	private DeadlineContext() {
+		throw new IllegalStateException("Can't instantiate a utility class");
+	}
+
+	/**
+	 * @return the deadline of the current thread or {@code null} if it has none
+	 */
+	public static Deadline get() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Sets the deadline of the current thread.
+	 * @param deadline the deadline or {@code null} to clear it
+	 * @return the previous deadline of the current thread, which should be restored once
+	 * the request has been handled
+	 */
+	public static Deadline set(Deadline deadline) {
+		Deadline previous = CURRENT.get();
+		if (deadline != null) {
+			CURRENT.set(deadline);
+		}
+		else {
+			CURRENT.remove();
+		}
+		return previous;
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call of a Retrofit client is not sent, because the {@link Deadline} of
+ * the request it is made for has already passed.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class DeadlineExceededException extends IOException {
+
+	private final Deadline deadline;
+
+	public DeadlineExceededException(Deadline deadline) {
+		super("Deadline exceeded by " + deadline.remaining().negated().toMillis() + " ms before the call was sent");
+		this.deadline = deadline;
+	}
+
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+}
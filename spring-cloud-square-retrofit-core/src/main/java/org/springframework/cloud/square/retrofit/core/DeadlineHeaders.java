@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Reads and writes the {@link Deadline} of a request from and to its headers. The
+ * deadline is read from the {@value #DEADLINE_HEADER} header, holding the deadline in
+ * milliseconds since the epoch, and from the {@value #GRPC_TIMEOUT_HEADER} header,
+ * holding the time left until the deadline in the gRPC format, such as {@code 250m}. The
+ * earliest of both applies. Both headers are written.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public final class DeadlineHeaders {
+
+	/**
+	 * The header holding the deadline in milliseconds since the epoch.
+	 */
+	public static final String DEADLINE_HEADER = "X-Request-Deadline";
+
+	/**
+	 * The header holding the time left until the deadline in the gRPC format.
+	 */
+	public static final String GRPC_TIMEOUT_HEADER = "grpc-timeout";
+
+	private static final long MAX_GRPC_TIMEOUT_VALUE = 99_999_999;
+
+	private DeadlineHeaders() {
+		throw new IllegalStateException("Can't instantiate a utility class");
+	}
+
+	/**
+	 * Reads the deadline of a request. Malformed headers are ignored.
+	 * @param headers the function returning the value of a header of the request
+	 * @return the deadline or {@code null} if the request has none
+	 */
+	public static Deadline read(Function<String, String> headers) {
+		Deadline deadline = null;
+		String epochMilli = headers.apply(DEADLINE_HEADER);
+		if (epochMilli != null) {
+			try {
+				deadline = Deadline.ofEpochMilli(Long.parseLong(epochMilli.trim()));
+			}
+			catch (NumberFormatException ignored) {
+				// not a deadline we can honour
+			}
+		}
+		Duration grpcTimeout = parseGrpcTimeout(headers.apply(GRPC_TIMEOUT_HEADER));
+		if (grpcTimeout != null) {
+			deadline = Deadline.after(grpcTimeout).min(deadline);
+		}
+		return deadline;
+	}
+
+	/**
+	 * Writes the deadline of a request.
+	 * @param deadline the deadline
+	 * @param headers the consumer setting a header of the request
+	 */
+	public static void write(Deadline deadline, BiConsumer<String, String> headers) {
+		Duration remaining = deadline.remaining();
+		headers.accept(DEADLINE_HEADER, String.valueOf(deadline.toEpochMilli()));
+		headers.accept(GRPC_TIMEOUT_HEADER, formatGrpcTimeout(remaining.isNegative() ? Duration.ZERO : remaining));
+	}
+
+	static Duration parseGrpcTimeout(String value) {
+		if (value == null || value.length() < 2 || value.length() > 9) {
+			return null;
+		}
+		ChronoUnit unit = grpcUnit(value.charAt(value.length() - 1));
+		String amount = value.substring(0, value.length() - 1);
+		if (unit == null || !amount.chars().allMatch(Character::isDigit)) {
+			return null;
+		}
+		return Duration.of(Long.parseLong(amount), unit);
+	}
+
+	static String formatGrpcTimeout(Duration timeout) {
+		long micros = timeout.toNanos() / 1000;
+		if (micros <= MAX_GRPC_TIMEOUT_VALUE) {
+			return micros + "u";
+		}
+		long millis = timeout.toMillis();
+		if (millis <= MAX_GRPC_TIMEOUT_VALUE) {
+			return millis + "m";
+		}
+		long seconds = timeout.getSeconds();
+		if (seconds <= MAX_GRPC_TIMEOUT_VALUE) {
+			return seconds + "S";
+		}
+		return Math.min(timeout.toHours(), MAX_GRPC_TIMEOUT_VALUE) + "H";
+	}
+
+	private static ChronoUnit grpcUnit(char unit) {
+		switch (unit) {
+		case 'H':
+			return ChronoUnit.HOURS;
+		case 'M':
+			return ChronoUnit.MINUTES;
+		case 'S':
+			return ChronoUnit.SECONDS;
+		case 'm':
+			return ChronoUnit.MILLIS;
+		case 'u':
+			return ChronoUnit.MICROS;
+		case 'n':
+			return ChronoUnit.NANOS;
+		default:
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An OkHttp {@link Interceptor} that fails the calls created by a
+ * {@link DeadlineCallFactory} whose {@link Deadline} has passed with a
+ * {@link DeadlineExceededException}, before they are sent, and that forwards the deadline
+ * of the other calls downstream in their {@link DeadlineHeaders headers}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class DeadlineInterceptor implements Interceptor {
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		Deadline deadline = request.tag(Deadline.class);
+		if (deadline == null) {
+			return chain.proceed(request);
+		}
+		if (deadline.isExpired()) {
+			throw new DeadlineExceededException(deadline);
+		}
+		Request.Builder builder = request.newBuilder();
+		DeadlineHeaders.write(deadline, builder::header);
+		return chain.proceed(builder.build());
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * A servlet filter that sets the {@link Deadline} read from the {@link DeadlineHeaders
+ * headers} of inbound requests in the {@link DeadlineContext} of the thread handling
+ * them.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class DeadlineServletFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		Deadline deadline = DeadlineHeaders.read(request::getHeader);
+		if (deadline == null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		Deadline previous = DeadlineContext.set(deadline);
+		try {
+			filterChain.doFilter(request, response);
+		}
+		finally {
+			DeadlineContext.set(previous);
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+/**
+ * A {@link WebFilter} that sets the {@link Deadline} read from the {@link DeadlineHeaders
+ * headers} of inbound requests in their Reactor context, under the
+ * {@link DeadlineContext#REACTOR_CONTEXT_KEY} key.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class DeadlineWebFilter implements WebFilter {
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		Deadline deadline = DeadlineHeaders.read(exchange.getRequest().getHeaders()::getFirst);
+		if (deadline == null) {
+			return chain.filter(exchange);
+		}
+		return chain.filter(exchange)
+				.contextWrite(context -> context.put(DeadlineContext.REACTOR_CONTEXT_KEY, deadline));
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Request;
+import retrofit2.Invocation;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * Resolves whether a Retrofit request should be hedged based on the {@link Hedged}
+ * annotation of the invoked client method. The annotation is looked up once per method.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class HedgedRequestResolver {
+
+	private final Map<Method, Boolean> hedgedMethods = new ConcurrentHashMap<>();
+
+	/**
+	 * @param request the request created by Retrofit
+	 * @return whether the invoked method is annotated with {@link Hedged}
+	 */
+	public boolean isHedged(Request request) {
+		Invocation invocation = request.tag(Invocation.class);
+		if (invocation == null) {
+			return false;
+		}
+		return hedgedMethods.computeIfAbsent(invocation.method(),
+				method -> AnnotatedElementUtils.hasAnnotation(method, Hedged.class));
+	}
+
+}
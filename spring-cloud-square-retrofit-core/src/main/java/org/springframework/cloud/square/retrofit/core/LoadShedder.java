@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import okio.Timeout;
+
+/**
+ * Sheds the calls of a Retrofit client that have waited for the OkHttp dispatcher longer
+ * than the maximum queue time of the client, or past their own timeout or deadline, and
+ * records the time the calls have waited.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadShedder {
+
+	private final String name;
+
+	private final long maxQueueNanos;
+
+	private final Map<LoadSheddingException.Reason, LongAdder> shedCalls = new ConcurrentHashMap<>();
+
+	private final LongAdder queuedCalls = new LongAdder();
+
+	private final LongAdder queueWaitNanos = new LongAdder();
+
+	/**
+	 * @param name the name of the client
+	 * @param maxQueueNanos the maximum time calls can wait for the dispatcher; calls are
+	 * only shed once their timeout or deadline has passed if it is {@code 0}
+	 */
+	public LoadShedder(String name, long maxQueueNanos) {
+		this.name = name;
+		this.maxQueueNanos = maxQueueNanos;
+		for (LoadSheddingException.Reason reason : LoadSheddingException.Reason.values()) {
+			shedCalls.put(reason, new LongAdder());
+		}
+	}
+
+	/**
+	 * Checks a call that starts running after waiting in the queue.
+	 * @param queueNanos the time the call has waited
+	 * @param timeout the timeout of the call
+	 * @throws LoadSheddingException if the call should not be sent
+	 */
+	void check(long queueNanos, Timeout timeout) throws LoadSheddingException {
+		queuedCalls.increment();
+		queueWaitNanos.add(queueNanos);
+		LoadSheddingException.Reason reason = null;
+		if (isDeadlinePassed(queueNanos, timeout)) {
+			reason = LoadSheddingException.Reason.DEADLINE;
+		}
+		else if (maxQueueNanos > 0 && queueNanos > maxQueueNanos) {
+			reason = LoadSheddingException.Reason.QUEUE_TIME;
+		}
+		if (reason != null) {
+			shedCalls.get(reason).increment();
+			throw new LoadSheddingException(name, reason, Duration.ofNanos(queueNanos));
+		}
+	}
+
+	private boolean isDeadlinePassed(long queueNanos, Timeout timeout) {
+		// the call timeout of OkHttp only starts when the call runs
+		long timeoutNanos = timeout.timeoutNanos();
+		if (timeoutNanos > 0 && queueNanos >= timeoutNanos) {
+			return true;
+		}
+		return timeout.hasDeadline() && timeout.deadlineNanoTime() - System.nanoTime() <= 0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getMaxQueueNanos() {
+		return maxQueueNanos;
+	}
+
+	public long getShedCalls(LoadSheddingException.Reason reason) {
+		return shedCalls.get(reason).sum();
+	}
+
+	public long getQueuedCalls() {
+		return queuedCalls.sum();
+	}
+
+	public long getQueueWaitNanos() {
+		return queueWaitNanos.sum();
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Registry of the {@link LoadShedder} of each Retrofit client, configured by
+ * {@code spring.cloud.square.retrofit.clients.<name>.max-queue-time}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadShedders {
+
+	private final Map<String, LoadShedder> shedders = new ConcurrentHashMap<>();
+
+	private final List<Consumer<LoadShedder>> listeners = new CopyOnWriteArrayList<>();
+
+	private final RetrofitClientsProperties properties;
+
+	public LoadShedders(RetrofitClientsProperties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Returns the load shedder of the given client, creating it if necessary.
+	 * @param name the name of the client
+	 * @return the load shedder of the client
+	 */
+	public LoadShedder get(String name) {
+		LoadShedder shedder = shedders.get(name);
+		if (shedder == null) {
+			Duration maxQueueTime = properties.resolve(name, RetrofitClientsProperties.Client::getMaxQueueTime);
+			LoadShedder created = new LoadShedder(name, maxQueueTime != null ? maxQueueTime.toNanos() : 0);
+			shedder = shedders.putIfAbsent(name, created);
+			if (shedder == null) {
+				shedder = created;
+				listeners.forEach(listener -> listener.accept(created));
+			}
+		}
+		return shedder;
+	}
+
+	/**
+	 * Registers a listener notified of the existing and future load shedders.
+	 * @param listener the listener
+	 */
+	public void addListener(Consumer<LoadShedder> listener) {
+		listeners.add(listener);
+		shedders.values().forEach(listener);
+	}
+
+}
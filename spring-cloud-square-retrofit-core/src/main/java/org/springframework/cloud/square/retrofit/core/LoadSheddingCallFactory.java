@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+
+/**
+ * A {@link Call.Factory} that records when the calls of a Retrofit client are enqueued,
+ * in a {@link Queued} request tag, so that the {@link LoadSheddingInterceptor} can shed
+ * the calls that have waited too long by the time they run.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadSheddingCallFactory implements Call.Factory {
+
+	private final Call.Factory delegate;
+
+	private final LoadShedder shedder;
+
+	public LoadSheddingCallFactory(Call.Factory delegate, LoadShedder shedder) {
+		this.delegate = delegate;
+		this.shedder = shedder;
+	}
+
+	public Call.Factory getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Call newCall(Request request) {
+		Queued queued = new Queued(shedder);
+		return new QueuedCall(delegate.newCall(request.newBuilder().tag(Queued.class, queued).build()), queued);
+	}
+
+	/**
+	 * The request tag of the calls of a client that can be shed.
+	 */
+	public static final class Queued {
+
+		private final LoadShedder shedder;
+
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		private volatile long enqueuedAt;
+
+		private Queued(LoadShedder shedder) {
+			this.shedder = shedder;
+		}
+
+		/**
+		 * Checks the call when it starts running. Only its first attempt is checked, so
+		 * that retries and hedged attempts are not shed for the time they were delayed on
+		 * purpose.
+		 * @param timeout the timeout of the call
+		 * @throws LoadSheddingException if the call should not be sent
+		 */
+		void started(Timeout timeout) throws LoadSheddingException {
+			long enqueued = enqueuedAt;
+			if (enqueued != 0 && started.compareAndSet(false, true)) {
+				shedder.check(System.nanoTime() - enqueued, timeout);
+			}
+		}
+
+	}
+
+	private final class QueuedCall implements Call {
+
+		private final Call delegate;
+
+		private final Queued queued;
+
+		private QueuedCall(Call delegate, Queued queued) {
+			this.delegate = delegate;
+			this.queued = queued;
+		}
+
+		@Override
+		public Request request() {
+			return delegate.request();
+		}
+
+		@Override
+		public Response execute() throws IOException {
+			return delegate.execute();
+		}
+
+		@Override
+		public void enqueue(Callback responseCallback) {
+			queued.enqueuedAt = System.nanoTime();
+			delegate.enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					responseCallback.onFailure(QueuedCall.this, e);
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) throws IOException {
+					responseCallback.onResponse(QueuedCall.this, response);
+				}
+			});
+		}
+
+		@Override
+		public void cancel() {
+			delegate.cancel();
+		}
+
+		@Override
+		public boolean isExecuted() {
+			return delegate.isExecuted();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return delegate.isCanceled();
+		}
+
+		@Override
+		public Timeout timeout() {
+			return delegate.timeout();
+		}
+
+		@Override
+		public Call clone() {
+			// the clone is queued again, with a tag of its own
+			return newCall(delegate.request());
+		}
+
+	}
+
+}
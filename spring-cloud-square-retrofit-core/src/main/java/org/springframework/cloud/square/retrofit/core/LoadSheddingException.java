@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Thrown when a call of a Retrofit client is shed instead of being sent, because it has
+ * waited too long for the OkHttp dispatcher to run it.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadSheddingException extends IOException {
+
+	private final String name;
+
+	private final Reason reason;
+
+	private final Duration queueTime;
+
+	public LoadSheddingException(String name, Reason reason, Duration queueTime) {
+		super("Call of client " + name + " shed after waiting " + queueTime.toMillis() + " ms in the queue: "
+				+ reason.getDescription());
+		this.name = name;
+		this.reason = reason;
+		this.queueTime = queueTime;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	public Duration getQueueTime() {
+		return queueTime;
+	}
+
+	/**
+	 * The reasons for shedding a call.
+	 */
+	public enum Reason {
+
+		/**
+		 * The call waited longer than the maximum queue time of its client.
+		 */
+		QUEUE_TIME("queue-time", "the maximum queue time has been exceeded"),
+
+		/**
+		 * The timeout or deadline of the call passed while it waited.
+		 */
+		DEADLINE("deadline", "the deadline of the call has passed");
+
+		private final String tag;
+
+		private final String description;
+
+		Reason(String tag, String description) {
+			this.tag = tag;
+			this.description = description;
+		}
+
+		public String getTag() {
+			return tag;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * An OkHttp {@link Interceptor} that sheds the calls created by a
+ * {@link LoadSheddingCallFactory} that have waited too long for the OkHttp dispatcher,
+ * with a {@link LoadSheddingException}, before they are sent. It should be the first
+ * interceptor of the client, so that no other interceptor runs for the shed calls.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadSheddingInterceptor implements Interceptor {
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		LoadSheddingCallFactory.Queued queued = chain.request().tag(LoadSheddingCallFactory.Queued.class);
+		if (queued != null) {
+			queued.started(chain.call().timeout());
+		}
+		return chain.proceed(chain.request());
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the time the calls of each Retrofit client have
+ * waited for the OkHttp dispatcher, and the calls shed by its {@link LoadShedder}, as
+ * metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class LoadSheddingMeterBinder implements MeterBinder {
+
+	private final LoadShedders shedders;
+
+	public LoadSheddingMeterBinder(LoadShedders shedders) {
+		this.shedders = shedders;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		shedders.addListener(shedder -> {
+			FunctionTimer
+					.builder("retrofit.client.dispatcher.queue.wait", shedder, LoadShedder::getQueuedCalls,
+							LoadShedder::getQueueWaitNanos, TimeUnit.NANOSECONDS)
+					.tag("client", shedder.getName())
+					.description("The time calls have waited for the OkHttp dispatcher to run them").register(registry);
+			for (LoadSheddingException.Reason reason : LoadSheddingException.Reason.values()) {
+				FunctionCounter.builder("retrofit.client.shed.calls", shedder, value -> value.getShedCalls(reason))
+						.tag("client", shedder.getName()).tag("reason", reason.getTag())
+						.description("The number of calls shed after waiting too long for the OkHttp dispatcher")
+						.register(registry);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+import retrofit2.Invocation;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * A {@link Call.Factory} that enqueues the asynchronous calls of a Retrofit client in the
+ * lane of their {@link CallPriority} of a {@link PriorityDispatcher}. The priority of a
+ * call is set by the {@link Prioritized} annotation of its method, if any, and by the
+ * priority of the client otherwise. Synchronous calls are not queued by the OkHttp
+ * dispatcher and run at once.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class PriorityCallFactory implements Call.Factory {
+
+	private final Call.Factory delegate;
+
+	private final PriorityDispatcher dispatcher;
+
+	private final CallPriority clientPriority;
+
+	private final Map<Method, CallPriority> methodPriorities = new ConcurrentHashMap<>();
+
+	public PriorityCallFactory(Call.Factory delegate, PriorityDispatcher dispatcher, CallPriority clientPriority) {
+		this.delegate = delegate;
+		this.dispatcher = dispatcher;
+		this.clientPriority = clientPriority;
+	}
+
+	public Call.Factory getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Call newCall(Request request) {
+		return new PrioritizedCall(delegate.newCall(request), priority(request));
+	}
+
+	private CallPriority priority(Request request) {
+		Invocation invocation = request.tag(Invocation.class);
+		if (invocation == null) {
+			return clientPriority;
+		}
+		return methodPriorities.computeIfAbsent(invocation.method(), method -> {
+			Prioritized prioritized = AnnotatedElementUtils.findMergedAnnotation(method, Prioritized.class);
+			return prioritized != null ? prioritized.value() : clientPriority;
+		});
+	}
+
+	private final class PrioritizedCall implements Call {
+
+		private final Call delegate;
+
+		private final CallPriority priority;
+
+		private final AtomicBoolean executed = new AtomicBoolean();
+
+		private volatile PriorityDispatcher.Waiting waiting;
+
+		private PrioritizedCall(Call delegate, CallPriority priority) {
+			this.delegate = delegate;
+			this.priority = priority;
+		}
+
+		@Override
+		public Request request() {
+			return delegate.request();
+		}
+
+		@Override
+		public Response execute() throws IOException {
+			markExecuted();
+			return delegate.execute();
+		}
+
+		@Override
+		public void enqueue(Callback responseCallback) {
+			markExecuted();
+			waiting = dispatcher.enqueue(this, delegate, priority, responseCallback);
+		}
+
+		private void markExecuted() {
+			if (!executed.compareAndSet(false, true)) {
+				throw new IllegalStateException("Already Executed");
+			}
+		}
+
+		@Override
+		public void cancel() {
+			delegate.cancel();
+			PriorityDispatcher.Waiting call = waiting;
+			if (call != null) {
+				dispatcher.cancel(call);
+			}
+		}
+
+		@Override
+		public boolean isExecuted() {
+			return executed.get();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return delegate.isCanceled();
+		}
+
+		@Override
+		public Timeout timeout() {
+			return delegate.timeout();
+		}
+
+		@Override
+		public Call clone() {
+			return new PrioritizedCall(delegate.clone(), priority);
+		}
+
+	}
+
+}
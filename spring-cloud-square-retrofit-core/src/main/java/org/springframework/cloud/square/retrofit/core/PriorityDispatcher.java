@@ -0,0 +1,252 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.Response;
+
+/**
+ * Queues the asynchronous calls of Retrofit clients in front of an OkHttp
+ * {@link Dispatcher}, in one lane per {@link CallPriority}. A waiting call is only handed
+ * over to the {@link Dispatcher} when the {@link Dispatcher} can run it, according to the
+ * calls it already runs and queues, including hedges, retries and the calls of other
+ * clients, and counting the calls to each host by the host they are sent to, as the
+ * {@link Dispatcher} does. The waiting calls of the higher priority lanes are always
+ * handed over first, so that background calls cannot delay user-facing calls once the
+ * limits are reached. If none of its calls runs, a single waiting call is handed over
+ * anyway, so that the lanes make progress while other calls keep the {@link Dispatcher}
+ * busy.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class PriorityDispatcher {
+
+	private final Dispatcher dispatcher;
+
+	private final Map<CallPriority, Lane> lanes = new EnumMap<>(CallPriority.class);
+
+	private final List<Waiting> dispatching = new ArrayList<>();
+
+	private int runningCalls;
+
+	public PriorityDispatcher(Dispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+		for (CallPriority priority : CallPriority.values()) {
+			lanes.put(priority, new Lane());
+		}
+	}
+
+	/**
+	 * Enqueues the delegate of a call in the lane of the given priority. The delegate is
+	 * enqueued with the {@link Dispatcher} once the calls waiting in the higher priority
+	 * lanes have been run and the limits of the {@link Dispatcher} allow it.
+	 * @param call the call reported to the callback
+	 * @param delegate the call to enqueue with the {@link Dispatcher}
+	 * @param priority the priority of the call
+	 * @param responseCallback the callback of the call
+	 * @return the waiting call, which can be passed to {@link #cancel(Waiting)}
+	 */
+	public Waiting enqueue(Call call, Call delegate, CallPriority priority, Callback responseCallback) {
+		Waiting waiting = new Waiting(call, delegate, priority, responseCallback);
+		synchronized (this) {
+			lanes.get(priority).calls.add(waiting);
+		}
+		promote(null);
+		return waiting;
+	}
+
+	/**
+	 * Removes a call that still waits in its lane and reports its cancellation to the
+	 * callback, since the {@link Dispatcher} it waits for may be busy for a long time.
+	 * @param waiting the waiting call
+	 * @return {@code true} if the call was still waiting
+	 */
+	public boolean cancel(Waiting waiting) {
+		synchronized (this) {
+			if (!lanes.get(waiting.priority).calls.remove(waiting)) {
+				return false;
+			}
+		}
+		waiting.responseCallback.onFailure(waiting.call, new IOException("Canceled"));
+		return true;
+	}
+
+	public synchronized int getQueuedCalls(CallPriority priority) {
+		return lanes.get(priority).calls.size();
+	}
+
+	public synchronized long getDispatchedCalls(CallPriority priority) {
+		return lanes.get(priority).dispatchedCalls;
+	}
+
+	public synchronized long getQueueWaitNanos(CallPriority priority) {
+		return lanes.get(priority).queueWaitNanos;
+	}
+
+	public synchronized int getRunningCalls() {
+		return runningCalls;
+	}
+
+	/**
+	 * Hands the waiting calls over to the {@link Dispatcher} while it can run them.
+	 * @param finishedHost the host of a call that is finishing, which the
+	 * {@link Dispatcher} still counts until its callback returns, or {@code null}
+	 */
+	private void promote(String finishedHost) {
+		List<Waiting> ready = new ArrayList<>();
+		synchronized (this) {
+			if (lanes.values().stream().allMatch(lane -> lane.calls.isEmpty())) {
+				return;
+			}
+			int maxRequests = dispatcher.getMaxRequests();
+			int maxRequestsPerHost = dispatcher.getMaxRequestsPerHost();
+			Map<String, Integer> callsPerHost = new HashMap<>();
+			int calls = count(dispatcher.runningCalls(), callsPerHost) + count(dispatcher.queuedCalls(), callsPerHost);
+			for (Waiting waiting : dispatching) {
+				calls++;
+				callsPerHost.merge(waiting.host, 1, Integer::sum);
+			}
+			if (finishedHost != null) {
+				calls--;
+				callsPerHost.computeIfPresent(finishedHost, (key, count) -> count - 1);
+			}
+			long now = System.nanoTime();
+			for (Lane lane : lanes.values()) {
+				Iterator<Waiting> iterator = lane.calls.iterator();
+				while (calls < maxRequests && iterator.hasNext()) {
+					Waiting waiting = iterator.next();
+					if (callsPerHost.getOrDefault(waiting.host, 0) >= maxRequestsPerHost) {
+						continue;
+					}
+					iterator.remove();
+					calls++;
+					callsPerHost.merge(waiting.host, 1, Integer::sum);
+					ready.add(dispatch(lane, waiting, now));
+				}
+			}
+			if (ready.isEmpty() && runningCalls == 0) {
+				// none of the calls of the lanes would wake them up when it finishes
+				lanes.values().stream().filter(lane -> !lane.calls.isEmpty()).findFirst()
+						.ifPresent(lane -> ready.add(dispatch(lane, lane.calls.poll(), now)));
+			}
+		}
+		for (Waiting waiting : ready) {
+			try {
+				waiting.delegate.enqueue(waiting.callback());
+			}
+			finally {
+				synchronized (this) {
+					dispatching.remove(waiting);
+				}
+			}
+		}
+	}
+
+	private Waiting dispatch(Lane lane, Waiting waiting, long now) {
+		runningCalls++;
+		dispatching.add(waiting);
+		lane.dispatchedCalls++;
+		lane.queueWaitNanos += now - waiting.enqueuedAt;
+		return waiting;
+	}
+
+	private static int count(List<Call> calls, Map<String, Integer> callsPerHost) {
+		calls.forEach(call -> callsPerHost.merge(call.request().url().host(), 1, Integer::sum));
+		return calls.size();
+	}
+
+	private void finished(String host) {
+		synchronized (this) {
+			runningCalls--;
+		}
+		promote(host);
+	}
+
+	private static final class Lane {
+
+		private final Deque<Waiting> calls = new ArrayDeque<>();
+
+		private long dispatchedCalls;
+
+		private long queueWaitNanos;
+
+	}
+
+	/**
+	 * A call waiting in a lane of the {@link PriorityDispatcher}.
+	 */
+	public final class Waiting {
+
+		private final Call call;
+
+		private final Call delegate;
+
+		private final CallPriority priority;
+
+		private final Callback responseCallback;
+
+		private final String host;
+
+		private final long enqueuedAt = System.nanoTime();
+
+		private Waiting(Call call, Call delegate, CallPriority priority, Callback responseCallback) {
+			this.call = call;
+			this.delegate = delegate;
+			this.priority = priority;
+			this.responseCallback = responseCallback;
+			this.host = delegate.request().url().host();
+		}
+
+		private Callback callback() {
+			return new Callback() {
+				@Override
+				public void onFailure(Call ignored, IOException e) {
+					try {
+						responseCallback.onFailure(call, e);
+					}
+					finally {
+						finished(host);
+					}
+				}
+
+				@Override
+				public void onResponse(Call ignored, Response response) throws IOException {
+					try {
+						responseCallback.onResponse(call, response);
+					}
+					finally {
+						finished(host);
+					}
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the calls waiting in each lane of the
+ * {@link PriorityDispatcher priority dispatchers} and the time they have waited as
+ * metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class PriorityDispatcherMeterBinder implements MeterBinder {
+
+	private final PriorityDispatchers dispatchers;
+
+	public PriorityDispatcherMeterBinder(PriorityDispatchers dispatchers) {
+		this.dispatchers = dispatchers;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (CallPriority priority : CallPriority.values()) {
+			String lane = priority.name().toLowerCase(Locale.ROOT);
+			Gauge.builder("retrofit.client.priority.queued.calls", dispatchers, value -> value.getQueuedCalls(priority))
+					.tag("lane", lane).description("The number of calls waiting in the priority lane")
+					.register(registry);
+			FunctionTimer
+					.builder("retrofit.client.priority.queue.wait", dispatchers,
+							value -> value.getDispatchedCalls(priority), value -> value.getQueueWaitNanos(priority),
+							TimeUnit.NANOSECONDS)
+					.tag("lane", lane).description("The time calls have waited in the priority lane")
+					.register(registry);
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Call;
+import okhttp3.Dispatcher;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * Registry of the {@link PriorityDispatcher} of each OkHttp {@link Dispatcher} used by
+ * Retrofit clients. The clients built from the same {@code OkHttpClient.Builder} share
+ * its {@link Dispatcher}, and thus its {@link PriorityDispatcher}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class PriorityDispatchers {
+
+	private final Map<Dispatcher, PriorityDispatcher> dispatchers = new ConcurrentHashMap<>();
+
+	private final RetrofitClientsProperties properties;
+
+	public PriorityDispatchers(RetrofitClientsProperties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Returns the {@link PriorityDispatcher} in front of the given {@link Dispatcher},
+	 * creating it if necessary.
+	 * @param dispatcher the OkHttp dispatcher
+	 * @return the priority dispatcher
+	 */
+	public PriorityDispatcher get(Dispatcher dispatcher) {
+		return dispatchers.computeIfAbsent(dispatcher, PriorityDispatcher::new);
+	}
+
+	/**
+	 * Returns a {@link Call.Factory} that queues the asynchronous calls of the given
+	 * client by priority in front of the given {@link Dispatcher}.
+	 * @param name the name of the client
+	 * @param type the client interface
+	 * @param dispatcher the dispatcher of the OkHttp client that runs the calls
+	 * @param delegate the call factory that creates the calls
+	 * @return the call factory
+	 */
+	public Call.Factory getCallFactory(String name, Class<?> type, Dispatcher dispatcher, Call.Factory delegate) {
+		return new PriorityCallFactory(delegate, get(dispatcher), getPriority(name, type));
+	}
+
+	/**
+	 * Returns the priority of the calls of the given client, set by
+	 * {@code spring.cloud.square.retrofit.clients.<name>.priority} or by the
+	 * {@link Prioritized} annotation of the client interface.
+	 * @param name the name of the client
+	 * @param type the client interface
+	 * @return the priority of the client
+	 */
+	public CallPriority getPriority(String name, Class<?> type) {
+		CallPriority priority = properties.resolve(name, RetrofitClientsProperties.Client::getPriority);
+		if (priority != null) {
+			return priority;
+		}
+		Prioritized prioritized = AnnotatedElementUtils.findMergedAnnotation(type, Prioritized.class);
+		return prioritized != null ? prioritized.value() : CallPriority.NORMAL;
+	}
+
+	public int getQueuedCalls(CallPriority priority) {
+		return dispatchers.values().stream().mapToInt(dispatcher -> dispatcher.getQueuedCalls(priority)).sum();
+	}
+
+	public long getDispatchedCalls(CallPriority priority) {
+		return dispatchers.values().stream().mapToLong(dispatcher -> dispatcher.getDispatchedCalls(priority)).sum();
+	}
+
+	public long getQueueWaitNanos(CallPriority priority) {
+		return dispatchers.values().stream().mapToLong(dispatcher -> dispatcher.getQueueWaitNanos(priority)).sum();
+	}
+
+}
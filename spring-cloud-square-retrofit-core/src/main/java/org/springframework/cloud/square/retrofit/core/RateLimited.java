@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the rate of the calls of a {@link RetrofitClient}. On the client interface, the
+ * limit applies to all the calls of the client, unless
+ * {@code spring.cloud.square.retrofit.clients.<name>.rate-limit.permits-per-second} is
+ * set. On a method, it applies to the calls of that method, in addition to the limit of
+ * the client. Calls over the limit are delayed for at most {@link #maxWaitMillis()} and
+ * rejected with a {@link RateLimitExceededException} if they would have to wait longer.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RateLimited {
+
+	/**
+	 * @return the number of calls per second
+	 */
+	double permitsPerSecond();
+
+	/**
+	 * @return the number of calls that can be made at once after an idle period; defaults
+	 * to the number of calls per second, rounded up
+	 */
+	int burst() default 0;
+
+	/**
+	 * @return the maximum time in milliseconds a call can be delayed; {@code 0} rejects
+	 * the calls over the limit without delay
+	 */
+	long maxWaitMillis() default 1000;
+
+}
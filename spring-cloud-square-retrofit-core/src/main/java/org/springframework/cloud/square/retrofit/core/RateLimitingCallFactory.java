@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+import retrofit2.Invocation;
+
+/**
+ * A {@link Call.Factory} that keeps the calls of a Retrofit client within its rate
+ * limits. Synchronous calls over the limit sleep until they are allowed to run, while
+ * asynchronous calls are scheduled to be enqueued later, without blocking a thread.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RateLimitingCallFactory implements Call.Factory {
+
+	private final Call.Factory delegate;
+
+	private final RetrofitClientRateLimiter limiter;
+
+	public RateLimitingCallFactory(Call.Factory delegate, RetrofitClientRateLimiter limiter) {
+		this.delegate = delegate;
+		this.limiter = limiter;
+	}
+
+	public Call.Factory getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Call newCall(Request request) {
+		return new RateLimitedCall(delegate.newCall(request), limiter);
+	}
+
+	private static final class RateLimitedCall implements Call {
+
+		private final Call delegate;
+
+		private final RetrofitClientRateLimiter limiter;
+
+		private final AtomicBoolean executed = new AtomicBoolean();
+
+		private volatile Future<?> delayed;
+
+		private volatile Callback responseCallback;
+
+		private RateLimitedCall(Call delegate, RetrofitClientRateLimiter limiter) {
+			this.delegate = delegate;
+			this.limiter = limiter;
+		}
+
+		@Override
+		public Request request() {
+			return delegate.request();
+		}
+
+		@Override
+		public Response execute() throws IOException {
+			markExecuted();
+			long wait = limiter.acquire(delegate.request().tag(Invocation.class));
+			if (wait > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+				}
+			}
+			return delegate.execute();
+		}
+
+		@Override
+		public void enqueue(Callback responseCallback) {
+			markExecuted();
+			this.responseCallback = responseCallback;
+			long wait;
+			try {
+				wait = limiter.acquire(delegate.request().tag(Invocation.class));
+			}
+			catch (RateLimitExceededException e) {
+				responseCallback.onFailure(this, e);
+				return;
+			}
+			if (wait > 0) {
+				delayed = limiter.schedule(this::enqueueDelegate, wait);
+			}
+			else {
+				enqueueDelegate();
+			}
+		}
+
+		private void enqueueDelegate() {
+			Callback callback = responseCallback;
+			delegate.enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					callback.onFailure(RateLimitedCall.this, e);
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) throws IOException {
+					callback.onResponse(RateLimitedCall.this, response);
+				}
+			});
+		}
+
+		private void markExecuted() {
+			if (!executed.compareAndSet(false, true)) {
+				throw new IllegalStateException("Already Executed");
+			}
+		}
+
+		@Override
+		public void cancel() {
+			delegate.cancel();
+			Future<?> scheduled = delayed;
+			if (scheduled != null && scheduled.cancel(false)) {
+				// the cancelled delegate reports the cancellation to the callback
+				enqueueDelegate();
+			}
+		}
+
+		@Override
+		public boolean isExecuted() {
+			return executed.get();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return delegate.isCanceled();
+		}
+
+		@Override
+		public Timeout timeout() {
+			return delegate.timeout();
+		}
+
+		@Override
+		public Call clone() {
+			return new RateLimitedCall(delegate.clone(), limiter);
+		}
+
+	}
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Isolates the calls of a single Retrofit client, so that a slow dependency cannot use up
+ * the threads and connections shared with the other clients. At most
+ * {@code maxConcurrentCalls} calls run at the same time. Calls over that number wait in a
+ * bounded FIFO queue until one of the running calls completes and are rejected with a
+ * {@link BulkheadFullException} when the queue is full or when they have waited longer
+ * than the queue timeout.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RetrofitClientBulkhead {
+
+	private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+	private final LongAdder queueFullRejections = new LongAdder();
+
+	private final LongAdder queueTimeoutRejections = new LongAdder();
+
+	private final LongAdder queuedCallsTotal = new LongAdder();
+
+	private final LongAdder queueWaitNanos = new LongAdder();
+
+	private final String name;
+
+	private final int maxConcurrentCalls;
+
+	private final int maxQueuedCalls;
+
+	private final Duration queueTimeout;
+
+	private final ScheduledExecutorService scheduler;
+
+	// guarded by waiters
+	private int activeCalls;
+
+	/**
+	 * Creates a new {@link RetrofitClientBulkhead}.
+	 * @param name the name of the client
+	 * @param maxConcurrentCalls the maximum number of calls running at the same time
+	 * @param maxQueuedCalls the maximum number of calls waiting for a running call to
+	 * complete
+	 * @param queueTimeout the maximum time a call can wait
+	 * @param scheduler the scheduler used to reject the calls that have waited too long
+	 */
+	public RetrofitClientBulkhead(String name, int maxConcurrentCalls, int maxQueuedCalls, Duration queueTimeout,
+			ScheduledExecutorService scheduler) {
+		this.name = name;
+		this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+		this.maxQueuedCalls = Math.max(0, maxQueuedCalls);
+		this.queueTimeout = queueTimeout;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Acquires a permit to run a call. If a permit is available, {@code onAcquired} runs
+	 * on the calling thread. Otherwise, the call waits in the queue and
+	 * {@code onAcquired} runs on the thread that releases the permit, unless the call is
+	 * rejected, in which case {@code onRejected} runs instead. Each acquired permit has
+	 * to be released with {@link #release()}.
+	 * @param onAcquired runs once the permit has been acquired
+	 * @param onRejected accepts the reason why the call has been rejected
+	 * @return the handle to stop waiting for the permit
+	 */
+	public Pending acquire(Runnable onAcquired, Consumer<BulkheadFullException> onRejected) {
+		Waiter waiter = new Waiter(onAcquired, onRejected);
+		boolean acquired = false;
+		boolean queued = false;
+		synchronized (waiters) {
+			if (activeCalls < maxConcurrentCalls) {
+				activeCalls++;
+				acquired = true;
+			}
+			else if (waiters.size() < maxQueuedCalls && !queueTimeout.isZero() && !queueTimeout.isNegative()) {
+				waiters.add(waiter);
+				queued = true;
+			}
+		}
+		if (acquired) {
+			onAcquired.run();
+			return Pending.NONE;
+		}
+		if (!queued) {
+			queueFullRejections.increment();
+			onRejected.accept(new BulkheadFullException(name, "Bulkhead of client " + name + " is full: "
+					+ maxConcurrentCalls + " calls running and " + maxQueuedCalls + " calls waiting"));
+			return Pending.NONE;
+		}
+		waiter.timeout = scheduler.schedule(() -> timeout(waiter), queueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+		return waiter;
+	}
+
+	/**
+	 * Releases a permit, passing it on to the call that has waited longest, if any.
+	 */
+	public void release() {
+		Waiter next;
+		synchronized (waiters) {
+			next = waiters.poll();
+			if (next == null) {
+				activeCalls--;
+				return;
+			}
+		}
+		next.acquired();
+	}
+
+	private void timeout(Waiter waiter) {
+		if (!remove(waiter)) {
+			return;
+		}
+		queueTimeoutRejections.increment();
+		waiter.onRejected.accept(new BulkheadFullException(name,
+				"Call of client " + name + " has waited longer than " + queueTimeout + " in the bulkhead queue"));
+	}
+
+	private boolean remove(Waiter waiter) {
+		synchronized (waiters) {
+			if (!waiters.remove(waiter)) {
+				return false;
+			}
+		}
+		waiter.dequeued();
+		return true;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	public int getMaxQueuedCalls() {
+		return maxQueuedCalls;
+	}
+
+	/**
+	 * @return the number of calls currently running
+	 */
+	public int getActiveCalls() {
+		synchronized (waiters) {
+			return activeCalls;
+		}
+	}
+
+	/**
+	 * @return the number of calls currently waiting for a permit
+	 */
+	public int getQueuedCalls() {
+		synchronized (waiters) {
+			return waiters.size();
+		}
+	}
+
+	/**
+	 * @return the number of calls rejected because the queue was full
+	 */
+	public long getQueueFullRejections() {
+		return queueFullRejections.sum();
+	}
+
+	/**
+	 * @return the number of calls rejected because they had waited too long
+	 */
+	public long getQueueTimeoutRejections() {
+		return queueTimeoutRejections.sum();
+	}
+
+	/**
+	 * @return the number of calls that have left the queue
+	 */
+	public long getQueuedCallsTotal() {
+		return queuedCallsTotal.sum();
+	}
+
+	/**
+	 * @return the total time the calls that have left the queue have waited in it
+	 */
+	public long getQueueWaitNanos() {
+		return queueWaitNanos.sum();
+	}
+
+	/**
+	 * A handle to a call waiting for a permit.
+	 */
+	public interface Pending {
+
+		/**
+		 * A handle of a call that is not waiting.
+		 */
+		Pending NONE = () -> false;
+
+		/**
+		 * Stops waiting for the permit. Neither of the callbacks runs afterwards.
+		 * @return {@code true} if the call was still waiting
+		 */
+		boolean cancel();
+
+	}
+
+	private final class Waiter implements Pending {
+
+		private final long queuedAt = System.nanoTime();
+
+		private final Runnable onAcquired;
+
+		private final Consumer<BulkheadFullException> onRejected;
+
+		private volatile ScheduledFuture<?> timeout;
+
+		private Waiter(Runnable onAcquired, Consumer<BulkheadFullException> onRejected) {
+			this.onAcquired = onAcquired;
+			this.onRejected = onRejected;
+		}
+
+		private void acquired() {
+			dequeued();
+			cancelTimeout();
+			onAcquired.run();
+		}
+
+		private void dequeued() {
+			queuedCallsTotal.increment();
+			queueWaitNanos.add(System.nanoTime() - queuedAt);
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!remove(this)) {
+				return false;
+			}
+			cancelTimeout();
+			return true;
+		}
+
+		private void cancelTimeout() {
+			ScheduledFuture<?> scheduled = timeout;
+			if (scheduled != null) {
+				scheduled.cancel(false);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the saturation of the {@link RetrofitClientBulkhead}
+ * of each Retrofit client as metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RetrofitClientBulkheadMeterBinder implements MeterBinder {
+
+	private final RetrofitClientBulkheads bulkheads;
+
+	public RetrofitClientBulkheadMeterBinder(RetrofitClientBulkheads bulkheads) {
+		this.bulkheads = bulkheads;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bulkheads.addListener(bulkhead -> {
+			String client = bulkhead.getName();
+			Gauge.builder("retrofit.client.bulkhead.max.concurrent.calls", bulkhead,
+					RetrofitClientBulkhead::getMaxConcurrentCalls).tag("client", client)
+					.description("The number of calls a client can run at the same time").register(registry);
+			Gauge.builder("retrofit.client.bulkhead.active.calls", bulkhead, RetrofitClientBulkhead::getActiveCalls)
+					.tag("client", client).description("The number of calls a client is running").register(registry);
+			Gauge.builder("retrofit.client.bulkhead.queued.calls", bulkhead, RetrofitClientBulkhead::getQueuedCalls)
+					.tag("client", client).description("The number of calls waiting in the bulkhead queue")
+					.register(registry);
+			bindRejections(registry, bulkhead, "queue-full", RetrofitClientBulkhead::getQueueFullRejections);
+			bindRejections(registry, bulkhead, "queue-timeout", RetrofitClientBulkhead::getQueueTimeoutRejections);
+			FunctionTimer
+					.builder("retrofit.client.bulkhead.queue.wait", bulkhead,
+							RetrofitClientBulkhead::getQueuedCallsTotal, RetrofitClientBulkhead::getQueueWaitNanos,
+							TimeUnit.NANOSECONDS)
+					.tag("client", client).description("The time calls have waited in the bulkhead queue")
+					.register(registry);
+		});
+	}
+
+	private void bindRejections(MeterRegistry registry, RetrofitClientBulkhead bulkhead, String reason,
+			ToDoubleFunction<RetrofitClientBulkhead> count) {
+		FunctionCounter.builder("retrofit.client.bulkhead.rejected.calls", bulkhead, count)
+				.tag("client", bulkhead.getName()).tag("reason", reason)
+				.description("The number of calls rejected because the bulkhead queue was full or timed out")
+				.register(registry);
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Registry of the {@link RetrofitClientBulkhead} of each Retrofit client that has
+ * {@code spring.cloud.square.retrofit.clients.<name>.max-concurrent-calls} set, either
+ * directly or through the {@code default} client.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RetrofitClientBulkheads implements DisposableBean {
+
+	static final int DEFAULT_MAX_QUEUED_CALLS = 100;
+
+	static final Duration DEFAULT_QUEUE_TIMEOUT = Duration.ofSeconds(1);
+
+	private final Map<String, RetrofitClientBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+	private final List<Consumer<RetrofitClientBulkhead>> listeners = new CopyOnWriteArrayList<>();
+
+	private final RetrofitClientsProperties properties;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	public RetrofitClientBulkheads(RetrofitClientsProperties properties) {
+		this.properties = properties;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "retrofit-bulkhead-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// most waiting calls get a permit before they time out
+		this.scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Returns the bulkhead of the given client, creating it if necessary.
+	 * @param name the name of the client
+	 * @return the bulkhead of the client or {@code null} if its calls are not isolated
+	 */
+	public RetrofitClientBulkhead get(String name) {
+		RetrofitClientBulkhead bulkhead = bulkheads.get(name);
+		if (bulkhead != null) {
+			return bulkhead;
+		}
+		Integer maxConcurrentCalls = properties.resolve(name, RetrofitClientsProperties.Client::getMaxConcurrentCalls);
+		if (maxConcurrentCalls == null) {
+			return null;
+		}
+		Integer maxQueuedCalls = properties.resolve(name, RetrofitClientsProperties.Client::getMaxQueuedCalls);
+		Duration queueTimeout = properties.resolve(name, RetrofitClientsProperties.Client::getQueueTimeout);
+		RetrofitClientBulkhead created = new RetrofitClientBulkhead(name, maxConcurrentCalls,
+				maxQueuedCalls != null ? maxQueuedCalls : DEFAULT_MAX_QUEUED_CALLS,
+				queueTimeout != null ? queueTimeout : DEFAULT_QUEUE_TIMEOUT, scheduler);
+		bulkhead = bulkheads.putIfAbsent(name, created);
+		if (bulkhead != null) {
+			return bulkhead;
+		}
+		listeners.forEach(listener -> listener.accept(created));
+		return created;
+	}
+
+	/**
+	 * Registers a listener notified about the bulkheads of all the clients, including the
+	 * ones created before the registration.
+	 * @param listener the listener accepting the bulkhead
+	 */
+	public void addListener(Consumer<RetrofitClientBulkhead> listener) {
+		listeners.add(listener);
+		bulkheads.values().forEach(listener);
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+
+}
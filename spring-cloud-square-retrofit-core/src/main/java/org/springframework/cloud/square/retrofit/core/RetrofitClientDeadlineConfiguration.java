@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration that propagates the {@link Deadline} of inbound Spring MVC and WebFlux
+ * requests to the calls of Retrofit clients made while handling them.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("spring.cloud.square.retrofit.deadline.enabled")
+public class RetrofitClientDeadlineConfiguration {
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+	protected static class DeadlineServletConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public DeadlineServletFilter deadlineServletFilter() {
+			return new DeadlineServletFilter();
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	protected static class DeadlineWebFluxConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public DeadlineWebFilter deadlineWebFilter() {
+			return new DeadlineWebFilter();
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(OkHttpClientBuilderCustomizer.class)
+	protected static class DeadlineOkHttpConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public DeadlineCallFactoryProvider deadlineCallFactoryProvider() {
+			return new DeadlineCallFactoryProvider();
+		}
+
+		// not an Interceptor bean, which would be added after the load-balancing
+		// interceptor
+		@Bean
+		public OkHttpClientBuilderCustomizer retrofitDeadlineCustomizer() {
+			return builder -> {
+				// the customizers are applied again for each Retrofit client context
+				if (builder.interceptors().stream().noneMatch(DeadlineInterceptor.class::isInstance)) {
+					builder.interceptors().add(0, new DeadlineInterceptor());
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration that sheds the calls of OkHttp-backed Retrofit clients that have waited
+ * too long for the OkHttp dispatcher.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("spring.cloud.square.retrofit.load-shedding.enabled")
+@EnableConfigurationProperties(RetrofitClientsProperties.class)
+public class RetrofitClientLoadSheddingConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public LoadShedders retrofitLoadShedders(RetrofitClientsProperties properties) {
+		return new LoadShedders(properties);
+	}
+
+	// not an Interceptor bean, which would be added after the load-balancing interceptor
+	@Bean
+	public OkHttpClientBuilderCustomizer retrofitLoadSheddingCustomizer() {
+		return builder -> {
+			// the customizers are applied again for each Retrofit client context
+			if (builder.interceptors().stream().noneMatch(LoadSheddingInterceptor.class::isInstance)) {
+				builder.interceptors().add(0, new LoadSheddingInterceptor());
+			}
+		};
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class RetrofitClientLoadSheddingMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public LoadSheddingMeterBinder loadSheddingMeterBinder(LoadShedders shedders) {
+			return new LoadSheddingMeterBinder(shedders);
+		}
+
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration that provides the {@link RetrofitClientRateLimiters} used to keep the
+ * calls of Retrofit clients within their rate limits.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(RetrofitClientsProperties.class)
+public class RetrofitClientRateLimitConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public RetrofitClientRateLimiters retrofitClientRateLimiters(RetrofitClientsProperties properties) {
+		return new RetrofitClientRateLimiters(properties);
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class RetrofitClientRateLimitMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public RetrofitClientRateLimitMeterBinder retrofitClientRateLimitMeterBinder(
+				RetrofitClientRateLimiters limiters) {
+			return new RetrofitClientRateLimitMeterBinder(limiters);
+		}
+
+	}
+
+}
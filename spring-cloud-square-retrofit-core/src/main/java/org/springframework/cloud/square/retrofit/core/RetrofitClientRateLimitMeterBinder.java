@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * A {@link MeterBinder} that exposes the calls allowed, delayed and rejected by the rate
+ * limits of each Retrofit client as metrics.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RetrofitClientRateLimitMeterBinder implements MeterBinder {
+
+	private final RetrofitClientRateLimiters limiters;
+
+	public RetrofitClientRateLimitMeterBinder(RetrofitClientRateLimiters limiters) {
+		this.limiters = limiters;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		limiters.addListener(limiter -> limiter.getLimits().forEach(limit -> {
+			bindCalls(registry, limiter, limit, "permitted", TokenBucketRateLimiter::getPermitted);
+			bindCalls(registry, limiter, limit, "delayed", TokenBucketRateLimiter::getDelayed);
+			bindCalls(registry, limiter, limit, "rejected", TokenBucketRateLimiter::getRejected);
+		}));
+	}
+
+	private void bindCalls(MeterRegistry registry, RetrofitClientRateLimiter limiter,
+			RetrofitClientRateLimiter.Limit limit, String outcome, ToDoubleFunction<TokenBucketRateLimiter> count) {
+		FunctionCounter.builder("retrofit.client.rate.limit.calls", limit.getLimiter(), count)
+				.tag("client", limiter.getName()).tag("method", limit.getMethod()).tag("outcome", outcome)
+				.description("The number of calls allowed, delayed and rejected by the rate limit").register(registry);
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Invocation;
+
+/**
+ * The rate limits of a single Retrofit client: the limit of the client, which applies to
+ * all its calls, and the limits of individual methods, which apply in addition to it.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RetrofitClientRateLimiter {
+
+	/**
+	 * The method name used for the limit that applies to all the calls of the client.
+	 */
+	public static final String ALL_METHODS = "all";
+
+	private final String name;
+
+	private final List<Limit> clientLimits;
+
+	private final Map<Method, List<Limit>> methodLimits;
+
+	private final ScheduledExecutorService scheduler;
+
+	RetrofitClientRateLimiter(String name, Limit clientLimit, Map<Method, Limit> methodLimits,
+			ScheduledExecutorService scheduler) {
+		this.name = name;
+		this.clientLimits = clientLimit != null ? Collections.singletonList(clientLimit) : Collections.emptyList();
+		this.methodLimits = new HashMap<>();
+		methodLimits.forEach((method, limit) -> {
+			List<Limit> limits = new ArrayList<>(2);
+			limits.add(limit);
+			limits.addAll(clientLimits);
+			this.methodLimits.put(method, limits);
+		});
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Takes a token from each limit that applies to the invoked method. If any of them
+	 * rejects the call, the tokens taken from the others are given back.
+	 * @param invocation the invocation of the client method or {@code null} if it is not
+	 * known
+	 * @return the time the call has to be delayed for, in nanoseconds
+	 * @throws RateLimitExceededException if the call would have to be delayed for longer
+	 * than allowed
+	 */
+	public long acquire(Invocation invocation) throws RateLimitExceededException {
+		List<Limit> limits = invocation != null ? methodLimits.getOrDefault(invocation.method(), clientLimits)
+				: clientLimits;
+		long[] waits = new long[limits.size()];
+		for (int i = 0; i < waits.length; i++) {
+			Limit limit = limits.get(i);
+			waits[i] = limit.limiter.reserve(limit.maxWaitNanos);
+			if (waits[i] < 0) {
+				// the call is not made, so the tokens taken from the other limits are
+				// given back
+				for (int j = 0; j < i; j++) {
+					limits.get(j).limiter.release(waits[j]);
+				}
+				throw new RateLimitExceededException(name, "Rate limit of " + limit.limiter.getPermitsPerSecond()
+						+ " calls per second exceeded for " + name + " (" + limit.method + ")");
+			}
+		}
+		long wait = 0;
+		for (long limitWait : waits) {
+			wait = Math.max(wait, limitWait);
+		}
+		return wait;
+	}
+
+	/**
+	 * Runs the call once it has been delayed, without blocking a thread in the meantime.
+	 * @param call the call to run
+	 * @param delayNanos the delay returned by {@link #acquire(Invocation)}
+	 * @return the scheduled call
+	 */
+	public ScheduledFuture<?> schedule(Runnable call, long delayNanos) {
+		return scheduler.schedule(call, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return all the limits of the client
+	 */
+	public List<Limit> getLimits() {
+		List<Limit> limits = new ArrayList<>(clientLimits);
+		methodLimits.values().forEach(methodLimit -> limits.add(methodLimit.get(0)));
+		return limits;
+	}
+
+	/**
+	 * A single rate limit.
+	 */
+	public static final class Limit {
+
+		private final String method;
+
+		private final TokenBucketRateLimiter limiter;
+
+		private final long maxWaitNanos;
+
+		Limit(String method, TokenBucketRateLimiter limiter, long maxWaitNanos) {
+			this.method = method;
+			this.limiter = limiter;
+			this.maxWaitNanos = maxWaitNanos;
+		}
+
+		/**
+		 * @return the name of the limited method or {@link #ALL_METHODS}
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		public TokenBucketRateLimiter getLimiter() {
+			return limiter;
+		}
+
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * Registry of the {@link RetrofitClientRateLimiter} of each Retrofit client that is
+ * rate-limited by {@code spring.cloud.square.retrofit.clients.<name>.rate-limit} or by
+ * {@link RateLimited} annotations.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RetrofitClientRateLimiters implements DisposableBean {
+
+	static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(1);
+
+	private final Map<String, Optional<RetrofitClientRateLimiter>> limiters = new ConcurrentHashMap<>();
+
+	private final List<Consumer<RetrofitClientRateLimiter>> listeners = new CopyOnWriteArrayList<>();
+
+	private final RetrofitClientsProperties properties;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	public RetrofitClientRateLimiters(RetrofitClientsProperties properties) {
+		this.properties = properties;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "retrofit-rate-limit-delay");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Returns the rate limiter of the given client, creating it if necessary.
+	 * @param name the name of the client
+	 * @param type the client interface
+	 * @return the rate limiter of the client or {@code null} if its calls are not
+	 * rate-limited
+	 */
+	public RetrofitClientRateLimiter get(String name, Class<?> type) {
+		Optional<RetrofitClientRateLimiter> limiter = limiters.get(name);
+		if (limiter == null) {
+			Optional<RetrofitClientRateLimiter> created = Optional.ofNullable(create(name, type));
+			limiter = limiters.putIfAbsent(name, created);
+			if (limiter == null) {
+				limiter = created;
+				created.ifPresent(value -> listeners.forEach(listener -> listener.accept(value)));
+			}
+		}
+		return limiter.orElse(null);
+	}
+
+	private RetrofitClientRateLimiter create(String name, Class<?> type) {
+		RetrofitClientRateLimiter.Limit clientLimit = clientLimit(name, type);
+		Map<Method, RetrofitClientRateLimiter.Limit> methodLimits = new HashMap<>();
+		for (Method method : type.getMethods()) {
+			RateLimited rateLimited = AnnotatedElementUtils.findMergedAnnotation(method, RateLimited.class);
+			if (rateLimited != null) {
+				methodLimits.put(method, limit(method.getName(), rateLimited));
+			}
+		}
+		if (clientLimit == null && methodLimits.isEmpty()) {
+			return null;
+		}
+		return new RetrofitClientRateLimiter(name, clientLimit, methodLimits, scheduler);
+	}
+
+	private RetrofitClientRateLimiter.Limit clientLimit(String name, Class<?> type) {
+		Double permitsPerSecond = properties.resolve(name, client -> client.getRateLimit().getPermitsPerSecond());
+		if (permitsPerSecond == null) {
+			RateLimited rateLimited = AnnotatedElementUtils.findMergedAnnotation(type, RateLimited.class);
+			return rateLimited != null ? limit(RetrofitClientRateLimiter.ALL_METHODS, rateLimited) : null;
+		}
+		Integer burst = properties.resolve(name, client -> client.getRateLimit().getBurst());
+		Duration maxWait = properties.resolve(name, client -> client.getRateLimit().getMaxWait());
+		return new RetrofitClientRateLimiter.Limit(RetrofitClientRateLimiter.ALL_METHODS,
+				new TokenBucketRateLimiter(permitsPerSecond, burst != null ? burst : 0),
+				(maxWait != null ? maxWait : DEFAULT_MAX_WAIT).toNanos());
+	}
+
+	private static RetrofitClientRateLimiter.Limit limit(String method, RateLimited rateLimited) {
+		return new RetrofitClientRateLimiter.Limit(method,
+				new TokenBucketRateLimiter(rateLimited.permitsPerSecond(), rateLimited.burst()),
+				Duration.ofMillis(rateLimited.maxWaitMillis()).toNanos());
+	}
+
+	/**
+	 * Registers a listener notified about the rate limiters of all the clients, including
+	 * the ones created before the registration.
+	 * @param listener the listener accepting the rate limiter
+	 */
+	public void addListener(Consumer<RetrofitClientRateLimiter> listener) {
+		listeners.add(listener);
+		limiters.values().forEach(limiter -> limiter.ifPresent(listener));
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties of individual Retrofit clients, keyed by client name. The
+ * properties of the {@code default} client apply to all the clients that do not set them.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@ConfigurationProperties("spring.cloud.square.retrofit")
+public class RetrofitClientsProperties {
+
+	/**
+	 * The name of the client whose properties apply to all the clients.
+	 */
+	public static final String DEFAULT_CLIENT = "default";
+
+	/**
+	 * The properties of individual clients, keyed by client name.
+	 */
+	private Map<String, Client> clients = new HashMap<>();
+
+	public Map<String, Client> getClients() {
+		return clients;
+	}
+
+	public void setClients(Map<String, Client> clients) {
+		this.clients = clients;
+	}
+
+	/**
+	 * Resolves a property of the given client, falling back to the {@code default} client
+	 * if the client does not set it.
+	 * @param name the name of the client
+	 * @param property the function reading the property
+	 * @param <T> the type of the property
+	 * @return the value of the property or {@code null} if neither client sets it
+	 */
+	public <T> T resolve(String name, Function<Client, T> property) {
+		Client client = clients.get(name);
+		T value = client != null ? property.apply(client) : null;
+		if (value != null) {
+			return value;
+		}
+		Client defaults = clients.get(DEFAULT_CLIENT);
+		return defaults != null ? property.apply(defaults) : null;
+	}
+
+	public static class Client {
+
+		/**
+		 * The maximum number of calls the client can run at the same time. The client
+		 * calls are not isolated in a bulkhead if it is not set.
+		 */
+		private Integer maxConcurrentCalls;
+
+		/**
+		 * The maximum number of calls waiting for one of the running calls to complete.
+		 * Calls over that number are rejected. Defaults to 100.
+		 */
+		private Integer maxQueuedCalls;
+
+		/**
+		 * The maximum time a call can wait for one of the running calls to complete,
+		 * before it is rejected. Defaults to 1s.
+		 */
+		private Duration queueTimeout;
+
+		/**
+		 * The maximum time an asynchronous call can wait for the OkHttp dispatcher to run
+		 * it, when {@code spring.cloud.square.retrofit.load-shedding.enabled} is set.
+		 * Calls that wait longer, or past their own timeout, are shed with a
+		 * {@link LoadSheddingException} instead of being sent. Calls are only shed once
+		 * their timeout has passed if it is not set.
+		 */
+		private Duration maxQueueTime;
+
+		/**
+		 * The priority of the asynchronous calls of the client waiting for the OkHttp
+		 * dispatcher, when {@code spring.cloud.square.retrofit.priority.enabled} is set.
+		 * It takes precedence over the {@link Prioritized} annotation of the client
+		 * interface, but not over the annotations of its methods. Defaults to normal.
+		 */
+		private CallPriority priority;
+
+		private final RateLimit rateLimit = new RateLimit();
+
+		public Integer getMaxConcurrentCalls() {
+			return maxConcurrentCalls;
+		}
+
+		public void setMaxConcurrentCalls(Integer maxConcurrentCalls) {
+			this.maxConcurrentCalls = maxConcurrentCalls;
+		}
+
+		public Integer getMaxQueuedCalls() {
+			return maxQueuedCalls;
+		}
+
+		public void setMaxQueuedCalls(Integer maxQueuedCalls) {
+			this.maxQueuedCalls = maxQueuedCalls;
+		}
+
+		public Duration getQueueTimeout() {
+			return queueTimeout;
+		}
+
+		public void setQueueTimeout(Duration queueTimeout) {
+			this.queueTimeout = queueTimeout;
+		}
+
+		public Duration getMaxQueueTime() {
+			return maxQueueTime;
+		}
+
+		public void setMaxQueueTime(Duration maxQueueTime) {
+			this.maxQueueTime = maxQueueTime;
+		}
+
+		public CallPriority getPriority() {
+			return priority;
+		}
+
+		public void setPriority(CallPriority priority) {
+			this.priority = priority;
+		}
+
+		public RateLimit getRateLimit() {
+			return rateLimit;
+		}
+
+	}
+
+	public static class RateLimit {
+
+		/**
+		 * The number of calls per second the client can make. It takes precedence over
+		 * the {@link RateLimited} annotation of the client interface. The client calls
+		 * are not rate-limited if neither is set.
+		 */
+		private Double permitsPerSecond;
+
+		/**
+		 * The number of calls the client can make at once after it has been idle.
+		 * Defaults to the number of calls per second, rounded up.
+		 */
+		private Integer burst;
+
+		/**
+		 * The maximum time a call can be delayed to stay within the rate limit, before it
+		 * is rejected. Calls are rejected without delay if it is 0. Defaults to 1s.
+		 */
+		private Duration maxWait;
+
+		public Double getPermitsPerSecond() {
+			return permitsPerSecond;
+		}
+
+		public void setPermitsPerSecond(Double permitsPerSecond) {
+			this.permitsPerSecond = permitsPerSecond;
+		}
+
+		public Integer getBurst() {
+			return burst;
+		}
+
+		public void setBurst(Integer burst) {
+			this.burst = burst;
+		}
+
+		public Duration getMaxWait() {
+			return maxWait;
+		}
+
+		public void setMaxWait(Duration maxWait) {
+			this.maxWait = maxWait;
+		}
+
+	}
+
+}
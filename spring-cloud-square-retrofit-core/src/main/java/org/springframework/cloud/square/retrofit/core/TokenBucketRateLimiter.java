@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free token bucket. Instead of counting tokens, it keeps the time at which the
+ * bucket will be full again, which is updated with a single compare-and-set for each
+ * call. A call made when the bucket is empty reserves the next token and is told how long
+ * to wait for it, unless the wait would exceed the given maximum.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class TokenBucketRateLimiter {
+
+	private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+	private final LongAdder permitted = new LongAdder();
+
+	private final LongAdder delayed = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final double permitsPerSecond;
+
+	private final long intervalNanos;
+
+	private final long capacityNanos;
+
+	/**
+	 * Creates a new {@link TokenBucketRateLimiter}.
+	 * @param permitsPerSecond the rate at which the bucket is refilled
+	 * @param burst the capacity of the bucket; values lower than {@code 1} use the number
+	 * of permits per second, rounded up
+	 */
+	public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("The number of permits per second must be positive");
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		int capacity = burst > 0 ? burst : (int) Math.max(1, Math.ceil(permitsPerSecond));
+		this.capacityNanos = capacity * intervalNanos;
+	}
+
+	/**
+	 * Takes a token from the bucket.
+	 * @param maxWaitNanos the maximum time the caller is willing to wait for the token
+	 * @return the time the caller has to wait before making the call, or {@code -1} if
+	 * the token has not been taken because the wait would exceed the maximum
+	 */
+	public long reserve(long maxWaitNanos) {
+		while (true) {
+			long now = System.nanoTime();
+			long current = fullAt.get();
+			long updated = (current - now < 0 ? now : current) + intervalNanos;
+			long wait = updated - now - capacityNanos;
+			if (wait > maxWaitNanos) {
+				rejected.increment();
+				return -1;
+			}
+			if (fullAt.compareAndSet(current, updated)) {
+				if (wait > 0) {
+					delayed.increment();
+					return wait;
+				}
+				permitted.increment();
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a token taken with {@link #reserve(long)}, for instance when another
+	 * limit rejects the call it was taken for. The call is no longer counted as permitted
+	 * or delayed.
+	 * @param wait the time returned by {@link #reserve(long)} when the token was taken
+	 */
+	public void release(long wait) {
+		fullAt.addAndGet(-intervalNanos);
+		if (wait > 0) {
+			delayed.decrement();
+		}
+		else {
+			permitted.decrement();
+		}
+	}
+
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * @return the number of calls allowed without delay
+	 */
+	public long getPermitted() {
+		return permitted.sum();
+	}
+
+	/**
+	 * @return the number of calls allowed after a delay
+	 */
+	public long getDelayed() {
+		return delayed.sum();
+	}
+
+	/**
+	 * @return the number of calls rejected
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+}
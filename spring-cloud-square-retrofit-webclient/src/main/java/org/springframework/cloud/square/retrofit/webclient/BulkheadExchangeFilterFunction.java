@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkhead;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * An {@link ExchangeFilterFunction} that runs the requests of a {@link WebClient}
+ * Retrofit client in its {@link RetrofitClientBulkhead}. Requests wait for a permit
+ * without blocking a thread and hold it until the response is received, the request fails
+ * or is cancelled.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class BulkheadExchangeFilterFunction implements ExchangeFilterFunction {
+
+	private static final int WAITING = 0;
+
+	private static final int ACQUIRED = 1;
+
+	private static final int DONE = 2;
+
+	private final RetrofitClientBulkhead bulkhead;
+
+	public BulkheadExchangeFilterFunction(RetrofitClientBulkhead bulkhead) {
+		this.bulkhead = bulkhead;
+	}
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return Mono.defer(() -> {
+			AtomicInteger state = new AtomicInteger(WAITING);
+			Mono<Void> permit = Mono.create(sink -> sink.onCancel(bulkhead.acquire(() -> {
+				if (state.compareAndSet(WAITING, ACQUIRED)) {
+					sink.success();
+				}
+				else {
+					// the request was cancelled while the permit was being passed on
+					bulkhead.release();
+				}
+			}, sink::error)::cancel));
+			return permit.then(Mono.defer(() -> next.exchange(request))).doFinally(signal -> {
+				if (state.getAndSet(DONE) == ACQUIRED) {
+					bulkhead.release();
+				}
+			});
+		});
+	}
+
+}
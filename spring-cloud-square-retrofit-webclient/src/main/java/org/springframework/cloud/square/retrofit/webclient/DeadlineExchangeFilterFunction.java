@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.time.Duration;
+
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.square.retrofit.core.Deadline;
+import org.springframework.cloud.square.retrofit.core.DeadlineContext;
+import org.springframework.cloud.square.retrofit.core.DeadlineExceededException;
+import org.springframework.cloud.square.retrofit.core.DeadlineHeaders;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * An {@link ExchangeFilterFunction} that makes the requests of a {@link WebClient}
+ * Retrofit client inherit the {@link Deadline} of the {@link DeadlineContext} of the
+ * calling thread or, failing that, of the Reactor context. Requests whose deadline has
+ * passed fail with a {@link DeadlineExceededException} without being sent. The other
+ * requests forward the deadline downstream in their {@link DeadlineHeaders headers} and
+ * time out once it passes.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class DeadlineExchangeFilterFunction implements ExchangeFilterFunction {
+
+	/**
+	 * The request attribute holding the {@link Deadline} of the calling thread.
+	 */
+	public static final String DEADLINE_ATTRIBUTE = Deadline.class.getName();
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return Mono.deferContextual(context -> {
+			Deadline deadline = request.attribute(DEADLINE_ATTRIBUTE).map(Deadline.class::cast)
+					.orElseGet(() -> context.getOrDefault(DeadlineContext.REACTOR_CONTEXT_KEY, null));
+			if (deadline == null) {
+				return next.exchange(request);
+			}
+			Duration remaining = deadline.remaining();
+			if (remaining.isNegative() || remaining.isZero()) {
+				return Mono.error(new DeadlineExceededException(deadline));
+			}
+			ClientRequest withDeadline = ClientRequest.from(request)
+					.headers(headers -> DeadlineHeaders.write(deadline, headers::set)).build();
+			return next.exchange(withDeadline).timeout(remaining);
+		});
+	}
+
+}
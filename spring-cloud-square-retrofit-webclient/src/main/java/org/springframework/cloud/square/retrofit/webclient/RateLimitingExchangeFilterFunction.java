@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.time.Duration;
+
+import reactor.core.publisher.Mono;
+import retrofit2.Invocation;
+
+import org.springframework.cloud.square.retrofit.core.RateLimitExceededException;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * An {@link ExchangeFilterFunction} that keeps the requests of a {@link WebClient}
+ * Retrofit client within its rate limits. Requests over the limit are delayed on a timer,
+ * without parking a thread, or fail with a {@link RateLimitExceededException}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class RateLimitingExchangeFilterFunction implements ExchangeFilterFunction {
+
+	/**
+	 * The request attribute holding the Retrofit {@link Invocation} of the client method.
+	 */
+	public static final String INVOCATION_ATTRIBUTE = Invocation.class.getName();
+
+	private final RetrofitClientRateLimiter limiter;
+
+	public RateLimitingExchangeFilterFunction(RetrofitClientRateLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return Mono.defer(() -> {
+			Invocation invocation = (Invocation) request.attribute(INVOCATION_ATTRIBUTE).orElse(null);
+			long wait;
+			try {
+				wait = limiter.acquire(invocation);
+			}
+			catch (RateLimitExceededException e) {
+				return Mono.error(e);
+			}
+			if (wait > 0) {
+				return Mono.delay(Duration.ofNanos(wait)).then(Mono.defer(() -> next.exchange(request)));
+			}
+			return next.exchange(request);
+		});
+	}
+
+}
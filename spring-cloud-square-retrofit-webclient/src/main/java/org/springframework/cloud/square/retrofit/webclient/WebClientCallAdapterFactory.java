@@ -36,8 +36,13 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import retrofit2.Call;
 import retrofit2.CallAdapter;
+import retrofit2.Invocation;
 import retrofit2.Retrofit;
 
+import org.springframework.cloud.square.okhttp.loadbalancer.LoadBalancerHashKeyResolver;
+import org.springframework.cloud.square.retrofit.core.ConsistentHashKeyResolver;
+import org.springframework.cloud.square.retrofit.core.Deadline;
+import org.springframework.cloud.square.retrofit.core.DeadlineContext;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.reactive.function.client.ClientResponse;
@@ -51,7 +56,16 @@ import org.springframework.web.reactive.function.client.WebClient;
  */
 public class WebClientCallAdapterFactory extends CallAdapter.Factory {
 
+	private final ConsistentHashKeyResolver hashKeyResolver = new ConsistentHashKeyResolver();
+
+	private final WebClientHedging hedging;
+
 	public WebClientCallAdapterFactory() {
+		this(null);
+	}
+
+	public WebClientCallAdapterFactory(WebClientHedging hedging) {
+		this.hedging = hedging;
 	}
 
 	@Override
@@ -104,8 +118,13 @@ public class WebClientCallAdapterFactory extends CallAdapter.Factory {
 			@Override
 			public Object adapt(Call<Object> call) {
 				Request request = call.request();
+				Deadline deadline = DeadlineContext.get();
+				if (deadline != null) {
+					// the deadline of the calling thread, read again by the filter
+					request = request.newBuilder().tag(Deadline.class, deadline).build();
+				}
 
-				Mono<ClientResponse> clientResponse = requestBuilder(callFactory.getWebClient(), request).exchange();
+				Mono<ClientResponse> clientResponse = exchange(callFactory.getWebClient(), request);
 				if (toResponse) {
 					return clientResponse;
 				}
@@ -133,6 +152,13 @@ public class WebClientCallAdapterFactory extends CallAdapter.Factory {
 
 	}
 
+	private Mono<ClientResponse> exchange(WebClient webClient, Request request) {
+		if (hedging == null || !hedging.shouldHedge(request)) {
+			return requestBuilder(webClient, request).exchange();
+		}
+		return hedging.hedge(request.url().host(), () -> requestBuilder(webClient, request).exchange());
+	}
+
 	WebClient.RequestBodySpec requestBuilder(WebClient webClient, Request request) {
 		WebClient.RequestBodySpec spec = webClient.mutate().build().method(HttpMethod.resolve(request.method()))
 				.uri(request.url().uri()).headers(httpHeaders -> {
@@ -140,6 +166,18 @@ public class WebClientCallAdapterFactory extends CallAdapter.Factory {
 						httpHeaders.put(entry.getKey(), entry.getValue());
 					}
 				});
+		Invocation invocation = request.tag(Invocation.class);
+		if (invocation != null) {
+			spec.attribute(RateLimitingExchangeFilterFunction.INVOCATION_ATTRIBUTE, invocation);
+		}
+		Deadline deadline = request.tag(Deadline.class);
+		if (deadline != null) {
+			spec.attribute(DeadlineExchangeFilterFunction.DEADLINE_ATTRIBUTE, deadline);
+		}
+		String hashKey = hashKeyResolver.resolve(request);
+		if (hashKey != null) {
+			spec.attribute(LoadBalancerHashKeyResolver.HASH_KEY_ATTRIBUTE, hashKey);
+		}
 		RequestBody requestBody = request.body();
 		if (requestBody != null) {
 			processRequestBody(spec, requestBody);
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import org.springframework.cloud.square.okhttp.limit.AdaptiveConcurrencyLimit;
+import org.springframework.cloud.square.okhttp.limit.AdaptiveConcurrencyLimiter;
+import org.springframework.cloud.square.okhttp.limit.ConcurrencyLimitExceededException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Enforces the {@link AdaptiveConcurrencyLimit} of the services called by load-balanced
+ * {@link WebClient} Retrofit clients. Requests over the limit fail immediately with a
+ * {@link ConcurrencyLimitExceededException}, instead of waiting for a connection.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class WebClientConcurrencyLimiting {
+
+	private final AdaptiveConcurrencyLimiter limiter;
+
+	public WebClientConcurrencyLimiting(AdaptiveConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/**
+	 * Returns a {@link WebClient.Builder} that enforces the limit of the service before
+	 * any of the filters of the given builder run, leaving the given builder unchanged.
+	 * @param serviceId the id of the service called
+	 * @param builder the load-balanced builder
+	 * @return the limited builder
+	 */
+	public WebClient.Builder apply(String serviceId, WebClient.Builder builder) {
+		return builder.clone().filters(filters -> filters.add(0, filter(serviceId)));
+	}
+
+	/**
+	 * @param serviceId the id of the service called
+	 * @return a filter that enforces the limit of the service
+	 */
+	public ExchangeFilterFunction filter(String serviceId) {
+		return (request, next) -> Mono.defer(() -> {
+			AdaptiveConcurrencyLimit limit = limiter.get(serviceId);
+			AdaptiveConcurrencyLimit.Permit permit = limit.tryAcquire();
+			if (permit == null) {
+				return Mono.error(new ConcurrencyLimitExceededException(serviceId, limit.getLimit()));
+			}
+			return next.exchange(request).doOnNext(response -> release(permit, response))
+					.doOnError(error -> permit.releaseDropped()).doFinally(signal -> {
+						// cancelled or completed without a response
+						if (signal != SignalType.ON_ERROR) {
+							permit.releaseIgnored();
+						}
+					});
+		});
+	}
+
+	private static void release(AdaptiveConcurrencyLimit.Permit permit, ClientResponse response) {
+		int statusCode = response.rawStatusCode();
+		if (statusCode == HttpStatus.TOO_MANY_REQUESTS.value()
+				|| statusCode == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+			permit.releaseDropped();
+		}
+		else {
+			permit.release();
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import okhttp3.Request;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import org.springframework.cloud.square.okhttp.loadbalancer.HedgingPolicy;
+
+/**
+ * Hedges the {@link org.springframework.web.reactive.function.client.WebClient} requests
+ * selected by the {@link HedgingPolicy}. If the request has not been answered within the
+ * hedge delay, it is sent again and the first response is used, while the other request
+ * is cancelled. The hedge is load-balanced independently of the original request.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+public class WebClientHedging {
+
+	private final HedgingPolicy policy;
+
+	public WebClientHedging(HedgingPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * @param request the request created by Retrofit
+	 * @return whether the request should be hedged
+	 */
+	public boolean shouldHedge(Request request) {
+		return policy.shouldHedge(request);
+	}
+
+	/**
+	 * Runs the attempt and, if it has not emitted a value within the hedge delay, a hedge
+	 * attempt, returning the value emitted first.
+	 * @param serviceId the id of the service the request is sent to
+	 * @param attempt supplies the request to the service
+	 * @param <T> the type of the response
+	 * @return the hedged request
+	 */
+	public <T> Mono<T> hedge(String serviceId, Supplier<Mono<T>> attempt) {
+		return Mono.defer(() -> {
+			policy.recordRequest();
+			Duration delay = policy.getHedgeDelay(serviceId);
+			if (delay == null) {
+				return timed(serviceId, attempt);
+			}
+			Sinks.Empty<Void> primaryFailed = Sinks.empty();
+			Mono<T> primary = timed(serviceId, attempt).doOnError(e -> primaryFailed.tryEmitEmpty());
+			Mono<T> hedge = Mono.delay(delay).takeUntilOther(primaryFailed.asMono())
+					.filter(tick -> policy.tryAcquireHedge()).flatMap(tick -> timed(serviceId, attempt))
+					.doOnNext(value -> policy.recordHedgeWon());
+			return Mono.firstWithValue(primary, hedge).onErrorMap(NoSuchElementException.class,
+					WebClientHedging::attemptError);
+		});
+	}
+
+	private <T> Mono<T> timed(String serviceId, Supplier<Mono<T>> attempt) {
+		return Mono.defer(() -> {
+			long startTime = System.nanoTime();
+			return attempt.get().doOnNext(value -> policy.recordLatency(serviceId, System.nanoTime() - startTime));
+		});
+	}
+
+	private static Throwable attemptError(NoSuchElementException e) {
+		if (e.getCause() == null) {
+			return e;
+		}
+		// the errors of the attempts are combined as the cause
+		for (Throwable error : Exceptions.unwrapMultiple(e.getCause())) {
+			if (error != null && !(error instanceof NoSuchElementException)) {
+				return error;
+			}
+		}
+		return e;
+	}
+
+}
@@ -25,10 +25,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.cloud.client.actuator.HasFeatures;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkheadConfiguration;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientDeadlineConfiguration;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimitConfiguration;
 import org.springframework.cloud.square.retrofit.core.RetrofitClientSpecification;
 import org.springframework.cloud.square.retrofit.core.RetrofitContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 
 /**
  * @author Spencer Gibb
@@ -36,6 +40,8 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 @ConditionalOnClass(Retrofit.class)
 @ConditionalOnBean(WebClientRetrofitMarkerConfiguration.Marker.class)
+@Import({ RetrofitClientBulkheadConfiguration.class, RetrofitClientRateLimitConfiguration.class,
+		RetrofitClientDeadlineConfiguration.class })
 public class WebClientRetrofitAutoConfiguration {
 
 	@Autowired(required = false)
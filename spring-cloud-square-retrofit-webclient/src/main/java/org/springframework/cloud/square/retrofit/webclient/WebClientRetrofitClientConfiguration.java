@@ -19,13 +19,20 @@ package org.springframework.cloud.square.retrofit.webclient;
 import retrofit2.Retrofit;
 import retrofit2.converter.scalars.ScalarsConverterFactory;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.square.okhttp.limit.AdaptiveConcurrencyLimiter;
+import org.springframework.cloud.square.okhttp.loadbalancer.HedgingPolicy;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 
 /**
  * @author Dave Syer
+ * @author Olga Maciaszek-Sharma
  */
 @Configuration
 public class WebClientRetrofitClientConfiguration {
@@ -38,8 +45,8 @@ public class WebClientRetrofitClientConfiguration {
 	}
 
 	@Bean
-	public WebClientCallAdapterFactory webClientCallAdapterFactory() {
-		return new WebClientCallAdapterFactory();
+	public WebClientCallAdapterFactory webClientCallAdapterFactory(ObjectProvider<WebClientHedging> hedging) {
+		return new WebClientCallAdapterFactory(hedging.getIfAvailable());
 	}
 
 	@Bean
@@ -52,4 +59,40 @@ public class WebClientRetrofitClientConfiguration {
 		return ScalarsConverterFactory.create();
 	}
 
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(HedgingPolicy.class)
+	protected static class WebClientHedgingConfiguration {
+
+		@Bean
+		@ConditionalOnBean(HedgingPolicy.class)
+		public WebClientHedging webClientHedging(HedgingPolicy policy) {
+			return new WebClientHedging(policy);
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(AdaptiveConcurrencyLimiter.class)
+	protected static class WebClientConcurrencyLimitConfiguration {
+
+		@Bean
+		@ConditionalOnBean(AdaptiveConcurrencyLimiter.class)
+		public WebClientConcurrencyLimiting webClientConcurrencyLimiting(AdaptiveConcurrencyLimiter limiter) {
+			return new WebClientConcurrencyLimiting(limiter);
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnProperty("spring.cloud.square.retrofit.deadline.enabled")
+	protected static class WebClientDeadlineConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public DeadlineExchangeFilterFunction deadlineExchangeFilterFunction() {
+			return new DeadlineExchangeFilterFunction();
+		}
+
+	}
+
 }
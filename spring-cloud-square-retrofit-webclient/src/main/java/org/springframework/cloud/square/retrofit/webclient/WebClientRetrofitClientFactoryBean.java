@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.square.retrofit.webclient;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -24,6 +25,10 @@ import retrofit2.Retrofit;
 
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.cloud.square.retrofit.core.AbstractRetrofitClientFactoryBean;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkhead;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkheads;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiter;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiters;
 import org.springframework.cloud.square.retrofit.core.RetrofitContext;
 import org.springframework.web.reactive.function.client.WebClient;
 
@@ -60,7 +65,7 @@ public class WebClientRetrofitClientFactoryBean extends AbstractRetrofitClientFa
 					.filter(entry -> entry.getKey().equals(name + WEB_CLIENT_BUILDER_SUFFIX)).findAny()
 					.orElse(webClientBuilders.stream().findAny().get()).getValue();
 
-			builder.callFactory(new WebClientCallFactory(selectedWebClientBuilder.build()));
+			builder.callFactory(new WebClientCallFactory(decorate(context, selectedWebClientBuilder).build()));
 		}
 
 		return builder;
@@ -78,7 +83,48 @@ public class WebClientRetrofitClientFactoryBean extends AbstractRetrofitClientFa
 		WebClient.Builder selectedWebClientBuilder = loadBalancedWebClientBuilders.stream()
 				.filter(entry -> entry.getKey().equals(name + WEB_CLIENT_BUILDER_SUFFIX)).findAny()
 				.orElse(loadBalancedWebClientBuilders.stream().findAny().get()).getValue();
-		return buildRetrofit(builder, context, selectedWebClientBuilder);
+		WebClientConcurrencyLimiting concurrencyLimiting = getOptional(context, WebClientConcurrencyLimiting.class);
+		if (concurrencyLimiting != null) {
+			selectedWebClientBuilder = concurrencyLimiting.apply(URI.create(serviceIdUrl).getHost(),
+					selectedWebClientBuilder);
+		}
+		return buildRetrofit(builder, context, decorate(context, selectedWebClientBuilder));
+	}
+
+	private WebClient.Builder decorate(RetrofitContext context, WebClient.Builder webClientBuilder) {
+		return deadline(context, rateLimit(context, bulkhead(context, webClientBuilder)));
+	}
+
+	private WebClient.Builder deadline(RetrofitContext context, WebClient.Builder webClientBuilder) {
+		DeadlineExchangeFilterFunction filter = getOptional(context, DeadlineExchangeFilterFunction.class);
+		if (filter == null) {
+			return webClientBuilder;
+		}
+		// the deadline covers the time the requests are delayed and queued by the other
+		// filters
+		return webClientBuilder.clone().filters(filters -> filters.add(0, filter));
+	}
+
+	private WebClient.Builder rateLimit(RetrofitContext context, WebClient.Builder webClientBuilder) {
+		RetrofitClientRateLimiters rateLimiters = getOptional(context, RetrofitClientRateLimiters.class);
+		RetrofitClientRateLimiter rateLimiter = rateLimiters != null ? rateLimiters.get(this.name, this.type) : null;
+		if (rateLimiter == null) {
+			return webClientBuilder;
+		}
+		// delays the requests before they enter the bulkhead
+		return webClientBuilder.clone()
+				.filters(filters -> filters.add(0, new RateLimitingExchangeFilterFunction(rateLimiter)));
+	}
+
+	private WebClient.Builder bulkhead(RetrofitContext context, WebClient.Builder webClientBuilder) {
+		RetrofitClientBulkheads bulkheads = getOptional(context, RetrofitClientBulkheads.class);
+		RetrofitClientBulkhead bulkhead = bulkheads != null ? bulkheads.get(this.name) : null;
+		if (bulkhead == null) {
+			return webClientBuilder;
+		}
+		// runs before any other filter, including the load-balancing one
+		return webClientBuilder.clone()
+				.filters(filters -> filters.add(0, new BulkheadExchangeFilterFunction(bulkhead)));
 	}
 
 	private Object buildRetrofit(Retrofit.Builder builder, RetrofitContext context,
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import org.springframework.cloud.square.retrofit.core.BulkheadFullException;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkhead;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link BulkheadExchangeFilterFunction}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class BulkheadExchangeFilterFunctionTests {
+
+	private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1);
+
+	private final RetrofitClientBulkhead bulkhead = new RetrofitClientBulkhead("testapp", 1, 1, Duration.ofSeconds(5),
+			scheduler);
+
+	private final BulkheadExchangeFilterFunction filter = new BulkheadExchangeFilterFunction(bulkhead);
+
+	private final ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://testapp/")).build();
+
+	@AfterEach
+	void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	void shouldQueueRequestsOverLimit() {
+		Sinks.One<ClientResponse> firstResponse = Sinks.one();
+		Disposable first = filter.filter(request, r -> firstResponse.asMono()).subscribe();
+		Mono<ClientResponse> second = filter.filter(request,
+				r -> Mono.just(ClientResponse.create(HttpStatus.OK).build()));
+
+		ClientResponse[] response = new ClientResponse[1];
+		second.subscribe(value -> response[0] = value);
+
+		assertThat(response[0]).isNull();
+		assertThat(bulkhead.getQueuedCalls()).isEqualTo(1);
+
+		firstResponse.tryEmitValue(ClientResponse.create(HttpStatus.OK).build());
+
+		assertThat(response[0]).isNotNull();
+		assertThat(bulkhead.getActiveCalls()).isZero();
+		first.dispose();
+	}
+
+	@Test
+	void shouldRejectRequestsWhenQueueIsFull() {
+		Disposable first = filter.filter(request, r -> Mono.never()).subscribe();
+		Disposable second = filter.filter(request, r -> Mono.never()).subscribe();
+
+		assertThatExceptionOfType(RuntimeException.class)
+				.isThrownBy(() -> filter.filter(request, r -> Mono.never()).block())
+				.withCauseInstanceOf(BulkheadFullException.class);
+
+		second.dispose();
+		assertThat(bulkhead.getQueuedCalls()).isZero();
+		first.dispose();
+		assertThat(bulkhead.getActiveCalls()).isZero();
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.square.retrofit.core.Deadline;
+import org.springframework.cloud.square.retrofit.core.DeadlineContext;
+import org.springframework.cloud.square.retrofit.core.DeadlineExceededException;
+import org.springframework.cloud.square.retrofit.core.DeadlineHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link DeadlineExchangeFilterFunction}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class DeadlineExchangeFilterFunctionTests {
+
+	private final DeadlineExchangeFilterFunction filter = new DeadlineExchangeFilterFunction();
+
+	private final AtomicReference<ClientRequest> sent = new AtomicReference<>();
+
+	private final ExchangeFunction exchange = request -> {
+		sent.set(request);
+		return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+	};
+
+	@Test
+	void shouldForwardDeadlineOfRequestAttribute() {
+		ClientRequest request = request()
+				.attribute(DeadlineExchangeFilterFunction.DEADLINE_ATTRIBUTE, Deadline.after(Duration.ofSeconds(5)))
+				.build();
+
+		StepVerifier.create(filter.filter(request, exchange)).expectNextCount(1).verifyComplete();
+
+		assertThat(DeadlineHeaders.read(sent.get().headers()::getFirst).remaining()).isBetween(Duration.ofSeconds(4),
+				Duration.ofSeconds(5));
+	}
+
+	@Test
+	void shouldForwardDeadlineOfReactorContext() {
+		Mono<ClientResponse> response = filter.filter(request().build(), exchange).contextWrite(
+				context -> context.put(DeadlineContext.REACTOR_CONTEXT_KEY, Deadline.after(Duration.ofSeconds(5))));
+
+		StepVerifier.create(response).expectNextCount(1).verifyComplete();
+
+		assertThat(sent.get().headers().getFirst(DeadlineHeaders.GRPC_TIMEOUT_HEADER)).isNotNull();
+	}
+
+	@Test
+	void shouldNotSendRequestsWhoseDeadlineHasPassed() {
+		ClientRequest request = request()
+				.attribute(DeadlineExchangeFilterFunction.DEADLINE_ATTRIBUTE, Deadline.after(Duration.ofMillis(-1)))
+				.build();
+
+		StepVerifier.create(filter.filter(request, exchange)).verifyError(DeadlineExceededException.class);
+
+		assertThat(sent.get()).isNull();
+	}
+
+	@Test
+	void shouldTimeOutOnceDeadlineHasPassed() {
+		ClientRequest request = request()
+				.attribute(DeadlineExchangeFilterFunction.DEADLINE_ATTRIBUTE, Deadline.after(Duration.ofMillis(100)))
+				.build();
+
+		StepVerifier.create(filter.filter(request, ignored -> Mono.never())).verifyError(TimeoutException.class);
+	}
+
+	@Test
+	void shouldNotForwardDeadlineWithoutOne() {
+		StepVerifier.create(filter.filter(request().build(), exchange)).expectNextCount(1).verifyComplete();
+
+		assertThat(sent.get().headers().getFirst(DeadlineHeaders.GRPC_TIMEOUT_HEADER)).isNull();
+	}
+
+	private static ClientRequest.Builder request() {
+		return ClientRequest.create(HttpMethod.GET, URI.create("http://testapp/"));
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.square.retrofit.core.RateLimitExceededException;
+import org.springframework.cloud.square.retrofit.core.RateLimited;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiters;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientsProperties;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link RateLimitingExchangeFilterFunction}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class RateLimitingExchangeFilterFunctionTests {
+
+	private final RetrofitClientRateLimiters limiters = new RetrofitClientRateLimiters(new RetrofitClientsProperties());
+
+	private final ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://testapp/")).build();
+
+	private final ExchangeFunction exchange = r -> Mono.just(ClientResponse.create(HttpStatus.OK).build());
+
+	@AfterEach
+	void tearDown() {
+		limiters.destroy();
+	}
+
+	@Test
+	void shouldDelayRequestsOverLimitWithoutBlocking() {
+		RateLimitingExchangeFilterFunction filter = new RateLimitingExchangeFilterFunction(
+				limiters.get("testapp", DelayingClient.class));
+		filter.filter(request, exchange).block();
+		long start = System.nanoTime();
+
+		Mono<ClientResponse> delayed = filter.filter(request, exchange);
+		ClientResponse[] response = new ClientResponse[1];
+		delayed.subscribe(value -> response[0] = value);
+
+		assertThat(response[0]).isNull();
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(50));
+		assertThat(filter.filter(request, exchange).block().statusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response[0]).isNotNull();
+	}
+
+	@Test
+	void shouldRejectRequestsOverLimit() {
+		RateLimitingExchangeFilterFunction filter = new RateLimitingExchangeFilterFunction(
+				limiters.get("otherapp", RejectingClient.class));
+		filter.filter(request, exchange).block();
+
+		assertThatExceptionOfType(RuntimeException.class).isThrownBy(() -> filter.filter(request, exchange).block())
+				.withCauseInstanceOf(RateLimitExceededException.class);
+	}
+
+	@RateLimited(permitsPerSecond = 10, burst = 1)
+	interface DelayingClient {
+
+	}
+
+	@RateLimited(permitsPerSecond = 1, maxWaitMillis = 0)
+	interface RejectingClient {
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.square.okhttp.limit.AdaptiveConcurrencyLimiter;
+import org.springframework.cloud.square.okhttp.limit.ConcurrencyLimitExceededException;
+import org.springframework.cloud.square.okhttp.limit.ConcurrencyLimitProperties;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link WebClientConcurrencyLimiting}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class WebClientConcurrencyLimitingTests {
+
+	private final ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://testapp/")).build();
+
+	private final ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+
+	@Test
+	void shouldRejectRequestsOverLimit() {
+		properties.setInitialLimit(1);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+		ExchangeFilterFunction filter = new WebClientConcurrencyLimiting(limiter).filter("testapp");
+
+		Disposable pending = filter.filter(request, r -> Mono.never()).subscribe();
+
+		assertThatExceptionOfType(RuntimeException.class)
+				.isThrownBy(() -> filter.filter(request, respondWith(HttpStatus.OK)).block())
+				.withCauseInstanceOf(ConcurrencyLimitExceededException.class);
+
+		pending.dispose();
+
+		assertThat(limiter.get("testapp").getInFlight()).isZero();
+		assertThat(limiter.get("testapp").getLimit()).isEqualTo(1);
+		assertThat(filter.filter(request, respondWith(HttpStatus.OK)).block().statusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	void shouldBackOffOnOverloadedResponses() {
+		properties.setInitialLimit(100);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+		ExchangeFilterFunction filter = new WebClientConcurrencyLimiting(limiter).filter("testapp");
+
+		filter.filter(request, respondWith(HttpStatus.TOO_MANY_REQUESTS)).block();
+
+		assertThat(limiter.get("testapp").getLimit()).isEqualTo(90);
+		assertThat(limiter.get("testapp").getInFlight()).isZero();
+	}
+
+	@Test
+	void shouldBackOffOnFailures() {
+		properties.setInitialLimit(100);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties);
+		ExchangeFilterFunction filter = new WebClientConcurrencyLimiting(limiter).filter("testapp");
+
+		assertThatExceptionOfType(RuntimeException.class)
+				.isThrownBy(() -> filter.filter(request, r -> Mono.error(new IOException("test"))).block());
+
+		assertThat(limiter.get("testapp").getLimit()).isEqualTo(90);
+		assertThat(limiter.get("testapp").getInFlight()).isZero();
+	}
+
+	private static ExchangeFunction respondWith(HttpStatus status) {
+		return r -> Mono.just(ClientResponse.create(status).build());
+	}
+
+}
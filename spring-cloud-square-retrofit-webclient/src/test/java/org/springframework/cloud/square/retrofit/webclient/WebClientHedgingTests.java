@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit.webclient;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.square.okhttp.loadbalancer.HedgingPolicy;
+import org.springframework.cloud.square.okhttp.loadbalancer.OkHttpLoadBalancerProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Tests for {@link WebClientHedging}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class WebClientHedgingTests {
+
+	private final HedgingPolicy policy = policy();
+
+	private final WebClientHedging hedging = new WebClientHedging(policy);
+
+	@Test
+	void shouldUseHedgeWhenAnsweredFirst() {
+		AtomicInteger attempts = new AtomicInteger();
+
+		String result = hedging.hedge("testapp", () -> attempts.incrementAndGet() == 1
+				? Mono.just("primary").delayElement(Duration.ofSeconds(5)) : Mono.just("hedge")).block();
+
+		assertThat(result).isEqualTo("hedge");
+		assertThat(attempts).hasValue(2);
+		assertThat(policy.getHedgeWins()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotHedgeWhenAnsweredWithinDelay() {
+		AtomicInteger attempts = new AtomicInteger();
+
+		String result = hedging.hedge("testapp", () -> {
+			attempts.incrementAndGet();
+			return Mono.just("primary");
+		}).block();
+
+		assertThat(result).isEqualTo("primary");
+		assertThat(attempts).hasValue(1);
+	}
+
+	@Test
+	void shouldPropagatePrimaryFailureBeforeHedge() {
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertThatIllegalStateException().isThrownBy(() -> hedging.hedge("testapp", () -> {
+			attempts.incrementAndGet();
+			return Mono.<String>error(new IllegalStateException("test"));
+		}).block()).withMessage("test");
+		assertThat(attempts).hasValue(1);
+	}
+
+	private static HedgingPolicy policy() {
+		OkHttpLoadBalancerProperties.Hedging properties = new OkHttpLoadBalancerProperties.Hedging();
+		properties.setServiceIds(Collections.singleton("testapp"));
+		properties.setMinSamples(1);
+		properties.setMinDelay(Duration.ofMillis(50));
+		HedgingPolicy policy = new HedgingPolicy(properties);
+		policy.recordLatency("testapp", TimeUnit.MILLISECONDS.toNanos(1));
+		return policy;
+	}
+
+}
@@ -23,11 +23,22 @@ import retrofit2.Retrofit;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.cloud.client.actuator.HasFeatures;
+import org.springframework.cloud.square.okhttp.loadbalancer.LoadBalancerHashKeyResolver;
+import org.springframework.cloud.square.okhttp.loadbalancer.LoadBalancerHedgedRequestMatcher;
+import org.springframework.cloud.square.retrofit.core.ConsistentHashKeyResolver;
+import org.springframework.cloud.square.retrofit.core.HedgedRequestResolver;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkheadConfiguration;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientDeadlineConfiguration;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientLoadSheddingConfiguration;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientPriorityConfiguration;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimitConfiguration;
 import org.springframework.cloud.square.retrofit.core.RetrofitClientSpecification;
 import org.springframework.cloud.square.retrofit.core.RetrofitContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 
 /**
  * @author Spencer Gibb
@@ -35,6 +46,9 @@ import org.springframework.context.annotation.Configuration;
 @Configuration(proxyBeanMethods = false)
 @ConditionalOnClass(Retrofit.class)
 @ConditionalOnBean(RetrofitConfiguration.Marker.class)
+@Import({ RetrofitClientBulkheadConfiguration.class, RetrofitClientRateLimitConfiguration.class,
+		RetrofitClientPriorityConfiguration.class, RetrofitClientLoadSheddingConfiguration.class,
+		RetrofitClientDeadlineConfiguration.class })
 public class RetrofitAutoConfiguration {
 
 	@Bean
@@ -49,4 +63,30 @@ public class RetrofitAutoConfiguration {
 		return context;
 	}
 
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(LoadBalancerHashKeyResolver.class)
+	protected static class RetrofitHashKeyResolverConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public LoadBalancerHashKeyResolver retrofitLoadBalancerHashKeyResolver() {
+			ConsistentHashKeyResolver resolver = new ConsistentHashKeyResolver();
+			return resolver::resolve;
+		}
+
+	}
+
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(LoadBalancerHedgedRequestMatcher.class)
+	protected static class RetrofitHedgedRequestMatcherConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public LoadBalancerHedgedRequestMatcher retrofitLoadBalancerHedgedRequestMatcher() {
+			HedgedRequestResolver resolver = new HedgedRequestResolver();
+			return resolver::isHedged;
+		}
+
+	}
+
 }
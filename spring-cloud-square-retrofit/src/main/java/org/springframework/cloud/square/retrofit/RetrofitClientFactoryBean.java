@@ -18,18 +18,43 @@ package org.springframework.cloud.square.retrofit;
 
 import java.util.Map;
 
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.square.okhttp.core.OkHttpClientsConfigurer;
+import org.springframework.cloud.square.okhttp.loadbalancer.HedgingCallFactoryProvider;
+import org.springframework.cloud.square.okhttp.loadbalancer.InstanceHealthProber;
+import org.springframework.cloud.square.okhttp.loadbalancer.LoadBalancedCallFactory;
+import org.springframework.cloud.square.okhttp.loadbalancer.LoadBalancedCallFactoryProvider;
 import org.springframework.cloud.square.retrofit.core.AbstractRetrofitClientFactoryBean;
+import org.springframework.cloud.square.retrofit.core.BulkheadCallFactory;
+import org.springframework.cloud.square.retrofit.core.DeadlineCallFactoryProvider;
+import org.springframework.cloud.square.retrofit.core.LoadShedders;
+import org.springframework.cloud.square.retrofit.core.LoadSheddingCallFactory;
+import org.springframework.cloud.square.retrofit.core.PriorityDispatchers;
+import org.springframework.cloud.square.retrofit.core.RateLimitingCallFactory;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkhead;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkheads;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiter;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiters;
 import org.springframework.cloud.square.retrofit.core.RetrofitContext;
+import org.springframework.util.ClassUtils;
 
 /**
  * @author Spencer Gibb
  */
 public class RetrofitClientFactoryBean extends AbstractRetrofitClientFactoryBean {
 
+	private static final boolean OKHTTP_CLIENTS_CONFIGURER_PRESENT = ClassUtils.isPresent(
+			"org.springframework.cloud.square.okhttp.core.OkHttpClientsConfigurer",
+			RetrofitClientFactoryBean.class.getClassLoader());
+
+	private static final boolean LOAD_BALANCED_CALL_FACTORY_PRESENT = ClassUtils.isPresent(
+			"org.springframework.cloud.square.okhttp.loadbalancer.LoadBalancedCallFactoryProvider",
+			RetrofitClientFactoryBean.class.getClassLoader());
+
 	/***********************************
 	 * WARNING! Nothing in this class should be @Autowired. It causes NPEs because of some
 	 * lifecycle race condition.
@@ -40,7 +65,8 @@ public class RetrofitClientFactoryBean extends AbstractRetrofitClientFactoryBean
 
 		OkHttpClient.Builder clientBuilder = getOptional(context, OkHttpClient.Builder.class);
 		if (clientBuilder != null) {
-			builder.client(clientBuilder.build());
+			OkHttpClient client = configure(context, clientBuilder.build());
+			builder.callFactory(decorate(context, client, client));
 		}
 
 		return builder;
@@ -52,7 +78,9 @@ public class RetrofitClientFactoryBean extends AbstractRetrofitClientFactoryBean
 			String beanName = entry.getKey();
 			OkHttpClient.Builder clientBuilder = entry.getValue();
 			if (applicationContext.findAnnotationOnBean(beanName, LoadBalanced.class) != null) {
-				builder.client(clientBuilder.build());
+				OkHttpClient client = configure(context, clientBuilder.build());
+				registerForHealthProbing(context, serviceIdUrl, client);
+				builder.callFactory(loadBalancedCallFactory(context, client));
 				Retrofit retrofit = buildAndSave(context, builder);
 				return retrofit.create(this.type);
 			}
@@ -62,4 +90,78 @@ public class RetrofitClientFactoryBean extends AbstractRetrofitClientFactoryBean
 				"No Retrofit Client for loadBalancing defined. Did you forget to include spring-cloud-starter-square-okhttp?");
 	}
 
+	private OkHttpClient configure(RetrofitContext context, OkHttpClient client) {
+		if (!OKHTTP_CLIENTS_CONFIGURER_PRESENT) {
+			return client;
+		}
+		OkHttpClientsConfigurer configurer = getOptional(context, OkHttpClientsConfigurer.class);
+		return configurer != null ? configurer.configure(this.name, client) : client;
+	}
+
+	private okhttp3.Call.Factory decorate(RetrofitContext context, OkHttpClient client,
+			okhttp3.Call.Factory callFactory) {
+		// the outermost factories apply first, before the calls wait for the dispatcher
+		return deadline(context,
+				rateLimit(context, bulkhead(context, shed(context, prioritize(context, client, callFactory)))));
+	}
+
+	private okhttp3.Call.Factory deadline(RetrofitContext context, okhttp3.Call.Factory callFactory) {
+		DeadlineCallFactoryProvider provider = getOptional(context, DeadlineCallFactoryProvider.class);
+		return provider != null ? provider.getCallFactory(callFactory) : callFactory;
+	}
+
+	private okhttp3.Call.Factory rateLimit(RetrofitContext context, okhttp3.Call.Factory callFactory) {
+		RetrofitClientRateLimiters rateLimiters = getOptional(context, RetrofitClientRateLimiters.class);
+		RetrofitClientRateLimiter rateLimiter = rateLimiters != null ? rateLimiters.get(this.name, this.type) : null;
+		return rateLimiter != null ? new RateLimitingCallFactory(callFactory, rateLimiter) : callFactory;
+	}
+
+	private okhttp3.Call.Factory bulkhead(RetrofitContext context, okhttp3.Call.Factory callFactory) {
+		RetrofitClientBulkheads bulkheads = getOptional(context, RetrofitClientBulkheads.class);
+		RetrofitClientBulkhead bulkhead = bulkheads != null ? bulkheads.get(this.name) : null;
+		return bulkhead != null ? new BulkheadCallFactory(callFactory, bulkhead) : callFactory;
+	}
+
+	private okhttp3.Call.Factory shed(RetrofitContext context, okhttp3.Call.Factory callFactory) {
+		LoadShedders shedders = getOptional(context, LoadShedders.class);
+		return shedders != null ? new LoadSheddingCallFactory(callFactory, shedders.get(this.name)) : callFactory;
+	}
+
+	private okhttp3.Call.Factory prioritize(RetrofitContext context, OkHttpClient client,
+			okhttp3.Call.Factory callFactory) {
+		PriorityDispatchers dispatchers = getOptional(context, PriorityDispatchers.class);
+		return dispatchers != null ? dispatchers.getCallFactory(this.name, this.type, client.dispatcher(), callFactory)
+				: callFactory;
+	}
+
+	private void registerForHealthProbing(RetrofitContext context, String serviceIdUrl, OkHttpClient client) {
+		if (!LOAD_BALANCED_CALL_FACTORY_PRESENT) {
+			return;
+		}
+		InstanceHealthProber prober = getOptional(context, InstanceHealthProber.class);
+		if (prober != null) {
+			prober.register(HttpUrl.get(serviceIdUrl).host(), client);
+		}
+	}
+
+	private okhttp3.Call.Factory loadBalancedCallFactory(RetrofitContext context, OkHttpClient client) {
+		if (!LOAD_BALANCED_CALL_FACTORY_PRESENT) {
+			return decorate(context, client, client);
+		}
+		okhttp3.Call.Factory callFactory = client;
+		LoadBalancedCallFactoryProvider provider = getOptional(context, LoadBalancedCallFactoryProvider.class);
+		if (provider != null) {
+			LoadBalancedCallFactory loadBalancedCallFactory = provider.getCallFactory(client);
+			// its client may have a dispatcher of its own, limiting the calls per
+			// instance
+			client = loadBalancedCallFactory.getClient();
+			callFactory = loadBalancedCallFactory;
+		}
+		HedgingCallFactoryProvider hedgingProvider = getOptional(context, HedgingCallFactoryProvider.class);
+		if (hedgingProvider != null) {
+			callFactory = hedgingProvider.getCallFactory(callFactory);
+		}
+		return decorate(context, client, callFactory);
+	}
+
 }
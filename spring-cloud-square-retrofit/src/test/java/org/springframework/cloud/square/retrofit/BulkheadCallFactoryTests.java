@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.square.retrofit.core.BulkheadCallFactory;
+import org.springframework.cloud.square.retrofit.core.BulkheadFullException;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkhead;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link BulkheadCallFactory}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class BulkheadCallFactoryTests {
+
+	private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1);
+
+	private final RetrofitClientBulkhead bulkhead = new RetrofitClientBulkhead("testapp", 1, 1, Duration.ofMillis(100),
+			scheduler);
+
+	private final Request request = new Request.Builder().url("http://testapp/").build();
+
+	@AfterEach
+	void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	void shouldHoldPermitUntilBodyIsClosed() throws IOException {
+		BulkheadCallFactory factory = new BulkheadCallFactory(client(), bulkhead);
+
+		Response response = factory.newCall(request).execute();
+
+		assertThat(bulkhead.getActiveCalls()).isEqualTo(1);
+		assertThat(response.body().string()).isEqualTo("hello");
+		assertThat(bulkhead.getActiveCalls()).isZero();
+	}
+
+	@Test
+	void shouldRejectCallsThatWaitTooLong() throws IOException {
+		BulkheadCallFactory factory = new BulkheadCallFactory(client(), bulkhead);
+		Response first = factory.newCall(request).execute();
+
+		assertThatExceptionOfType(BulkheadFullException.class).isThrownBy(() -> factory.newCall(request).execute());
+
+		first.close();
+		assertThat(bulkhead.getActiveCalls()).isZero();
+		assertThat(bulkhead.getQueueTimeoutRejections()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRunQueuedAsynchronousCallsOnceRunningCallsComplete() throws Exception {
+		BulkheadCallFactory factory = new BulkheadCallFactory(client(), bulkhead);
+		Response first = factory.newCall(request).execute();
+		CompletableFuture<String> result = new CompletableFuture<>();
+
+		factory.newCall(request).enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				result.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) throws IOException {
+				result.complete(response.body().string());
+			}
+		});
+
+		assertThat(bulkhead.getQueuedCalls()).isEqualTo(1);
+		first.close();
+		assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("hello");
+		assertThat(bulkhead.getActiveCalls()).isZero();
+	}
+
+	@Test
+	void shouldFailCancelledQueuedCalls() throws Exception {
+		BulkheadCallFactory factory = new BulkheadCallFactory(client(), bulkhead);
+		Response first = factory.newCall(request).execute();
+		CountDownLatch failed = new CountDownLatch(1);
+		Call call = factory.newCall(request);
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				failed.countDown();
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				response.close();
+			}
+		});
+
+		call.cancel();
+
+		assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(call.isCanceled()).isTrue();
+		first.close();
+		assertThat(bulkhead.getActiveCalls()).isZero();
+	}
+
+	private static OkHttpClient client() {
+		return new OkHttpClient.Builder()
+				.addInterceptor(
+						chain -> new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200)
+								.message("OK").body(ResponseBody.create("hello", MediaType.get("text/plain"))).build())
+				.build();
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
+
+import org.springframework.cloud.square.retrofit.core.ConsistentHashKey;
+import org.springframework.cloud.square.retrofit.core.ConsistentHashKeyResolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * Tests for {@link ConsistentHashKeyResolver}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class ConsistentHashKeyResolverTests {
+
+	private final ConsistentHashKeyResolver resolver = new ConsistentHashKeyResolver();
+
+	private final TestClient client = new Retrofit.Builder().baseUrl("http://testapp/").client(new OkHttpClient())
+			.build().create(TestClient.class);
+
+	@Test
+	void shouldResolveKeyFromHeader() {
+		assertThat(resolver.resolve(client.byHeader("user-1").request())).isEqualTo("user-1");
+	}
+
+	@Test
+	void shouldResolveKeyFromQueryParameter() {
+		assertThat(resolver.resolve(client.byQuery("user-2").request())).isEqualTo("user-2");
+	}
+
+	@Test
+	void shouldResolveKeyFromPathParameter() {
+		assertThat(resolver.resolve(client.byPath("user-3").request())).isEqualTo("user-3");
+	}
+
+	@Test
+	void shouldResolveKeyDeclaredOnClient() {
+		Request request = client.inherited("user-4").request();
+
+		assertThat(resolver.resolve(request)).isEqualTo("user-4");
+	}
+
+	@Test
+	void shouldNotResolveKeyForRequestsWithoutInvocation() {
+		assertThat(resolver.resolve(new Request.Builder().url("http://testapp/").build())).isNull();
+	}
+
+	@Test
+	void shouldNotResolveInterfaceKeyForMethodsWithoutPathParameter() {
+		PathClient pathClient = new Retrofit.Builder().baseUrl("http://testapp/").client(new OkHttpClient()).build()
+				.create(PathClient.class);
+
+		ConsistentHashKeyResolver.validate(PathClient.class);
+		assertThat(resolver.resolve(pathClient.byPath("user-5").request())).isEqualTo("user-5");
+		assertThat(resolver.resolve(pathClient.all().request())).isNull();
+	}
+
+	@Test
+	void shouldRejectMethodKeyWithoutPathParameter() {
+		assertThatIllegalStateException().isThrownBy(() -> ConsistentHashKeyResolver.validate(InvalidClient.class))
+				.withMessageContaining("@Path(\"user\")");
+	}
+
+	@ConsistentHashKey(path = "user")
+	interface PathClient {
+
+		@GET("/users/{user}")
+		Call<ResponseBody> byPath(@Path("user") String user);
+
+		@GET("/users")
+		Call<ResponseBody> all();
+
+	}
+
+	interface InvalidClient {
+
+		@ConsistentHashKey(path = "user")
+		@GET("/users")
+		Call<ResponseBody> all();
+
+	}
+
+	@ConsistentHashKey(header = "X-Tenant")
+	interface TestClient {
+
+		@ConsistentHashKey(header = "X-User")
+		@GET("/users")
+		Call<ResponseBody> byHeader(@Header("X-User") String user);
+
+		@ConsistentHashKey(query = "user")
+		@GET("/users")
+		Call<ResponseBody> byQuery(@Query("user") String user);
+
+		@ConsistentHashKey(path = "user")
+		@GET("/users/{user}")
+		Call<ResponseBody> byPath(@Path("user") String user);
+
+		@GET("/tenants")
+		Call<ResponseBody> inherited(@Header("X-Tenant") String tenant);
+
+	}
+
+}
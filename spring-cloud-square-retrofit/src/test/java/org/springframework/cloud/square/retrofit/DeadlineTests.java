@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.square.retrofit.core.Deadline;
+import org.springframework.cloud.square.retrofit.core.DeadlineCallFactory;
+import org.springframework.cloud.square.retrofit.core.DeadlineContext;
+import org.springframework.cloud.square.retrofit.core.DeadlineExceededException;
+import org.springframework.cloud.square.retrofit.core.DeadlineHeaders;
+import org.springframework.cloud.square.retrofit.core.DeadlineInterceptor;
+import org.springframework.cloud.square.retrofit.core.DeadlineServletFilter;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for the propagation of {@link Deadline Deadlines} to OkHttp-backed Retrofit
+ * clients.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class DeadlineTests {
+
+	private final AtomicReference<Request> sent = new AtomicReference<>();
+
+	private final Call.Factory factory = new DeadlineCallFactory(
+			new OkHttpClient.Builder().addInterceptor(new DeadlineInterceptor()).addInterceptor(chain -> {
+				sent.set(chain.request());
+				return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200)
+						.message("OK").body(ResponseBody.create("hello", MediaType.get("text/plain"))).build();
+			}).build());
+
+	@AfterEach
+	void tearDown() {
+		DeadlineContext.set(null);
+	}
+
+	@Test
+	void shouldReadEarliestDeadlineFromHeaders() {
+		Map<String, String> headers = new HashMap<>();
+		headers.put(DeadlineHeaders.GRPC_TIMEOUT_HEADER, "2S");
+		headers.put(DeadlineHeaders.DEADLINE_HEADER, String.valueOf(System.currentTimeMillis() + 60_000));
+
+		Deadline deadline = DeadlineHeaders.read(headers::get);
+
+		assertThat(deadline.remaining()).isBetween(Duration.ofSeconds(1), Duration.ofSeconds(2));
+	}
+
+	@Test
+	void shouldIgnoreMalformedHeaders() {
+		Map<String, String> headers = new HashMap<>();
+		headers.put(DeadlineHeaders.GRPC_TIMEOUT_HEADER, "2 seconds");
+		headers.put(DeadlineHeaders.DEADLINE_HEADER, "tomorrow");
+
+		assertThat(DeadlineHeaders.read(headers::get)).isNull();
+	}
+
+	@Test
+	void shouldWriteRemainingTimeToHeaders() {
+		Map<String, String> headers = new HashMap<>();
+
+		DeadlineHeaders.write(Deadline.after(Duration.ofMillis(500)), headers::put);
+
+		assertThat(headers.get(DeadlineHeaders.GRPC_TIMEOUT_HEADER)).endsWith("u");
+		assertThat(DeadlineHeaders.read(headers::get).remaining()).isBetween(Duration.ofMillis(400),
+				Duration.ofMillis(500));
+	}
+
+	@Test
+	void shouldPropagateDeadlineOfCallingThread() throws IOException {
+		DeadlineContext.set(Deadline.after(Duration.ofSeconds(5)));
+
+		Call call = factory.newCall(new Request.Builder().url("http://testapp/").build());
+		call.execute().close();
+
+		assertThat(call.timeout().hasDeadline()).isTrue();
+		assertThat(DeadlineHeaders.read(sent.get()::header).remaining()).isBetween(Duration.ofSeconds(4),
+				Duration.ofSeconds(5));
+	}
+
+	@Test
+	void shouldNotSendCallsWhoseDeadlineHasPassed() {
+		DeadlineContext.set(Deadline.after(Duration.ofMillis(-1)));
+
+		Call call = factory.newCall(new Request.Builder().url("http://testapp/").build());
+
+		assertThatExceptionOfType(DeadlineExceededException.class).isThrownBy(call::execute);
+		assertThat(sent.get()).isNull();
+	}
+
+	@Test
+	void shouldNotPropagateDeadlineWithoutOne() throws IOException {
+		factory.newCall(new Request.Builder().url("http://testapp/").build()).execute().close();
+
+		assertThat(sent.get().header(DeadlineHeaders.GRPC_TIMEOUT_HEADER)).isNull();
+	}
+
+	@Test
+	void shouldSetDeadlineOfInboundRequest() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(DeadlineHeaders.GRPC_TIMEOUT_HEADER, "300m");
+		AtomicReference<Deadline> deadline = new AtomicReference<>();
+
+		new DeadlineServletFilter().doFilter(request, new MockHttpServletResponse(),
+				new MockFilterChain(new javax.servlet.http.HttpServlet() {
+					@Override
+					protected void service(javax.servlet.http.HttpServletRequest req,
+							javax.servlet.http.HttpServletResponse resp) {
+						deadline.set(DeadlineContext.get());
+					}
+				}));
+
+		assertThat(deadline.get().remaining()).isBetween(Duration.ZERO, Duration.ofMillis(300));
+		assertThat(DeadlineContext.get()).isNull();
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import org.springframework.cloud.square.retrofit.core.Hedged;
+import org.springframework.cloud.square.retrofit.core.HedgedRequestResolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link HedgedRequestResolver}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class HedgedRequestResolverTests {
+
+	private final HedgedRequestResolver resolver = new HedgedRequestResolver();
+
+	private final TestClient client = new Retrofit.Builder().baseUrl("http://testapp/").client(new OkHttpClient())
+			.build().create(TestClient.class);
+
+	@Test
+	void shouldResolveHedgedMethods() {
+		assertThat(resolver.isHedged(client.hedged().request())).isTrue();
+		assertThat(resolver.isHedged(client.notHedged().request())).isFalse();
+	}
+
+	@Test
+	void shouldNotHedgeRequestsWithoutInvocation() {
+		assertThat(resolver.isHedged(new Request.Builder().url("http://testapp/").build())).isFalse();
+	}
+
+	interface TestClient {
+
+		@Hedged
+		@GET("/users")
+		Call<ResponseBody> hedged();
+
+		@GET("/users")
+		Call<ResponseBody> notHedged();
+
+	}
+
+}
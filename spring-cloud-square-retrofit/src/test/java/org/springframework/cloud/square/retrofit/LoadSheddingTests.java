@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.square.retrofit.core.LoadShedder;
+import org.springframework.cloud.square.retrofit.core.LoadShedders;
+import org.springframework.cloud.square.retrofit.core.LoadSheddingCallFactory;
+import org.springframework.cloud.square.retrofit.core.LoadSheddingException;
+import org.springframework.cloud.square.retrofit.core.LoadSheddingInterceptor;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientsProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link LoadSheddingCallFactory} and {@link LoadSheddingInterceptor}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class LoadSheddingTests {
+
+	private final RetrofitClientsProperties properties = new RetrofitClientsProperties();
+
+	private final LoadShedders shedders = new LoadShedders(properties);
+
+	private final CountDownLatch blocking = new CountDownLatch(1);
+
+	private final CountDownLatch blocked = new CountDownLatch(1);
+
+	private final List<String> sent = new CopyOnWriteArrayList<>();
+
+	private final Dispatcher dispatcher = new Dispatcher();
+
+	private final OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder().dispatcher(dispatcher)
+			.addInterceptor(chain -> {
+				String path = chain.request().url().encodedPath();
+				sent.add(path);
+				if (path.equals("/blocking")) {
+					blocking.countDown();
+					try {
+						blocked.await(5, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200)
+						.message("OK").body(ResponseBody.create("hello", MediaType.get("text/plain"))).build();
+			});
+
+	@AfterEach
+	void tearDown() {
+		blocked.countDown();
+		dispatcher.executorService().shutdownNow();
+	}
+
+	@Test
+	void shouldShedCallsWaitingLongerThanMaxQueueTime() throws Exception {
+		LoadShedder shedder = shedder("testapp", Duration.ofMillis(50));
+		Call.Factory factory = factory(clientBuilder, shedder);
+		CompletableFuture<Void> first = block(factory);
+		CompletableFuture<Void> second = enqueue(factory.newCall(request("/queued")));
+
+		TimeUnit.MILLISECONDS.sleep(150);
+		blocked.countDown();
+
+		first.get(5, TimeUnit.SECONDS);
+		assertThatExceptionOfType(ExecutionException.class).isThrownBy(() -> second.get(5, TimeUnit.SECONDS))
+				.havingCause().isInstanceOfSatisfying(LoadSheddingException.class, e -> {
+					assertThat(e.getName()).isEqualTo("testapp");
+					assertThat(e.getReason()).isEqualTo(LoadSheddingException.Reason.QUEUE_TIME);
+					assertThat(e.getQueueTime()).isGreaterThanOrEqualTo(Duration.ofMillis(150));
+				});
+		assertThat(sent).containsExactly("/blocking");
+		assertThat(shedder.getShedCalls(LoadSheddingException.Reason.QUEUE_TIME)).isEqualTo(1);
+		assertThat(shedder.getQueuedCalls()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldShedCallsWhoseTimeoutPassedWhileWaiting() throws Exception {
+		Call.Factory factory = factory(clientBuilder.callTimeout(Duration.ofMillis(100)), shedder("testapp", null));
+		CompletableFuture<Void> first = enqueue(factory.newCall(request("/blocking")));
+		assertThat(blocking.await(5, TimeUnit.SECONDS)).isTrue();
+		CompletableFuture<Void> second = enqueue(factory.newCall(request("/queued")));
+
+		TimeUnit.MILLISECONDS.sleep(150);
+		blocked.countDown();
+
+		assertThat(first).failsWithin(5, TimeUnit.SECONDS);
+		assertThatExceptionOfType(ExecutionException.class).isThrownBy(() -> second.get(5, TimeUnit.SECONDS))
+				.havingCause().isInstanceOfSatisfying(LoadSheddingException.class,
+						e -> assertThat(e.getReason()).isEqualTo(LoadSheddingException.Reason.DEADLINE));
+	}
+
+	@Test
+	void shouldSendCallsThatDidNotWaitTooLong() throws Exception {
+		Call.Factory factory = factory(clientBuilder, shedder("testapp", Duration.ofSeconds(5)));
+		CompletableFuture<Void> first = block(factory);
+		CompletableFuture<Void> second = enqueue(factory.newCall(request("/queued")));
+
+		blocked.countDown();
+
+		first.get(5, TimeUnit.SECONDS);
+		second.get(5, TimeUnit.SECONDS);
+		assertThat(sent).containsExactly("/blocking", "/queued");
+	}
+
+	@Test
+	void shouldNotShedSynchronousCalls() throws IOException {
+		Call.Factory factory = factory(clientBuilder, shedder("testapp", Duration.ofNanos(1)));
+		blocked.countDown();
+
+		try (Response response = factory.newCall(request("/sync")).execute()) {
+			assertThat(response.isSuccessful()).isTrue();
+		}
+	}
+
+	@Test
+	void shouldUseDefaultMaxQueueTime() {
+		RetrofitClientsProperties.Client defaults = new RetrofitClientsProperties.Client();
+		defaults.setMaxQueueTime(Duration.ofMillis(200));
+		properties.getClients().put(RetrofitClientsProperties.DEFAULT_CLIENT, defaults);
+
+		assertThat(shedders.get("otherapp").getMaxQueueNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+	}
+
+	private LoadShedder shedder(String name, Duration maxQueueTime) {
+		RetrofitClientsProperties.Client client = new RetrofitClientsProperties.Client();
+		client.setMaxQueueTime(maxQueueTime);
+		properties.getClients().put(name, client);
+		return shedders.get(name);
+	}
+
+	private Call.Factory factory(OkHttpClient.Builder builder, LoadShedder shedder) {
+		dispatcher.setMaxRequests(1);
+		builder.interceptors().add(0, new LoadSheddingInterceptor());
+		return new LoadSheddingCallFactory(builder.build(), shedder);
+	}
+
+	private CompletableFuture<Void> block(Call.Factory factory) throws InterruptedException {
+		CompletableFuture<Void> result = enqueue(factory.newCall(request("/blocking")));
+		assertThat(blocking.await(5, TimeUnit.SECONDS)).isTrue();
+		return result;
+	}
+
+	private static Request request(String path) {
+		return new Request.Builder().url("http://testapp" + path).build();
+	}
+
+	private static CompletableFuture<Void> enqueue(Call call) {
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				result.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				response.close();
+				result.complete(null);
+			}
+		});
+		return result;
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import org.springframework.cloud.square.retrofit.core.CallPriority;
+import org.springframework.cloud.square.retrofit.core.Prioritized;
+import org.springframework.cloud.square.retrofit.core.PriorityDispatcher;
+import org.springframework.cloud.square.retrofit.core.PriorityDispatchers;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientsProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PriorityDispatcher}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class PriorityDispatcherTests {
+
+	private final RetrofitClientsProperties properties = new RetrofitClientsProperties();
+
+	private final PriorityDispatchers dispatchers = new PriorityDispatchers(properties);
+
+	private final CountDownLatch blocking = new CountDownLatch(1);
+
+	private final CountDownLatch blocked = new CountDownLatch(1);
+
+	private final List<String> started = new CopyOnWriteArrayList<>();
+
+	private final Dispatcher dispatcher = new Dispatcher();
+
+	private final OkHttpClient client = new OkHttpClient.Builder().dispatcher(dispatcher).addInterceptor(chain -> {
+		String path = chain.request().url().encodedPath();
+		started.add(chain.request().url().host() + path);
+		if (path.equals("/blocking")) {
+			blocking.countDown();
+			try {
+				blocked.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+				.body(ResponseBody.create("hello", MediaType.get("text/plain"))).build();
+	}).build();
+
+	@AfterEach
+	void tearDown() {
+		blocked.countDown();
+		dispatcher.executorService().shutdownNow();
+	}
+
+	@Test
+	void shouldRunHigherPriorityCallsFirst() throws Exception {
+		dispatcher.setMaxRequests(1);
+		Call.Factory factory = dispatchers.getCallFactory("testapp", TestClient.class, dispatcher, client);
+		TestClient testClient = new Retrofit.Builder().baseUrl("http://testapp/").callFactory(factory).build()
+				.create(TestClient.class);
+		CompletableFuture<Void> first = enqueue(factory, "http://testapp/blocking");
+		assertThat(blocking.await(5, TimeUnit.SECONDS)).isTrue();
+		List<CompletableFuture<?>> queued = List.of(enqueue(factory, "http://testapp/normal"),
+				enqueue(testClient.background()), enqueue(testClient.critical()),
+				enqueue(factory, "http://testapp/normal2"));
+
+		assertThat(dispatchers.getQueuedCalls(CallPriority.NORMAL)).isEqualTo(2);
+		blocked.countDown();
+		first.get(5, TimeUnit.SECONDS);
+		CompletableFuture.allOf(queued.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+		assertThat(started).containsExactly("testapp/blocking", "testapp/critical", "testapp/normal", "testapp/normal2",
+				"testapp/background");
+		assertThat(dispatchers.getDispatchedCalls(CallPriority.BACKGROUND)).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRunCallsToOtherHostsWhenHostIsBusy() throws Exception {
+		dispatcher.setMaxRequestsPerHost(1);
+		Call.Factory factory = dispatchers.getCallFactory("testapp", TestClient.class, dispatcher, client);
+		enqueue(factory, "http://testapp/blocking");
+		assertThat(blocking.await(5, TimeUnit.SECONDS)).isTrue();
+
+		CompletableFuture<Void> sameHost = enqueue(factory, "http://testapp/critical");
+		CompletableFuture<Void> otherHost = enqueue(factory, "http://otherapp/background");
+
+		otherHost.get(5, TimeUnit.SECONDS);
+		assertThat(sameHost).isNotDone();
+	}
+
+	@Test
+	void shouldCountCallsNotMadeThroughLanes() throws Exception {
+		dispatcher.setMaxRequests(2);
+		Call.Factory factory = dispatchers.getCallFactory("testapp", TestClient.class, dispatcher, client);
+		TestClient testClient = new Retrofit.Builder().baseUrl("http://testapp/").callFactory(factory).build()
+				.create(TestClient.class);
+		CompletableFuture<Void> other = CompletableFuture.allOf(enqueue(client, "http://otherapp/blocking"),
+				enqueue(client, "http://anotherapp/blocking"));
+		await(() -> started.size() == 2);
+		List<CompletableFuture<?>> queued = List.of(enqueue(testClient.background()),
+				enqueue(factory, "http://testapp/normal"), enqueue(testClient.critical()));
+
+		// only the first call waits in the dispatcher, so that the lanes make progress
+		assertThat(dispatcher.queuedCallsCount()).isEqualTo(1);
+		assertThat(dispatchers.getQueuedCalls(CallPriority.NORMAL)).isEqualTo(1);
+		assertThat(dispatchers.getQueuedCalls(CallPriority.CRITICAL)).isEqualTo(1);
+		blocked.countDown();
+		other.get(5, TimeUnit.SECONDS);
+		CompletableFuture.allOf(queued.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+		assertThat(started).hasSize(5).element(2).isEqualTo("testapp/background");
+	}
+
+	@Test
+	void shouldLimitCallsPerResolvedHost() throws Exception {
+		dispatcher.setMaxRequestsPerHost(1);
+		// like a hedged call, the call reports the serviceId URL and sends it to an
+		// instance
+		Call.Factory resolving = request -> {
+			Call call = mock(Call.class);
+			when(call.request()).thenReturn(request);
+			doAnswer(invocation -> {
+				client.newCall(request.newBuilder()
+						.url(request.url().newBuilder().host(request.url().queryParameter("instance")).build()).build())
+						.enqueue(invocation.getArgument(0));
+				return null;
+			}).when(call).enqueue(any());
+			return call;
+		};
+		Call.Factory factory = dispatchers.getCallFactory("testapp", TestClient.class, dispatcher, resolving);
+		enqueue(factory, "http://testapp/blocking?instance=first");
+		assertThat(blocking.await(5, TimeUnit.SECONDS)).isTrue();
+
+		CompletableFuture<Void> otherInstance = enqueue(factory, "http://testapp/normal?instance=second");
+
+		otherInstance.get(5, TimeUnit.SECONDS);
+		assertThat(started).containsExactly("first/blocking", "second/normal");
+	}
+
+	@Test
+	void shouldFailCancelledWaitingCalls() throws Exception {
+		dispatcher.setMaxRequests(1);
+		Call.Factory factory = dispatchers.getCallFactory("testapp", TestClient.class, dispatcher, client);
+		enqueue(factory, "http://testapp/blocking");
+		assertThat(blocking.await(5, TimeUnit.SECONDS)).isTrue();
+		Call call = factory.newCall(new Request.Builder().url("http://testapp/cancelled").build());
+		CompletableFuture<Void> result = enqueue(call);
+
+		call.cancel();
+
+		assertThat(result).failsWithin(5, TimeUnit.SECONDS);
+		assertThat(dispatchers.getQueuedCalls(CallPriority.NORMAL)).isZero();
+		assertThat(started).doesNotContain("testapp/cancelled");
+	}
+
+	@Test
+	void shouldResolveClientPriority() {
+		assertThat(dispatchers.getPriority("testapp", TestClient.class)).isEqualTo(CallPriority.NORMAL);
+		assertThat(dispatchers.getPriority("batchapp", BatchClient.class)).isEqualTo(CallPriority.BACKGROUND);
+
+		RetrofitClientsProperties.Client clientProperties = new RetrofitClientsProperties.Client();
+		clientProperties.setPriority(CallPriority.CRITICAL);
+		properties.getClients().put("batchapp", clientProperties);
+
+		assertThat(dispatchers.getPriority("batchapp", BatchClient.class)).isEqualTo(CallPriority.CRITICAL);
+	}
+
+	private CompletableFuture<Void> enqueue(Call.Factory factory, String url) {
+		return enqueue(factory.newCall(new Request.Builder().url(url).build()));
+	}
+
+	private static CompletableFuture<Void> enqueue(Call call) {
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				result.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				response.close();
+				result.complete(null);
+			}
+		});
+		return result;
+	}
+
+	private static CompletableFuture<Void> enqueue(retrofit2.Call<ResponseBody> call) {
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		call.enqueue(new retrofit2.Callback<ResponseBody>() {
+			@Override
+			public void onResponse(retrofit2.Call<ResponseBody> call, retrofit2.Response<ResponseBody> response) {
+				response.body().close();
+				result.complete(null);
+			}
+
+			@Override
+			public void onFailure(retrofit2.Call<ResponseBody> call, Throwable t) {
+				result.completeExceptionally(t);
+			}
+		});
+		return result;
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.yield();
+		}
+	}
+
+	interface TestClient {
+
+		@Prioritized(CallPriority.CRITICAL)
+		@GET("/critical")
+		retrofit2.Call<ResponseBody> critical();
+
+		@Prioritized(CallPriority.BACKGROUND)
+		@GET("/background")
+		retrofit2.Call<ResponseBody> background();
+
+	}
+
+	@Prioritized(CallPriority.BACKGROUND)
+	interface BatchClient {
+
+	}
+
+}
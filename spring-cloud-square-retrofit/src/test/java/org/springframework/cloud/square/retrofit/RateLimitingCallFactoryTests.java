@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.square.retrofit.core.RateLimitExceededException;
+import org.springframework.cloud.square.retrofit.core.RateLimited;
+import org.springframework.cloud.square.retrofit.core.RateLimitingCallFactory;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiter;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiters;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientsProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link RateLimitingCallFactory}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class RateLimitingCallFactoryTests {
+
+	private final RetrofitClientRateLimiters limiters = new RetrofitClientRateLimiters(new RetrofitClientsProperties());
+
+	private final Request request = new Request.Builder().url("http://testapp/").build();
+
+	@AfterEach
+	void tearDown() {
+		limiters.destroy();
+	}
+
+	@Test
+	void shouldDelaySynchronousCalls() throws IOException {
+		RateLimitingCallFactory factory = factory(DelayingClient.class);
+		factory.newCall(request).execute().close();
+		long start = System.nanoTime();
+
+		factory.newCall(request).execute().close();
+
+		assertThat(System.nanoTime() - start).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	void shouldDelayAsynchronousCallsWithoutBlocking() throws Exception {
+		RateLimitingCallFactory factory = factory(DelayingClient.class);
+		factory.newCall(request).execute().close();
+		CompletableFuture<String> result = new CompletableFuture<>();
+		long start = System.nanoTime();
+
+		factory.newCall(request).enqueue(callback(result));
+
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(50));
+		assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("hello");
+		assertThat(System.nanoTime() - start).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	void shouldRejectCallsOverLimit() throws Exception {
+		RateLimitingCallFactory factory = factory(RejectingClient.class);
+		factory.newCall(request).execute().close();
+
+		assertThatExceptionOfType(RateLimitExceededException.class)
+				.isThrownBy(() -> factory.newCall(request).execute());
+		CompletableFuture<String> result = new CompletableFuture<>();
+		factory.newCall(request).enqueue(callback(result));
+		assertThat(result).isCompletedExceptionally();
+	}
+
+	@Test
+	void shouldFailCancelledDelayedCalls() throws Exception {
+		RateLimitingCallFactory factory = factory(DelayingClient.class);
+		factory.newCall(request).execute().close();
+		CompletableFuture<String> result = new CompletableFuture<>();
+		Call call = factory.newCall(request);
+		call.enqueue(callback(result));
+
+		call.cancel();
+
+		assertThat(call.isCanceled()).isTrue();
+		assertThatExceptionOfType(Exception.class).isThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+				.withCauseInstanceOf(IOException.class);
+	}
+
+	private RateLimitingCallFactory factory(Class<?> type) {
+		RetrofitClientRateLimiter limiter = limiters.get(type.getSimpleName(), type);
+		OkHttpClient client = new OkHttpClient.Builder()
+				.addInterceptor(
+						chain -> new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1).code(200)
+								.message("OK").body(ResponseBody.create("hello", MediaType.get("text/plain"))).build())
+				.build();
+		return new RateLimitingCallFactory(client, limiter);
+	}
+
+	private static Callback callback(CompletableFuture<String> result) {
+		return new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				result.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) throws IOException {
+				result.complete(response.body().string());
+			}
+		};
+	}
+
+	@RateLimited(permitsPerSecond = 10, burst = 1)
+	interface DelayingClient {
+
+	}
+
+	@RateLimited(permitsPerSecond = 1, maxWaitMillis = 0)
+	interface RejectingClient {
+
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+import org.springframework.cloud.square.retrofit.core.BulkheadCallFactory;
+import org.springframework.cloud.square.retrofit.core.RetrofitClient;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkheads;
+import org.springframework.cloud.square.retrofit.core.RetrofitContext;
+import org.springframework.cloud.square.retrofit.test.Hello;
+import org.springframework.cloud.square.retrofit.test.HelloController;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+/**
+ * Integration tests for the bulkheads of {@link RetrofitClient RetrofitClients}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@SpringBootTest(properties = { "spring.application.name=retrofitclientbulkheadtest",
+		"spring.cloud.square.retrofit.reactor.enabled=false",
+		"spring.cloud.square.retrofit.clients.localapp.max-concurrent-calls=2" }, webEnvironment = RANDOM_PORT)
+@DirtiesContext
+class RetrofitClientBulkheadIntegrationTests {
+
+	@Autowired
+	private TestClient testClient;
+
+	@Autowired
+	private RetrofitContext retrofitContext;
+
+	@Autowired
+	private RetrofitClientBulkheads bulkheads;
+
+	@Test
+	void shouldRunCallsInClientBulkhead() throws Exception {
+		Retrofit retrofit = retrofitContext.getInstance("localapp", Retrofit.class);
+		assertThat(retrofit.callFactory()).isInstanceOf(BulkheadCallFactory.class);
+
+		Response<Hello> response = testClient.getHello().execute();
+
+		assertThat(response.isSuccessful()).isTrue();
+		assertThat(bulkheads.get("localapp").getMaxConcurrentCalls()).isEqualTo(2);
+		assertThat(bulkheads.get("localapp").getActiveCalls()).isZero();
+	}
+
+	@RetrofitClient("localapp")
+	protected interface TestClient {
+
+		@GET("/hello")
+		Call<Hello> getHello();
+
+	}
+
+	@SpringBootConfiguration
+	@EnableAutoConfiguration
+	@EnableRetrofitClients(clients = TestClient.class)
+	@LoadBalancerClient(name = "localapp", configuration = TestAppConfig.class)
+	@SuppressWarnings("unused")
+	protected static class Application extends HelloController {
+
+		@Bean
+		@LoadBalanced
+		public OkHttpClient.Builder builder() {
+			return new OkHttpClient.Builder();
+		}
+
+	}
+
+	protected static class TestAppConfig {
+
+		@LocalServerPort
+		private int port = 0;
+
+		@Bean
+		public ServiceInstanceListSupplier staticServiceInstanceListSupplier() {
+			return ServiceInstanceListSuppliers.from("local",
+					new DefaultServiceInstance("local-1", "local", "localhost", port, false));
+		}
+
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.square.retrofit.core.BulkheadFullException;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkhead;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientBulkheads;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientsProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link RetrofitClientBulkhead}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class RetrofitClientBulkheadTests {
+
+	private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1);
+
+	private final AtomicInteger acquired = new AtomicInteger();
+
+	private final List<BulkheadFullException> rejections = new ArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	void shouldQueueCallsOverLimit() {
+		RetrofitClientBulkhead bulkhead = bulkhead(2, 1, Duration.ofSeconds(5));
+
+		acquire(bulkhead);
+		acquire(bulkhead);
+		acquire(bulkhead);
+
+		assertThat(acquired).hasValue(2);
+		assertThat(bulkhead.getActiveCalls()).isEqualTo(2);
+		assertThat(bulkhead.getQueuedCalls()).isEqualTo(1);
+
+		bulkhead.release();
+
+		assertThat(acquired).hasValue(3);
+		assertThat(bulkhead.getActiveCalls()).isEqualTo(2);
+		assertThat(bulkhead.getQueuedCalls()).isZero();
+		assertThat(bulkhead.getQueuedCallsTotal()).isEqualTo(1);
+
+		bulkhead.release();
+		bulkhead.release();
+
+		assertThat(bulkhead.getActiveCalls()).isZero();
+		assertThat(rejections).isEmpty();
+	}
+
+	@Test
+	void shouldRejectCallsWhenQueueIsFull() {
+		RetrofitClientBulkhead bulkhead = bulkhead(1, 1, Duration.ofSeconds(5));
+
+		acquire(bulkhead);
+		acquire(bulkhead);
+		acquire(bulkhead);
+
+		assertThat(acquired).hasValue(1);
+		assertThat(rejections).hasSize(1);
+		assertThat(rejections.get(0).getName()).isEqualTo("testapp");
+		assertThat(bulkhead.getQueueFullRejections()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRejectCallsThatWaitTooLong() throws InterruptedException {
+		RetrofitClientBulkhead bulkhead = bulkhead(1, 1, Duration.ofMillis(50));
+
+		acquire(bulkhead);
+		acquire(bulkhead);
+		await(() -> bulkhead.getQueueTimeoutRejections() == 1);
+
+		assertThat(bulkhead.getQueuedCalls()).isZero();
+		assertThat(rejections).hasSize(1);
+		bulkhead.release();
+		assertThat(acquired).hasValue(1);
+		assertThat(bulkhead.getActiveCalls()).isZero();
+	}
+
+	@Test
+	void shouldNotPassPermitToCancelledCalls() {
+		RetrofitClientBulkhead bulkhead = bulkhead(1, 1, Duration.ofSeconds(5));
+		acquire(bulkhead);
+
+		RetrofitClientBulkhead.Pending pending = acquire(bulkhead);
+
+		assertThat(pending.cancel()).isTrue();
+		assertThat(pending.cancel()).isFalse();
+		bulkhead.release();
+		assertThat(acquired).hasValue(1);
+		assertThat(bulkhead.getActiveCalls()).isZero();
+		assertThat(rejections).isEmpty();
+	}
+
+	@Test
+	void shouldResolveClientPropertiesWithDefaults() {
+		RetrofitClientsProperties properties = new RetrofitClientsProperties();
+		RetrofitClientsProperties.Client defaults = new RetrofitClientsProperties.Client();
+		defaults.setMaxConcurrentCalls(10);
+		defaults.setMaxQueuedCalls(5);
+		properties.getClients().put(RetrofitClientsProperties.DEFAULT_CLIENT, defaults);
+		RetrofitClientsProperties.Client client = new RetrofitClientsProperties.Client();
+		client.setMaxConcurrentCalls(2);
+		properties.getClients().put("testapp", client);
+		RetrofitClientBulkheads bulkheads = new RetrofitClientBulkheads(properties);
+
+		RetrofitClientBulkhead bulkhead = bulkheads.get("testapp");
+
+		assertThat(bulkhead.getMaxConcurrentCalls()).isEqualTo(2);
+		assertThat(bulkhead.getMaxQueuedCalls()).isEqualTo(5);
+		assertThat(bulkheads.get("testapp")).isSameAs(bulkhead);
+		assertThat(bulkheads.get("otherapp").getMaxConcurrentCalls()).isEqualTo(10);
+
+		properties.getClients().remove(RetrofitClientsProperties.DEFAULT_CLIENT);
+
+		assertThat(bulkheads.get("thirdapp")).isNull();
+		bulkheads.destroy();
+	}
+
+	private RetrofitClientBulkhead bulkhead(int maxConcurrentCalls, int maxQueuedCalls, Duration queueTimeout) {
+		return new RetrofitClientBulkhead("testapp", maxConcurrentCalls, maxQueuedCalls, queueTimeout, scheduler);
+	}
+
+	private RetrofitClientBulkhead.Pending acquire(RetrofitClientBulkhead bulkhead) {
+		return bulkhead.acquire(acquired::incrementAndGet, rejection -> {
+			synchronized (rejections) {
+				rejections.add(rejection);
+			}
+		});
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+}
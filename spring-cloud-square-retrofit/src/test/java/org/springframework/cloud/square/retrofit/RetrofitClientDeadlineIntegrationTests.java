@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+import retrofit2.Call;
+import retrofit2.http.GET;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+import org.springframework.cloud.square.retrofit.core.DeadlineExceededException;
+import org.springframework.cloud.square.retrofit.core.DeadlineHeaders;
+import org.springframework.cloud.square.retrofit.core.RetrofitClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+/**
+ * Integration tests for the propagation of the deadline of inbound requests to
+ * {@link RetrofitClient RetrofitClients}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+@SpringBootTest(properties = { "spring.application.name=retrofitclientdeadlinetest",
+		"spring.cloud.square.retrofit.reactor.enabled=false", "spring.cloud.square.retrofit.deadline.enabled=true" },
+		webEnvironment = RANDOM_PORT)
+@DirtiesContext
+class RetrofitClientDeadlineIntegrationTests {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Test
+	void shouldForwardRemainingTimeDownstream() {
+		String timeout = get(DeadlineHeaders.GRPC_TIMEOUT_HEADER, "5S");
+
+		assertThat(timeout).endsWith("u");
+		long micros = Long.parseLong(timeout.substring(0, timeout.length() - 1));
+		assertThat(micros).isPositive().isLessThan(5_000_000);
+	}
+
+	@Test
+	void shouldNotCallDownstreamOnceDeadlineHasPassed() {
+		String result = get(DeadlineHeaders.DEADLINE_HEADER, String.valueOf(System.currentTimeMillis() - 1000));
+
+		assertThat(result).isEqualTo("deadline exceeded");
+	}
+
+	@Test
+	void shouldNotForwardDeadlineWithoutOne() {
+		assertThat(restTemplate.getForObject("/front", String.class)).isEqualTo("none");
+	}
+
+	private String get(String header, String value) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(header, value);
+		return restTemplate.exchange("/front", HttpMethod.GET, new HttpEntity<>(headers), String.class).getBody();
+	}
+
+	@RetrofitClient("localapp")
+	protected interface TestClient {
+
+		@GET("/back")
+		Call<String> back();
+
+	}
+
+	@SpringBootConfiguration
+	@EnableAutoConfiguration
+	@EnableRetrofitClients(clients = TestClient.class)
+	@LoadBalancerClient(name = "localapp", configuration = TestAppConfig.class)
+	@Import(DeadlineController.class)
+	@SuppressWarnings("unused")
+	protected static class Application {
+
+		@Bean
+		@LoadBalanced
+		public OkHttpClient.Builder builder() {
+			return new OkHttpClient.Builder();
+		}
+
+	}
+
+	@RestController
+	protected static class DeadlineController {
+
+		private final TestClient testClient;
+
+		DeadlineController(TestClient testClient) {
+			this.testClient = testClient;
+		}
+
+		@GetMapping("/front")
+		public String front() throws Exception {
+			try {
+				return testClient.back().execute().body();
+			}
+			catch (DeadlineExceededException e) {
+				return "deadline exceeded";
+			}
+		}
+
+		@GetMapping("/back")
+		public String back(
+				@RequestHeader(name = DeadlineHeaders.GRPC_TIMEOUT_HEADER, required = false) String timeout) {
+			return timeout != null ? timeout : "none";
+		}
+
+	}
+
+	protected static class TestAppConfig {
+
+		@LocalServerPort
+		private int port = 0;
+
+		@Bean
+		public ServiceInstanceListSupplier staticServiceInstanceListSupplier() {
+			return ServiceInstanceListSuppliers.from("local",
+					new DefaultServiceInstance("local-1", "local", "localhost", port, false));
+		}
+
+	}
+
+}
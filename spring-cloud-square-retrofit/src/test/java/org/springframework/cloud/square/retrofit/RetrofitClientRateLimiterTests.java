@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.square.retrofit;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import retrofit2.Call;
+import retrofit2.Invocation;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+import org.springframework.cloud.square.retrofit.core.RateLimitExceededException;
+import org.springframework.cloud.square.retrofit.core.RateLimited;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiter;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientRateLimiters;
+import org.springframework.cloud.square.retrofit.core.RetrofitClientsProperties;
+import org.springframework.cloud.square.retrofit.core.TokenBucketRateLimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Tests for {@link RetrofitClientRateLimiter} and {@link TokenBucketRateLimiter}.
+ *
+ * @author Olga Maciaszek-Sharma
+ */
+class RetrofitClientRateLimiterTests {
+
+	private final RetrofitClientsProperties properties = new RetrofitClientsProperties();
+
+	private final RetrofitClientRateLimiters limiters = new RetrofitClientRateLimiters(properties);
+
+	private final TestClient client = new Retrofit.Builder().baseUrl("http://testapp/").client(new OkHttpClient())
+			.build().create(TestClient.class);
+
+	@AfterEach
+	void tearDown() {
+		limiters.destroy();
+	}
+
+	@Test
+	void shouldAllowBurstThenDelayCalls() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 3);
+		long maxWait = TimeUnit.SECONDS.toNanos(1);
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(limiter.reserve(maxWait)).isZero();
+		}
+		long firstWait = limiter.reserve(maxWait);
+		long secondWait = limiter.reserve(maxWait);
+
+		assertThat(firstWait).isPositive().isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(secondWait - firstWait).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(90));
+		assertThat(limiter.getPermitted()).isEqualTo(3);
+		assertThat(limiter.getDelayed()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldRejectCallsThatWouldWaitTooLong() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1);
+
+		assertThat(limiter.reserve(0)).isZero();
+		assertThat(limiter.reserve(TimeUnit.MILLISECONDS.toNanos(100))).isEqualTo(-1);
+		assertThat(limiter.getRejected()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotLimitClientsWithoutRateLimits() {
+		assertThat(limiters.get("otherapp", UnlimitedClient.class)).isNull();
+	}
+
+	@Test
+	void shouldLimitMethodsInAdditionToClient() throws Exception {
+		RetrofitClientRateLimiter limiter = limiters.get("testapp", TestClient.class);
+
+		assertThat(limiter.getLimits()).extracting(RetrofitClientRateLimiter.Limit::getMethod)
+				.containsExactlyInAnyOrder(RetrofitClientRateLimiter.ALL_METHODS, "slow");
+		assertThat(limiter.acquire(invocation(client.slow()))).isZero();
+		assertThatExceptionOfType(RateLimitExceededException.class)
+				.isThrownBy(() -> limiter.acquire(invocation(client.slow())))
+				.satisfies(e -> assertThat(e.getName()).isEqualTo("testapp"));
+		// the client limit still has tokens
+		assertThat(limiter.acquire(invocation(client.fast()))).isZero();
+	}
+
+	@Test
+	void shouldGiveBackMethodTokenWhenClientLimitRejects() throws Exception {
+		RetrofitClientRateLimiter limiter = limiters.get("limitedapp", LimitedClient.class);
+		TokenBucketRateLimiter methodLimiter = limiter.getLimits().stream()
+				.filter(limit -> "limited".equals(limit.getMethod())).findFirst().get().getLimiter();
+		assertThat(limiter.acquire(invocation(limitedClient().other()))).isZero();
+
+		assertThatExceptionOfType(RateLimitExceededException.class)
+				.isThrownBy(() -> limiter.acquire(invocation(limitedClient().limited())));
+
+		assertThat(methodLimiter.getPermitted()).isZero();
+		assertThat(methodLimiter.getRejected()).isZero();
+		// the token taken for the rejected call is available again
+		assertThat(methodLimiter.reserve(0)).isZero();
+	}
+
+	@Test
+	void shouldPreferPropertiesOverInterfaceAnnotation() {
+		RetrofitClientsProperties.Client clientProperties = new RetrofitClientsProperties.Client();
+		clientProperties.getRateLimit().setPermitsPerSecond(1d);
+		clientProperties.getRateLimit().setMaxWait(Duration.ZERO);
+		properties.getClients().put(RetrofitClientsProperties.DEFAULT_CLIENT, clientProperties);
+
+		RetrofitClientRateLimiter limiter = limiters.get("testapp", TestClient.class);
+
+		assertThat(limiter.getLimits())
+				.filteredOn(limit -> RetrofitClientRateLimiter.ALL_METHODS.equals(limit.getMethod())).singleElement()
+				.satisfies(limit -> assertThat(limit.getLimiter().getPermitsPerSecond()).isEqualTo(1));
+		assertThat(limiters.get("otherapp", UnlimitedClient.class)).isNotNull();
+	}
+
+	private static LimitedClient limitedClient() {
+		return new Retrofit.Builder().baseUrl("http://limitedapp/").client(new OkHttpClient()).build()
+				.create(LimitedClient.class);
+	}
+
+	private static Invocation invocation(Call<?> call) {
+		return call.request().tag(Invocation.class);
+	}
+
+	@RateLimited(permitsPerSecond = 100, maxWaitMillis = 0)
+	interface TestClient {
+
+		@GET("/")
+		Call<ResponseBody> fast();
+
+		@RateLimited(permitsPerSecond = 1, maxWaitMillis = 0)
+		@GET("/slow")
+		Call<ResponseBody> slow();
+
+	}
+
+	@RateLimited(permitsPerSecond = 1, maxWaitMillis = 0)
+	interface LimitedClient {
+
+		@GET("/")
+		Call<ResponseBody> other();
+
+		@RateLimited(permitsPerSecond = 1, maxWaitMillis = 0)
+		@GET("/limited")
+		Call<ResponseBody> limited();
+
+	}
+
+	interface UnlimitedClient {
+
+		@GET("/")
+		Call<ResponseBody> hello();
+
+	}
+
+}
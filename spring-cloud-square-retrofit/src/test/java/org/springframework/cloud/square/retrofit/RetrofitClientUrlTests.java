@@ -29,6 +29,7 @@ import okhttp3.Request;
 import org.junit.jupiter.api.Test;
 import retrofit2.Call;
 import retrofit2.Response;
+import retrofit2.Retrofit;
 import retrofit2.http.Body;
 import retrofit2.http.Field;
 import retrofit2.http.FormUrlEncoded;
@@ -46,6 +47,7 @@ import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.square.retrofit.core.RetrofitClient;
+import org.springframework.cloud.square.retrofit.core.RetrofitContext;
 import org.springframework.cloud.square.retrofit.test.DefinedPortTests;
 import org.springframework.cloud.square.retrofit.test.Hello;
 import org.springframework.cloud.square.retrofit.test.HelloController;
@@ -66,10 +68,9 @@ import static org.springframework.cloud.square.retrofit.test.HelloController.get
  * @author Spencer Gibb
  * @author Olga Maciaszek-Sharma
  */
-@SpringBootTest(
-		properties = { "spring.application.name=retrofitclienturltest", "retrofitClient.dynamicUrlPath=/hello2",
-				"retrofitClient.myDynamicHeader=myDynamicHeaderValue",
-				"spring.cloud.square.retrofit.reactor.enabled=false", "spring.cloud.loadbalancer.enabled=false" },
+@SpringBootTest(properties = { "spring.application.name=retrofitclienturltest", "retrofitClient.dynamicUrlPath=/hello2",
+		"retrofitClient.myDynamicHeader=myDynamicHeaderValue", "spring.cloud.square.retrofit.reactor.enabled=false",
+		"spring.cloud.loadbalancer.enabled=false", "spring.cloud.square.okhttp.clients.localapp.read-timeout=7s" },
 		webEnvironment = DEFINED_PORT)
 @DirtiesContext
 class RetrofitClientUrlTests extends DefinedPortTests {
@@ -77,6 +78,9 @@ class RetrofitClientUrlTests extends DefinedPortTests {
 	@Autowired
 	private TestClient testClient;
 
+	@Autowired
+	private RetrofitContext retrofitContext;
+
 	@Value("${retrofitClient.dynamicUrlPath}")
 	private String urlAsSpringProperty;
 
@@ -93,6 +97,14 @@ class RetrofitClientUrlTests extends DefinedPortTests {
 		assertThat(invocationHandler).withFailMessage("invocationHandler was null").isNotNull();
 	}
 
+	@Test
+	void testClientProperties() {
+		okhttp3.Call.Factory callFactory = retrofitContext.getInstance("localapp", Retrofit.class).callFactory();
+
+		assertThat(callFactory).isInstanceOf(OkHttpClient.class);
+		assertThat(((OkHttpClient) callFactory).readTimeoutMillis()).isEqualTo(7000);
+	}
+
 	@Test
 	void testDynamicUrl() throws Exception {
 		Response<Hello> response = testClient.getHelloWithDynamicUrl(urlAsSpringProperty).execute();